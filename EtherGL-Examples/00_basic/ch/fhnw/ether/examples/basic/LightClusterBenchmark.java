@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2013 - 2015 Stefan Muller Arisona, Simon Schubiger, Samuel von Stachelski
+ * Copyright (c) 2013 - 2015 FHNW & ETH Zurich
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *  Neither the name of FHNW / ETH Zurich nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ch.fhnw.ether.examples.basic;
+
+import java.util.Random;
+
+import ch.fhnw.ether.render.LightClusters;
+import ch.fhnw.util.math.Mat4;
+
+/**
+ * Measures the per frame time to assign 1k point lights to the clusters of a
+ * 16x9x24 cluster grid (no GL context required).
+ */
+public class LightClusterBenchmark {
+	private static final int NUM_LIGHTS = 1000;
+	private static final int FRAMES     = 200;
+	private static final int RUNS       = 5;
+
+	public static void main(String[] args) {
+		Mat4 proj = Mat4.perspective(45, 16f / 9f, 0.1f, 200);
+		Random random = new Random(0);
+		float[] spheres = new float[4 * NUM_LIGHTS];
+		for (int i = 0; i < NUM_LIGHTS; ++i) {
+			spheres[4 * i] = random.nextFloat() * 100 - 50;
+			spheres[4 * i + 1] = random.nextFloat() * 20 - 10;
+			spheres[4 * i + 2] = -random.nextFloat() * 150;
+			spheres[4 * i + 3] = 1 + random.nextFloat() * 4;
+		}
+
+		LightClusters clusters = new LightClusters();
+		for (int run = 0; run < RUNS; run++) {
+			long start = System.nanoTime();
+			for (int frame = 0; frame < FRAMES; frame++)
+				clusters.assign(proj, spheres, NUM_LIGHTS);
+			double ms = (System.nanoTime() - start) / 1000000.0 / FRAMES;
+			System.out.println(String.format("run %d: %d lights, %d light indices in %6.3f ms/frame", run, NUM_LIGHTS, clusters.getNumLightIndices(), ms));
+		}
+		System.exit(0);
+	}
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2013 - 2015 Stefan Muller Arisona, Simon Schubiger, Samuel von Stachelski
+ * Copyright (c) 2013 - 2015 FHNW & ETH Zurich
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *  Neither the name of FHNW / ETH Zurich nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ch.fhnw.ether.examples.basic;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import ch.fhnw.ether.render.LightInfo;
+import ch.fhnw.ether.render.Renderable;
+import ch.fhnw.ether.render.ViewInfo;
+import ch.fhnw.ether.scene.attribute.IAttribute;
+import ch.fhnw.ether.scene.mesh.DefaultMesh;
+import ch.fhnw.ether.scene.mesh.IMesh;
+import ch.fhnw.ether.scene.mesh.geometry.DefaultGeometry;
+import ch.fhnw.ether.scene.mesh.geometry.IGeometry.Primitive;
+import ch.fhnw.ether.scene.mesh.material.ColorMaterial;
+import ch.fhnw.ether.scene.mesh.material.IMaterial;
+import ch.fhnw.ether.scene.mesh.material.LineMaterial;
+import ch.fhnw.ether.scene.mesh.material.PointMaterial;
+import ch.fhnw.ether.scene.mesh.material.ShadedMaterial;
+import ch.fhnw.util.color.RGB;
+import ch.fhnw.util.color.RGBA;
+
+/**
+ * Measures the time to link shaders and vertex buffers for the renderables of
+ * a scene with 50k small meshes of mixed materials (no GL context required).
+ */
+public class SceneLoadBenchmark {
+	private static final int NUM_MESHES = 50000;
+	private static final int RUNS       = 5;
+
+	public static void main(String[] args) {
+		Map<IAttribute, Supplier<?>> globals = new IdentityHashMap<>();
+		new ViewInfo().getAttributes(globals);
+		new LightInfo().getAttributes(globals);
+
+		List<IMesh> meshes = new ArrayList<>(NUM_MESHES);
+		float[] triangle = { 0, 0, 0, 1, 0, 0, 0, 1, 0 };
+		float[] normals  = { 0, 0, 1, 0, 0, 1, 0, 0, 1 };
+		for (int i = 0; i < NUM_MESHES; i++) {
+			switch (i % 4) {
+			case 0:
+				meshes.add(new DefaultMesh(new ShadedMaterial(RGB.WHITE), DefaultGeometry.createVN(Primitive.TRIANGLES, triangle, normals)));
+				break;
+			case 1:
+				meshes.add(new DefaultMesh(new ColorMaterial(RGBA.RED), DefaultGeometry.createV(Primitive.TRIANGLES, triangle)));
+				break;
+			case 2:
+				meshes.add(new DefaultMesh(new LineMaterial(RGBA.GREEN), DefaultGeometry.createV(Primitive.LINES, new float[] { 0, 0, 0, 1, 1, 1 })));
+				break;
+			default:
+				meshes.add(new DefaultMesh(new PointMaterial(RGBA.BLUE, 4), DefaultGeometry.createV(Primitive.POINTS, new float[] { 0, 0, 0 })));
+				break;
+			}
+		}
+
+		for (int run = 0; run < RUNS; run++) {
+			long start = System.nanoTime();
+			for (IMesh mesh : meshes)
+				new Renderable(mesh, globals);
+			double ms = (System.nanoTime() - start) / 1000000.0;
+			System.out.println(String.format("run %d: %d renderables in %8.2f ms (%5.2f us/mesh)", run, NUM_MESHES, ms, 1000 * ms / NUM_MESHES));
+		}
+		System.exit(0);
+	}
+}
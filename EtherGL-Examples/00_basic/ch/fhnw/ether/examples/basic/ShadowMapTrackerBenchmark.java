@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2013 - 2015 Stefan Muller Arisona, Simon Schubiger, Samuel von Stachelski
+ * Copyright (c) 2013 - 2015 FHNW & ETH Zurich
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *  Neither the name of FHNW / ETH Zurich nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ch.fhnw.ether.examples.basic;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import ch.fhnw.ether.render.forward.ShadowMapTracker;
+import ch.fhnw.util.math.geometry.BoundingBox;
+
+/**
+ * Measures the update throughput of shadow map dirty tracking with many
+ * casters around a point light (no GL context required). Correctness is
+ * covered by ShadowMapTrackerTest.
+ */
+public class ShadowMapTrackerBenchmark {
+	private static final int RUNS        = 3;
+	private static final int NUM_CASTERS = 10000;
+	private static final int NUM_UPDATES = 1000;
+
+	private static final class Caster {
+		final BoundingBox bounds = new BoundingBox();
+		int version;
+
+		Caster(float x, float y, float z) {
+			moveTo(x, y, z);
+		}
+
+		void moveTo(float x, float y, float z) {
+			bounds.reset();
+			bounds.add(x - 0.5f, y - 0.5f, z - 0.5f);
+			bounds.add(x + 0.5f, y + 0.5f, z + 0.5f);
+			version++;
+		}
+	}
+
+	public static void main(String[] args) {
+		for (int run = 0; run < RUNS; run++)
+			throughput(run);
+		System.exit(0);
+	}
+
+	// point light with casters scattered around it, a few moving per update
+	private static void throughput(int run) {
+		Random random = new Random(run);
+		List<Caster> casters = new ArrayList<>();
+		for (int i = 0; i < NUM_CASTERS; i++)
+			casters.add(new Caster(random.nextFloat() * 200 - 100, random.nextFloat() * 200 - 100, random.nextFloat() * 200 - 100));
+		ShadowMapTracker<Caster> tracker = new ShadowMapTracker<>(c -> c.bounds, c -> c.version);
+		float[] light = { 0, 0, 0, 1, 1, 1 };
+		float[] influence = { 0, 0, 0, 50 };
+		List<Caster> inside = new ArrayList<>();
+		int dirty = 0;
+		long start = System.nanoTime();
+		for (int i = 0; i < NUM_UPDATES; i++) {
+			Caster caster = casters.get(random.nextInt(NUM_CASTERS));
+			caster.moveTo(random.nextFloat() * 200 - 100, random.nextFloat() * 200 - 100, random.nextFloat() * 200 - 100);
+			if (tracker.update(light, influence, casters, inside))
+				dirty++;
+		}
+		double ms = (System.nanoTime() - start) / 1000000.0;
+		System.out.println(String.format("run %d: %d casters, %d inside: %d of %d updates dirty, %8.3f ms per update", run, NUM_CASTERS, inside.size(), dirty, NUM_UPDATES, ms / NUM_UPDATES));
+	}
+}
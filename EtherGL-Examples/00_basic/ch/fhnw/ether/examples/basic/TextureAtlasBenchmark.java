@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2013 - 2015 Stefan Muller Arisona, Simon Schubiger, Samuel von Stachelski
+ * Copyright (c) 2013 - 2015 FHNW & ETH Zurich
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *  Neither the name of FHNW / ETH Zurich nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ch.fhnw.ether.examples.basic;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import ch.fhnw.ether.image.RGBA8Frame;
+import ch.fhnw.ether.scene.mesh.material.TextureAtlas;
+import ch.fhnw.util.math.geometry.RectanglePacker;
+
+/**
+ * Measures packing efficiency and insert / remove throughput of the texture
+ * atlas (no GL context required).
+ */
+public class TextureAtlasBenchmark {
+	private static final int RUNS      = 3;
+	private static final int PAGE_SIZE = 2048;
+	private static final int CHURN     = 200000;
+
+	public static void main(String[] args) {
+		for (int run = 0; run < RUNS; run++) {
+			packing(run, 8, 64);
+			packing(run, 16, 256);
+			churn(run);
+			atlas(run);
+		}
+		System.exit(0);
+	}
+
+	// fill a page with random rectangles until the first failure
+	private static void packing(int run, int min, int max) {
+		Random random = new Random(run);
+		RectanglePacker packer = new RectanglePacker(PAGE_SIZE, PAGE_SIZE);
+		long start = System.nanoTime();
+		int count = 0;
+		while (packer.insert(min + random.nextInt(max - min + 1), min + random.nextInt(max - min + 1)) != null)
+			count++;
+		double ms = (System.nanoTime() - start) / 1000000.0;
+		System.out.println(String.format("run %d: fill %dx%d with %d..%d: %6d rectangles, occupancy %5.1f%%, %8.2f ms", run, PAGE_SIZE, PAGE_SIZE, min, max, count, 100 * packer.getOccupancy(), ms));
+	}
+
+	// random inserts and removes at about half occupancy
+	private static void churn(int run) {
+		Random random = new Random(run);
+		RectanglePacker packer = new RectanglePacker(PAGE_SIZE, PAGE_SIZE);
+		List<int[]> used = new ArrayList<>();
+		int failed = 0;
+		long start = System.nanoTime();
+		for (int i = 0; i < CHURN; i++) {
+			if (!used.isEmpty() && (packer.getOccupancy() > 0.5f || random.nextInt(4) == 0)) {
+				int[] r = used.set(random.nextInt(used.size()), used.get(used.size() - 1));
+				used.remove(used.size() - 1);
+				packer.remove(r[0], r[1], r[2], r[3]);
+			} else {
+				int w = 8 + random.nextInt(57);
+				int h = 8 + random.nextInt(57);
+				int[] position = packer.insert(w, h);
+				if (position == null)
+					failed++;
+				else
+					used.add(new int[] { position[0], position[1], w, h });
+			}
+		}
+		double ms = (System.nanoTime() - start) / 1000000.0;
+		System.out.println(String.format("run %d: churn %d ops: %8.0f ops/s, %d failed, occupancy %5.1f%%, %d free rectangles", run, CHURN, CHURN / ms * 1000, failed, 100 * packer.getOccupancy(), packer.getNumFreeRectangles()));
+	}
+
+	// add images including pixel copies and edge padding
+	private static void atlas(int run) {
+		Random random = new Random(run);
+		TextureAtlas atlas = new TextureAtlas(PAGE_SIZE, TextureAtlas.DEFAULT_PADDING);
+		long start = System.nanoTime();
+		int count = 10000;
+		for (int i = 0; i < count; i++)
+			atlas.add(new RGBA8Frame(8 + random.nextInt(57), 8 + random.nextInt(57)));
+		double ms = (System.nanoTime() - start) / 1000000.0;
+		System.out.println(String.format("run %d: atlas %d images: %d pages, occupancy %5.1f%%, %8.0f images/s", run, count, atlas.getNumPages(), 100 * atlas.getOccupancy(), count / ms * 1000));
+	}
+}
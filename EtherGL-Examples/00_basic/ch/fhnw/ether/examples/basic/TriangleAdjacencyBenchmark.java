@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2013 - 2015 Stefan Muller Arisona, Simon Schubiger, Samuel von Stachelski
+ * Copyright (c) 2013 - 2015 FHNW & ETH Zurich
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *  Neither the name of FHNW / ETH Zurich nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ch.fhnw.ether.examples.basic;
+
+import ch.fhnw.util.math.geometry.GeodesicSphere;
+import ch.fhnw.util.math.geometry.TriangleAdjacency;
+
+/**
+ * Measures the time to build the edge adjacency used by silhouette shadow
+ * volumes for a closed sphere with 1.3M triangles (no GL context required).
+ * Correctness is covered by TriangleAdjacencyTest.
+ */
+public class TriangleAdjacencyBenchmark {
+	private static final int RUNS = 5;
+
+	public static void main(String[] args) {
+		float[] triangles = new GeodesicSphere(8).getTriangles();
+		int numTriangles = triangles.length / 9;
+
+		for (int run = 0; run < RUNS; run++) {
+			long start = System.nanoTime();
+			int[] adjacency = TriangleAdjacency.build(triangles);
+			double buildMs = (System.nanoTime() - start) / 1000000.0;
+
+			start = System.nanoTime();
+			TriangleAdjacency.expand(triangles, adjacency);
+			double expandMs = (System.nanoTime() - start) / 1000000.0;
+
+			System.out.println(String.format("run %d: %d triangles, build %8.2f ms, expand %8.2f ms", run, numTriangles, buildMs, expandMs));
+		}
+		System.exit(0);
+	}
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2013 - 2015 Stefan Muller Arisona, Simon Schubiger, Samuel von Stachelski
+ * Copyright (c) 2013 - 2015 FHNW & ETH Zurich
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *  Neither the name of FHNW / ETH Zurich nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package ch.fhnw.ether.examples.video;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import com.xuggle.mediatool.IMediaWriter;
+import com.xuggle.mediatool.ToolFactory;
+import com.xuggle.xuggler.ICodec;
+
+import ch.fhnw.ether.video.FrameAccess;
+import ch.fhnw.ether.video.URLVideoSource;
+import ch.fhnw.ether.video.XuggleAccess;
+
+/**
+ * Headless decode throughput of {@link XuggleAccess} for several lookahead depths and concurrent streams.
+ * The test clip is generated locally, so no external media is needed.
+ * Usage: VideoDecodeBenchmark [width height frames].
+ */
+public class VideoDecodeBenchmark {
+	private static final int   FPS        = 25;
+	private static final int[] LOOKAHEADS = {1, 2, 4, 8, 16};
+	private static final int   STREAMS    = 3;
+
+	public static void main(String[] args) throws Exception {
+		int width  = args.length > 0 ? Integer.parseInt(args[0]) : 1920;
+		int height = args.length > 1 ? Integer.parseInt(args[1]) : 1080;
+		int frames = args.length > 2 ? Integer.parseInt(args[2]) : 250;
+
+		File clip = File.createTempFile("ether-decode", ".mp4");
+		clip.deleteOnExit();
+		generate(clip, width, height, frames);
+
+		for(int lookahead : LOOKAHEADS)
+			run(clip, lookahead, 1);
+		run(clip, XuggleAccess.DEFAULT_LOOKAHEAD, STREAMS);
+		System.exit(0);
+	}
+
+	private static void generate(File clip, int width, int height, int frames) {
+		IMediaWriter  writer = ToolFactory.makeWriter(clip.getAbsolutePath());
+		writer.addVideoStream(0, 0, ICodec.ID.CODEC_ID_MPEG4, width, height);
+		BufferedImage image  = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+		Graphics2D    g      = image.createGraphics();
+		for(int i = 0; i < frames; i++) {
+			g.setColor(Color.getHSBColor((float)i / frames, 0.8f, 0.8f));
+			g.fillRect(0, 0, width, height);
+			g.setColor(Color.WHITE);
+			g.fillOval((i * 16) % width, height / 3, height / 3, height / 3);
+			writer.encodeVideo(0, image, (i * 1000L) / FPS, TimeUnit.MILLISECONDS);
+		}
+		g.dispose();
+		writer.close();
+	}
+
+	private static void run(File clip, int lookahead, int numStreams) throws Exception {
+		XuggleAccess[] accesses = new XuggleAccess[numStreams];
+		for(int i = 0; i < numStreams; i++) {
+			FrameAccess access = new URLVideoSource(clip.toURI().toURL(), 1, lookahead).getFrameAccess();
+			if(!(access instanceof XuggleAccess))
+				throw new IllegalStateException("not decoded by xuggle: " + access);
+			accesses[i] = (XuggleAccess)access;
+		}
+
+		int    decoded      = 0;
+		long   samples      = 0;
+		long   packetDepth  = 0;
+		long   pictureDepth = 0;
+		long   start        = System.nanoTime();
+		for(boolean done = false; !(done);) {
+			done = true;
+			for(XuggleAccess access : accesses) {
+				if(access.isEndOfClip())
+					continue;
+				done = false;
+				packetDepth  += access.getPacketQueueDepth();
+				pictureDepth += access.getPictureQueueDepth();
+				samples++;
+				if(access.decodeFrame())
+					decoded++;
+				else
+					Thread.yield();
+			}
+		}
+		double seconds = (System.nanoTime() - start) / 1000000000.0;
+
+		StringBuilder latencies = new StringBuilder();
+		for(XuggleAccess.Stage stage : XuggleAccess.Stage.values())
+			latencies.append(String.format(" %s %.2f ms", stage.name().toLowerCase(), 1000 * averageLatency(accesses, stage)));
+		System.out.println(String.format("%d stream(s) lookahead %2d: %5d frames %7.1f fps, queues packet %.1f picture %.1f,%s",
+				numStreams, lookahead, decoded, decoded / seconds,
+				(double)packetDepth / Math.max(1, samples), (double)pictureDepth / Math.max(1, samples),
+				latencies));
+
+		for(XuggleAccess access : accesses)
+			access.dispose();
+	}
+
+	private static double averageLatency(XuggleAccess[] accesses, XuggleAccess.Stage stage) {
+		double result = 0;
+		for(XuggleAccess access : accesses)
+			result += access.getStageLatency(stage);
+		return result / accesses.length;
+	}
+}
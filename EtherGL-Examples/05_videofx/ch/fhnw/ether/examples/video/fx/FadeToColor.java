@@ -34,13 +34,18 @@ import ch.fhnw.ether.media.Parameter;
 import ch.fhnw.ether.video.IVideoRenderTarget;
 import ch.fhnw.ether.video.fx.AbstractVideoFX;
 import ch.fhnw.ether.video.fx.IVideoFrameFX;
+import ch.fhnw.ether.video.fx.IVideoPixelFX;
 
-public class FadeToColor extends AbstractVideoFX implements IVideoFrameFX {
+public class FadeToColor extends AbstractVideoFX implements IVideoFrameFX, IVideoPixelFX {
 	private static final Parameter FADE  = new Parameter("fade",  "Fade",  0, 1, 1);
 	private static final Parameter RED   = new Parameter("red",   "Red",   0, 1, 0);
 	private static final Parameter GREEN = new Parameter("green", "Green", 0, 1, 0);
 	private static final Parameter BLUE  = new Parameter("blue",  "Blue",  0, 1, 0);
 
+	private final byte[] lutR = new byte[256];
+	private final byte[] lutG = new byte[256];
+	private final byte[] lutB = new byte[256];
+
 	public FadeToColor() {
 		super(FADE, RED, GREEN, BLUE);
 	}
@@ -74,4 +79,26 @@ public class FadeToColor extends AbstractVideoFX implements IVideoFrameFX {
 			});
 		}
 	}
+
+	@Override
+	public void prepareKernel(double playOutTime, IVideoRenderTarget target) {
+		final float w  = getVal(FADE);
+		final float rs = getVal(RED);
+		final float gs = getVal(GREEN);
+		final float bs = getVal(BLUE);
+		for(int i = 0; i < 256; i++) {
+			lutR[i] = toByte(mix(toFloat((byte)i), rs, w));
+			lutG[i] = toByte(mix(toFloat((byte)i), gs, w));
+			lutB[i] = toByte(mix(toFloat((byte)i), bs, w));
+		}
+	}
+
+	@Override
+	public void processPixels(byte[] pixels, int count, int pixelSize) {
+		for(int idx = 0, end = count * pixelSize; idx < end; idx += pixelSize) {
+			pixels[idx+0] = lutR[pixels[idx+0] & 0xFF];
+			pixels[idx+1] = lutG[pixels[idx+1] & 0xFF];
+			pixels[idx+2] = lutB[pixels[idx+2] & 0xFF];
+		}
+	}
 }
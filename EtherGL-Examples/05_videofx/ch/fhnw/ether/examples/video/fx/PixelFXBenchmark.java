@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2013 - 2015 Stefan Muller Arisona, Simon Schubiger, Samuel von Stachelski
+ * Copyright (c) 2013 - 2015 FHNW & ETH Zurich
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *  Neither the name of FHNW / ETH Zurich nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package ch.fhnw.ether.examples.video.fx;
+
+import ch.fhnw.ether.image.Frame;
+import ch.fhnw.ether.image.RGBA8Frame;
+import ch.fhnw.ether.video.fx.IVideoFrameFX;
+import ch.fhnw.ether.video.fx.IVideoPixelFX;
+import ch.fhnw.ether.video.fx.PixelFXChain;
+
+/**
+ * Compares running 1-8 chained point-wise effects through their own {@link IVideoFrameFX#processFrame} (the unfused path)
+ * against a single fused {@link PixelFXChain} pass.
+ */
+public class PixelFXBenchmark {
+	private static final int WARMUP = 5;
+	private static final int RUNS   = 10;
+
+	public static void main(String[] args) {
+		int[][] sizes = {{1920, 1080}, {3840, 2160}};
+		for(int[] size : sizes) {
+			Frame frame = new RGBA8Frame(size[0], size[1]);
+			for(int n = 1; n <= 8; n++) {
+				IVideoPixelFX[] fxs = new IVideoPixelFX[n];
+				for(int i = 0; i < n; i++)
+					fxs[i] = i % 3 == 0 ? new RGBGain() : i % 3 == 1 ? new FadeToColor() : new Posterize();
+				PixelFXChain chain = new PixelFXChain(fxs);
+
+				double separate = time(()->{for(IVideoPixelFX fx : fxs) ((IVideoFrameFX)fx).processFrame(0, null, frame);});
+				double fused    = time(()->chain.processFrame(0, null, frame));
+				double mb       = (double)frame.width * frame.height * frame.pixelSize / (1024 * 1024);
+				System.out.println(String.format("%dx%d %d fx: separate %6.2f ms (%7.0f MB/s) fused %6.2f ms (%7.0f MB/s) speedup %.2f",
+						frame.width, frame.height, n, 
+						separate, 2 * n * mb / (separate / 1000), 
+						fused,    2 * mb / (fused / 1000), 
+						separate / fused));
+			}
+		}
+		System.exit(0);
+	}
+
+	private static double time(Runnable r) {
+		for(int i = 0; i < WARMUP; i++)
+			r.run();
+		long start = System.nanoTime();
+		for(int i = 0; i < RUNS; i++)
+			r.run();
+		return (System.nanoTime() - start) / (RUNS * 1000000.0);
+	}
+}
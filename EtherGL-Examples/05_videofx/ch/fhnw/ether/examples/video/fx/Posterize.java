@@ -34,10 +34,13 @@ import ch.fhnw.ether.media.Parameter;
 import ch.fhnw.ether.video.IVideoRenderTarget;
 import ch.fhnw.ether.video.fx.AbstractVideoFX;
 import ch.fhnw.ether.video.fx.IVideoFrameFX;
+import ch.fhnw.ether.video.fx.IVideoPixelFX;
 
-public class Posterize extends AbstractVideoFX implements IVideoFrameFX {
+public class Posterize extends AbstractVideoFX implements IVideoFrameFX, IVideoPixelFX {
 	private static final Parameter MASK = new Parameter("mask", "Bit Mask", 0, 7, 0);
 
+	private int bitMask;
+
 	public Posterize() {
 		super(MASK);
 	}
@@ -68,4 +71,18 @@ public class Posterize extends AbstractVideoFX implements IVideoFrameFX {
 			});
 		}
 	}
+
+	@Override
+	public void prepareKernel(double playOutTime, IVideoRenderTarget target) {
+		bitMask = 0xFF << (int)getVal(MASK);
+	}
+
+	@Override
+	public void processPixels(byte[] pixels, int count, int pixelSize) {
+		for(int idx = 0, end = count * pixelSize; idx < end; idx += pixelSize) {
+			pixels[idx+0] &= bitMask;
+			pixels[idx+1] &= bitMask;
+			pixels[idx+2] &= bitMask;
+		}
+	}
 }
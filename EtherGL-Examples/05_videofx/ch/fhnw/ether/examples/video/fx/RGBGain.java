@@ -35,12 +35,17 @@ import ch.fhnw.ether.video.IVideoRenderTarget;
 import ch.fhnw.ether.video.fx.AbstractVideoFX;
 import ch.fhnw.ether.video.fx.IVideoFrameFX;
 import ch.fhnw.ether.video.fx.IVideoGLFX;
+import ch.fhnw.ether.video.fx.IVideoPixelFX;
 
-public class RGBGain extends AbstractVideoFX implements IVideoFrameFX, IVideoGLFX {
+public class RGBGain extends AbstractVideoFX implements IVideoFrameFX, IVideoGLFX, IVideoPixelFX {
 	private static final Parameter RED   = new Parameter("red",   "Red Gain",   0, 2, 1);
 	private static final Parameter GREEN = new Parameter("green", "Green Gain", 0, 2, 1);
 	private static final Parameter BLUE  = new Parameter("blue",  "Blue Gain",  0, 2, 1);
 
+	private final byte[] lutR = new byte[256];
+	private final byte[] lutG = new byte[256];
+	private final byte[] lutB = new byte[256];
+
 	public RGBGain() {
 		super(RED, GREEN, BLUE);
 	}
@@ -78,4 +83,25 @@ public class RGBGain extends AbstractVideoFX implements IVideoFrameFX, IVideoGLF
 			});
 		}
 	}
+
+	@Override
+	public void prepareKernel(double playOutTime, IVideoRenderTarget target) {
+		final float rs = getVal(RED);
+		final float gs = getVal(GREEN);
+		final float bs = getVal(BLUE);
+		for(int i = 0; i < 256; i++) {
+			lutR[i] = toByte(toFloat((byte)i) * rs);
+			lutG[i] = toByte(toFloat((byte)i) * gs);
+			lutB[i] = toByte(toFloat((byte)i) * bs);
+		}
+	}
+
+	@Override
+	public void processPixels(byte[] pixels, int count, int pixelSize) {
+		for(int idx = 0, end = count * pixelSize; idx < end; idx += pixelSize) {
+			pixels[idx+0] = lutR[pixels[idx+0] & 0xFF];
+			pixels[idx+1] = lutG[pixels[idx+1] & 0xFF];
+			pixels[idx+2] = lutB[pixels[idx+2] & 0xFF];
+		}
+	}
 }
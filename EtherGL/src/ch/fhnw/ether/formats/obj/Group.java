@@ -33,9 +33,13 @@ import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.List;
 
+import ch.fhnw.util.IntList;
+
 final class Group {
 	private final String name;
 	private final List<Face> faces = new ArrayList<>();
+	// faces of MappedObjParser, per face: n, flags, n vertex, n texcoord and n normal indices
+	private final IntList faceData = new IntList();
 
 	int currentIndex;
 
@@ -66,6 +70,10 @@ final class Group {
 		faces.add(face);
 	}
 
+	public IntList getFaceData() {
+		return faceData;
+	}
+
 	public void write(PrintWriter out) {
 		out.println("g " + name);
 		for(Face f : faces)
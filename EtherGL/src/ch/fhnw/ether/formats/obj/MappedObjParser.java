@@ -0,0 +1,476 @@
+/*
+ * Copyright (c) 2013 - 2015 Stefan Muller Arisona, Simon Schubiger, Samuel von Stachelski
+ * Copyright (c) 2013 - 2015 FHNW & ETH Zurich
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *  Neither the name of FHNW / ETH Zurich nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package ch.fhnw.ether.formats.obj;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import ch.fhnw.util.FloatList;
+import ch.fhnw.util.IntList;
+import ch.fhnw.util.TextUtilities;
+
+/**
+ * Parses an OBJ file by memory mapping it and scanning chunks split at line boundaries in parallel. Vertex attributes go
+ * straight into float lists and faces into {@link Group#getFaceData()}, no per vertex or per face objects are created.
+ * A first parallel pass counts the attribute lines per chunk so that relative (negative) face indices can be resolved
+ * while scanning. Groups, materials and mtllib statements are replayed in file order when the chunks are merged,
+ * so the result is identical to {@link WavefrontObject}.
+ */
+final class MappedObjParser {
+	static final int HAS_TEXCOORDS = 1;
+	static final int HAS_NORMALS   = 2;
+
+	private static final int MIN_CHUNK = 1 << 20;
+	private static final int MAX_CHUNK = 1 << 26;
+
+	private static final ExecutorService POOL = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), r->{
+		Thread result = new Thread(r, "MappedObjParser");
+		result.setDaemon(true);
+		result.setPriority(Thread.MIN_PRIORITY);
+		return result;
+	});
+
+	private static final float[] POW10 = {1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f};
+
+	private enum EventType {GROUP, USEMTL, MTLLIB}
+
+	private static final class Event {
+		final EventType type;
+		final String    arg;
+		final int       faceOffset;
+
+		Event(EventType type, String arg, int faceOffset) {
+			this.type       = type;
+			this.arg        = arg;
+			this.faceOffset = faceOffset;
+		}
+	}
+
+	private static final class Chunk {
+		final ByteBuffer  buffer;
+		final FloatList   vertices  = new FloatList();
+		final FloatList   normals   = new FloatList();
+		final FloatList   texCoords = new FloatList();
+		final IntList     faces     = new IntList();
+		final List<Event> events    = new ArrayList<>();
+		int               numV;
+		int               numN;
+		int               numT;
+		int               baseV;
+		int               baseN;
+		int               baseT;
+		int               pos;
+		int               end;
+
+		Chunk(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+	}
+
+	private final WavefrontObject object;
+	private final FloatList       vertices  = new FloatList();
+	private final FloatList       normals   = new FloatList();
+	private final FloatList       texCoords = new FloatList();
+
+	MappedObjParser(File file, String path) throws IOException {
+		object = new WavefrontObject(path);
+		try(RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+			List<Chunk> chunks = split(channel);
+
+			List<Future<?>> counts = new ArrayList<>(chunks.size());
+			for(Chunk chunk : chunks)
+				counts.add(POOL.submit(()->count(chunk)));
+			join(counts);
+
+			int baseV = 0, baseN = 0, baseT = 0;
+			for(Chunk chunk : chunks) {
+				chunk.baseV = baseV; baseV += chunk.numV;
+				chunk.baseN = baseN; baseN += chunk.numN;
+				chunk.baseT = baseT; baseT += chunk.numT;
+			}
+
+			List<Future<?>> parses = new ArrayList<>(chunks.size());
+			for(Chunk chunk : chunks)
+				parses.add(POOL.submit(()->{parse(chunk); return null;}));
+			join(parses);
+
+			vertices.ensureCapacity(baseV * 3);
+			normals.ensureCapacity(baseN * 3);
+			texCoords.ensureCapacity(baseT * 2);
+			for(Chunk chunk : chunks)
+				merge(chunk);
+		}
+	}
+
+	WavefrontObject getObject() {
+		return object;
+	}
+
+	FloatList getVertices() {
+		return vertices;
+	}
+
+	FloatList getNormals() {
+		return normals;
+	}
+
+	FloatList getTexCoords() {
+		return texCoords;
+	}
+
+	private static void join(List<Future<?>> futures) throws IOException {
+		try {
+			for(Future<?> f : futures)
+				f.get();
+		} catch(InterruptedException e) {
+			throw new IOException(e);
+		} catch(ExecutionException e) {
+			if(e.getCause() instanceof IOException)
+				throw (IOException)e.getCause();
+			throw new IOException(e.getCause());
+		}
+	}
+
+	private static List<Chunk> split(FileChannel channel) throws IOException {
+		long        size      = channel.size();
+		long        chunkSize = Math.max(MIN_CHUNK, Math.min(MAX_CHUNK, size / (4 * Runtime.getRuntime().availableProcessors())));
+		List<Chunk> result    = new ArrayList<>();
+		ByteBuffer  probe     = ByteBuffer.allocate(4096);
+		for(long start = 0; start < size;) {
+			long end = Math.min(size, start + chunkSize);
+			// move end past the next line feed
+			while(end < size) {
+				probe.clear();
+				int n = channel.read(probe, end);
+				int i = 0;
+				while(i < n && probe.get(i) != '\n') i++;
+				end += i;
+				if(i < n) {
+					end++;
+					break;
+				}
+			}
+			MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, start, end - start);
+			result.add(new Chunk(buffer));
+			start = end;
+		}
+		return result;
+	}
+
+	private static boolean isWhitespace(int b) {
+		return b == ' ' || b == '\t' || b == '\r' || b == '\f' || b == 0x0B || (b >= 0x1C && b <= 0x1F);
+	}
+
+	private static int skipWhitespace(ByteBuffer buf, int pos, int end) {
+		while(pos < end && isWhitespace(buf.get(pos))) pos++;
+		return pos;
+	}
+
+	private static int tokenEnd(ByteBuffer buf, int pos, int end) {
+		while(pos < end && !(isWhitespace(buf.get(pos)))) pos++;
+		return pos;
+	}
+
+	private static int lineEnd(ByteBuffer buf, int pos, int end) {
+		while(pos < end && buf.get(pos) != '\n') pos++;
+		return pos;
+	}
+
+	private static boolean is(ByteBuffer buf, int from, int to, String keyword) {
+		if(to - from != keyword.length())
+			return false;
+		for(int i = 0; i < keyword.length(); i++)
+			if(buf.get(from + i) != keyword.charAt(i))
+				return false;
+		return true;
+	}
+
+	private static Void count(Chunk chunk) {
+		ByteBuffer buf = chunk.buffer;
+		int        end = buf.limit();
+		for(int pos = 0; pos < end;) {
+			int start = skipWhitespace(buf, pos, end);
+			int eol   = lineEnd(buf, start, end);
+			int kEnd  = tokenEnd(buf, start, eol);
+			if(kEnd - start == 1 && buf.get(start) == 'v')
+				chunk.numV++;
+			else if(kEnd - start == 2 && buf.get(start) == 'v') {
+				if(buf.get(start + 1) == 'n') chunk.numN++;
+				else if(buf.get(start + 1) == 't') chunk.numT++;
+			}
+			pos = eol + 1;
+		}
+		return null;
+	}
+
+	private static boolean isEmpty(int part, int s1, int e1, int s2, int e2) {
+		switch(part) {
+		case 1:  return e1 == s1;
+		case 2:  return e2 == s2;
+		default: return false;
+		}
+	}
+
+	private static String string(ByteBuffer buf, int from, int to) {
+		byte[] bytes = new byte[to - from];
+		for(int i = 0; i < bytes.length; i++)
+			bytes[i] = buf.get(from + i);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Parses a float in [from,to). Mantissas below 2^24 with a decimal exponent of at most 10 are computed with a single
+	 * float multiplication or division of exact operands, which is correctly rounded and thus identical to
+	 * {@link Float#parseFloat(String)}. Everything else falls back to it.
+	 */
+	static float parseFloat(ByteBuffer buf, int from, int to) {
+		int     pos      = from;
+		boolean negative = false;
+		if(pos < to && (buf.get(pos) == '-' || buf.get(pos) == '+'))
+			negative = buf.get(pos++) == '-';
+		long    mantissa = 0;
+		int     exp      = 0;
+		int     digits   = 0;
+		boolean dot      = false;
+		for(; pos < to; pos++) {
+			int c = buf.get(pos);
+			if(c >= '0' && c <= '9') {
+				if(mantissa < (1L << 40))
+					mantissa = mantissa * 10 + (c - '0');
+				else if(!(dot))
+					exp++;
+				if(dot && mantissa < (1L << 40)) exp--;
+				digits++;
+			} else if(c == '.' && !(dot))
+				dot = true;
+			else
+				break;
+		}
+		if(pos < to && (buf.get(pos) == 'e' || buf.get(pos) == 'E')) {
+			pos++;
+			boolean eneg = false;
+			if(pos < to && (buf.get(pos) == '-' || buf.get(pos) == '+'))
+				eneg = buf.get(pos++) == '-';
+			int e = 0;
+			int start = pos;
+			for(; pos < to && buf.get(pos) >= '0' && buf.get(pos) <= '9'; pos++)
+				e = Math.min(e * 10 + (buf.get(pos) - '0'), 100000);
+			if(pos == start)
+				return Float.parseFloat(string(buf, from, to));
+			exp += eneg ? -e : e;
+		}
+		if(pos != to || digits == 0 || mantissa >= (1 << 24) || exp < -10 || exp > 10)
+			return Float.parseFloat(string(buf, from, to));
+		float result = exp >= 0 ? mantissa * POW10[exp] : mantissa / POW10[-exp];
+		return negative ? -result : result;
+	}
+
+	static int parseInt(ByteBuffer buf, int from, int to) {
+		int     pos      = from;
+		boolean negative = false;
+		if(pos < to && (buf.get(pos) == '-' || buf.get(pos) == '+'))
+			negative = buf.get(pos++) == '-';
+		if(pos == to || to - pos > 9)
+			return Integer.parseInt(string(buf, from, to));
+		int result = 0;
+		for(; pos < to; pos++) {
+			int c = buf.get(pos);
+			if(c < '0' || c > '9')
+				return Integer.parseInt(string(buf, from, to));
+			result = result * 10 + (c - '0');
+		}
+		return negative ? -result : result;
+	}
+
+	private void parse(Chunk chunk) throws IOException {
+		ByteBuffer buf   = chunk.buffer;
+		int        end   = buf.limit();
+		int[]      v     = new int[16];
+		int[]      t     = new int[16];
+		int[]      n     = new int[16];
+		for(int pos = 0; pos < end;) {
+			int start = skipWhitespace(buf, pos, end);
+			int eol   = lineEnd(buf, start, end);
+			int kEnd  = tokenEnd(buf, start, eol);
+			pos = eol + 1;
+			if(kEnd == start)
+				continue;
+
+			int len = kEnd - start;
+			int k0  = buf.get(start);
+			try {
+				if(len == 1 && k0 == 'v') {
+					int p = kEnd;
+					for(int i = 0; i < 3; i++) {
+						int s = skipWhitespace(buf, p, eol);
+						p = tokenEnd(buf, s, eol);
+						if(s == p) throw new IOException("Vertex Parser Error");
+						chunk.vertices.add(parseFloat(buf, s, p));
+					}
+				} else if(len == 2 && k0 == 'v' && buf.get(start + 1) == 'n') {
+					int p = kEnd;
+					for(int i = 0; i < 3; i++) {
+						int s = skipWhitespace(buf, p, eol);
+						p = tokenEnd(buf, s, eol);
+						if(s == p) throw new IOException("Normal Parser Error");
+						chunk.normals.add(parseFloat(buf, s, p));
+					}
+				} else if(len == 2 && k0 == 'v' && buf.get(start + 1) == 't') {
+					// OBJ origin is at upper left, OpenGL origin is at lower left
+					float u = 0;
+					float w = 0;
+					int   s = skipWhitespace(buf, kEnd, eol);
+					int   p = tokenEnd(buf, s, eol);
+					if(s < p) {
+						u = parseFloat(buf, s, p);
+						s = skipWhitespace(buf, p, eol);
+						p = tokenEnd(buf, s, eol);
+						if(s < p)
+							w = 1 - parseFloat(buf, s, p);
+					}
+					chunk.texCoords.add(u);
+					chunk.texCoords.add(w);
+				} else if(len == 1 && k0 == 'f') {
+					int count = 0;
+					int flags = 0;
+					int numV  = chunk.baseV + chunk.vertices.size() / 3;
+					int numT  = chunk.baseT + chunk.texCoords.size() / 2;
+					int numN  = chunk.baseN + chunk.normals.size() / 3;
+					for(int p = kEnd;;) {
+						int s = skipWhitespace(buf, p, eol);
+						p = tokenEnd(buf, s, eol);
+						if(s == p) break;
+						if(count == v.length) {
+							v = Arrays.copyOf(v, count * 2);
+							t = Arrays.copyOf(t, count * 2);
+							n = Arrays.copyOf(n, count * 2);
+						}
+						// same semantics as ObjFaceParser, including String.split("/") dropping trailing empty parts
+						int e0 = s;
+						while(e0 < p && buf.get(e0) != '/') e0++;
+						int s1 = Math.min(e0 + 1, p);
+						int e1 = s1;
+						while(e1 < p && buf.get(e1) != '/') e1++;
+						int s2 = Math.min(e1 + 1, p);
+						int e2 = s2;
+						while(e2 < p && buf.get(e2) != '/') e2++;
+						int e3 = e2;
+						while(e3 < p && buf.get(e3) == '/') e3++;
+						int parts = e3 < p ? 4 : e1 < p ? 3 : e0 < p ? 2 : 1;
+						while(parts > 1 && isEmpty(parts - 1, s1, e1, s2, e2))
+							parts--;
+
+						int vi = parseInt(buf, s, e0) - 1;
+						v[count] = vi < 0 ? numV + vi + 1 : vi;
+						t[count] = 0;
+						n[count] = 0;
+						if(parts > 1 && e1 > s1) {
+							int ti = parseInt(buf, s1, e1);
+							// texture indices beyond the current count are placeholders for 'no texture'
+							if(ti <= numT) {
+								flags   |= HAS_TEXCOORDS;
+								t[count] = ti - 1 < 0 ? numT + ti : ti - 1;
+							}
+						}
+						if(parts > 2) {
+							flags   |= HAS_NORMALS;
+							int ni   = parseInt(buf, s2, e2) - 1;
+							n[count] = ni < 0 ? numN + ni + 1 : ni;
+						}
+						count++;
+					}
+					IntList faces = chunk.faces;
+					faces.add(count);
+					faces.add(flags);
+					faces.addAll(v, 0, count);
+					faces.addAll(t, 0, count);
+					faces.addAll(n, 0, count);
+				} else if((len == 1 && (k0 == 'g' || k0 == 'o'))) {
+					int s = skipWhitespace(buf, kEnd, eol);
+					int p = tokenEnd(buf, s, eol);
+					chunk.events.add(new Event(EventType.GROUP, s == p ? "default" : string(buf, s, p), chunk.faces.size()));
+				} else if(is(buf, start, kEnd, "usemtl")) {
+					int s = skipWhitespace(buf, kEnd, eol);
+					int p = tokenEnd(buf, s, eol);
+					chunk.events.add(new Event(EventType.USEMTL, string(buf, s, p), chunk.faces.size()));
+				} else if(is(buf, start, kEnd, "mtllib")) {
+					chunk.events.add(new Event(EventType.MTLLIB, string(buf, start, eol), chunk.faces.size()));
+				}
+			} catch(NumberFormatException e) {
+				throw new IOException("Error parsing line '" + string(buf, start, eol).trim() + "' of " + object.getContextfolder(), e);
+			}
+		}
+	}
+
+	private void merge(Chunk chunk) {
+		vertices.addAll(chunk.vertices._getArray(), 0, chunk.vertices.size());
+		normals.addAll(chunk.normals._getArray(), 0, chunk.normals.size());
+		texCoords.addAll(chunk.texCoords._getArray(), 0, chunk.texCoords.size());
+
+		int[] faces = chunk.faces._getArray();
+		int   from  = 0;
+		for(Event event : chunk.events) {
+			addFaces(faces, from, event.faceOffset);
+			from = event.faceOffset;
+			switch(event.type) {
+			case GROUP:
+				object.setCurrentGroup(new Group(event.arg));
+				break;
+			case USEMTL:
+				object.getCurrentGroup().setMaterial(object.getMaterials().get(event.arg));
+				break;
+			case MTLLIB:
+				MtlFileParser parser = new MtlFileParser(new MtlLineParserFactory(object));
+				parser.setWords(TextUtilities.tokens(event.arg));
+				parser.parse(object);
+				break;
+			}
+		}
+		addFaces(faces, from, chunk.faces.size());
+	}
+
+	private void addFaces(int[] faces, int from, int to) {
+		if(to > from)
+			object.getCurrentGroup().getFaceData().addAll(faces, from, to - from);
+	}
+}
@@ -41,6 +41,7 @@ final class Material {
 	private float  shininess;
 	private Frame  texture;
 	private String textureName;
+	private String texturePath;
 
 	public Material(String name) {
 		this.name = name;
@@ -87,7 +88,7 @@ final class Material {
 	}
 
 	public Texture getTexture() {
-		return texture.getTexture();
+		return texture == null ? null : texture.getTextureAsync(0);
 	}
 
 	public void setTexture(Frame texture) {
@@ -101,4 +102,12 @@ final class Material {
 	public void setTextureName(String textureName) {
 		this.textureName = textureName;
 	}
+
+	public String getTexturePath() {
+		return texturePath;
+	}
+
+	public void setTexturePath(String texturePath) {
+		this.texturePath = texturePath;
+	}
 }
@@ -47,14 +47,16 @@ public final class MtlFileParser extends LineParser {
 		String filename = words[1];
 
 		String pathToMTL = object.getContextfolder() + filename;
+		object.getMaterialPaths().add(pathToMTL);
 
 		InputStream fileInput = this.getClass().getResourceAsStream(pathToMTL);
 		if (fileInput == null) {
 			// Could not find the file in the jar.
 			try {
 				File file = new File(pathToMTL);
-				if (file.exists())
+				if (file.exists()) {
 					fileInput = new FileInputStream(file);
+				}
 			} catch (Exception e) {
 				throw new RuntimeException("Error parsing: '" + pathToMTL + "'");
 			}
@@ -34,6 +34,7 @@ import ch.fhnw.ether.image.Frame;
 final class MtlKdMapParser extends LineParser {
 	private Frame texture;
 	private String textureName;
+	private String texturePath;
 
 	public MtlKdMapParser() {
 	}
@@ -42,8 +43,8 @@ final class MtlKdMapParser extends LineParser {
 	public void parse(WavefrontObject object) {
 		String textureFileName = words[words.length - 1];
 		textureName = textureFileName;
-		String pathToTextureBinary = object.getContextfolder() + textureFileName;
-		texture = TextureLoader.loadTexture(pathToTextureBinary);
+		texturePath = object.getContextfolder() + textureFileName;
+		texture = TextureLoader.loadTexture(texturePath);
 	}
 
 	@Override
@@ -52,6 +53,7 @@ final class MtlKdMapParser extends LineParser {
 			Material currentMaterial = object.getCurrentMaterial();
 			currentMaterial.setTexture(texture);
 			currentMaterial.setTextureName(textureName);
+			currentMaterial.setTexturePath(texturePath);
 		}
 	}
 }
@@ -0,0 +1,530 @@
+/*
+ * Copyright (c) 2013 - 2015 Stefan Muller Arisona, Simon Schubiger, Samuel von Stachelski
+ * Copyright (c) 2013 - 2015 FHNW & ETH Zurich
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *  Neither the name of FHNW / ETH Zurich nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ch.fhnw.ether.formats.obj;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import ch.fhnw.ether.image.Frame;
+import ch.fhnw.ether.scene.mesh.DefaultMesh;
+import ch.fhnw.ether.scene.mesh.IMesh;
+import ch.fhnw.ether.scene.mesh.geometry.DefaultGeometry;
+import ch.fhnw.ether.scene.mesh.geometry.IGeometry;
+import ch.fhnw.ether.scene.mesh.geometry.IGeometry.Format;
+import ch.fhnw.ether.scene.mesh.geometry.IGeometry.GeometryAttribute;
+import ch.fhnw.ether.scene.mesh.geometry.IGeometry.IGeometryAttribute;
+import ch.fhnw.ether.scene.mesh.geometry.IGeometry.Primitive;
+import ch.fhnw.ether.scene.mesh.material.IMaterial;
+import ch.fhnw.ether.scene.mesh.material.ShadedMaterial;
+import ch.fhnw.ether.scene.mesh.material.Texture;
+import ch.fhnw.util.Log;
+import ch.fhnw.util.TextUtilities;
+import ch.fhnw.util.color.RGB;
+
+/**
+ * Binary cache of the meshes decoded from an OBJ file. It stores the final geometry arrays with their layout, the
+ * primitive type and the material parameters, so a cached model is loaded by mapping the file and bulk-reading the
+ * arrays instead of parsing, triangulating and computing normals again.
+ * 
+ * The cache records length, modification time and MD5 hash of the OBJ and of every referenced MTL file, whether it was
+ * found on disk, found as a class path resource or not found at all. It is valid if every MTL path still resolves the
+ * same way and all files still have the same length and either the same modification time or the same hash. Class
+ * path resources are compared by hash. If only the modification time of a file changed, the new time is stored in the
+ * cache so the file is not hashed again on the next load.
+ * 
+ * The cache is disabled by default. Caches are written to {@link #DEFAULT_DIRECTORY} unless another directory is set.
+ */
+final class ObjMeshCache {
+	private static final Log log = Log.create();
+
+	private static final int    MAGIC     = 0x4853454D; // "MESH"
+	private static final int    VERSION   = 3;
+	private static final String EXTENSION = ".mesh";
+	private static final int    BLOCK     = 1 << 20;
+
+	// how a dependency was resolved
+	private static final int    MISSING   = 0;
+	private static final int    FILE      = 1;
+	private static final int    RESOURCE  = 2;
+
+	static final File DEFAULT_DIRECTORY = new File(System.getProperty("user.home"), ".ether" + File.separator + "meshes");
+
+	private static final IGeometryAttribute[] BUILTIN = {
+			IGeometry.POSITION_ARRAY,
+			IGeometry.COLOR_ARRAY,
+			IGeometry.COLOR_MAP_ARRAY,
+			IGeometry.NORMAL_ARRAY,
+			IGeometry.LINE_WIDTH_ARRAY,
+			IGeometry.POINT_SIZE_ARRAY,
+	};
+
+	private static volatile boolean enabled   = false;
+	private static volatile File    directory = DEFAULT_DIRECTORY;
+
+	private ObjMeshCache() {
+	}
+
+	static void setEnabled(boolean enabled) {
+		ObjMeshCache.enabled = enabled;
+	}
+
+	static boolean isEnabled() {
+		return enabled;
+	}
+
+	static void setDirectory(File directory) {
+		ObjMeshCache.directory = directory;
+	}
+
+	static File getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * Returns the cache file for the given source. In the cache directory it is keyed by the hash of the source's
+	 * canonical path. If the directory was set to null, it is placed next to the source.
+	 */
+	static File getCacheFile(File source) throws IOException {
+		File dir = directory;
+		if (dir == null)
+			return new File(source.getPath() + EXTENSION);
+		String canonical = source.getCanonicalPath();
+		return new File(dir, source.getName() + "-" + TextUtilities.toHex(md5(canonical.getBytes(StandardCharsets.UTF_8))) + EXTENSION);
+	}
+
+	/**
+	 * Reads the cached meshes of source. Returns null if there is no valid cache.
+	 */
+	static List<IMesh> read(File source) {
+		if (!(enabled))
+			return null;
+		try {
+			File cache = getCacheFile(source);
+			if (!(cache.isFile()))
+				return null;
+			try (RandomAccessFile raf = new RandomAccessFile(cache, "r"); FileChannel channel = raf.getChannel()) {
+				ByteBuffer buf = channel.map(MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+				if (buf.getInt() != MAGIC || buf.getInt() != VERSION)
+					return null;
+
+				List<long[]> touched = new ArrayList<>();
+				for (int i = 0, n = buf.getInt(); i < n; i++) {
+					String  path   = getString(buf);
+					int     kind   = buf.getInt();
+					long    length = buf.getLong();
+					int     offset = buf.position();
+					long    mtime  = buf.getLong();
+					byte[]  hash   = new byte[16];
+					buf.get(hash);
+					if (!(isValid(i == 0 ? FILE : kind(path), path, kind, length, mtime, hash, offset, touched)))
+						return null;
+				}
+				if (!(touched.isEmpty()))
+					touch(cache, touched);
+
+				IMaterial[] materials = new IMaterial[buf.getInt()];
+				for (int i = 0; i < materials.length; i++) {
+					String name      = getString(buf);
+					RGB    emission  = getRGB(buf);
+					RGB    ambient   = getRGB(buf);
+					RGB    diffuse   = getRGB(buf);
+					RGB    specular  = getRGB(buf);
+					float  shininess = buf.getFloat();
+					float  strength  = buf.getFloat();
+					float  alpha     = buf.getFloat();
+					String texPath   = getString(buf);
+					Texture texture  = null;
+					if (!(texPath.isEmpty())) {
+						Frame frame = TextureLoader.loadTexture(texPath);
+						if (frame != null)
+							texture = frame.getTextureAsync(0);
+					}
+					materials[i] = new ShadedMaterial(emission, ambient, diffuse, specular, shininess, strength, alpha, texture);
+					if (name != null)
+						materials[i].setName(name);
+					if (texture != null)
+						TextureLoader.CACHE.pinWhileReachable(texPath, materials[i]);
+				}
+
+				List<IMesh> result = new ArrayList<>();
+				for (int i = buf.getInt(); --i >= 0;) {
+					String               name       = getString(buf);
+					IMaterial            material   = materials[buf.getInt()];
+					Primitive            type       = Primitive.values()[buf.getInt()];
+					IGeometryAttribute[] attributes = new IGeometryAttribute[buf.getInt()];
+					float[][]            data       = new float[attributes.length][];
+					for (int a = 0; a < attributes.length; a++) {
+						attributes[a] = getAttribute(getString(buf), buf.getInt(), Format.values()[buf.getInt()]);
+						data[a]       = new float[buf.getInt()];
+						align(buf);
+						FloatBuffer floats = buf.slice().order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+						floats.get(data[a]);
+						buf.position(buf.position() + data[a].length * 4);
+					}
+					DefaultMesh mesh = new DefaultMesh(material, new DefaultGeometry(type, attributes, data));
+					mesh.setName(name);
+					result.add(mesh);
+				}
+				return result;
+			}
+		} catch (Throwable t) {
+			log.warning("can't read mesh cache of " + source, t);
+			return null;
+		}
+	}
+
+	/**
+	 * Writes the meshes decoded from source and the given MTL files to the cache of source. Meshes with materials other
+	 * than {@link ShadedMaterial} are not cacheable.
+	 * 
+	 * @param materialPaths
+	 *            Path of each referenced MTL file as resolved by {@link MtlFileParser}
+	 * @param texturePaths
+	 *            Texture file of each textured material
+	 */
+	static void write(File source, List<String> materialPaths, List<IMesh> meshes, Map<IMaterial, String> texturePaths) {
+		if (!(enabled))
+			return;
+		File tmp = null;
+		try {
+			Map<IMaterial, Integer> materials = new IdentityHashMap<>();
+			for (IMesh mesh : meshes) {
+				if (!(mesh.getMaterial() instanceof ShadedMaterial) || !(mesh.getGeometry() instanceof DefaultGeometry))
+					return;
+				if (!(materials.containsKey(mesh.getMaterial())))
+					materials.put(mesh.getMaterial(), materials.size());
+			}
+
+			File cache = getCacheFile(source);
+			File dir   = cache.getAbsoluteFile().getParentFile();
+			if (!(dir.isDirectory()) && !(dir.mkdirs()))
+				throw new IOException("can't create " + dir);
+			tmp = File.createTempFile(cache.getName(), ".tmp", dir);
+
+			try (RandomAccessFile raf = new RandomAccessFile(tmp, "rw"); FileChannel channel = raf.getChannel()) {
+				Writer out = new Writer(channel);
+				out.putInt(MAGIC);
+				out.putInt(VERSION);
+
+				out.putInt(materialPaths.size() + 1);
+				putDependency(out, source.getPath(), FILE);
+				for (String path : materialPaths)
+					putDependency(out, path, kind(path));
+
+				IMaterial[] table = new IMaterial[materials.size()];
+				for (Map.Entry<IMaterial, Integer> e : materials.entrySet())
+					table[e.getValue()] = e.getKey();
+				out.putInt(table.length);
+				for (IMaterial m : table) {
+					ShadedMaterial material = (ShadedMaterial) m;
+					String         texPath  = texturePaths.get(material);
+					out.putString(material.getName());
+					out.putRGB(material.getEmission());
+					out.putRGB(material.getAmbient());
+					out.putRGB(material.getDiffuse());
+					out.putRGB(material.getSpecular());
+					out.putFloat(material.getShininess());
+					out.putFloat(material.getStrength());
+					out.putFloat(material.getAlpha());
+					out.putString(material.getColorMap() != null && texPath != null ? texPath : "");
+				}
+
+				out.putInt(meshes.size());
+				for (IMesh mesh : meshes) {
+					IGeometry            geometry   = mesh.getGeometry();
+					IGeometryAttribute[] attributes = geometry.getAttributes();
+					float[][]            data       = geometry.getData();
+					out.putString(mesh.getName());
+					out.putInt(materials.get(mesh.getMaterial()));
+					out.putInt(geometry.getType().ordinal());
+					out.putInt(attributes.length);
+					for (int a = 0; a < attributes.length; a++) {
+						out.putString(attributes[a].id());
+						out.putInt(attributes[a].getNumComponents());
+						out.putInt(attributes[a].getFormat().ordinal());
+						out.putInt(data[a].length);
+						out.align();
+						out.putFloats(data[a]);
+					}
+				}
+				out.flush();
+			}
+
+			try {
+				Files.move(tmp.toPath(), cache.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tmp.toPath(), cache.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+			tmp = null;
+		} catch (Throwable t) {
+			log.warning("can't write mesh cache of " + source, t);
+		} finally {
+			if (tmp != null)
+				tmp.delete();
+		}
+	}
+
+	private static int kind(String path) {
+		if (MtlFileParser.class.getResource(path) != null)
+			return RESOURCE;
+		return new File(path).isFile() ? FILE : MISSING;
+	}
+
+	private static void putDependency(Writer out, String path, int kind) throws IOException {
+		out.putString(path);
+		out.putInt(kind);
+		switch (kind) {
+		case FILE:
+			File file = new File(path);
+			out.putLong(file.length());
+			out.putLong(file.lastModified());
+			out.put(md5(file));
+			break;
+		case RESOURCE:
+			byte[] bytes = read(MtlFileParser.class.getResource(path));
+			out.putLong(bytes.length);
+			out.putLong(0);
+			out.put(md5(bytes));
+			break;
+		default:
+			out.putLong(0);
+			out.putLong(0);
+			out.put(new byte[16]);
+			break;
+		}
+	}
+
+	/**
+	 * Checks a dependency. If a file only changed its modification time, the new time and the offset of the stored
+	 * time are added to touched.
+	 */
+	private static boolean isValid(int current, String path, int kind, long length, long mtime, byte[] hash, int offset, List<long[]> touched) throws IOException {
+		if (current != kind)
+			return false;
+		switch (kind) {
+		case FILE:
+			File file = new File(path);
+			if (file.length() != length)
+				return false;
+			long lastModified = file.lastModified();
+			if (lastModified == mtime)
+				return true;
+			if (!(Arrays.equals(hash, md5(file))))
+				return false;
+			touched.add(new long[] { offset, lastModified });
+			return true;
+		case RESOURCE:
+			byte[] bytes = read(MtlFileParser.class.getResource(path));
+			return bytes.length == length && Arrays.equals(hash, md5(bytes));
+		default:
+			return true;
+		}
+	}
+
+	/**
+	 * Stores new modification times in place. Failures are ignored, the files are then hashed again on the next load.
+	 */
+	private static void touch(File cache, List<long[]> touched) {
+		try (RandomAccessFile raf = new RandomAccessFile(cache, "rw"); FileChannel channel = raf.getChannel()) {
+			ByteBuffer buf = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+			for (long[] t : touched) {
+				buf.clear();
+				buf.putLong(t[1]).flip();
+				while (buf.hasRemaining())
+					channel.write(buf, t[0] + buf.position());
+			}
+		} catch (Throwable t) {
+			log.warning("can't update mesh cache " + cache, t);
+		}
+	}
+
+	private static byte[] read(URL resource) throws IOException {
+		try (InputStream in = resource.openStream()) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] block = new byte[8192];
+			for (int n; (n = in.read(block)) >= 0;)
+				out.write(block, 0, n);
+			return out.toByteArray();
+		}
+	}
+
+	private static IGeometryAttribute getAttribute(String id, int numComponents, Format format) {
+		for (IGeometryAttribute attribute : BUILTIN)
+			if (attribute.id().equals(id) && attribute.getNumComponents() == numComponents && attribute.getFormat() == format)
+				return attribute;
+		return new GeometryAttribute(id, numComponents, format);
+	}
+
+	private static String getString(ByteBuffer buf) {
+		int length = buf.getInt();
+		if (length < 0)
+			return null;
+		byte[] bytes = new byte[length];
+		buf.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static RGB getRGB(ByteBuffer buf) {
+		return new RGB(buf.getFloat(), buf.getFloat(), buf.getFloat());
+	}
+
+	private static void align(ByteBuffer buf) {
+		buf.position((buf.position() + 3) & ~3);
+	}
+
+	private static MessageDigest md5() throws IOException {
+		try {
+			return MessageDigest.getInstance("MD5");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException(e);
+		}
+	}
+
+	private static byte[] md5(byte[] bytes) throws IOException {
+		return md5().digest(bytes);
+	}
+
+	private static byte[] md5(File file) throws IOException {
+		MessageDigest md = md5();
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+			ByteBuffer buffer = ByteBuffer.allocateDirect(BLOCK);
+			while (channel.read(buffer) >= 0) {
+				buffer.flip();
+				md.update(buffer);
+				buffer.clear();
+			}
+		}
+		return md.digest();
+	}
+
+	private static final class Writer {
+		private final FileChannel channel;
+		private final ByteBuffer  buffer = ByteBuffer.allocateDirect(BLOCK).order(ByteOrder.LITTLE_ENDIAN);
+		private long              position;
+
+		Writer(FileChannel channel) {
+			this.channel = channel;
+		}
+
+		private void ensure(int bytes) throws IOException {
+			if (buffer.remaining() < bytes)
+				flush();
+		}
+
+		void flush() throws IOException {
+			buffer.flip();
+			while (buffer.hasRemaining())
+				channel.write(buffer);
+			buffer.clear();
+		}
+
+		void putInt(int v) throws IOException {
+			ensure(4);
+			buffer.putInt(v);
+			position += 4;
+		}
+
+		void putLong(long v) throws IOException {
+			ensure(8);
+			buffer.putLong(v);
+			position += 8;
+		}
+
+		void putFloat(float v) throws IOException {
+			ensure(4);
+			buffer.putFloat(v);
+			position += 4;
+		}
+
+		void put(byte[] bytes) throws IOException {
+			for (int off = 0; off < bytes.length;) {
+				ensure(1);
+				int n = Math.min(buffer.remaining(), bytes.length - off);
+				buffer.put(bytes, off, n);
+				off      += n;
+				position += n;
+			}
+		}
+
+		void putString(String s) throws IOException {
+			if (s == null) {
+				putInt(-1);
+				return;
+			}
+			byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+			putInt(bytes.length);
+			put(bytes);
+		}
+
+		void putRGB(RGB rgb) throws IOException {
+			putFloat(rgb.r);
+			putFloat(rgb.g);
+			putFloat(rgb.b);
+		}
+
+		void align() throws IOException {
+			while ((position & 3) != 0) {
+				ensure(1);
+				buffer.put((byte) 0);
+				position++;
+			}
+		}
+
+		void putFloats(float[] floats) throws IOException {
+			for (int off = 0; off < floats.length;) {
+				ensure(4);
+				int n = Math.min(buffer.remaining() / 4, floats.length - off);
+				buffer.asFloatBuffer().put(floats, off, n);
+				buffer.position(buffer.position() + n * 4);
+				off      += n;
+				position += n * 4;
+			}
+		}
+	}
+}
@@ -32,8 +32,10 @@ package ch.fhnw.ether.formats.obj;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URISyntaxException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.IdentityHashMap;
 import java.util.List;
@@ -47,6 +49,7 @@ import ch.fhnw.ether.scene.mesh.geometry.IGeometry;
 import ch.fhnw.ether.scene.mesh.geometry.IGeometry.Primitive;
 import ch.fhnw.ether.scene.mesh.material.IMaterial;
 import ch.fhnw.ether.scene.mesh.material.ShadedMaterial;
+import ch.fhnw.util.FloatList;
 import ch.fhnw.util.IntList;
 import ch.fhnw.util.color.RGB;
 import ch.fhnw.util.math.Vec2;
@@ -54,15 +57,65 @@ import ch.fhnw.util.math.Vec3;
 import ch.fhnw.util.math.geometry.GeometryUtilities;
 
 public final class ObjReader extends AbstractModelReader {
-	private final List<IMesh> meshes = new ArrayList<>();
+	private final List<IMesh>            meshes       = new ArrayList<>();
+	private final Map<IMaterial, String> texturePaths = new IdentityHashMap<>();
 
 	public ObjReader(File file) throws IOException {
 		this(file.toURI().toURL());
 	}
 	
 	public ObjReader(URL resource) throws IOException {
+		this(resource, true);
+	}
+
+	/**
+	 * @param mapped If true and resource is a file, the file is parsed with the memory-mapped, chunk-parallel parser.
+	 * Otherwise it is read line by line from a stream. Files are loaded from the mesh cache if it is enabled and up to date.
+	 */
+	public ObjReader(URL resource, boolean mapped) throws IOException {
 		super(resource);
-		decode(resource.getFile(), resource.openStream());
+		File file = toFile(resource);
+		if (file != null) {
+			List<IMesh> cached = ObjMeshCache.read(file);
+			if (cached != null) {
+				meshes.addAll(cached);
+				return;
+			}
+		}
+
+		WavefrontObject obj;
+		if (mapped && file != null)
+			obj = decode(resource.getFile(), new MappedObjParser(file, resource.getFile()));
+		else
+			obj = decode(resource.getFile(), resource.openStream());
+
+		if (file != null && ObjMeshCache.isEnabled())
+			ObjMeshCache.write(file, obj.getMaterialPaths(), meshes, texturePaths);
+	}
+
+	/**
+	 * Enables or disables the binary mesh cache of OBJ files, which is disabled by default.
+	 */
+	public static void setMeshCacheEnabled(boolean enabled) {
+		ObjMeshCache.setEnabled(enabled);
+	}
+
+	/**
+	 * Sets the directory for mesh caches, ~/.ether/meshes by default. If null, caches are written next to the OBJ files.
+	 */
+	public static void setMeshCacheDirectory(File directory) {
+		ObjMeshCache.setDirectory(directory);
+	}
+
+	private static File toFile(URL resource) {
+		if (!"file".equals(resource.getProtocol()))
+			return null;
+		try {
+			File result = new File(resource.toURI());
+			return result.isFile() ? result : null;
+		} catch (URISyntaxException | IllegalArgumentException e) {
+			return null;
+		}
 	}
 	
 	@Override
@@ -70,13 +123,94 @@ public final class ObjReader extends AbstractModelReader {
 		return Collections.unmodifiableList(meshes);
 	}
 
-	private List<IMesh> decode(String path, InputStream in) {
+	private WavefrontObject decode(String path, MappedObjParser parser) {
+		WavefrontObject obj = parser.getObject();
+		float[] vertices = parser.getVertices()._getArray();
+		float[] normals = parser.getNormals()._getArray();
+		float[] texCoords = parser.getTexCoords()._getArray();
+
+		Map<Material, IMaterial> materials = new IdentityHashMap<>();
+		IntList triangulation = new IntList();
+
+		for (Group group : obj.getGroups()) {
+			IntList faceData = group.getFaceData();
+			if (faceData.isEmpty())
+				continue;
+			final int[] faces = faceData._getArray();
+			final int numFaceInts = faceData.size();
+			boolean hasNormals = (faces[1] & MappedObjParser.HAS_NORMALS) != 0;
+			boolean hasTexCoords = (faces[1] & MappedObjParser.HAS_TEXCOORDS) != 0;
+
+			int numFaces = 0;
+			int numCorners = 0;
+			for (int f = 0; f < numFaceInts; f += 2 + 3 * faces[f]) {
+				numFaces++;
+				numCorners += faces[f];
+			}
+
+			// flatten corners so the whole group is triangulated in one batch, missing attributes are -1
+			int[] starts = new int[numFaces + 1];
+			int[] vIndices = new int[numCorners];
+			int[] tIndices = new int[numCorners];
+			int[] nIndices = new int[numCorners];
+			for (int f = 0, face = 0, corner = 0; f < numFaceInts; face++) {
+				final int count = faces[f];
+				final int flags = faces[f + 1];
+				final int vs = f + 2;
+				final int ts = vs + count;
+				final int ns = ts + count;
+				f = ns + count;
+
+				starts[face] = corner;
+				for (int i = 0; i < count; ++i, ++corner) {
+					vIndices[corner] = faces[vs + i];
+					tIndices[corner] = (flags & MappedObjParser.HAS_TEXCOORDS) != 0 ? faces[ts + i] : -1;
+					nIndices[corner] = (flags & MappedObjParser.HAS_NORMALS) != 0 ? faces[ns + i] : -1;
+				}
+			}
+			starts[numFaces] = numCorners;
+
+			triangulation.clear();
+			GeometryUtilities.triangulate(vertices, vIndices, starts, numFaces, triangulation);
+
+			final int[] corners = triangulation._getArray();
+			final int numTriCorners = triangulation.size();
+			FloatList tv = new FloatList(numTriCorners * 3);
+			FloatList tn = hasNormals ? new FloatList(numTriCorners * 3) : null;
+			FloatList tt = new FloatList(hasTexCoords ? numTriCorners * 2 : 0);
+			for (int i = 0; i < numTriCorners; ++i) {
+				int corner = corners[i];
+				tv.addAll(vertices, vIndices[corner] * 3, 3);
+				if (hasNormals) {
+					if (nIndices[corner] >= 0)
+						tn.addAll(normals, nIndices[corner] * 3, 3);
+					else
+						tn.addAll(Vec3.Z.x, Vec3.Z.y, Vec3.Z.z);
+				}
+				if (hasTexCoords) {
+					if (tIndices[corner] >= 0)
+						tt.addAll(texCoords, tIndices[corner] * 2, 2);
+					else
+						tt.addAll(Vec2.ZERO.x, Vec2.ZERO.y);
+				}
+			}
+
+			IMaterial material = getMaterial(materials, group.getMaterial());
+			float[] tvA = tv.toArray();
+			float[] tnA = hasNormals ? tn.toArray() : GeometryUtilities.calculateNormals(tvA);
+			addMesh(path, group, material, tvA, tnA, hasTexCoords ? tt.toArray() : null, hasTexCoords);
+		}
+		return obj;
+	}
+
+	private WavefrontObject decode(String path, InputStream in) {
 		WavefrontObject obj = new WavefrontObject(path, in);
 		List<Vec3> vertices = obj.getVertices();
 		List<Vec3> normals = obj.getNormals();
 		List<Vec2> texCoords = obj.getTexCoords();
 
 		Map<Material, IMaterial> materials = new IdentityHashMap<>();
+		float[][] polygons = new float[16][];
 		
 		for (Group group : obj.getGroups()) {
 			List<Face> faces = group.getFaces();
@@ -94,12 +228,19 @@ public final class ObjReader extends AbstractModelReader {
 				final int[] ns = face.nIndices;
 				final int[] ts = face.tIndices;
 
-				List<Vec3> polyVertices = new ArrayList<>();
+				if (vs.length >= polygons.length)
+					polygons = Arrays.copyOf(polygons, vs.length * 2);
+				float[] polygon = polygons[vs.length];
+				if (polygon == null)
+					polygon = polygons[vs.length] = new float[vs.length * 3];
 				for (int i = 0; i < vs.length; ++i) {
-					polyVertices.add(vertices.get(vs[i]));
+					Vec3 v = vertices.get(vs[i]);
+					polygon[i * 3 + 0] = v.x;
+					polygon[i * 3 + 1] = v.y;
+					polygon[i * 3 + 2] = v.z;
 				}
 
-				IntList triangulation = GeometryUtilities.triangulate(polyVertices);
+				IntList triangulation = GeometryUtilities.triangulate(polygon);
 
 				for (int i = 0; i < triangulation.size(); ++i) {
 					int idx = triangulation.get(i);
@@ -111,34 +252,45 @@ public final class ObjReader extends AbstractModelReader {
 				}
 			}
 
-			// TODO: proper material handling
-			Material mat = group.getMaterial();
-			IMaterial material = materials.get(mat);
-			if (material == null) {
-				if (mat != null) {
-					material = new ShadedMaterial(RGB.BLACK, mat.getKa(), mat.getKd(), mat.getKs(), mat.getShininess(), 1, 1, mat.getTexture());
-					material.setName(mat.getName());
-				} else {
-					material = new ShadedMaterial(RGB.WHITE);
-				}
-				
-				materials.put(mat,  material);
-			}
-			
+			IMaterial material = getMaterial(materials, group.getMaterial());
 			float[] tv = Vec3.toArray(triVertices);
 			float[] tn = hasNormals ? Vec3.toArray(triNormals) : GeometryUtilities.calculateNormals(tv);
 			float[] tt = Vec2.toArray(triTexCoords);
+			addMesh(path, group, material, tv, tn, tt, hasTexCoords);
+		}
+		return obj;
+	}
 
-			IGeometry geometry;
-			if (hasTexCoords)
-				geometry = DefaultGeometry.createVNM(Primitive.TRIANGLES, tv, tn, tt);
-			else
-				geometry = DefaultGeometry.createVN(Primitive.TRIANGLES, tv, tn);
-
-			DefaultMesh mesh = new DefaultMesh(material, geometry);
-			mesh.setName(path + '/' + group.getName());
-			meshes.add(mesh);
+	// TODO: proper material handling
+	private IMaterial getMaterial(Map<Material, IMaterial> materials, Material mat) {
+		IMaterial material = materials.get(mat);
+		if (material == null) {
+			if (mat != null) {
+				material = new ShadedMaterial(RGB.BLACK, mat.getKa(), mat.getKd(), mat.getKs(), mat.getShininess(), 1, 1, mat.getTexture());
+				material.setName(mat.getName());
+				// keep the decoded texture cached while the material is in use
+				if (mat.getTexturePath() != null) {
+					TextureLoader.CACHE.pinWhileReachable(mat.getTexturePath(), material);
+					texturePaths.put(material, mat.getTexturePath());
+				}
+			} else {
+				material = new ShadedMaterial(RGB.WHITE);
+			}
+			
+			materials.put(mat,  material);
 		}
-		return meshes;
+		return material;
+	}
+
+	private void addMesh(String path, Group group, IMaterial material, float[] tv, float[] tn, float[] tt, boolean hasTexCoords) {
+		IGeometry geometry;
+		if (hasTexCoords)
+			geometry = DefaultGeometry.createVNM(Primitive.TRIANGLES, tv, tn, tt);
+		else
+			geometry = DefaultGeometry.createVN(Primitive.TRIANGLES, tv, tn);
+
+		DefaultMesh mesh = new DefaultMesh(material, geometry);
+		mesh.setName(path + '/' + group.getName());
+		meshes.add(mesh);
 	}
 }
@@ -30,27 +30,27 @@
 package ch.fhnw.ether.formats.obj;
 
 import java.io.File;
-import java.util.HashMap;
-import java.util.Map;
 
 import ch.fhnw.ether.image.Frame;
+import ch.fhnw.util.AssetCache;
+import ch.fhnw.util.Log;
 
 final class TextureLoader {
+	private static final Log log = Log.create();
+
+	private static final long DEFAULT_CACHE_SIZE = 256 * 1024 * 1024;
+
+	static final AssetCache<String, Frame> CACHE = new AssetCache<>(DEFAULT_CACHE_SIZE, frame->frame.pixels.capacity());
+
 	private TextureLoader() {
 	}
 
-	private static final Map<String, Frame> frameCache = new HashMap<>();
-
 	public static Frame loadTexture(String path) {
-		Frame frame = frameCache.get(path);
-		if (frame == null) {
-			try {
-				frame = Frame.create(new File(path));
-				frameCache.put(path, frame);
-			} catch (Exception e) {
-				System.err.println("can't load texture: " + path);
-			}
+		try {
+			return CACHE.get(path, key->Frame.create(new File(key)));
+		} catch (Exception e) {
+			log.warning("can't load texture: " + path, e);
+			return null;
 		}
-		return frame;
 	}
 }
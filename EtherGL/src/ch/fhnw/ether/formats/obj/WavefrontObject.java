@@ -53,6 +53,7 @@ final class WavefrontObject {
 	private List<Group> groups   = new ArrayList<>();
 
 	private Map<String, Material> materials = new HashMap<>();
+	private List<String>          materialPaths = new ArrayList<>();
 
 	private BoundingBox bounds;
 
@@ -107,6 +108,13 @@ final class WavefrontObject {
 		return this.materials;
 	}
 
+	/**
+	 * Returns the paths of all referenced MTL files, including the ones that could not be found.
+	 */
+	public List<String> getMaterialPaths() {
+		return materialPaths;
+	}
+
 	public BoundingBox getBounds() {
 		if (bounds == null) {
 			bounds = new BoundingBox();
@@ -274,6 +274,16 @@ public final class FloatFrame extends Frame {
 		gl.glTexImage2D(GL3.GL_TEXTURE_2D, 0, GL3.GL_RED, width, height, 0, GL3.GL_RED, GL.GL_FLOAT, pixels);
 	}
 
+	@Override
+	protected int getGLFormat() {
+		return GL3.GL_RED;
+	}
+
+	@Override
+	protected int getGLType() {
+		return GL.GL_FLOAT;
+	}
+
 	public void normalize() {
 		float max = 0;
 		buffer.clear();
@@ -33,11 +33,14 @@ import java.awt.Graphics;
 import java.awt.RenderingHints;
 import java.awt.image.BufferedImage;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URL;
 import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
@@ -53,7 +56,9 @@ import com.jogamp.opengl.GL3;
 import ch.fhnw.ether.media.RenderCommandException;
 import ch.fhnw.ether.render.gl.GLObject;
 import ch.fhnw.ether.render.gl.GLObject.Type;
+import ch.fhnw.ether.render.gl.GLState;
 import ch.fhnw.ether.scene.mesh.material.Texture;
+import ch.fhnw.ether.scene.mesh.material.TextureStreamer;
 import ch.fhnw.ether.video.AbstractVideoTarget;
 import ch.fhnw.ether.video.VideoFrame;
 import ch.fhnw.ether.video.fx.AbstractVideoFX;
@@ -63,7 +68,7 @@ import ch.fhnw.util.BufferUtilities;
 
 public abstract class Frame extends AbstractVideoTarget {
 
-	public enum FileFormat {PNG,JPEG}
+	public enum FileFormat {PNG,JPEG,RAW}
 
 	public static final byte        B0    = 0;
 	public static final byte        B255  = (byte) 255;
@@ -75,6 +80,7 @@ public abstract class Frame extends AbstractVideoTarget {
 	public int        pixelSize;
 	private int       modCount;
 	private Texture   texture;
+	private int       textureModCount;
 
 	protected Frame(int pixelSize) {
 		super(Thread.MIN_PRIORITY, AbstractVideoFX.FRAMEFX, false);
@@ -215,7 +221,7 @@ public abstract class Frame extends AbstractVideoTarget {
 			final GL3   gl     = ctx.getGL();
 			int internalFormat;
 			final int target = GL3.GL_TEXTURE_2D;
-			gl.glBindTexture(target, texture.getGlObject().getId());
+			GLState.get(gl).bindTexture(gl, target, texture.getGlObject().getId());
 			gl.glGetTexLevelParameteriv(target, 0, GL3.GL_TEXTURE_INTERNAL_FORMAT, tmpi, 0);	internalFormat = tmpi[0];
 			switch(internalFormat) {
 			case GL.GL_RGB8:
@@ -235,7 +241,7 @@ public abstract class Frame extends AbstractVideoTarget {
 			}
 			result.pixels.clear();
 			gl.glGetTexImage(target, 0, internalFormat, GL.GL_UNSIGNED_BYTE, result.pixels);
-			gl.glBindTexture(target, 0);
+			GLState.get(gl).bindTexture(gl, target, 0);
 			return result;
 		} catch(Throwable t) {
 			log.severe(t);
@@ -462,15 +468,53 @@ public abstract class Frame extends AbstractVideoTarget {
 	}
 
 	public void write(File file, FileFormat format) throws IOException {
-		ImageIO.write(toBufferedImage(), format.toString(), file);
+		if(format == FileFormat.RAW) {
+			try(FileOutputStream out = new FileOutputStream(file)) {
+				writeRaw(out.getChannel());
+			}
+		} else
+			ImageIO.write(toBufferedImage(), format.toString(), file);
 	}
 
 	public void write(OutputStream out, FileFormat format) throws IOException {
-		ImageIO.write(toBufferedImage(), format.toString(), out);
+		if(format == FileFormat.RAW)
+			writeRaw(Channels.newChannel(out));
+		else
+			ImageIO.write(toBufferedImage(), format.toString(), out);
+	}
+
+	private void writeRaw(WritableByteChannel out) throws IOException {
+		final ByteBuffer src = pixels.duplicate();
+		src.clear();
+		src.limit(width * height * pixelSize);
+		while(src.hasRemaining())
+			out.write(src);
 	}
 
 	protected abstract void loadTexture(GL3 gl);
 
+	protected abstract int getGLFormat();
+
+	protected abstract int getGLType();
+
+	/**
+	 * Allocates storage for the currently bound texture without uploading pixels.
+	 */
+	public void allocTexture(GL3 gl) {
+		gl.glTexImage2D(GL.GL_TEXTURE_2D, 0, getGLFormat(), width, height, 0, getGLFormat(), getGLType(), null);
+	}
+
+	/**
+	 * Uploads the given rows into the currently bound texture, which must have been allocated with {@link #allocTexture(GL3)}.
+	 */
+	public void loadTexture(GL3 gl, int y, int rows) {
+		final int  lineLength = width * pixelSize;
+		ByteBuffer band       = pixels.duplicate();
+		band.limit((y + rows) * lineLength);
+		band.position(y * lineLength);
+		gl.glTexSubImage2D(GL.GL_TEXTURE_2D, 0, 0, y, width, rows, getGLFormat(), getGLType(), band);
+	}
+
 	static final ExecutorService POOL       = Executors.newCachedThreadPool();
 	static final int             NUM_CHUNKS = Runtime.getRuntime().availableProcessors(); 
 
@@ -526,12 +570,16 @@ public abstract class Frame extends AbstractVideoTarget {
 	}
 
 	public Texture getTexture() {
-		if(texture == null) {
+		if(texture == null || textureModCount != modCount || !(texture.isReady())) {
+			if(texture != null && !(texture.isReady()))
+				texture = null;
 			try(IGLContext ctx = GLContextManager.acquireContext()) {
 				final GL3        gl        = ctx.getGL();
-				texture                    = new Texture(new GLObject(gl, Type.TEXTURE), width, height);
+				if(texture == null || texture.getWidth() != width || texture.getHeight() != height)
+					texture                = new Texture(new GLObject(gl, Type.TEXTURE), width, height);
+				textureModCount            = modCount;
 				final int        target    = GL.GL_TEXTURE_2D;
-				gl.glBindTexture(target, texture.getGlObject().getId());
+				GLState.get(gl).bindTexture(gl, target, texture.getGlObject().getId());
 				pixels.rewind();
 				loadTexture(gl);
 				gl.glGenerateMipmap(target);
@@ -546,4 +594,18 @@ public abstract class Frame extends AbstractVideoTarget {
 		}
 		return texture;
 	}
+
+	/**
+	 * Returns a texture of this frame without blocking. The pixels are uploaded by the {@link TextureStreamer}, until then the
+	 * texture binds a transparent placeholder.
+	 * 
+	 * @param priority Uploads with higher priority are served first.
+	 */
+	public synchronized Texture getTextureAsync(int priority) {
+		if(texture == null || textureModCount != modCount) {
+			texture         = TextureStreamer.get().upload(this, priority);
+			textureModCount = modCount;
+		}
+		return texture;
+	}
 }
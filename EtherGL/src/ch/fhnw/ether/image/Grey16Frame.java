@@ -496,4 +496,14 @@ public final class Grey16Frame extends Frame {
 	protected void loadTexture(GL3 gl) {
 		gl.glTexImage2D(GL3.GL_TEXTURE_2D, 0, GL3.GL_RED, width, height, 0, GL3.GL_RED, GL3.GL_UNSIGNED_SHORT, pixels);
 	}
+
+	@Override
+	protected int getGLFormat() {
+		return GL3.GL_RED;
+	}
+
+	@Override
+	protected int getGLType() {
+		return GL3.GL_UNSIGNED_SHORT;
+	}
 }
@@ -552,4 +552,14 @@ public class RGB8Frame extends Frame {
 	protected void loadTexture(GL3 gl) {
 		gl.glTexImage2D(GL.GL_TEXTURE_2D, 0, GL3.GL_RGB, width, height, 0, GL3.GL_RGB, GL3.GL_UNSIGNED_BYTE, pixels);
 	}
+
+	@Override
+	protected int getGLFormat() {
+		return GL3.GL_RGB;
+	}
+
+	@Override
+	protected int getGLType() {
+		return GL3.GL_UNSIGNED_BYTE;
+	}
 }
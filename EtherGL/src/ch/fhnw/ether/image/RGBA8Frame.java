@@ -395,4 +395,14 @@ public class RGBA8Frame extends RGB8Frame {
 	protected void loadTexture(GL3 gl) {
 		gl.glTexImage2D(GL3.GL_TEXTURE_2D, 0, GL3.GL_RGBA, width, height, 0, GL3.GL_RGBA, GL3.GL_UNSIGNED_BYTE, pixels);
 	}	
+
+	@Override
+	protected int getGLFormat() {
+		return GL3.GL_RGBA;
+	}
+
+	@Override
+	protected int getGLType() {
+		return GL3.GL_UNSIGNED_BYTE;
+	}
 }
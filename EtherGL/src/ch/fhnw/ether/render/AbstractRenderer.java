@@ -30,46 +30,224 @@
 package ch.fhnw.ether.render;
 
 import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Supplier;
 
 import com.jogamp.opengl.GL3;
 
+import ch.fhnw.ether.media.IScheduler;
+import ch.fhnw.ether.render.forward.ShadowMaps;
 import ch.fhnw.ether.render.forward.ShadowVolumes;
+import ch.fhnw.ether.render.variable.builtin.LightUniformBlock;
 import ch.fhnw.ether.scene.attribute.IAttribute;
+import ch.fhnw.ether.scene.camera.IViewCameraState;
+import ch.fhnw.ether.scene.light.GenericLight.LightSource;
+import ch.fhnw.ether.scene.light.ILight;
 import ch.fhnw.ether.scene.mesh.IMesh.Queue;
+import ch.fhnw.ether.view.IView;
+import ch.fhnw.util.Viewport;
 
 public abstract class AbstractRenderer implements IRenderer {
 	public static final class RenderGlobals {
 		public final Map<IAttribute, Supplier<?>> attributes = new IdentityHashMap<>();
 		public final ViewInfo viewInfo = new ViewInfo();
 		public final LightInfo lightInfo = new LightInfo();
+		public final ShadowInfo shadowInfo = new ShadowInfo();
 		
 		private RenderGlobals() {
 			viewInfo.getAttributes(attributes);
 			lightInfo.getAttributes(attributes);
+			shadowInfo.getAttributes(attributes);
 		}
 	}
 
 	protected final RenderGlobals globals = new RenderGlobals();
 
+	protected final RenderBuckets renderBuckets = new RenderBuckets(false);
+	protected final RenderBuckets casterBuckets = new RenderBuckets(true);
+
+	protected final CommandRecorder recorder = new CommandRecorder();
+
 	private ShadowVolumes shadowVolumes;
+	private volatile boolean shadowVolumesEnabled;
+
+	private final Map<IView, ShadowMaps> shadowMaps = new IdentityHashMap<>();
+	private ShadowMaps sharedShadowMaps;
+	private volatile boolean shadowMapsEnabled;
+	private volatile int shadowMapSize = ShadowMaps.DEFAULT_TILE_SIZE;
+
+	// state shared by the views of a frame
+	private int              frame;
+	private int              bucketFrame = -1;
+	private List<Renderable> bucketRenderables;
+	private List<Renderable> bucketCasters;
+	private int              lightFrame = -1;
+	private List<ILight>     lightList;
+	private IViewCameraState lightVcs;
+
+	private final Map<IView, Long> viewRenderNanos = new ConcurrentHashMap<>();
 
 	public AbstractRenderer() {
 	}
 
-	protected void renderObjects(GL3 gl, IRenderTargetState state, Queue pass) {
-		for (Renderable renderable : state.getRenderables()) {
-			if (renderable.getQueue() == pass) {
-				renderable.render(gl);
-			}
+	/**
+	 * Enable or disable stencil shadow volumes. Renderables created while
+	 * enabled keep triangle adjacency and only extrude silhouette edges,
+	 * others fall back to extruding every triangle.
+	 */
+	public void setShadowVolumesEnabled(boolean enabled) {
+		shadowVolumesEnabled = enabled;
+	}
+
+	public boolean isShadowVolumesEnabled() {
+		return shadowVolumesEnabled;
+	}
+
+	/**
+	 * Enable or disable shadow maps for directional and spot lights. Views
+	 * with directional lights keep their own depth atlas since cascades follow
+	 * the camera, all other views share one. Atlases are sized to the tiles
+	 * their lights need, tiles are only re-rendered when their light or the
+	 * casters within the light's influence change.
+	 */
+	public void setShadowMapsEnabled(boolean enabled) {
+		shadowMapsEnabled = enabled;
+	}
+
+	public boolean isShadowMapsEnabled() {
+		return shadowMapsEnabled;
+	}
+
+	/**
+	 * Set the resolution of a single shadow map (a spot light or one cascade
+	 * of a directional light) in texels per side.
+	 */
+	public void setShadowMapSize(int size) {
+		if (size < 1)
+			throw new IllegalArgumentException("shadow map size must be positive: " + size);
+		shadowMapSize = size;
+	}
+
+	public int getShadowMapSize() {
+		return shadowMapSize;
+	}
+
+	/**
+	 * Get the CPU time in seconds spent on the last frame of a view, excluding
+	 * buffer swaps. Returns 0 if the view was not rendered yet.
+	 */
+	public double getViewRenderTime(IView view) {
+		return viewRenderNanos.getOrDefault(view, 0L) / IScheduler.SEC2NS;
+	}
+
+	protected void setViewRenderTime(IView view, long nanos) {
+		viewRenderNanos.put(view, nanos);
+	}
+
+	/**
+	 * Start a new frame. Buckets, lights and shadows prepared for one view are
+	 * reused by the following views of the same frame as long as they apply.
+	 */
+	protected void beginFrame() {
+		frame++;
+	}
+
+	/**
+	 * Sort renderables and shadow casters of a render target into buckets,
+	 * must be called before rendering each target. Targets sharing their
+	 * renderable lists with the previous target of the frame reuse its
+	 * buckets.
+	 * 
+	 * @return true if the buckets were rebuilt, false if they were reused
+	 */
+	protected boolean updateBuckets(IRenderTargetState state) {
+		List<Renderable> renderables = state.getRenderables();
+		List<Renderable> casters = state.getShadowCasters();
+		if (bucketFrame == frame && renderables == bucketRenderables && casters == bucketCasters)
+			return false;
+		renderBuckets.update(renderables);
+		casterBuckets.update(casters);
+		bucketFrame = frame;
+		bucketRenderables = renderables;
+		bucketCasters = casters;
+		return true;
+	}
+
+	/**
+	 * Update shadow maps (or clear the shadow info if disabled) and lights of
+	 * a render target, must be called after updating the buckets. Lights are
+	 * kept in eye space and clustered per projection, so they are reused if
+	 * the target has the same lights and matrices as the previous target of
+	 * the frame, a different viewport only reloads the cluster uniforms.
+	 * Shadow map tiles of spot lights do not depend on the camera and are
+	 * shared by all views.
+	 */
+	protected void updateLights(GL3 gl, IRenderTargetState state, IView view, IViewCameraState vcs) {
+		List<ILight> lights = state.getLights();
+		if (lightFrame == frame && lights == lightList && sameMatrices(vcs, lightVcs)) {
+			// uniform buffer bindings are per context
+			globals.shadowInfo.bind(gl);
+			globals.lightInfo.bind(gl);
+			if (!sameViewport(vcs.getViewport(), lightVcs.getViewport()))
+				globals.lightInfo.updateViewport(gl, vcs.getViewport());
+			lightVcs = vcs;
+			return;
+		}
+
+		if (shadowMapsEnabled) {
+			ShadowMaps maps = getShadowMaps(view, lights);
+			maps.setTileSize(shadowMapSize);
+			maps.update(gl, vcs, lights, casterBuckets.get(Queue.DEPTH), globals.shadowInfo);
+		} else {
+			globals.shadowInfo.clear(gl);
+		}
+		globals.lightInfo.update(gl, vcs, lights, globals.shadowInfo);
+		lightFrame = frame;
+		lightList = lights;
+		lightVcs = vcs;
+	}
+
+	// cascades follow the camera, so only views without directional lights
+	// share their shadow maps
+	private ShadowMaps getShadowMaps(IView view, List<ILight> lights) {
+		for (ILight light : lights) {
+			if (light.getLightSource().getType() == LightSource.Type.DIRECTIONAL_LIGHT)
+				return shadowMaps.computeIfAbsent(view, v -> new ShadowMaps(globals.attributes));
 		}
+		if (sharedShadowMaps == null)
+			sharedShadowMaps = new ShadowMaps(globals.attributes);
+		return sharedShadowMaps;
+	}
+
+	private static boolean sameMatrices(IViewCameraState a, IViewCameraState b) {
+		if (a == b)
+			return true;
+		if (b == null)
+			return false;
+		return a.getViewMatrix().equals(b.getViewMatrix()) && a.getProjMatrix().equals(b.getProjMatrix());
+	}
+
+	private static boolean sameViewport(Viewport a, Viewport b) {
+		return a.x == b.x && a.y == b.y && a.w == b.w && a.h == b.h;
+	}
+
+	/**
+	 * Record draw commands for the renderables of a queue, recording runs in
+	 * parallel until {@link CommandRecorder#finish()}.
+	 */
+	protected void recordObjects(CommandBuffer commands, Queue pass) {
+		recorder.record(commands, renderBuckets.get(pass));
 	}
 
 	protected void renderShadowVolumes(GL3 gl, IRenderTargetState state, Queue pass) {
 		if (shadowVolumes == null) {
 			shadowVolumes = new ShadowVolumes(globals.attributes);
 		}
-		shadowVolumes.render(gl, pass, state.getRenderables(), globals.lightInfo.getNumLights());
+		// shadow volumes are limited to the lights in the light uniform block
+		List<ILight> lights = state.getLights();
+		lights = lights.subList(0, Math.min(lights.size(), LightUniformBlock.MAX_LIGHTS));
+		shadowVolumes.render(gl, casterBuckets.get(pass), lights);
 	}
 }
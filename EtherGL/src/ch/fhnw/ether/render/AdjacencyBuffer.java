@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2013 - 2015 Stefan Muller Arisona, Simon Schubiger, Samuel von Stachelski
+ * Copyright (c) 2013 - 2015 FHNW & ETH Zurich
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *  Neither the name of FHNW / ETH Zurich nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ch.fhnw.ether.render;
+
+import java.nio.FloatBuffer;
+
+import com.jogamp.opengl.GL;
+import com.jogamp.opengl.GL3;
+
+import ch.fhnw.ether.render.gl.FloatArrayBuffer;
+import ch.fhnw.ether.render.gl.IArrayBuffer;
+import ch.fhnw.ether.render.variable.IShaderVariable;
+import ch.fhnw.ether.scene.mesh.geometry.IGeometry;
+import ch.fhnw.util.BufferUtilities;
+import ch.fhnw.util.math.geometry.TriangleAdjacency;
+
+/**
+ * Positions of a triangle geometry in GL_TRIANGLES_ADJACENCY order for
+ * silhouette extrusion of shadow volumes. The adjacency is taken from the
+ * geometry, where it is cached, positions are the transformed positions of the
+ * last geometry update.
+ */
+public final class AdjacencyBuffer implements IVertexBuffer {
+	private final FloatArrayBuffer buffer = new FloatArrayBuffer();
+	private final IGeometry        geometry;
+
+	public AdjacencyBuffer(IGeometry geometry) {
+		this.geometry = geometry;
+	}
+
+	public void update(GL3 gl, float[] positions) {
+		int[] adjacency = geometry.getTriangleAdjacency();
+		// geometry may have been modified since the positions were fetched
+		if (adjacency.length != positions.length / 3)
+			adjacency = TriangleAdjacency.build(positions);
+		float[] vertices = TriangleAdjacency.expand(positions, adjacency);
+		FloatBuffer data = BufferUtilities.createDirectFloatBuffer(vertices.length);
+		data.put(vertices).flip();
+		buffer.load(gl, data);
+	}
+
+	@Override
+	public int getNumVertices() {
+		return buffer.size() / 3;
+	}
+
+	@Override
+	public void bind(GL3 gl) {
+		buffer.bind(gl);
+	}
+
+	@Override
+	public void unbind(GL3 gl) {
+		IArrayBuffer.unbind(gl);
+	}
+
+	@Override
+	public void enableAttribute(GL3 gl, int bufferIndex, int shaderIndex) {
+		if (!buffer.isEmpty()) {
+			gl.glEnableVertexAttribArray(shaderIndex);
+			gl.glVertexAttribPointer(shaderIndex, 3, GL.GL_FLOAT, false, 0, 0);
+		}
+	}
+
+	@Override
+	public void recordAttribute(CommandBuffer commands, int bufferIndex, IShaderVariable<?> variable) {
+		if (!buffer.isEmpty()) {
+			commands.vertexAttribute(variable, 3, GL.GL_FLOAT, false, 0, 0);
+		}
+	}
+
+	@Override
+	public void disableAttribute(GL3 gl, int bufferIndex, int shaderIndex) {
+		if (!buffer.isEmpty()) {
+			gl.glDisableVertexAttribArray(shaderIndex);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "adjacency[" + getNumVertices() + "]";
+	}
+}
@@ -0,0 +1,534 @@
+/*
+ * Copyright (c) 2013 - 2015 Stefan Muller Arisona, Simon Schubiger, Samuel von Stachelski
+ * Copyright (c) 2013 - 2015 FHNW & ETH Zurich
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *  Neither the name of FHNW / ETH Zurich nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ch.fhnw.ether.render;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+import com.jogamp.opengl.GL3;
+
+import ch.fhnw.ether.render.gl.GLState;
+import ch.fhnw.ether.render.gl.Program;
+import ch.fhnw.ether.render.gl.UniformBlockBuffer;
+import ch.fhnw.ether.render.variable.IShaderUniform;
+import ch.fhnw.ether.render.variable.IShaderVariable;
+import ch.fhnw.ether.scene.mesh.material.Texture;
+
+/**
+ * Compact list of render commands. Commands are encoded as opcodes and
+ * arguments in an int array, float arguments as raw int bits. Objects
+ * (programs, shader variables, buffers, textures, nested buffers and
+ * callbacks) are referenced by index. Draws are recorded as program, uniform
+ * values, texture bindings, vertex attributes and draw call, so the values
+ * are captured at recording time. GL names and uniform locations are resolved
+ * on replay.
+ * <p>
+ * Two kinds of commands run code on replay instead of replaying recorded
+ * data: {@link #call(Consumer)} for passes that issue GL commands directly
+ * (e.g. shadow volumes, which render the casters once per light), and
+ * {@link #enableUniform(IShaderUniform)} / {@link #disableUniform(IShaderUniform)}
+ * for state injection uniforms, which wrap arbitrary GL state changes.
+ * 
+ * Buffers can be recorded on any thread, but must only be replayed on the GL
+ * thread. Since recording does not touch GL, the recorded commands of a frame
+ * can be inspected without a GL context, see {@link #toString()}.
+ */
+public final class CommandBuffer {
+	public static final int ENABLE              = 0;
+	public static final int DISABLE             = 1;
+	public static final int DEPTH_MASK          = 2;
+	public static final int POLYGON_OFFSET      = 3;
+	public static final int VIEW_SPACE          = 4;
+	public static final int EXECUTE             = 5;
+	public static final int CALL                = 6;
+	public static final int PROGRAM             = 7;
+	public static final int UNIFORM_1I          = 8;
+	public static final int UNIFORM_1F          = 9;
+	public static final int UNIFORM_VEC3        = 10;
+	public static final int UNIFORM_VEC4        = 11;
+	public static final int UNIFORM_MAT3        = 12;
+	public static final int UNIFORM_MAT4        = 13;
+	public static final int TEXTURE             = 14;
+	public static final int ENABLE_UNIFORM      = 15;
+	public static final int DISABLE_UNIFORM     = 16;
+	public static final int VERTEX_BUFFER       = 17;
+	public static final int VERTEX_ATTRIBUTE    = 18;
+	public static final int DISABLE_ATTRIBUTES  = 19;
+	public static final int DRAW_ARRAYS         = 20;
+	public static final int UNIFORM_BLOCK       = 21;
+	public static final int UNIFORM_BLOCK_RANGE = 22;
+
+	public static final int CAMERA_SPACE        = 0;
+	public static final int ORTHO_DEVICE_SPACE  = 1;
+	public static final int ORTHO_SCREEN_SPACE  = 2;
+
+	private static final String[] NAMES = {
+		"ENABLE", "DISABLE", "DEPTH_MASK", "POLYGON_OFFSET", "VIEW_SPACE", "EXECUTE", "CALL", "PROGRAM",
+		"UNIFORM_1I", "UNIFORM_1F", "UNIFORM_VEC3", "UNIFORM_VEC4", "UNIFORM_MAT3", "UNIFORM_MAT4", "TEXTURE",
+		"ENABLE_UNIFORM", "DISABLE_UNIFORM", "VERTEX_BUFFER", "VERTEX_ATTRIBUTE", "DISABLE_ATTRIBUTES", "DRAW_ARRAYS",
+		"UNIFORM_BLOCK", "UNIFORM_BLOCK_RANGE"
+	};
+
+	// number of ints per command, including the opcode
+	private static final int[] SIZES = { 2, 2, 2, 3, 2, 2, 2, 2, 3, 3, 5, 6, 11, 18, 5, 2, 2, 2, 7, 1, 4, 3, 4 };
+
+	private int[]    ops  = new int[64];
+	private Object[] refs = new Object[16];
+	private int      numOps;
+	private int      numRefs;
+	private int      numCommands;
+
+	// replay state, only used on the GL thread
+	private final float[] values     = new float[16];
+	private int[]         attributes = new int[16];
+	private int           numAttributes;
+
+	public CommandBuffer() {
+	}
+
+	/**
+	 * Remove all commands, keeping the allocated storage.
+	 */
+	public void clear() {
+		Arrays.fill(refs, 0, numRefs, null);
+		numOps = 0;
+		numRefs = 0;
+		numCommands = 0;
+	}
+
+	public boolean isEmpty() {
+		return numCommands == 0;
+	}
+
+	/**
+	 * Get the number of commands, nested buffers count as one command.
+	 */
+	public int getNumCommands() {
+		return numCommands;
+	}
+
+	public void enable(int cap) {
+		add(ENABLE, cap);
+	}
+
+	public void disable(int cap) {
+		add(DISABLE, cap);
+	}
+
+	public void depthMask(boolean flag) {
+		add(DEPTH_MASK, flag ? 1 : 0);
+	}
+
+	public void polygonOffset(float factor, float units) {
+		begin(POLYGON_OFFSET);
+		putFloat(factor);
+		putFloat(units);
+	}
+
+	/**
+	 * Bind the view uniforms for {@link #CAMERA_SPACE},
+	 * {@link #ORTHO_DEVICE_SPACE} or {@link #ORTHO_SCREEN_SPACE}.
+	 */
+	public void viewSpace(int space) {
+		add(VIEW_SPACE, space);
+	}
+
+	/**
+	 * Replay another buffer at this position. The buffer is referenced, not
+	 * copied, so it may still be recorded until this buffer is replayed.
+	 */
+	public void execute(CommandBuffer buffer) {
+		add(EXECUTE, ref(buffer));
+	}
+
+	/**
+	 * Call back into code that issues GL commands directly, e.g. a shadow
+	 * pass.
+	 */
+	public void call(Consumer<GL3> callback) {
+		add(CALL, ref(callback));
+	}
+
+	/**
+	 * Use program for the following uniform, attribute and draw commands.
+	 */
+	public void useProgram(Program program) {
+		add(PROGRAM, ref(program));
+	}
+
+	public void uniform(IShaderVariable<?> variable, int value) {
+		begin(UNIFORM_1I);
+		ops[numOps++] = ref(variable);
+		ops[numOps++] = value;
+	}
+
+	public void uniform(IShaderVariable<?> variable, float value) {
+		begin(UNIFORM_1F);
+		ops[numOps++] = ref(variable);
+		putFloat(value);
+	}
+
+	public void uniformVec3(IShaderVariable<?> variable, float[] value) {
+		uniform(UNIFORM_VEC3, variable, value);
+	}
+
+	public void uniformVec4(IShaderVariable<?> variable, float[] value) {
+		uniform(UNIFORM_VEC4, variable, value);
+	}
+
+	public void uniformMat3(IShaderVariable<?> variable, float[] value) {
+		uniform(UNIFORM_MAT3, variable, value);
+	}
+
+	public void uniformMat4(IShaderVariable<?> variable, float[] value) {
+		uniform(UNIFORM_MAT4, variable, value);
+	}
+
+	/**
+	 * Set sampler variable to unit and bind texture to unit, or only set the
+	 * sampler if texture is null.
+	 */
+	public void texture(IShaderVariable<?> variable, int unit, int target, Texture texture) {
+		begin(TEXTURE);
+		ops[numOps++] = ref(variable);
+		ops[numOps++] = unit;
+		ops[numOps++] = target;
+		ops[numOps++] = texture == null ? -1 : ref(texture);
+	}
+
+	/**
+	 * Bind the named uniform block of the current program to a binding point.
+	 */
+	public void uniformBlock(String name, int bindingPoint) {
+		begin(UNIFORM_BLOCK);
+		ops[numOps++] = ref(name);
+		ops[numOps++] = bindingPoint;
+	}
+
+	/**
+	 * Bind the named uniform block of the current program to the slot of a
+	 * shared buffer, the buffer's pending changes are uploaded on replay.
+	 */
+	public void uniformBlockRange(String name, UniformBlockBuffer buffer, int slot) {
+		begin(UNIFORM_BLOCK_RANGE);
+		ops[numOps++] = ref(name);
+		ops[numOps++] = ref(buffer);
+		ops[numOps++] = slot;
+	}
+
+	/**
+	 * Call {@link IShaderUniform#enable(GL3, Program)} on replay, for state
+	 * injection uniforms.
+	 */
+	public void enableUniform(IShaderUniform<?> uniform) {
+		add(ENABLE_UNIFORM, ref(uniform));
+	}
+
+	/**
+	 * Call {@link IShaderUniform#disable(GL3, Program)} on replay.
+	 */
+	public void disableUniform(IShaderUniform<?> uniform) {
+		add(DISABLE_UNIFORM, ref(uniform));
+	}
+
+	public void bindVertexBuffer(IVertexBuffer buffer) {
+		add(VERTEX_BUFFER, ref(buffer));
+	}
+
+	/**
+	 * Enable the vertex attribute of variable with the given layout in the
+	 * bound vertex buffer (see glVertexAttribPointer).
+	 */
+	public void vertexAttribute(IShaderVariable<?> variable, int size, int type, boolean normalized, int stride, int offset) {
+		begin(VERTEX_ATTRIBUTE);
+		ops[numOps++] = ref(variable);
+		ops[numOps++] = size;
+		ops[numOps++] = type;
+		ops[numOps++] = normalized ? 1 : 0;
+		ops[numOps++] = stride;
+		ops[numOps++] = offset;
+	}
+
+	/**
+	 * Disable all vertex attributes enabled since the last
+	 * DISABLE_ATTRIBUTES command.
+	 */
+	public void disableAttributes() {
+		begin(DISABLE_ATTRIBUTES);
+	}
+
+	public void drawArrays(int mode, int first, int count) {
+		begin(DRAW_ARRAYS);
+		ops[numOps++] = mode;
+		ops[numOps++] = first;
+		ops[numOps++] = count;
+	}
+
+	/**
+	 * Replay all commands, must be called on the GL thread.
+	 */
+	public void replay(GL3 gl, ViewInfo viewInfo) {
+		replay(gl, GLState.get(gl), viewInfo, null);
+	}
+
+	@SuppressWarnings("unchecked")
+	private Program replay(GL3 gl, GLState glState, ViewInfo viewInfo, Program program) {
+		final int[] ops = this.ops;
+		final Object[] refs = this.refs;
+		for (int pc = 0; pc < numOps; pc += SIZES[ops[pc]]) {
+			switch (ops[pc]) {
+			case ENABLE:
+				glState.enable(gl, ops[pc + 1]);
+				break;
+			case DISABLE:
+				glState.disable(gl, ops[pc + 1]);
+				break;
+			case DEPTH_MASK:
+				glState.depthMask(gl, ops[pc + 1] != 0);
+				break;
+			case POLYGON_OFFSET:
+				glState.polygonOffset(gl, Float.intBitsToFloat(ops[pc + 1]), Float.intBitsToFloat(ops[pc + 2]));
+				break;
+			case VIEW_SPACE:
+				switch (ops[pc + 1]) {
+				case CAMERA_SPACE:
+					viewInfo.setCameraSpace(gl);
+					break;
+				case ORTHO_DEVICE_SPACE:
+					viewInfo.setOrthoDeviceSpace(gl);
+					break;
+				default:
+					viewInfo.setOrthoScreenSpace(gl);
+				}
+				break;
+			case EXECUTE:
+				program = ((CommandBuffer) refs[ops[pc + 1]]).replay(gl, glState, viewInfo, program);
+				break;
+			case CALL:
+				((Consumer<GL3>) refs[ops[pc + 1]]).accept(gl);
+				break;
+			case PROGRAM:
+				program = (Program) refs[ops[pc + 1]];
+				program.enable(gl);
+				break;
+			case UNIFORM_1I:
+				program.setUniform(gl, location(gl, program, refs[ops[pc + 1]]), ops[pc + 2]);
+				break;
+			case UNIFORM_1F:
+				program.setUniform(gl, location(gl, program, refs[ops[pc + 1]]), Float.intBitsToFloat(ops[pc + 2]));
+				break;
+			case UNIFORM_VEC3:
+				program.setUniformVec3(gl, location(gl, program, refs[ops[pc + 1]]), values(pc + 2, 3));
+				break;
+			case UNIFORM_VEC4:
+				program.setUniformVec4(gl, location(gl, program, refs[ops[pc + 1]]), values(pc + 2, 4));
+				break;
+			case UNIFORM_MAT3:
+				program.setUniformMat3(gl, location(gl, program, refs[ops[pc + 1]]), values(pc + 2, 9));
+				break;
+			case UNIFORM_MAT4:
+				program.setUniformMat4(gl, location(gl, program, refs[ops[pc + 1]]), values(pc + 2, 16));
+				break;
+			case TEXTURE:
+				program.setUniformSampler(gl, location(gl, program, refs[ops[pc + 1]]), ops[pc + 2]);
+				if (ops[pc + 4] != -1)
+					glState.bindTexture(gl, ops[pc + 2], ops[pc + 3], ((Texture) refs[ops[pc + 4]]).getGlObject().getId());
+				break;
+			case ENABLE_UNIFORM:
+				((IShaderUniform<?>) refs[ops[pc + 1]]).enable(gl, program);
+				break;
+			case DISABLE_UNIFORM:
+				((IShaderUniform<?>) refs[ops[pc + 1]]).disable(gl, program);
+				break;
+			case VERTEX_BUFFER:
+				((IVertexBuffer) refs[ops[pc + 1]]).bind(gl);
+				break;
+			case VERTEX_ATTRIBUTE:
+				int index = location(gl, program, refs[ops[pc + 1]]);
+				if (index >= 0) {
+					gl.glEnableVertexAttribArray(index);
+					gl.glVertexAttribPointer(index, ops[pc + 2], ops[pc + 3], ops[pc + 4] != 0, ops[pc + 5], ops[pc + 6]);
+					if (numAttributes == attributes.length)
+						attributes = Arrays.copyOf(attributes, 2 * numAttributes);
+					attributes[numAttributes++] = index;
+				}
+				break;
+			case DISABLE_ATTRIBUTES:
+				for (int i = 0; i < numAttributes; ++i)
+					gl.glDisableVertexAttribArray(attributes[i]);
+				numAttributes = 0;
+				break;
+			case DRAW_ARRAYS:
+				gl.glDrawArrays(ops[pc + 1], ops[pc + 2], ops[pc + 3]);
+				break;
+			case UNIFORM_BLOCK:
+				program.setUniformBlock(gl, (String) refs[ops[pc + 1]], ops[pc + 2]);
+				break;
+			case UNIFORM_BLOCK_RANGE:
+				UniformBlockBuffer buffer = (UniformBlockBuffer) refs[ops[pc + 2]];
+				if (program.setUniformBlock(gl, (String) refs[ops[pc + 1]], buffer.getBindingPoint())) {
+					buffer.flush(gl);
+					buffer.bind(gl, ops[pc + 3]);
+				}
+				break;
+			default:
+				throw new IllegalStateException("invalid command " + ops[pc] + " at " + pc);
+			}
+		}
+		return program;
+	}
+
+	/**
+	 * Lists the commands one per line, with nested buffers expanded. Shader
+	 * variables are listed by attribute id.
+	 */
+	@Override
+	public String toString() {
+		StringBuilder result = new StringBuilder();
+		append(result, "");
+		return result.toString();
+	}
+
+	private void append(StringBuilder result, String indent) {
+		for (int pc = 0; pc < numOps; pc += SIZES[ops[pc]]) {
+			int op = ops[pc];
+			result.append(indent).append(NAMES[op]);
+			switch (op) {
+			case ENABLE:
+			case DISABLE:
+				result.append(" 0x").append(Integer.toHexString(ops[pc + 1]));
+				break;
+			case DEPTH_MASK:
+				result.append(' ').append(ops[pc + 1] != 0);
+				break;
+			case POLYGON_OFFSET:
+				result.append(' ').append(Float.intBitsToFloat(ops[pc + 1])).append(' ').append(Float.intBitsToFloat(ops[pc + 2]));
+				break;
+			case VIEW_SPACE:
+				result.append(' ').append(ops[pc + 1]);
+				break;
+			case EXECUTE:
+				result.append('\n');
+				((CommandBuffer) refs[ops[pc + 1]]).append(result, indent + "  ");
+				continue;
+			case UNIFORM_1I:
+				result.append(' ').append(variable(pc + 1)).append(' ').append(ops[pc + 2]);
+				break;
+			case UNIFORM_1F:
+			case UNIFORM_VEC3:
+			case UNIFORM_VEC4:
+			case UNIFORM_MAT3:
+			case UNIFORM_MAT4:
+				result.append(' ').append(variable(pc + 1));
+				for (int i = pc + 2; i < pc + SIZES[op]; ++i)
+					result.append(' ').append(Float.intBitsToFloat(ops[i]));
+				break;
+			case TEXTURE:
+				result.append(' ').append(variable(pc + 1)).append(" unit=").append(ops[pc + 2]).append(" target=0x").append(Integer.toHexString(ops[pc + 3]));
+				if (ops[pc + 4] != -1) {
+					// not Texture.toString(), which may create the GL object
+					Texture texture = (Texture) refs[ops[pc + 4]];
+					result.append(" texture[w=").append(texture.getWidth()).append(" h=").append(texture.getHeight()).append(']');
+				} else {
+					result.append(" none");
+				}
+				break;
+			case ENABLE_UNIFORM:
+			case DISABLE_UNIFORM:
+				result.append(' ').append(variable(pc + 1));
+				break;
+			case VERTEX_ATTRIBUTE:
+				result.append(' ').append(variable(pc + 1)).append(" size=").append(ops[pc + 2]).append(" type=0x").append(Integer.toHexString(ops[pc + 3]));
+				result.append(" normalized=").append(ops[pc + 4] != 0).append(" stride=").append(ops[pc + 5]).append(" offset=").append(ops[pc + 6]);
+				break;
+			case DISABLE_ATTRIBUTES:
+				break;
+			case DRAW_ARRAYS:
+				result.append(" mode=0x").append(Integer.toHexString(ops[pc + 1])).append(" first=").append(ops[pc + 2]).append(" count=").append(ops[pc + 3]);
+				break;
+			case UNIFORM_BLOCK:
+				result.append(' ').append(refs[ops[pc + 1]]).append(" binding=").append(ops[pc + 2]);
+				break;
+			case UNIFORM_BLOCK_RANGE:
+				result.append(' ').append(refs[ops[pc + 1]]).append(" binding=").append(((UniformBlockBuffer) refs[ops[pc + 2]]).getBindingPoint()).append(" slot=").append(ops[pc + 3]);
+				break;
+			default:
+				result.append(' ').append(refs[ops[pc + 1]]);
+			}
+			result.append('\n');
+		}
+	}
+
+	private String variable(int pc) {
+		return ((IShaderVariable<?>) refs[ops[pc]]).id();
+	}
+
+	private static int location(GL3 gl, Program program, Object variable) {
+		return ((IShaderVariable<?>) variable).getShaderIndex(gl, program);
+	}
+
+	private float[] values(int pc, int n) {
+		for (int i = 0; i < n; ++i)
+			values[i] = Float.intBitsToFloat(ops[pc + i]);
+		return values;
+	}
+
+	private void uniform(int op, IShaderVariable<?> variable, float[] value) {
+		// unset values are skipped, as by Program
+		if (value == null)
+			return;
+		begin(op);
+		ops[numOps++] = ref(variable);
+		for (int i = 0; i < SIZES[op] - 2; ++i)
+			putFloat(value[i]);
+	}
+
+	private void add(int op, int arg) {
+		begin(op);
+		ops[numOps++] = arg;
+	}
+
+	private void begin(int op) {
+		if (numOps + SIZES[op] > ops.length)
+			ops = Arrays.copyOf(ops, Math.max(numOps + SIZES[op], 2 * ops.length));
+		ops[numOps++] = op;
+		numCommands++;
+	}
+
+	private void putFloat(float value) {
+		ops[numOps++] = Float.floatToRawIntBits(value);
+	}
+
+	private int ref(Object object) {
+		if (numRefs == refs.length)
+			refs = Arrays.copyOf(refs, 2 * numRefs);
+		refs[numRefs] = object;
+		return numRefs++;
+	}
+}
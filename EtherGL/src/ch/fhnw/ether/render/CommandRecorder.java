@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2013 - 2015 Stefan Muller Arisona, Simon Schubiger, Samuel von Stachelski
+ * Copyright (c) 2013 - 2015 FHNW & ETH Zurich
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *  Neither the name of FHNW / ETH Zurich nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ch.fhnw.ether.render;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Records draw commands of renderables into command buffers. Lists of
+ * renderables are split into chunks that are recorded in parallel on worker
+ * threads, each into its own buffer, which is referenced by the target
+ * buffer at the position of the list. Chunk buffers are reused across
+ * frames.
+ */
+public final class CommandRecorder {
+	public static final int CHUNK_SIZE = 256;
+
+	private static final int NUM_THREADS = Runtime.getRuntime().availableProcessors();
+
+	private static final ExecutorService POOL = Executors.newFixedThreadPool(NUM_THREADS, r -> {
+		Thread result = new Thread(r, "CommandRecorder");
+		// normal priority, the render thread waits for the recording
+		result.setDaemon(true);
+		return result;
+	});
+
+	private final List<CommandBuffer> chunks = new ArrayList<>();
+	private final List<Future<?>>     tasks  = new ArrayList<>();
+	private int numChunks;
+
+	public CommandRecorder() {
+	}
+
+	/**
+	 * Start recording a new frame, the chunk buffers of the previous frame
+	 * are cleared and reused.
+	 */
+	public void begin() {
+		if (!tasks.isEmpty())
+			throw new IllegalStateException("recording not finished");
+		numChunks = 0;
+	}
+
+	/**
+	 * Record draw commands for renderables at the current position of target.
+	 * The list must not be modified until {@link #finish()} returns.
+	 */
+	public void record(CommandBuffer target, List<Renderable> renderables) {
+		for (int from = 0; from < renderables.size(); from += CHUNK_SIZE) {
+			CommandBuffer chunk = nextChunk();
+			target.execute(chunk);
+			List<Renderable> range = renderables.subList(from, Math.min(renderables.size(), from + CHUNK_SIZE));
+			if (NUM_THREADS > 1 && renderables.size() > CHUNK_SIZE)
+				tasks.add(POOL.submit(() -> recordChunk(chunk, range)));
+			else
+				recordChunk(chunk, range);
+		}
+	}
+
+	/**
+	 * Wait until all chunks are recorded.
+	 */
+	public void finish() {
+		// wait for all tasks even if one fails, so no chunk is still being
+		// recorded when the next frame reuses it
+		Throwable error = null;
+		boolean interrupted = false;
+		for (Future<?> task : tasks) {
+			while (true) {
+				try {
+					task.get();
+					break;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				} catch (ExecutionException e) {
+					if (error == null)
+						error = e.getCause();
+					break;
+				}
+			}
+		}
+		tasks.clear();
+		if (interrupted)
+			Thread.currentThread().interrupt();
+		if (error != null)
+			throw new RuntimeException(error);
+	}
+
+	private CommandBuffer nextChunk() {
+		if (numChunks == chunks.size())
+			chunks.add(new CommandBuffer());
+		CommandBuffer chunk = chunks.get(numChunks++);
+		chunk.clear();
+		return chunk;
+	}
+
+	private static void recordChunk(CommandBuffer chunk, List<Renderable> renderables) {
+		for (Renderable renderable : renderables)
+			renderable.record(chunk);
+	}
+}
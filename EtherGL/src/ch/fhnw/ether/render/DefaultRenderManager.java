@@ -32,9 +32,15 @@ package ch.fhnw.ether.render;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import com.jogamp.opengl.GL3;
 
@@ -42,16 +48,21 @@ import ch.fhnw.ether.controller.IController;
 import ch.fhnw.ether.render.IRenderer.IRenderState;
 import ch.fhnw.ether.render.IRenderer.IRenderTargetState;
 import ch.fhnw.ether.render.IRenderer.IRenderUpdate;
-import ch.fhnw.ether.render.variable.builtin.LightUniformBlock;
 import ch.fhnw.ether.scene.camera.Camera;
 import ch.fhnw.ether.scene.camera.ICamera;
 import ch.fhnw.ether.scene.camera.IViewCameraState;
 import ch.fhnw.ether.scene.light.ILight;
+import ch.fhnw.ether.scene.mesh.ILodMesh;
 import ch.fhnw.ether.scene.mesh.IMesh;
+import ch.fhnw.ether.scene.mesh.IMesh.Flag;
+import ch.fhnw.ether.scene.mesh.IMesh.Queue;
+import ch.fhnw.ether.scene.mesh.IStreamingMesh;
 import ch.fhnw.ether.scene.mesh.geometry.IGeometry;
+import ch.fhnw.ether.scene.mesh.geometry.IGeometry.Primitive;
 import ch.fhnw.ether.scene.mesh.material.IMaterial;
 import ch.fhnw.ether.view.IView;
 import ch.fhnw.util.math.Mat4;
+import ch.fhnw.util.math.geometry.BoundingBox;
 
 /**
  * Default render manager. This would also be the place to do various
@@ -61,9 +72,27 @@ import ch.fhnw.util.math.Mat4;
  * @author radar
  */
 public class DefaultRenderManager implements IRenderManager {
+	private static final float LOD_HYSTERESIS = 0.15f;
+
+	// automatic occluders: at least this fraction of the viewport height, limited triangle count
+	private static final float AUTO_OCCLUDER_MIN_SIZE      = 0.25f;
+	private static final int   AUTO_OCCLUDER_MAX_TRIANGLES = 2048;
+	private static final int   MAX_AUTO_OCCLUDERS          = 8;
+
+	private static final int NUM_THREADS = Runtime.getRuntime().availableProcessors();
+
+	// views are culled in parallel, separate from the occlusion culler's rasterization pool
+	private static final ExecutorService POOL = Executors.newFixedThreadPool(NUM_THREADS, r -> {
+		Thread result = new Thread(r, "ViewCuller");
+		result.setDaemon(true);
+		result.setPriority(Thread.MIN_PRIORITY);
+		return result;
+	});
+
 	private static final class SceneViewState {
 		ICamera camera = new Camera();
 		IViewCameraState viewCameraState;
+		OcclusionCuller culler;
 
 		SceneViewState(IView view) {
 			viewCameraState = new ViewCameraState(view, camera);
@@ -72,8 +101,73 @@ public class DefaultRenderManager implements IRenderManager {
 
 	private static final class SceneMeshState {
 		Renderable renderable;
+		// only rendered when selected per view (lod levels, streamed meshes)
+		boolean perView;
+		float[] occluderData;
+	}
+
+	private static final class SceneLodState {
+		final ILodMesh mesh;
+		final List<SceneMeshState> levels = new ArrayList<>();
+		final Map<IView, Integer> currentLevels = new IdentityHashMap<>();
+
+		SceneLodState(ILodMesh mesh) {
+			this.mesh = mesh;
+		}
+
+		// switch levels only once the projected size is clearly beyond the switch size
+		int selectLevel(IView view, IViewCameraState vcs) {
+			float size = getProjectedSize(mesh.getBounds(), vcs);
+			int level = currentLevels.getOrDefault(view, 0);
+			while (level + 1 < levels.size() && size < mesh.getSwitchSize(level) * (1 - LOD_HYSTERESIS))
+				level++;
+			while (level > 0 && size > mesh.getSwitchSize(level - 1) * (1 + LOD_HYSTERESIS))
+				level--;
+			currentLevels.put(view, level);
+			return level;
+		}
 	}
 	
+	private static final class SceneStreamingState {
+		final IStreamingMesh mesh;
+		final Set<IMesh> resident = Collections.newSetFromMap(new IdentityHashMap<>());
+		final Map<IView, List<IMesh>> selections = new IdentityHashMap<>();
+
+		SceneStreamingState(IStreamingMesh mesh) {
+			this.mesh = mesh;
+		}
+	}
+
+	private static final class ViewRenderables {
+		final List<Renderable> renderables;
+		final List<Renderable> shadowCasters;
+
+		ViewRenderables(List<Renderable> renderables, List<Renderable> shadowCasters) {
+			this.renderables = renderables;
+			this.shadowCasters = shadowCasters;
+		}
+	}
+
+	private static final class ViewCandidates {
+		final List<Renderable> renderables;
+		final List<IMesh> meshes;
+
+		ViewCandidates(List<Renderable> renderables, List<IMesh> meshes) {
+			this.renderables = renderables;
+			this.meshes = meshes;
+		}
+	}
+
+	private static final class OccluderCandidate {
+		final IMesh mesh;
+		final float size;
+
+		OccluderCandidate(IMesh mesh, float size) {
+			this.mesh = mesh;
+			this.size = size;
+		}
+	}
+
 	private static final class RenderUpdate implements IRenderUpdate {
 		public final Renderable renderable;
 		public final Object[] materialData;
@@ -106,10 +200,15 @@ public class DefaultRenderManager implements IRenderManager {
 		final Set<IMaterial> materials = Collections.newSetFromMap(new IdentityHashMap<>());
 		final Set<IGeometry> geometries = Collections.newSetFromMap(new IdentityHashMap<>());
 		final Map<IMesh, SceneMeshState> meshes = new IdentityHashMap<>();
+		final Map<ILodMesh, SceneLodState> lodMeshes = new IdentityHashMap<>();
+		final Map<IStreamingMesh, SceneStreamingState> streamingMeshes = new IdentityHashMap<>();
 		
 		List<Renderable> renderables = new ArrayList<>();
+		List<IMesh> renderMeshes = new ArrayList<>();
 
 		boolean rebuildMeshes = false;
+		boolean occlusionCulling = false;
+		boolean frustumCulling = false;
 
 		SceneState() {
 		}
@@ -125,6 +224,8 @@ public class DefaultRenderManager implements IRenderManager {
 			SceneViewState vcs = views.remove(view);
 			if (vcs == null)
 				throw new IllegalArgumentException("view not in renderer: " + view);
+			lodMeshes.forEach((mesh, state) -> state.currentLevels.remove(view));
+			streamingMeshes.forEach((mesh, state) -> state.selections.remove(view));
 		}
 
 		ICamera getCamera(IView view) {
@@ -147,8 +248,6 @@ public class DefaultRenderManager implements IRenderManager {
 		void addLight(ILight light) {
 			if (lights.contains(light))
 				throw new IllegalArgumentException("light already in renderer: " + light);
-			if (lights.size() == LightUniformBlock.MAX_LIGHTS)
-				throw new IllegalStateException("too many lights in renderer: " + LightUniformBlock.MAX_LIGHTS);
 			if (lights.get(0) == ILight.DEFAULT_LIGHT)
 				lights.remove(0);
 			lights.add(light);
@@ -162,14 +261,44 @@ public class DefaultRenderManager implements IRenderManager {
 		}
 
 		void addMesh(IMesh mesh) {
-			if (meshes.putIfAbsent(mesh, new SceneMeshState()) != null)
+			if (mesh instanceof ILodMesh) {
+				// all levels are kept as regular meshes, so they stay resident
+				ILodMesh lodMesh = (ILodMesh) mesh;
+				if (lodMeshes.containsKey(lodMesh))
+					throw new IllegalArgumentException("mesh already in renderer: " + mesh);
+				SceneLodState lodState = new SceneLodState(lodMesh);
+				for (IMesh level : lodMesh.getLevels()) {
+					SceneMeshState state = new SceneMeshState();
+					state.perView = true;
+					if (meshes.putIfAbsent(level, state) != null)
+						throw new IllegalArgumentException("mesh already in renderer: " + level);
+					lodState.levels.add(state);
+				}
+				lodMeshes.put(lodMesh, lodState);
+			} else if (mesh instanceof IStreamingMesh) {
+				// resident meshes are added and removed as they are paged in and out
+				IStreamingMesh streamingMesh = (IStreamingMesh) mesh;
+				if (streamingMeshes.putIfAbsent(streamingMesh, new SceneStreamingState(streamingMesh)) != null)
+					throw new IllegalArgumentException("mesh already in renderer: " + mesh);
+			} else if (meshes.putIfAbsent(mesh, new SceneMeshState()) != null) {
 				throw new IllegalArgumentException("mesh already in renderer: " + mesh);
+			}
 			rebuildMeshes = true;
 		}
 
 		void removeMesh(IMesh mesh) {
-			if (meshes.remove(mesh) == null)
+			if (mesh instanceof ILodMesh) {
+				if (lodMeshes.remove(mesh) == null)
+					throw new IllegalArgumentException("mesh not in renderer: " + mesh);
+				((ILodMesh) mesh).getLevels().forEach(level -> meshes.remove(level));
+			} else if (mesh instanceof IStreamingMesh) {
+				SceneStreamingState state = streamingMeshes.remove(mesh);
+				if (state == null)
+					throw new IllegalArgumentException("mesh not in renderer: " + mesh);
+				state.resident.forEach(resident -> meshes.remove(resident));
+			} else if (meshes.remove(mesh) == null) {
 				throw new IllegalArgumentException("mesh not in renderer: " + mesh);
+			}
 			rebuildMeshes = true;
 		}
 
@@ -187,10 +316,19 @@ public class DefaultRenderManager implements IRenderManager {
 		// lists that haven't changed etc.... for now we just don't care...
 		IRenderState create(IRenderer renderer) {
 
+			// 0. update view-camera states and select streamed meshes, which may page meshes in and out
+			views.forEach((view, svs) -> {
+				if (svs.camera.getUpdater().test())
+					svs.viewCameraState = new ViewCameraState(view, svs.camera);
+			});
+			if (!(streamingMeshes.isEmpty()))
+				selectStreamingMeshes();
+
 			// 1. add meshes and mesh updates to render state
 			final List<IRenderUpdate> updates = new ArrayList<>();
 			if (rebuildMeshes) {
 				renderables = new ArrayList<>();
+				renderMeshes = new ArrayList<>();
 				materials.clear();
 				geometries.clear();
 				meshes.forEach((mesh, state) -> {
@@ -218,8 +356,12 @@ public class DefaultRenderManager implements IRenderManager {
 				if (materialChanged || geometryChanged) {
 					updates.add(new RenderUpdate(state.renderable, mesh, materialChanged, geometryChanged));
 				}
-				if (rebuildMeshes)
+				if (geometryChanged)
+					state.occluderData = null;
+				if (rebuildMeshes && !(state.perView)) {
 					renderables.add(state.renderable);
+					renderMeshes.add(mesh);
+				}
 			});
 			// second loop required to clear view flags
 			materials.forEach(material -> material.getUpdater().clear());
@@ -235,11 +377,14 @@ public class DefaultRenderManager implements IRenderManager {
 			final List<ILight> renderLights = Collections.unmodifiableList(new ArrayList<>(lights));
 
 			
-			// 3. set view matrices for each updated camera, add to render state
+			// 3. add view matrices and renderables of each view to render state
+			final List<IView> targetViews = new ArrayList<>(views.keySet());
+			final List<ViewRenderables> targetRenderables = getViewRenderables(targetViews, renderRenderables);
 			final List<IRenderTargetState> targets = new ArrayList<>();
-			views.forEach((view, svs) -> {
-				if (svs.camera.getUpdater().test())
-					svs.viewCameraState = new ViewCameraState(view, svs.camera);
+			for (int i = 0; i < targetViews.size(); ++i) {
+				final IView view = targetViews.get(i);
+				final SceneViewState svs = views.get(view);
+				final ViewRenderables viewRenderables = targetRenderables.get(i);
 				targets.add(new IRenderTargetState() {
 					@Override
 					public IView getView() {
@@ -253,7 +398,12 @@ public class DefaultRenderManager implements IRenderManager {
 					
 					@Override
 					public List<Renderable> getRenderables() {
-						return renderRenderables;
+						return viewRenderables.renderables;
+					}
+
+					@Override
+					public List<Renderable> getShadowCasters() {
+						return viewRenderables.shadowCasters;
 					}
 					
 					@Override
@@ -261,7 +411,7 @@ public class DefaultRenderManager implements IRenderManager {
 						return renderLights;
 					}
 				});
-			});
+			}
 			
 			// second loop required to clear view flags
 			views.forEach((view, svs) -> svs.camera.getUpdater().clear());
@@ -284,6 +434,185 @@ public class DefaultRenderManager implements IRenderManager {
 				}
 			};
 		}
+
+		void selectStreamingMeshes() {
+			List<IView> selectionViews = new ArrayList<>(views.keySet());
+			List<IViewCameraState> selectionStates = new ArrayList<>(selectionViews.size());
+			selectionViews.forEach(view -> selectionStates.add(views.get(view).viewCameraState));
+			for (SceneStreamingState state : streamingMeshes.values()) {
+				List<List<IMesh>> selections = state.mesh.select(selectionStates);
+				Set<IMesh> resident = Collections.newSetFromMap(new IdentityHashMap<>());
+				resident.addAll(state.mesh.getResidentMeshes());
+				for (Iterator<IMesh> i = state.resident.iterator(); i.hasNext();) {
+					IMesh mesh = i.next();
+					if (!(resident.contains(mesh))) {
+						meshes.remove(mesh);
+						i.remove();
+						rebuildMeshes = true;
+					}
+				}
+				for (IMesh mesh : resident) {
+					if (state.resident.add(mesh)) {
+						SceneMeshState meshState = new SceneMeshState();
+						meshState.perView = true;
+						meshes.put(mesh, meshState);
+						rebuildMeshes = true;
+					}
+				}
+				for (int i = 0; i < selectionViews.size(); ++i)
+					state.selections.put(selectionViews.get(i), selections.get(i));
+			}
+		}
+
+		// selects the renderables of each view on the scene thread and culls the views in parallel whenever frustum
+		// or occlusion culling is enabled. views without lod meshes, streamed meshes or culling all share the same
+		// renderables list, which lets the renderer reuse its buckets.
+		List<ViewRenderables> getViewRenderables(List<IView> targetViews, List<Renderable> renderables) {
+			List<ViewRenderables> result = new ArrayList<>(targetViews.size());
+			List<Callable<ViewRenderables>> tasks = new ArrayList<>(targetViews.size());
+			for (IView view : targetViews) {
+				SceneViewState svs = views.get(view);
+				ViewCandidates candidates = selectViewRenderables(view, svs, renderables);
+				tasks.add(() -> cullViewRenderables(svs, candidates));
+			}
+			try {
+				if ((frustumCulling || occlusionCulling) && NUM_THREADS > 1 && tasks.size() > 1) {
+					for (Future<ViewRenderables> task : POOL.invokeAll(tasks))
+						result.add(task.get());
+				} else {
+					for (Callable<ViewRenderables> task : tasks)
+						result.add(task.call());
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(e);
+			} catch (ExecutionException e) {
+				throw new RuntimeException(e.getCause());
+			} catch (Exception e) {
+				throw new RuntimeException(e);
+			}
+			return result;
+		}
+
+		// appends the current level of each lod mesh and the selected streamed meshes to the renderables shared by
+		// all views.
+		ViewCandidates selectViewRenderables(IView view, SceneViewState svs, List<Renderable> renderables) {
+			IViewCameraState vcs = svs.viewCameraState;
+			List<Renderable> result = renderables;
+			List<IMesh> resultMeshes = renderMeshes;
+			if (!(lodMeshes.isEmpty()) || !(streamingMeshes.isEmpty())) {
+				result = new ArrayList<>(renderables.size() + lodMeshes.size());
+				result.addAll(renderables);
+				resultMeshes = new ArrayList<>(result.size());
+				resultMeshes.addAll(renderMeshes);
+				for (SceneLodState state : lodMeshes.values()) {
+					int level = state.selectLevel(view, vcs);
+					result.add(state.levels.get(level).renderable);
+					resultMeshes.add(state.mesh.getLevels().get(level));
+				}
+				for (SceneStreamingState state : streamingMeshes.values()) {
+					for (IMesh mesh : state.selections.getOrDefault(view, Collections.emptyList())) {
+						result.add(meshes.get(mesh).renderable);
+						resultMeshes.add(mesh);
+					}
+				}
+				result = Collections.unmodifiableList(result);
+			}
+			return new ViewCandidates(result, resultMeshes);
+		}
+
+		// if enabled, removes renderables outside the view frustum, or occluded and off screen renderables. shadow casters
+		// are never culled. only touches the view's own culler and the occluder data cache, so views may be culled
+		// concurrently.
+		ViewRenderables cullViewRenderables(SceneViewState svs, ViewCandidates candidates) {
+			List<Renderable> result = candidates.renderables;
+			List<IMesh> resultMeshes = candidates.meshes;
+			if (!(frustumCulling) && !(occlusionCulling))
+				return new ViewRenderables(result, result);
+
+			IViewCameraState vcs = svs.viewCameraState;
+			Mat4 viewProj = vcs.getViewProjMatrix();
+			OcclusionCuller culler = null;
+			if (occlusionCulling) {
+				if (svs.culler == null)
+					svs.culler = new OcclusionCuller();
+				culler = svs.culler;
+				culler.clear(viewProj);
+				addOccluders(culler, vcs);
+				culler.end();
+			}
+
+			List<Renderable> visible = new ArrayList<>(result.size());
+			for (int i = 0; i < result.size(); ++i) {
+				IMesh mesh = resultMeshes.get(i);
+				Queue queue = mesh.getQueue();
+				if (queue != Queue.DEPTH && queue != Queue.TRANSPARENCY)
+					visible.add(result.get(i));
+				else if (culler != null ? culler.isVisible(mesh.getBounds()) : OcclusionCuller.isInFrustum(viewProj, mesh.getBounds()))
+					visible.add(result.get(i));
+			}
+			return new ViewRenderables(Collections.unmodifiableList(visible), result);
+		}
+
+		// flagged meshes are always used, plus the largest few automatic candidates. lod meshes occlude with
+		// their coarsest level.
+		void addOccluders(OcclusionCuller culler, IViewCameraState vcs) {
+			List<OccluderCandidate> candidates = new ArrayList<>();
+			float minSize = AUTO_OCCLUDER_MIN_SIZE * vcs.getViewport().h;
+			for (IMesh mesh : renderMeshes)
+				addOccluder(culler, vcs, mesh, mesh, minSize, candidates);
+			for (SceneLodState state : lodMeshes.values()) {
+				List<IMesh> levels = state.mesh.getLevels();
+				addOccluder(culler, vcs, state.mesh, levels.get(levels.size() - 1), minSize, candidates);
+			}
+			candidates.sort((a, b) -> Float.compare(b.size, a.size));
+			for (int i = 0; i < Math.min(MAX_AUTO_OCCLUDERS, candidates.size()); ++i)
+				culler.addOccluder(getOccluderData(candidates.get(i).mesh));
+		}
+
+		void addOccluder(OcclusionCuller culler, IViewCameraState vcs, IMesh mesh, IMesh occluder, float minSize, List<OccluderCandidate> candidates) {
+			// only opaque triangle meshes can occlude
+			if (mesh.getQueue() != Queue.DEPTH || occluder.getGeometry().getType() != Primitive.TRIANGLES)
+				return;
+			if (mesh.hasFlag(Flag.OCCLUDER)) {
+				culler.addOccluder(getOccluderData(occluder));
+				return;
+			}
+			if (occluder.getGeometry().getData()[0].length / 9 > AUTO_OCCLUDER_MAX_TRIANGLES)
+				return;
+			float size = getProjectedSize(mesh.getBounds(), vcs);
+			if (size >= minSize)
+				candidates.add(new OccluderCandidate(occluder, size));
+		}
+
+		// transformed positions are kept until the mesh's geometry or transform changes
+		float[] getOccluderData(IMesh mesh) {
+			SceneMeshState state = meshes.get(mesh);
+			synchronized (state) {
+				if (state.occluderData == null)
+					state.occluderData = mesh.getTransformedPositionData();
+				return state.occluderData;
+			}
+		}
+	}
+
+	/**
+	 * Returns the diameter of the bounding sphere of bounds projected to the viewport, in pixels.
+	 */
+	static float getProjectedSize(BoundingBox bounds, IViewCameraState vcs) {
+		if (!(bounds.isValid()))
+			return 0;
+		Mat4 view = vcs.getViewMatrix();
+		Mat4 proj = vcs.getProjMatrix();
+		float radius = bounds.getRadius();
+		float scale = proj.m11 * vcs.getViewport().h;
+		// orthographic projection
+		if (proj.m32 == 0)
+			return radius * scale;
+		float z = -view.transform(bounds.getCenter()).z;
+		if (z <= radius)
+			return Float.POSITIVE_INFINITY;
+		return radius * scale / z;
 	}
 
 	private final IController controller;
@@ -360,6 +689,20 @@ public class DefaultRenderManager implements IRenderManager {
 		sceneState.removeMesh(mesh);
 	}
 
+	@Override
+	public void setOcclusionCulling(boolean enabled) {
+		ensureSceneThread();
+		sceneState.occlusionCulling = enabled;
+		if (!(enabled))
+			sceneState.views.forEach((view, svs) -> svs.culler = null);
+	}
+
+	@Override
+	public void setFrustumCulling(boolean enabled) {
+		ensureSceneThread();
+		sceneState.frustumCulling = enabled;
+	}
+
 	@Override
 	public Runnable getRenderRunnable() {
 		return () -> {
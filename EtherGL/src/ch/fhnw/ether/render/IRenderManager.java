@@ -110,6 +110,22 @@ public interface IRenderManager {
 	 */
 	void removeMesh(IMesh mesh);
 
+	/**
+	 * Enable or disable software occlusion culling. If enabled, meshes that
+	 * are hidden behind occluders (meshes flagged as OCCLUDER, or large
+	 * meshes chosen automatically) are not rendered. Meshes whose bounds
+	 * project outside the viewport are dropped as well. Disabled by default.
+	 */
+	void setOcclusionCulling(boolean enabled);
+
+	/**
+	 * Enable or disable view frustum culling. If enabled, meshes whose bounds
+	 * are outside the view frustum are not rendered. Views are culled in
+	 * parallel, but no longer share their renderables, so the renderer sorts
+	 * them per view. Implied by occlusion culling. Disabled by default.
+	 */
+	void setFrustumCulling(boolean enabled);
+
 	/**
 	 * Returns runnable to be run at the end of a scene time frame when repaint
 	 * is required.
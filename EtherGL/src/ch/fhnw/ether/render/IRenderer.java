@@ -62,6 +62,12 @@ public interface IRenderer {
 		List<ILight> getLights();
 
 		List<Renderable> getRenderables();
+
+		/**
+		 * Renderables casting shadows, which includes renderables that were
+		 * culled from getRenderables() because they are not visible.
+		 */
+		List<Renderable> getShadowCasters();
 	}
 
 	interface IRenderState {
@@ -31,6 +31,8 @@ package ch.fhnw.ether.render;
 
 import com.jogamp.opengl.GL3;
 
+import ch.fhnw.ether.render.variable.IShaderVariable;
+
 public interface IVertexBuffer {
 	
 	int getNumVertices();
@@ -43,4 +45,10 @@ public interface IVertexBuffer {
 
 	void disableAttribute(GL3 gl, int bufferIndex, int shaderIndex);
 
+	/**
+	 * Record the commands of {@link #enableAttribute(GL3, int, int)} for the
+	 * given shader variable. Does not access GL.
+	 */
+	void recordAttribute(CommandBuffer commands, int bufferIndex, IShaderVariable<?> variable);
+
 }
@@ -0,0 +1,441 @@
+/*
+ * Copyright (c) 2013 - 2015 Stefan Muller Arisona, Simon Schubiger, Samuel von Stachelski
+ * Copyright (c) 2013 - 2015 FHNW & ETH Zurich
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *  Neither the name of FHNW / ETH Zurich nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ch.fhnw.ether.render;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import ch.fhnw.util.math.Mat4;
+
+/**
+ * Assigns lights to the clusters of a view frustum for clustered forward
+ * shading. The frustum is divided into tiles in screen space and slices in
+ * depth (exponential for perspective, linear for orthographic projections).
+ * Lights are given as view space spheres and are assigned to each cluster
+ * whose view space bounding box intersects the sphere. The result is a list of
+ * (offset, count) per cluster into a list of light indices, in the layout
+ * expected by light_clusters.glsl. Clusters are indexed as (z * tilesY + y) *
+ * tilesX + x, lights within a cluster are in ascending order.
+ */
+public final class LightClusters {
+	public static final int DEFAULT_TILES_X = 16;
+	public static final int DEFAULT_TILES_Y = 9;
+	public static final int DEFAULT_SLICES  = 24;
+
+	// far plane used for projections with the far plane at infinity, relative to near
+	private static final float MAX_DEPTH_RATIO = 1e6f;
+	private static final int   PARALLEL_LIGHTS = 64;
+
+	private static final int NUM_THREADS = Runtime.getRuntime().availableProcessors();
+
+	private static final ExecutorService POOL = Executors.newFixedThreadPool(NUM_THREADS, r -> {
+		Thread result = new Thread(r, "LightClusters");
+		result.setDaemon(true);
+		result.setPriority(Thread.MIN_PRIORITY);
+		return result;
+	});
+
+	private final int     tilesX;
+	private final int     tilesY;
+	private final int     slices;
+	private final float[] sliceDepths;
+	private final int[]   clusters;
+
+	private float   near;
+	private float   far;
+	private boolean orthographic;
+	private float   m00, m02, m03, m11, m12, m13;
+
+	private float[] spheres;
+	private int     numLights;
+
+	// per light: x0, x1, y0, y1, z0, z1, culled if z0 > z1
+	private int[] ranges = new int[0];
+
+	// per slice: (tile, light) pairs, then light indices sorted by tile
+	private final int[][] pairs;
+	private final int[][] sliceLights;
+	private final int[]   sliceSizes;
+
+	private int[] lightIndices = new int[1024];
+	private int   numLightIndices;
+
+	public LightClusters() {
+		this(DEFAULT_TILES_X, DEFAULT_TILES_Y, DEFAULT_SLICES);
+	}
+
+	public LightClusters(int tilesX, int tilesY, int slices) {
+		this.tilesX = tilesX;
+		this.tilesY = tilesY;
+		this.slices = slices;
+		this.sliceDepths = new float[slices + 1];
+		this.clusters = new int[2 * tilesX * tilesY * slices];
+		this.pairs = new int[slices][64];
+		this.sliceLights = new int[slices][32];
+		this.sliceSizes = new int[slices];
+	}
+
+	/**
+	 * Assign lights to clusters.
+	 * 
+	 * @param projMatrix
+	 *            projection matrix of the view (perspective or orthographic)
+	 * @param spheres
+	 *            view space x, y, z and radius per light. A radius of
+	 *            Float.POSITIVE_INFINITY assigns the light to all clusters
+	 *            (directional lights), lights with radius <= 0 are not
+	 *            assigned.
+	 * @param numLights
+	 *            number of lights
+	 */
+	public void assign(Mat4 projMatrix, float[] spheres, int numLights) {
+		setProjection(projMatrix);
+		this.spheres = spheres;
+		this.numLights = numLights;
+		if (ranges.length < 6 * numLights)
+			ranges = new int[6 * numLights];
+
+		if (NUM_THREADS > 1 && numLights >= PARALLEL_LIGHTS) {
+			List<Callable<Object>> tasks = new ArrayList<>();
+			int chunk = (numLights + NUM_THREADS - 1) / NUM_THREADS;
+			for (int l = 0; l < numLights; l += chunk) {
+				final int l0 = l;
+				final int l1 = Math.min(numLights, l + chunk);
+				tasks.add(() -> {
+					for (int i = l0; i < l1; ++i)
+						computeRange(i);
+					return null;
+				});
+			}
+			run(tasks);
+
+			tasks.clear();
+			for (int z = 0; z < slices; ++z) {
+				final int slice = z;
+				tasks.add(() -> {
+					assignSlice(slice);
+					return null;
+				});
+			}
+			run(tasks);
+		} else {
+			for (int i = 0; i < numLights; ++i)
+				computeRange(i);
+			for (int z = 0; z < slices; ++z)
+				assignSlice(z);
+		}
+
+		// concatenate slices
+		int total = 0;
+		for (int z = 0; z < slices; ++z)
+			total += sliceSizes[z];
+		if (lightIndices.length < total)
+			lightIndices = new int[Math.max(total, 2 * lightIndices.length)];
+		int offset = 0;
+		int tiles = tilesX * tilesY;
+		for (int z = 0; z < slices; ++z) {
+			for (int t = z * tiles; t < (z + 1) * tiles; ++t)
+				clusters[2 * t] += offset;
+			System.arraycopy(sliceLights[z], 0, lightIndices, offset, sliceSizes[z]);
+			offset += sliceSizes[z];
+		}
+		numLightIndices = total;
+		this.spheres = null;
+	}
+
+	public int getTilesX() {
+		return tilesX;
+	}
+
+	public int getTilesY() {
+		return tilesY;
+	}
+
+	public int getSlices() {
+		return slices;
+	}
+
+	public int getNumClusters() {
+		return tilesX * tilesY * slices;
+	}
+
+	/**
+	 * Near plane distance of the last assignment.
+	 */
+	public float getNear() {
+		return near;
+	}
+
+	/**
+	 * Far plane distance of the last assignment, finite even for projections
+	 * with the far plane at infinity.
+	 */
+	public float getFar() {
+		return far;
+	}
+
+	public boolean isOrthographic() {
+		return orthographic;
+	}
+
+	/**
+	 * Get offset into the light indices and light count per cluster,
+	 * interleaved.
+	 */
+	public int[] getClusters() {
+		return clusters;
+	}
+
+	/**
+	 * Get the light indices of all clusters, valid up to
+	 * {@link #getNumLightIndices()}.
+	 */
+	public int[] getLightIndices() {
+		return lightIndices;
+	}
+
+	public int getNumLightIndices() {
+		return numLightIndices;
+	}
+
+	/**
+	 * Get the index of the cluster containing the given point, given in
+	 * normalized device coordinates x, y and view space depth (positive
+	 * distance along the view direction). Matches clusterIndex() in
+	 * light_clusters.glsl.
+	 */
+	public int getClusterIndex(float ndcX, float ndcY, float depth) {
+		int x = clamp((int) Math.floor((ndcX + 1) * 0.5f * tilesX), 0, tilesX - 1);
+		int y = clamp((int) Math.floor((ndcY + 1) * 0.5f * tilesY), 0, tilesY - 1);
+		return (getSlice(depth) * tilesY + y) * tilesX + x;
+	}
+
+	private void setProjection(Mat4 proj) {
+		orthographic = proj.m32 == 0;
+		if (orthographic) {
+			near = (proj.m23 + 1) / proj.m22;
+			far = (proj.m23 - 1) / proj.m22;
+		} else {
+			near = proj.m23 / (proj.m22 - 1);
+			far = proj.m22 == -1 ? Float.POSITIVE_INFINITY : proj.m23 / (proj.m22 + 1);
+			if (!(far < near * MAX_DEPTH_RATIO))
+				far = near * MAX_DEPTH_RATIO;
+		}
+		m00 = proj.m00;
+		m02 = proj.m02;
+		m03 = proj.m03;
+		m11 = proj.m11;
+		m12 = proj.m12;
+		m13 = proj.m13;
+		for (int z = 0; z <= slices; ++z) {
+			float s = (float) z / slices;
+			sliceDepths[z] = orthographic ? near + s * (far - near) : (float) (near * Math.pow(far / near, s));
+		}
+	}
+
+	private int getSlice(float depth) {
+		float s;
+		if (orthographic)
+			s = (depth - near) / (far - near);
+		else
+			s = (float) (Math.log(depth / near) / Math.log(far / near));
+		return clamp((int) Math.floor(s * slices), 0, slices - 1);
+	}
+
+	private void computeRange(int light) {
+		int[] r = ranges;
+		int i = 6 * light;
+		float cx = spheres[4 * light];
+		float cy = spheres[4 * light + 1];
+		float cz = spheres[4 * light + 2];
+		float radius = spheres[4 * light + 3];
+
+		if (radius == Float.POSITIVE_INFINITY) {
+			r[i] = 0;
+			r[i + 1] = tilesX - 1;
+			r[i + 2] = 0;
+			r[i + 3] = tilesY - 1;
+			r[i + 4] = 0;
+			r[i + 5] = slices - 1;
+			return;
+		}
+
+		// cull by depth, then by the screen rectangle of the sphere's bounding box
+		float d0 = -cz - radius;
+		float d1 = -cz + radius;
+		r[i + 4] = 1;
+		r[i + 5] = 0;
+		if (!(radius > 0) || d1 < near || d0 > far)
+			return;
+		d0 = Math.max(d0, near);
+		d1 = Math.min(d1, far);
+
+		float minX = Float.POSITIVE_INFINITY;
+		float maxX = Float.NEGATIVE_INFINITY;
+		float minY = Float.POSITIVE_INFINITY;
+		float maxY = Float.NEGATIVE_INFINITY;
+		for (int c = 0; c < 4; ++c) {
+			float d = (c & 1) == 0 ? d0 : d1;
+			float v = (c & 2) == 0 ? -radius : radius;
+			float x = toNdcX(cx + v, d);
+			float y = toNdcY(cy + v, d);
+			minX = Math.min(minX, x);
+			maxX = Math.max(maxX, x);
+			minY = Math.min(minY, y);
+			maxY = Math.max(maxY, y);
+		}
+		if (maxX < -1 || minX > 1 || maxY < -1 || minY > 1)
+			return;
+
+		r[i] = clamp((int) Math.floor((minX + 1) * 0.5f * tilesX), 0, tilesX - 1);
+		r[i + 1] = clamp((int) Math.floor((maxX + 1) * 0.5f * tilesX), 0, tilesX - 1);
+		r[i + 2] = clamp((int) Math.floor((minY + 1) * 0.5f * tilesY), 0, tilesY - 1);
+		r[i + 3] = clamp((int) Math.floor((maxY + 1) * 0.5f * tilesY), 0, tilesY - 1);
+		r[i + 4] = getSlice(d0);
+		r[i + 5] = getSlice(d1);
+	}
+
+	private void assignSlice(int z) {
+		int[] p = pairs[z];
+		int n = 0;
+		float d0 = sliceDepths[z];
+		float d1 = sliceDepths[z + 1];
+		for (int light = 0; light < numLights; ++light) {
+			int i = 6 * light;
+			if (z < ranges[i + 4] || z > ranges[i + 5])
+				continue;
+			float cx = spheres[4 * light];
+			float cy = spheres[4 * light + 1];
+			float cz = spheres[4 * light + 2];
+			float radius = spheres[4 * light + 3];
+			boolean all = radius == Float.POSITIVE_INFINITY;
+			for (int y = ranges[i + 2]; y <= ranges[i + 3]; ++y) {
+				for (int x = ranges[i]; x <= ranges[i + 1]; ++x) {
+					if (all || intersects(x, y, d0, d1, cx, cy, cz, radius)) {
+						if (n == p.length)
+							p = pairs[z] = Arrays.copyOf(p, 2 * n);
+						p[n++] = y * tilesX + x;
+						p[n++] = light;
+					}
+				}
+			}
+		}
+
+		// counting sort by tile, stable so lights stay in ascending order
+		int tiles = tilesX * tilesY;
+		int base = z * tiles;
+		for (int t = base; t < base + tiles; ++t)
+			clusters[2 * t + 1] = 0;
+		for (int k = 0; k < n; k += 2)
+			clusters[2 * (base + p[k]) + 1]++;
+		int offset = 0;
+		for (int t = base; t < base + tiles; ++t) {
+			clusters[2 * t] = offset;
+			offset += clusters[2 * t + 1];
+		}
+		int[] sorted = sliceLights[z];
+		if (sorted.length < n / 2)
+			sorted = sliceLights[z] = new int[Math.max(n / 2, 2 * sorted.length)];
+		// use the counts as cursors, then restore them
+		for (int k = 0; k < n; k += 2) {
+			int t = 2 * (base + p[k]);
+			sorted[clusters[t]++] = p[k + 1];
+		}
+		for (int t = base; t < base + tiles; ++t)
+			clusters[2 * t] -= clusters[2 * t + 1];
+		sliceSizes[z] = n / 2;
+	}
+
+	// test sphere against the view space bounding box of a cluster
+	private boolean intersects(int x, int y, float d0, float d1, float cx, float cy, float cz, float radius) {
+		float nx0 = 2f * x / tilesX - 1;
+		float nx1 = 2f * (x + 1) / tilesX - 1;
+		float ny0 = 2f * y / tilesY - 1;
+		float ny1 = 2f * (y + 1) / tilesY - 1;
+
+		float a = fromNdcX(nx0, d0), b = fromNdcX(nx1, d0), c = fromNdcX(nx0, d1), d = fromNdcX(nx1, d1);
+		float minX = Math.min(Math.min(a, b), Math.min(c, d));
+		float maxX = Math.max(Math.max(a, b), Math.max(c, d));
+		a = fromNdcY(ny0, d0);
+		b = fromNdcY(ny1, d0);
+		c = fromNdcY(ny0, d1);
+		d = fromNdcY(ny1, d1);
+		float minY = Math.min(Math.min(a, b), Math.min(c, d));
+		float maxY = Math.max(Math.max(a, b), Math.max(c, d));
+
+		float dx = Math.max(0, Math.max(minX - cx, cx - maxX));
+		float dy = Math.max(0, Math.max(minY - cy, cy - maxY));
+		float dz = Math.max(0, Math.max(d0 + cz, -cz - d1));
+		return dx * dx + dy * dy + dz * dz <= radius * radius;
+	}
+
+	// view space x at depth d to ndc, assumes m01 = m10 = 0
+	private float toNdcX(float x, float d) {
+		return orthographic ? m00 * x + m03 : (m00 * x - m02 * d) / d;
+	}
+
+	private float toNdcY(float y, float d) {
+		return orthographic ? m11 * y + m13 : (m11 * y - m12 * d) / d;
+	}
+
+	private float fromNdcX(float ndc, float d) {
+		return orthographic ? (ndc - m03) / m00 : d * (ndc + m02) / m00;
+	}
+
+	private float fromNdcY(float ndc, float d) {
+		return orthographic ? (ndc - m13) / m11 : d * (ndc + m12) / m11;
+	}
+
+	private static int clamp(int value, int min, int max) {
+		return value < min ? min : value > max ? max : value;
+	}
+
+	private static void run(List<Callable<Object>> tasks) {
+		try {
+			for (Future<Object> future : POOL.invokeAll(tasks))
+				future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "light clusters[" + tilesX + "x" + tilesY + "x" + slices + " lights=" + numLights + " indices=" + numLightIndices + "]";
+	}
+}
@@ -29,21 +29,47 @@
 
 package ch.fhnw.ether.render;
 
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
 import java.util.List;
 import java.util.Map;
 import java.util.function.Supplier;
 
 import com.jogamp.opengl.GL3;
 
+import ch.fhnw.ether.render.gl.BufferTexture;
 import ch.fhnw.ether.render.gl.FloatUniformBuffer;
+import ch.fhnw.ether.render.variable.builtin.LightClusterUniformBlock;
 import ch.fhnw.ether.render.variable.builtin.LightUniformBlock;
 import ch.fhnw.ether.scene.attribute.IAttribute;
 import ch.fhnw.ether.scene.camera.IViewCameraState;
+import ch.fhnw.ether.scene.light.GenericLight.LightSource;
 import ch.fhnw.ether.scene.light.ILight;
+import ch.fhnw.util.BufferUtilities;
+import ch.fhnw.util.Viewport;
+import ch.fhnw.util.math.Vec4;
 
+/**
+ * Per frame light state. The first {@link LightUniformBlock#MAX_LIGHTS} lights
+ * go to the light uniform block (used by shadow volumes), all lights are
+ * assigned to light clusters for the shaded shaders, together with their
+ * shadow atlas tiles.
+ */
 public final class LightInfo {
-	private final FloatUniformBuffer uniforms = new FloatUniformBuffer(LightUniformBlock.BLOCK_SIZE);
-	private int numLights;
+	private static final int LIGHT_FLOATS = 20;
+
+	private final FloatUniformBuffer uniforms        = new FloatUniformBuffer(LightUniformBlock.BLOCK_SIZE);
+	private final FloatUniformBuffer clusterUniforms = new FloatUniformBuffer(LightClusterUniformBlock.BLOCK_SIZE);
+	private final LightClusters      clusters        = new LightClusters();
+	private final BufferTexture      lightData       = new BufferTexture(GL3.GL_RGBA32F, 16);
+	private final BufferTexture      clusterData     = new BufferTexture(GL3.GL_RG32UI, 8);
+	private final BufferTexture      clusterLights   = new BufferTexture(GL3.GL_R32UI, 4);
+
+	private float[]     spheres     = new float[0];
+	private FloatBuffer lightBuffer = BufferUtilities.EMPTY_FLOAT_BUFFER;
+	private IntBuffer   indexBuffer;
+	private IntBuffer   clusterBuffer;
+	private int         numLights;
 
 	public LightInfo() {
 	}
@@ -51,14 +77,99 @@ public final class LightInfo {
 	public int getNumLights() {
 		return numLights;
 	}
+
+	public LightClusters getClusters() {
+		return clusters;
+	}
 	
 	public void update(GL3 gl, IViewCameraState matrices, List<ILight> lights) {
+		update(gl, matrices, lights, null);
+	}
+
+	/**
+	 * Update lights of a view, with the shadow atlas tiles of the lights if
+	 * shadows is not null.
+	 */
+	public void update(GL3 gl, IViewCameraState matrices, List<ILight> lights, ShadowInfo shadows) {
 		LightUniformBlock.loadUniforms(gl, uniforms, lights, matrices);
 		numLights = lights.size();
 		uniforms.bind(gl);
+		updateClusters(gl, matrices, lights, shadows);
+	}
+
+	/**
+	 * Update the viewport of the light clusters, for views with the same
+	 * lights and matrices as the last update but a different viewport. Only
+	 * the cluster uniforms depend on the viewport.
+	 */
+	public void updateViewport(GL3 gl, Viewport viewport) {
+		LightClusterUniformBlock.loadUniforms(gl, clusterUniforms, clusters, viewport);
+		clusterUniforms.bind(gl);
+	}
+
+	/**
+	 * Bind the current lights to the given context without reloading them.
+	 */
+	public void bind(GL3 gl) {
+		uniforms.bind(gl);
+		clusterUniforms.bind(gl);
 	}
 
 	public void getAttributes(Map<IAttribute, Supplier<?>> globals) {
 		globals.put(LightUniformBlock.ATTRIBUTE, uniforms::getBindingPoint);
+		globals.put(LightClusterUniformBlock.ATTRIBUTE, clusterUniforms::getBindingPoint);
+		globals.put(LightClusterUniformBlock.LIGHT_DATA, lightData::getTexture);
+		globals.put(LightClusterUniformBlock.CLUSTER_DATA, clusterData::getTexture);
+		globals.put(LightClusterUniformBlock.CLUSTER_LIGHTS, clusterLights::getTexture);
+	}
+
+	private void updateClusters(GL3 gl, IViewCameraState matrices, List<ILight> lights, ShadowInfo shadows) {
+		if (spheres.length < 4 * numLights)
+			spheres = new float[4 * numLights];
+		if (lightBuffer.capacity() < LIGHT_FLOATS * numLights)
+			lightBuffer = BufferUtilities.createDirectFloatBuffer(LIGHT_FLOATS * Math.max(numLights, 2 * lightBuffer.capacity() / LIGHT_FLOATS));
+
+		lightBuffer.clear();
+		for (int i = 0; i < numLights; ++i) {
+			LightSource source = lights.get(i).getLightSource();
+			LightUniformBlock.pack(lightBuffer, source, matrices, shadows == null ? -1 : shadows.getTile(i));
+			switch (source.getType()) {
+			case DIRECTIONAL_LIGHT:
+				spheres[4 * i + 3] = Float.POSITIVE_INFINITY;
+				break;
+			case POINT_LIGHT:
+			case SPOT_LIGHT:
+				Vec4 p = matrices.getViewMatrix().transform(source.getPosition());
+				spheres[4 * i] = p.x;
+				spheres[4 * i + 1] = p.y;
+				spheres[4 * i + 2] = p.z;
+				spheres[4 * i + 3] = source.getRange();
+				break;
+			default:
+				spheres[4 * i + 3] = 0;
+			}
+		}
+		lightBuffer.flip();
+
+		clusters.assign(matrices.getProjMatrix(), spheres, numLights);
+
+		int[] c = clusters.getClusters();
+		if (clusterBuffer == null)
+			clusterBuffer = BufferUtilities.createDirectIntBuffer(c.length);
+		clusterBuffer.clear();
+		clusterBuffer.put(c).flip();
+
+		int n = clusters.getNumLightIndices();
+		if (indexBuffer == null || indexBuffer.capacity() < n)
+			indexBuffer = BufferUtilities.createDirectIntBuffer(Math.max(n, indexBuffer == null ? 1024 : 2 * indexBuffer.capacity()));
+		indexBuffer.clear();
+		indexBuffer.put(clusters.getLightIndices(), 0, n).flip();
+
+		lightData.load(gl, lightBuffer, LIGHT_FLOATS / 4 * numLights);
+		clusterData.load(gl, clusterBuffer, c.length / 2);
+		clusterLights.load(gl, indexBuffer, n);
+
+		LightClusterUniformBlock.loadUniforms(gl, clusterUniforms, clusters, matrices.getViewport());
+		clusterUniforms.bind(gl);
 	}
 }
@@ -0,0 +1,396 @@
+/*
+ * Copyright (c) 2013 - 2015 Stefan Muller Arisona, Simon Schubiger, Samuel von Stachelski
+ * Copyright (c) 2013 - 2015 FHNW & ETH Zurich
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *  Neither the name of FHNW / ETH Zurich nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ch.fhnw.ether.render;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import ch.fhnw.util.FloatList;
+import ch.fhnw.util.math.Mat4;
+import ch.fhnw.util.math.geometry.BoundingBox;
+
+/**
+ * Software occlusion culling. Occluder triangles are rasterized on the CPU into a small depth buffer, from which a
+ * hierarchical (max) depth pyramid is built. Bounding boxes are then tested against the pyramid level at which their
+ * screen rectangle covers at most a few texels. The test is conservative: a box is only reported as hidden if its
+ * nearest depth lies behind the farthest occluder depth over its whole screen rectangle.
+ * 
+ * {@link #isOccluded} is the occlusion test alone. {@link #isVisible} additionally rejects boxes whose screen rectangle
+ * lies outside the depth buffer, i.e. it also culls against the left, right, bottom and top frustum planes.
+ * 
+ * Depth is window depth in [0, 1] (0 = near plane). Rasterization runs in horizontal bands in parallel if there are
+ * enough occluder triangles. Pure CPU code, no GL context required.
+ */
+public final class OcclusionCuller {
+	public static final int DEFAULT_WIDTH  = 256;
+	public static final int DEFAULT_HEIGHT = 128;
+
+	private static final float W_EPSILON        = 1e-5f;
+	private static final int   BAND_HEIGHT      = 16;
+	private static final int   PARALLEL_TRIANGLES = 512;
+
+	private static final int NUM_THREADS = Runtime.getRuntime().availableProcessors();
+
+	private static final ExecutorService POOL = Executors.newFixedThreadPool(NUM_THREADS, r -> {
+		Thread result = new Thread(r, "OcclusionCuller");
+		result.setDaemon(true);
+		result.setPriority(Thread.MIN_PRIORITY);
+		return result;
+	});
+
+	private final int       width;
+	private final int       height;
+	private final float[][] levels;
+	private final int[]     levelWidths;
+	private final int[]     levelHeights;
+
+	// screen space occluder triangles: x, y, z per vertex
+	private final FloatList triangles = new FloatList();
+
+	private Mat4 viewProj = Mat4.ID;
+
+	public OcclusionCuller() {
+		this(DEFAULT_WIDTH, DEFAULT_HEIGHT);
+	}
+
+	public OcclusionCuller(int width, int height) {
+		this.width = width;
+		this.height = height;
+		int numLevels = 1;
+		while ((Math.max(width, height) - 1) >> numLevels > 0)
+			numLevels++;
+		levels = new float[numLevels][];
+		levelWidths = new int[numLevels];
+		levelHeights = new int[numLevels];
+		for (int l = 0, w = width, h = height; l < numLevels; l++, w = (w + 1) / 2, h = (h + 1) / 2) {
+			levels[l] = new float[w * h];
+			levelWidths[l] = w;
+			levelHeights[l] = h;
+		}
+		clear(Mat4.ID);
+		end();
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Starts a new frame: clears the depth buffer and sets the view-projection matrix used for occluders and tests.
+	 */
+	public void clear(Mat4 viewProj) {
+		this.viewProj = viewProj;
+		triangles.clear();
+		Arrays.fill(levels[0], 1);
+	}
+
+	/**
+	 * Adds occluder triangles given as world space positions (9 floats per triangle). Triangles crossing the near
+	 * plane are skipped, which is conservative.
+	 */
+	public void addOccluder(float[] positions) {
+		Mat4 m = viewProj;
+		float[] v = new float[9];
+		for (int i = 0; i + 8 < positions.length; i += 9) {
+			boolean behind = false;
+			for (int k = 0; k < 3; k++) {
+				float x = positions[i + k * 3];
+				float y = positions[i + k * 3 + 1];
+				float z = positions[i + k * 3 + 2];
+				float cw = m.m30 * x + m.m31 * y + m.m32 * z + m.m33;
+				if (cw <= W_EPSILON) {
+					behind = true;
+					break;
+				}
+				float cx = m.m00 * x + m.m01 * y + m.m02 * z + m.m03;
+				float cy = m.m10 * x + m.m11 * y + m.m12 * z + m.m13;
+				float cz = m.m20 * x + m.m21 * y + m.m22 * z + m.m23;
+				v[k * 3]     = (cx / cw * 0.5f + 0.5f) * width;
+				v[k * 3 + 1] = (cy / cw * 0.5f + 0.5f) * height;
+				v[k * 3 + 2] = Math.min(1, cz / cw * 0.5f + 0.5f);
+			}
+			if (behind)
+				continue;
+			// trivially off screen
+			if (Math.max(v[0], Math.max(v[3], v[6])) < 0 || Math.min(v[0], Math.min(v[3], v[6])) > width ||
+				Math.max(v[1], Math.max(v[4], v[7])) < 0 || Math.min(v[1], Math.min(v[4], v[7])) > height)
+				continue;
+			triangles.addAll(v);
+		}
+	}
+
+	/**
+	 * Adds a single screen space occluder triangle (pixel coordinates and window depth).
+	 */
+	public void addOccluder(float x0, float y0, float z0, float x1, float y1, float z1, float x2, float y2, float z2) {
+		triangles.addAll(x0, y0, z0);
+		triangles.addAll(x1, y1, z1);
+		triangles.addAll(x2, y2, z2);
+	}
+
+	/**
+	 * Rasterizes all occluders and builds the depth pyramid.
+	 */
+	public void end() {
+		int numBands = (height + BAND_HEIGHT - 1) / BAND_HEIGHT;
+		if (NUM_THREADS > 1 && triangles.size() / 9 >= PARALLEL_TRIANGLES) {
+			List<Future<?>> bands = new ArrayList<>(numBands);
+			for (int b = 0; b < numBands; b++) {
+				final int y0 = b * BAND_HEIGHT;
+				bands.add(POOL.submit(() -> rasterize(y0, Math.min(height, y0 + BAND_HEIGHT))));
+			}
+			try {
+				for (Future<?> band : bands)
+					band.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(e);
+			} catch (ExecutionException e) {
+				throw new RuntimeException(e.getCause());
+			}
+		} else {
+			rasterize(0, height);
+		}
+		buildPyramid();
+	}
+
+	/**
+	 * Returns the rasterized depth at pixel (x, y).
+	 */
+	public float getDepth(int x, int y) {
+		return levels[0][y * width + x];
+	}
+
+	/**
+	 * Tests a world space bounding box against the screen and the occluders.
+	 * 
+	 * @return false if the box is certainly hidden or off screen, true otherwise
+	 */
+	public boolean isVisible(BoundingBox bounds) {
+		return test(bounds, true);
+	}
+
+	/**
+	 * Tests a world space bounding box against the occluders only.
+	 * 
+	 * @return true if the box is certainly hidden behind occluders, false otherwise (including off screen)
+	 */
+	public boolean isOccluded(BoundingBox bounds) {
+		return !(test(bounds, false));
+	}
+
+	/**
+	 * Tests a screen space rectangle (pixel coordinates) with the given nearest window depth against the screen and the
+	 * occluders.
+	 * 
+	 * @return false if the rectangle is certainly hidden or off screen, true otherwise
+	 */
+	public boolean isVisible(float minX, float minY, float maxX, float maxY, float minDepth) {
+		return isOnScreen(minX, minY, maxX, maxY) && !(isOccluded(minX, minY, maxX, maxY, minDepth));
+	}
+
+	/**
+	 * Returns true if a screen space rectangle (pixel coordinates) overlaps the depth buffer.
+	 */
+	public boolean isOnScreen(float minX, float minY, float maxX, float maxY) {
+		return maxX >= 0 && maxY >= 0 && minX < width && minY < height;
+	}
+
+	/**
+	 * Tests a screen space rectangle (pixel coordinates) with the given nearest window depth against the occluders.
+	 * Nothing is known outside the depth buffer, so off screen rectangles are never occluded.
+	 * 
+	 * @return true if the rectangle is certainly hidden behind occluders, false otherwise
+	 */
+	public boolean isOccluded(float minX, float minY, float maxX, float maxY, float minDepth) {
+		if (!(isOnScreen(minX, minY, maxX, maxY)) || minDepth <= 0)
+			return false;
+		int x0 = Math.max(0, (int) minX);
+		int y0 = Math.max(0, (int) minY);
+		int x1 = Math.min(width - 1, (int) maxX);
+		int y1 = Math.min(height - 1, (int) maxY);
+
+		// pick the level where the rectangle covers at most 2 x 2 texels
+		int span  = Math.max(x1 - x0, y1 - y0);
+		int level = span == 0 ? 0 : 32 - Integer.numberOfLeadingZeros(span);
+		level     = Math.min(levels.length - 1, Math.max(0, level - 1));
+		float[] depth = levels[level];
+		int     lw    = levelWidths[level];
+		for (int y = y0 >> level; y <= y1 >> level; y++)
+			for (int x = x0 >> level; x <= x1 >> level; x++)
+				if (depth[y * lw + x] >= minDepth)
+					return false;
+		return true;
+	}
+
+	/**
+	 * Tests a world space bounding box against the view frustum of a view-projection matrix, without a depth buffer.
+	 *
+	 * @return false if all corners of the box are outside one of the frustum planes, true otherwise
+	 */
+	public static boolean isInFrustum(Mat4 viewProj, BoundingBox bounds) {
+		if (!(bounds.isValid()))
+			return true;
+		Mat4 m = viewProj;
+		// one bit per plane that all corners so far are outside of
+		int outside = 0x3f;
+		for (int i = 0; i < 8 && outside != 0; i++) {
+			float x = (i & 1) == 0 ? bounds.getMinX() : bounds.getMaxX();
+			float y = (i & 2) == 0 ? bounds.getMinY() : bounds.getMaxY();
+			float z = (i & 4) == 0 ? bounds.getMinZ() : bounds.getMaxZ();
+			float cx = m.m00 * x + m.m01 * y + m.m02 * z + m.m03;
+			float cy = m.m10 * x + m.m11 * y + m.m12 * z + m.m13;
+			float cz = m.m20 * x + m.m21 * y + m.m22 * z + m.m23;
+			float cw = m.m30 * x + m.m31 * y + m.m32 * z + m.m33;
+			int planes = 0;
+			if (cx < -cw) planes |= 0x01;
+			if (cx > cw)  planes |= 0x02;
+			if (cy < -cw) planes |= 0x04;
+			if (cy > cw)  planes |= 0x08;
+			if (cz < -cw) planes |= 0x10;
+			if (cz > cw)  planes |= 0x20;
+			outside &= planes;
+		}
+		return outside == 0;
+	}
+
+	// projects the box and returns whether it is visible, with or without the screen test
+	private boolean test(BoundingBox bounds, boolean screen) {
+		if (!(bounds.isValid()))
+			return true;
+		Mat4 m = viewProj;
+		float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY, minZ = Float.POSITIVE_INFINITY;
+		float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY;
+		for (int i = 0; i < 8; i++) {
+			float x = (i & 1) == 0 ? bounds.getMinX() : bounds.getMaxX();
+			float y = (i & 2) == 0 ? bounds.getMinY() : bounds.getMaxY();
+			float z = (i & 4) == 0 ? bounds.getMinZ() : bounds.getMaxZ();
+			float cw = m.m30 * x + m.m31 * y + m.m32 * z + m.m33;
+			// box crosses the near plane
+			if (cw <= W_EPSILON)
+				return true;
+			float sx = ((m.m00 * x + m.m01 * y + m.m02 * z + m.m03) / cw * 0.5f + 0.5f) * width;
+			float sy = ((m.m10 * x + m.m11 * y + m.m12 * z + m.m13) / cw * 0.5f + 0.5f) * height;
+			float sz = (m.m20 * x + m.m21 * y + m.m22 * z + m.m23) / cw * 0.5f + 0.5f;
+			minX = Math.min(minX, sx);
+			maxX = Math.max(maxX, sx);
+			minY = Math.min(minY, sy);
+			maxY = Math.max(maxY, sy);
+			minZ = Math.min(minZ, sz);
+		}
+		return screen ? isVisible(minX, minY, maxX, maxY, minZ) : !(isOccluded(minX, minY, maxX, maxY, minZ));
+	}
+
+	private void rasterize(int bandY0, int bandY1) {
+		float[] depth = levels[0];
+		float[] t     = triangles._getArray();
+		int     n     = triangles.size();
+		for (int i = 0; i < n; i += 9) {
+			float x0 = t[i],     y0 = t[i + 1], z0 = t[i + 2];
+			float x1 = t[i + 3], y1 = t[i + 4], z1 = t[i + 5];
+			float x2 = t[i + 6], y2 = t[i + 7], z2 = t[i + 8];
+			float area = (x1 - x0) * (y2 - y0) - (x2 - x0) * (y1 - y0);
+			if (area == 0 || Float.isNaN(area))
+				continue;
+			if (area < 0) {
+				float tx = x1, ty = y1, tz = z1;
+				x1 = x2; y1 = y2; z1 = z2;
+				x2 = tx; y2 = ty; z2 = tz;
+				area = -area;
+			}
+
+			// pixel centers covered by the triangle, clipped to band and screen
+			int px0 = Math.max(0, (int) Math.ceil(Math.min(x0, Math.min(x1, x2)) - 0.5f));
+			int px1 = Math.min(width - 1, (int) Math.floor(Math.max(x0, Math.max(x1, x2)) - 0.5f));
+			int py0 = Math.max(bandY0, (int) Math.ceil(Math.min(y0, Math.min(y1, y2)) - 0.5f));
+			int py1 = Math.min(bandY1 - 1, (int) Math.floor(Math.max(y0, Math.max(y1, y2)) - 0.5f));
+			if (px0 > px1 || py0 > py1)
+				continue;
+
+			// edge functions e = a * x + b * y + c, positive inside
+			float a0 = y0 - y1, b0 = x1 - x0, c0 = x0 * y1 - x1 * y0;
+			float a1 = y1 - y2, b1 = x2 - x1, c1 = x1 * y2 - x2 * y1;
+			float a2 = y2 - y0, b2 = x0 - x2, c2 = x2 * y0 - x0 * y2;
+
+			// depth plane, biased to the farthest depth within a pixel so occluders stay conservative
+			float dx1 = x1 - x0, dy1 = y1 - y0, dz1 = z1 - z0;
+			float dx2 = x2 - x0, dy2 = y2 - y0, dz2 = z2 - z0;
+			float za  = (dz1 * dy2 - dz2 * dy1) / area;
+			float zb  = (dx1 * dz2 - dx2 * dz1) / area;
+			float zc  = z0 - za * x0 - zb * y0 + 0.5f * (Math.abs(za) + Math.abs(zb));
+
+			float cx = px0 + 0.5f;
+			for (int y = py0; y <= py1; y++) {
+				float cy  = y + 0.5f;
+				float e0  = a0 * cx + b0 * cy + c0;
+				float e1  = a1 * cx + b1 * cy + c1;
+				float e2  = a2 * cx + b2 * cy + c2;
+				float z   = za * cx + zb * cy + zc;
+				int   row = y * width;
+				for (int x = px0; x <= px1; x++) {
+					float d = depth[row + x];
+					depth[row + x] = (e0 >= 0) & (e1 >= 0) & (e2 >= 0) ? Math.min(d, z) : d;
+					e0 += a0;
+					e1 += a1;
+					e2 += a2;
+					z  += za;
+				}
+			}
+		}
+	}
+
+	private void buildPyramid() {
+		for (int l = 1; l < levels.length; l++) {
+			float[] src = levels[l - 1];
+			float[] dst = levels[l];
+			int     sw  = levelWidths[l - 1];
+			int     sh  = levelHeights[l - 1];
+			int     dw  = levelWidths[l];
+			int     dh  = levelHeights[l];
+			for (int y = 0; y < dh; y++) {
+				int r0 = (2 * y) * sw;
+				int r1 = Math.min(2 * y + 1, sh - 1) * sw;
+				for (int x = 0; x < dw; x++) {
+					int c0 = 2 * x;
+					int c1 = Math.min(2 * x + 1, sw - 1);
+					dst[y * dw + x] = Math.max(Math.max(src[r0 + c0], src[r0 + c1]), Math.max(src[r1 + c0], src[r1 + c1]));
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2013 - 2015 Stefan Muller Arisona, Simon Schubiger, Samuel von Stachelski
+ * Copyright (c) 2013 - 2015 FHNW & ETH Zurich
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *  Neither the name of FHNW / ETH Zurich nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ch.fhnw.ether.render;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import ch.fhnw.ether.scene.mesh.IMesh;
+import ch.fhnw.ether.scene.mesh.IMesh.Queue;
+
+/**
+ * Renderables sorted into per queue buckets, so each render pass and shadow
+ * pass iterates only over its own renderables instead of scanning all
+ * renderables per queue. Buckets are refilled once per frame and view.
+ */
+public final class RenderBuckets {
+	private static final Queue[] QUEUES = Queue.values();
+
+	private final List<List<Renderable>> buckets = new ArrayList<>(QUEUES.length);
+	private final List<List<Renderable>> views = new ArrayList<>(QUEUES.length);
+	private final boolean casters;
+
+	/**
+	 * @param casters
+	 *            if true, renderables flagged with
+	 *            {@link IMesh.Flag#DONT_CAST_SHADOW} are skipped
+	 */
+	public RenderBuckets(boolean casters) {
+		this.casters = casters;
+		for (int i = 0; i < QUEUES.length; ++i) {
+			List<Renderable> bucket = new ArrayList<>();
+			buckets.add(bucket);
+			views.add(Collections.unmodifiableList(bucket));
+		}
+	}
+
+	public void update(List<Renderable> renderables) {
+		for (List<Renderable> bucket : buckets)
+			bucket.clear();
+		for (Renderable renderable : renderables) {
+			if (casters && renderable.containsFlag(IMesh.Flag.DONT_CAST_SHADOW))
+				continue;
+			buckets.get(renderable.getQueue().ordinal()).add(renderable);
+		}
+	}
+
+	public List<Renderable> get(Queue queue) {
+		return views.get(queue.ordinal());
+	}
+}
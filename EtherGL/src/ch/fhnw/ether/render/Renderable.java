@@ -38,29 +38,70 @@ import com.jogamp.opengl.GL3;
 import ch.fhnw.ether.render.shader.IShader;
 import ch.fhnw.ether.scene.attribute.IAttribute;
 import ch.fhnw.ether.scene.mesh.IMesh;
+import ch.fhnw.ether.scene.mesh.geometry.IGeometry.Primitive;
+import ch.fhnw.util.math.geometry.BoundingBox;
 
 public final class Renderable {
 	private final IShader shader;
 	private final VertexBuffer buffer;
 	private final IMesh.Queue queue;
 	private final Set<IMesh.Flag> flags;
+	private final AdjacencyBuffer adjacency;
+	private final BoundingBox bounds = new BoundingBox();
+	private int version;
 
 	public Renderable(IMesh mesh, Map<IAttribute, Supplier<?>> globals) {
 		this(null, mesh, globals);
 	}
 
 	public Renderable(IShader shader, IMesh mesh, Map<IAttribute, Supplier<?>> globals) {
+		this(shader, mesh, globals, false);
+	}
+
+	/**
+	 * @param shadowAdjacency
+	 *            if true, triangle meshes casting shadows also keep an
+	 *            adjacency buffer for silhouette shadow volumes
+	 */
+	public Renderable(IShader shader, IMesh mesh, Map<IAttribute, Supplier<?>> globals, boolean shadowAdjacency) {
 		this.shader = ShaderBuilder.create(shader, mesh.getMaterial(), globals);
 		this.buffer = new VertexBuffer(this.shader, mesh.getGeometry().getAttributes());
 		this.queue = mesh.getQueue();
 		this.flags = mesh.getFlags();
+		if (shadowAdjacency && mesh.getGeometry().getType() == Primitive.TRIANGLES && !flags.contains(IMesh.Flag.DONT_CAST_SHADOW))
+			this.adjacency = new AdjacencyBuffer(mesh.getGeometry());
+		else
+			this.adjacency = null;
 	}
 
 	public void update(GL3 gl, Object[] materialData, float[][] geometryData) {
 		if (materialData != null)
 			shader.update(gl, materialData);
-		if (geometryData != null)
+		if (geometryData != null) {
 			buffer.update(gl, geometryData);
+			if (adjacency != null)
+				adjacency.update(gl, geometryData[0]);
+			bounds.reset();
+			bounds.add(geometryData[0]);
+			version++;
+		}
+	}
+
+	/**
+	 * Prepare per-frame state without accessing GL, called before the
+	 * renderable is drawn.
+	 */
+	public void prepare() {
+		shader.refresh();
+	}
+
+	/**
+	 * Prepare the renderable and record its draw commands, see
+	 * {@link IShader#record(CommandBuffer, IVertexBuffer)}.
+	 */
+	public void record(CommandBuffer commands) {
+		prepare();
+		shader.record(commands, buffer);
 	}
 
 	public void render(GL3 gl) {
@@ -81,6 +122,29 @@ public final class Renderable {
 		return buffer;
 	}
 
+	/**
+	 * Get the bounds of the transformed positions of the last geometry update.
+	 */
+	public BoundingBox getBounds() {
+		return bounds;
+	}
+
+	/**
+	 * Get the number of geometry updates, e.g. to detect changes of shadow
+	 * casters.
+	 */
+	public int getVersion() {
+		return version;
+	}
+
+	/**
+	 * Get the adjacency buffer for silhouette shadow volumes, or null if this
+	 * renderable was not created with shadow adjacency.
+	 */
+	public AdjacencyBuffer getAdjacencyBuffer() {
+		return adjacency;
+	}
+
 	@Override
 	public String toString() {
 		return "renderable[queue=" + getQueue() + " shader=" + shader + " buffer=" + buffer + "]";
@@ -30,10 +30,7 @@
 package ch.fhnw.ether.render;
 
 import java.util.Collection;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.function.Supplier;
 
 import ch.fhnw.ether.render.shader.IShader;
@@ -42,6 +39,7 @@ import ch.fhnw.ether.render.shader.builtin.PointShader;
 import ch.fhnw.ether.render.shader.builtin.ShadedTriangleShader;
 import ch.fhnw.ether.render.shader.builtin.UnshadedTriangleShader;
 import ch.fhnw.ether.render.variable.IShaderUniform;
+import ch.fhnw.ether.scene.attribute.AttributeTable;
 import ch.fhnw.ether.scene.attribute.IAttribute;
 import ch.fhnw.ether.scene.mesh.material.ColorMapMaterial;
 import ch.fhnw.ether.scene.mesh.material.ColorMaterial;
@@ -52,26 +50,22 @@ import ch.fhnw.util.Pair;
 
 public final class ShaderBuilder {
 	private static final class Attributes {
-		final Map<IAttribute, Pair<Integer, Supplier<?>>> attributes = new HashMap<>();
+		final AttributeTable<Pair<Integer, Supplier<?>>> attributes = new AttributeTable<>();
 
 		void provide(IAttribute attribute, Pair<Integer, Supplier<?>> link) {
-			if (attributes.put(attribute, link) != null)
+			if (!attributes.put(attribute, link))
 				throw new IllegalArgumentException("duplicate attribute: " + attribute);
 		}
 
 		Pair<Integer, Supplier<?>> getSupplier(IShader shader, IShaderUniform<?> uniform) {
-			for (Entry<IAttribute, Pair<Integer, Supplier<?>>> entry : attributes.entrySet()) {
-				if (entry.getKey().id().equals(uniform.id()))
-					return entry.getValue();
-			}
-			throw new IllegalArgumentException("shader " + shader + " requires uniform attribute " + uniform.id());
+			if (!attributes.contains(uniform.index()))
+				throw new IllegalArgumentException("shader " + shader + " requires uniform attribute " + uniform.id());
+			return attributes.get(uniform.index());
 		}
 
 		@Override
 		public String toString() {
-			final StringBuffer s = new StringBuffer();
-			attributes.forEach((key, value) -> s.append("[").append(key).append(", ").append(value).append("] "));
-			return s.toString();
+			return attributes.toString();
 		}
 	}
 
@@ -95,7 +89,7 @@ public final class ShaderBuilder {
 
 		// create shader and attach all attributes this shader requires
 		if (shader == null)
-			shader = (S) createShader(material, Collections.unmodifiableSet(attributes.attributes.keySet()));
+			shader = (S) createShader(material, attributes.attributes.getAttributes());
 
 		// attach material attributes to uniforms
 		for (IShaderUniform<?> uniform : shader.getUniforms()) {
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2013 - 2015 Stefan Muller Arisona, Simon Schubiger, Samuel von Stachelski
+ * Copyright (c) 2013 - 2015 FHNW & ETH Zurich
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *  Neither the name of FHNW / ETH Zurich nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ch.fhnw.ether.render;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import com.jogamp.opengl.GL3;
+
+import ch.fhnw.ether.render.gl.FloatUniformBuffer;
+import ch.fhnw.ether.render.variable.builtin.ShadowUniformBlock;
+import ch.fhnw.ether.scene.attribute.IAttribute;
+import ch.fhnw.ether.scene.mesh.material.Texture;
+
+/**
+ * Per view shadow map state passed to the shaded shaders: the shadow atlas,
+ * the tile parameters and the first tile of each light (see
+ * {@link ShadowUniformBlock}). Without shadow maps, all lights are unshadowed.
+ */
+public final class ShadowInfo {
+	private final FloatUniformBuffer uniforms = new FloatUniformBuffer(ShadowUniformBlock.BLOCK_SIZE);
+	private final float[]            block    = new float[ShadowUniformBlock.BLOCK_SIZE];
+
+	private int[]   tiles = new int[0];
+	private Texture shadowMap;
+	private boolean loaded;
+
+	public ShadowInfo() {
+	}
+
+	/**
+	 * Get the first atlas tile of a light, or -1 if the light has no shadow
+	 * map.
+	 */
+	public int getTile(int light) {
+		return light < tiles.length ? tiles[light] : -1;
+	}
+
+	/**
+	 * Set the shadow map state of the current view.
+	 * 
+	 * @param shadowMap
+	 *            the shadow atlas
+	 * @param tiles
+	 *            first atlas tile per light, -1 for lights without shadow map
+	 * @param block
+	 *            data of the shadow uniform block
+	 */
+	public void update(GL3 gl, Texture shadowMap, int[] tiles, float[] block) {
+		this.shadowMap = shadowMap;
+		this.tiles = tiles;
+		System.arraycopy(block, 0, this.block, 0, this.block.length);
+		load(gl);
+	}
+
+	/**
+	 * Disable shadow maps for the current view.
+	 */
+	public void clear(GL3 gl) {
+		tiles = new int[0];
+		shadowMap = null;
+		if (!loaded) {
+			Arrays.fill(block, 0);
+			load(gl);
+		} else {
+			uniforms.bind(gl);
+		}
+	}
+
+	/**
+	 * Bind the current state to the given context without reloading it.
+	 */
+	public void bind(GL3 gl) {
+		uniforms.bind(gl);
+	}
+
+	public void getAttributes(Map<IAttribute, Supplier<?>> globals) {
+		globals.put(ShadowUniformBlock.ATTRIBUTE, uniforms::getBindingPoint);
+		globals.put(ShadowUniformBlock.SHADOW_MAP, () -> shadowMap);
+	}
+
+	private void load(GL3 gl) {
+		uniforms.load(gl, (blockIndex, buffer) -> buffer.put(block));
+		uniforms.bind(gl);
+		loaded = true;
+	}
+}
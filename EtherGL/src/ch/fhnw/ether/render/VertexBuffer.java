@@ -29,9 +29,10 @@
 
 package ch.fhnw.ether.render;
 
-import java.nio.FloatBuffer;
+import java.nio.ByteBuffer;
 import java.util.List;
 
+import com.jogamp.common.util.VersionNumber;
 import com.jogamp.opengl.GL;
 import com.jogamp.opengl.GL3;
 
@@ -39,21 +40,34 @@ import ch.fhnw.ether.render.gl.FloatArrayBuffer;
 import ch.fhnw.ether.render.gl.IArrayBuffer;
 import ch.fhnw.ether.render.shader.IShader;
 import ch.fhnw.ether.render.variable.IShaderArray;
+import ch.fhnw.ether.render.variable.IShaderVariable;
+import ch.fhnw.ether.scene.attribute.AttributeTable;
+import ch.fhnw.ether.scene.mesh.geometry.IGeometry.Format;
 import ch.fhnw.ether.scene.mesh.geometry.IGeometry.IGeometryAttribute;
 import ch.fhnw.util.BufferUtilities;
+import ch.fhnw.util.math.MathUtilities;
 
-// TODO: deal with max vbo size & multiple vbos, memory optimization, handle non-float arrays, indexed buffers
+// TODO: deal with max vbo size & multiple vbos, indexed buffers
 
+/**
+ * Interleaved vertex buffer. Attributes are converted to their storage format
+ * (see IGeometry.Format) while interleaving, each attribute starts at a 4 byte
+ * boundary.
+ */
 public final class VertexBuffer implements IVertexBuffer {
-	private static final ThreadLocal<FloatBuffer> TARGET = 
-			ThreadLocal.withInitial(() -> BufferUtilities.createDirectFloatBuffer(1024 * 1024));
+	private static final ThreadLocal<ByteBuffer> TARGET = 
+			ThreadLocal.withInitial(() -> BufferUtilities.createDirectByteBuffer(4 * 1024 * 1024));
+
+	private static final VersionNumber GL_3_3 = new VersionNumber(3, 3, 0);
 
 	private final FloatArrayBuffer buffer = new FloatArrayBuffer();
 
-	private final int stride;
 	private final int[] sizes;
-	private final int[] offsets;
+	private final Format[] formats;
 	private final int[] attributeIndices;
+	private final int[] offsets;
+	private int stride;
+	private boolean resolved;
 
 	public VertexBuffer(IShader shader, IGeometryAttribute[] attributes) {
 		List<IShaderArray<?>> arrays = shader.getArrays();
@@ -61,49 +75,46 @@ public final class VertexBuffer implements IVertexBuffer {
 			throw new IllegalArgumentException("shader " + shader + " does not define any vertex arrays");
 
 		sizes = new int[arrays.size()];
+		formats = new Format[arrays.size()];
 		offsets = new int[arrays.size()];
 		attributeIndices = new int[arrays.size()];
 
-		int stride = 0;
+		AttributeTable<Integer> geometry = new AttributeTable<>();
+		for (int i = 0; i < attributes.length; ++i)
+			geometry.put(attributes[i], i);
+
 		int bufferIndex = 0;
 		for (IShaderArray<?> array : arrays) {
-			int attributeIndex = 0;
-			for (IGeometryAttribute attribute : attributes) {
-				if (array.id().equals(attribute.id())) {
-					int size = attribute.getNumComponents();
-					sizes[bufferIndex] = size;
-					offsets[bufferIndex] = stride;
-					attributeIndices[bufferIndex] = attributeIndex;
-					array.setBufferIndex(bufferIndex);
-					bufferIndex++;
-					stride += size;
-					break;
-				}
-				attributeIndex++;
-			}
-			if (attributeIndex == attributes.length)
+			if (!geometry.contains(array.index()))
 				throw new IllegalArgumentException("shader " + shader + " requires attribute " + array.id());
+			int attributeIndex = geometry.get(array.index());
+			IGeometryAttribute attribute = attributes[attributeIndex];
+			sizes[bufferIndex] = attribute.getNumComponents();
+			formats[bufferIndex] = attribute.getFormat();
+			attributeIndices[bufferIndex] = attributeIndex;
+			array.setBufferIndex(bufferIndex);
+			bufferIndex++;
 		}
-		this.stride = stride;
+		layout();
 	}
 
 	public void update(GL3 gl, float[][] data) {
+		if (!resolved)
+			resolve(gl);
+
 		float[][] sources = new float[attributeIndices.length][];
+		for (int attributeIndex = 0; attributeIndex < attributeIndices.length; ++attributeIndex)
+			sources[attributeIndex] = data[attributeIndices[attributeIndex]];
 
-		int size = 0;
-		for (int attributeIndex = 0; attributeIndex < attributeIndices.length; ++attributeIndex) {
-			float[] source = data[attributeIndices[attributeIndex]];
-			sources[attributeIndex] = source;
-			size += source.length;
-		}
-		FloatBuffer buffer = TARGET.get();
+		int size = sources[0].length / sizes[0] * stride;
+		ByteBuffer buffer = TARGET.get();
 		if (buffer.capacity() < size) {
-			buffer = BufferUtilities.createDirectFloatBuffer(2 * size);
+			buffer = BufferUtilities.createDirectByteBuffer(2 * size);
 			TARGET.set(buffer);
 		}
 		buffer.clear();
 		buffer.limit(size);
-		interleave(buffer, sources, sizes);
+		interleave(buffer, sources, sizes, formats, offsets, stride);
 		this.buffer.load(gl, buffer);
 	}
 	
@@ -112,6 +123,13 @@ public final class VertexBuffer implements IVertexBuffer {
 		return buffer.size() / stride;
 	}
 
+	/**
+	 * Get the size of a vertex in bytes.
+	 */
+	public int getStride() {
+		return stride;
+	}
+
 	@Override
 	public void bind(GL3 gl) {
 		buffer.bind(gl);
@@ -125,9 +143,19 @@ public final class VertexBuffer implements IVertexBuffer {
 	@Override
 	public void enableAttribute(GL3 gl, int bufferIndex, int shaderIndex) {
 		if (!buffer.isEmpty()) {
+			Format format = formats[bufferIndex];
 			gl.glEnableVertexAttribArray(shaderIndex);
-			gl.glVertexAttribPointer(shaderIndex, sizes[bufferIndex], GL.GL_FLOAT, false, stride * 4,
-					offsets[bufferIndex] * 4);
+			gl.glVertexAttribPointer(shaderIndex, format == Format.SNORM_10_10_10_2 ? 4 : sizes[bufferIndex], getType(format),
+					format != Format.FLOAT && format != Format.HALF_FLOAT, stride, offsets[bufferIndex]);
+		}
+	}
+
+	@Override
+	public void recordAttribute(CommandBuffer commands, int bufferIndex, IShaderVariable<?> variable) {
+		if (!buffer.isEmpty()) {
+			Format format = formats[bufferIndex];
+			commands.vertexAttribute(variable, format == Format.SNORM_10_10_10_2 ? 4 : sizes[bufferIndex], getType(format),
+					format != Format.FLOAT && format != Format.HALF_FLOAT, stride, offsets[bufferIndex]);
 		}
 	}
 
@@ -143,11 +171,92 @@ public final class VertexBuffer implements IVertexBuffer {
 		return buffer.size() + " " + stride;
 	}
 
-	private static void interleave(FloatBuffer target, float[][] data, int[] sizes) {
-		for (int i = 0; i < data[0].length / sizes[0]; ++i) {
-			for (int j = 0; j < data.length; ++j) {
-				int k = (i * sizes[j]) % data[j].length;
-				target.put(data[j], k, sizes[j]);
+	// packed 10:10:10:2 attributes require GL 3.3
+	private void resolve(GL3 gl) {
+		if (gl.getContext().getGLVersionNumber().compareTo(GL_3_3) < 0 && !gl.isExtensionAvailable("GL_ARB_vertex_type_2_10_10_10_rev")) {
+			for (int i = 0; i < formats.length; ++i)
+				if (formats[i] == Format.SNORM_10_10_10_2)
+					formats[i] = Format.SNORM_16;
+			layout();
+		}
+		resolved = true;
+	}
+
+	private void layout() {
+		int stride = 0;
+		for (int i = 0; i < sizes.length; ++i) {
+			offsets[i] = stride;
+			stride += getNumBytes(formats[i], sizes[i]);
+		}
+		this.stride = stride;
+	}
+
+	/**
+	 * Get the number of bytes of an attribute with the given format and number
+	 * of components, padded to 4 bytes.
+	 */
+	static int getNumBytes(Format format, int size) {
+		switch (format) {
+		case HALF_FLOAT:
+		case SNORM_16:
+			return (2 * size + 3) & ~3;
+		case UNORM_8:
+			return (size + 3) & ~3;
+		case SNORM_10_10_10_2:
+			return 4;
+		default:
+			return 4 * size;
+		}
+	}
+
+	private static int getType(Format format) {
+		switch (format) {
+		case HALF_FLOAT:
+			return GL.GL_HALF_FLOAT;
+		case UNORM_8:
+			return GL.GL_UNSIGNED_BYTE;
+		case SNORM_16:
+			return GL.GL_SHORT;
+		case SNORM_10_10_10_2:
+			return GL3.GL_INT_2_10_10_10_REV;
+		default:
+			return GL.GL_FLOAT;
+		}
+	}
+
+	static void interleave(ByteBuffer target, float[][] data, int[] sizes, Format[] formats, int[] offsets, int stride) {
+		int numVertices = data[0].length / sizes[0];
+		for (int j = 0; j < data.length; ++j) {
+			float[] source = data[j];
+			int size = sizes[j];
+			for (int i = 0, position = offsets[j]; i < numVertices; ++i, position += stride) {
+				int k = (i * size) % source.length;
+				switch (formats[j]) {
+				case FLOAT:
+					for (int c = 0; c < size; ++c)
+						target.putFloat(position + 4 * c, source[k + c]);
+					break;
+				case HALF_FLOAT:
+					for (int c = 0; c < size; ++c)
+						target.putShort(position + 2 * c, MathUtilities.toHalfFloat(source[k + c]));
+					break;
+				case UNORM_8:
+					for (int c = 0; c < size; ++c)
+						target.put(position + c, (byte) Math.round(MathUtilities.clamp(source[k + c], 0, 1) * 255));
+					break;
+				case SNORM_16:
+					for (int c = 0; c < size; ++c)
+						target.putShort(position + 2 * c, (short) Math.round(MathUtilities.clamp(source[k + c], -1, 1) * 32767));
+					break;
+				case SNORM_10_10_10_2:
+					int packed = 0;
+					for (int c = 0; c < Math.min(size, 3); ++c)
+						packed |= (Math.round(MathUtilities.clamp(source[k + c], -1, 1) * 511) & 0x3FF) << (10 * c);
+					if (size == 4)
+						packed |= (Math.round(MathUtilities.clamp(source[k + 3], -1, 1)) & 0x3) << 30;
+					target.putInt(position, packed);
+					break;
+				}
 			}
 		}
 	}
@@ -37,10 +37,13 @@ import com.jogamp.opengl.GL;
 import com.jogamp.opengl.GL3;
 
 import ch.fhnw.ether.render.AbstractRenderer;
+import ch.fhnw.ether.render.CommandBuffer;
 import ch.fhnw.ether.render.Renderable;
+import ch.fhnw.ether.render.gl.GLState;
 import ch.fhnw.ether.scene.camera.IViewCameraState;
 import ch.fhnw.ether.scene.mesh.IMesh;
 import ch.fhnw.ether.scene.mesh.IMesh.Queue;
+import ch.fhnw.ether.scene.mesh.material.TextureStreamer;
 import ch.fhnw.ether.view.IView;
 import ch.fhnw.ether.view.gl.GLContextManager;
 import ch.fhnw.ether.view.gl.GLContextManager.IGLContext;
@@ -80,6 +83,12 @@ public final class ForwardRenderer extends AbstractRenderer {
 
 	private final Thread renderThread;
 	private final BlockingQueue<Runnable> renderQueue = new ArrayBlockingQueue<>(MAX_RENDER_QUEUE_SIZE);
+	private final CommandBuffer commands = new CommandBuffer();
+
+	// target replayed by the command buffer, read by recorded callbacks
+	private IRenderTargetState target;
+	private boolean recorded;
+	private boolean recordedShadowVolumes;
 
 	public ForwardRenderer() {
 		this.renderThread = new Thread(this::runRenderThread, "renderthread");
@@ -93,7 +102,7 @@ public final class ForwardRenderer extends AbstractRenderer {
 
 	@Override
 	public Renderable createRenderable(IMesh mesh) {
-		return new Renderable(mesh, globals.attributes);
+		return new Renderable(null, mesh, globals.attributes, isShadowVolumesEnabled());
 	}
 
 	@Override
@@ -121,7 +130,8 @@ public final class ForwardRenderer extends AbstractRenderer {
 			e.printStackTrace();
 		}
 		
-		// render all views
+		// render all views, sharing buckets and lights where possible
+		beginFrame();
 		renderState.getRenderStates().forEach(targetState -> {
 			IView view = targetState.getView();
 			IViewCameraState vcs = targetState.getViewCameraState();
@@ -135,6 +145,9 @@ public final class ForwardRenderer extends AbstractRenderer {
 				return true;
 			});
 		});
+
+		// refill the texture upload budget once per rendered frame
+		TextureStreamer.frameRendered();
 	}
 
 	private void render(GL3 gl, IRenderTargetState renderState, IView view, IViewCameraState vcs) {
@@ -156,12 +169,30 @@ public final class ForwardRenderer extends AbstractRenderer {
 			if (!view.isEnabled())
 				return;
 
-			// update views and lights
+			long start = System.nanoTime();
+
+			// state may have been changed by render updates or by the view
+			GLState glState = GLState.get(gl);
+			glState.beginFrame();
+
+			// update views, shadows and lights. only the view uniforms change
+			// between views that share renderables and camera.
 			globals.viewInfo.update(gl, vcs);
-			globals.lightInfo.update(gl, vcs, renderState.getLights());
+			boolean rebuilt = updateBuckets(renderState);
+			updateLights(gl, renderState, view, vcs);
 
-			// render everything
-			render(gl, renderState);
+			// record on workers once per frame, then replay on this thread.
+			// views sharing the buckets only replay with their own view block.
+			if (rebuilt || !recorded || recordedShadowVolumes != isShadowVolumesEnabled()) {
+				recorded = false;
+				record(commands);
+				recorded = true;
+			}
+			target = renderState;
+			commands.replay(gl, globals.viewInfo);
+
+			glState.endFrame(gl);
+			setViewRenderTime(view, System.nanoTime() - start);
 
 			int error = gl.glGetError();
 			if (error != 0)
@@ -171,44 +202,50 @@ public final class ForwardRenderer extends AbstractRenderer {
 		}
 	}
 
-	private void render(GL3 gl, IRenderTargetState state) {
+	private void record(CommandBuffer commands) {
+		commands.clear();
+		recorder.begin();
 
-		globals.viewInfo.setCameraSpace(gl);
+		commands.viewSpace(CommandBuffer.CAMERA_SPACE);
 
 		// 1. DEPTH QUEUE (DEPTH WRITE&TEST ENABLED, BLEND OFF)
 		// FIXME: where do we deal with two-sided vs one-sided? mesh options?
 		// shader dependent?
 		// gl.glEnable(GL.GL_CULL_FACE);
-		gl.glEnable(GL.GL_DEPTH_TEST);
-		gl.glEnable(GL.GL_POLYGON_OFFSET_FILL);
-		gl.glPolygonOffset(1, 3);
-		renderObjects(gl, state, Queue.DEPTH);
-		gl.glDisable(GL.GL_POLYGON_OFFSET_FILL);
+		commands.enable(GL.GL_DEPTH_TEST);
+		commands.enable(GL.GL_POLYGON_OFFSET_FILL);
+		commands.polygonOffset(1, 3);
+		recordObjects(commands, Queue.DEPTH);
+		commands.disable(GL.GL_POLYGON_OFFSET_FILL);
 		// gl.glDisable(GL.GL_CULL_FACE);
 
-		if (false)
-			renderShadowVolumes(gl, state, Queue.DEPTH);
+		// shadow volumes are rendered with the lights of the replayed target
+		recordedShadowVolumes = isShadowVolumesEnabled();
+		if (recordedShadowVolumes)
+			commands.call(gl -> renderShadowVolumes(gl, target, Queue.DEPTH));
 
 		// 2. TRANSPARENCY QUEUE (DEPTH WRITE DISABLED, DEPTH TEST ENABLED, BLEND ON)
-		gl.glEnable(GL.GL_BLEND);
-		gl.glDepthMask(false);
-		renderObjects(gl, state, Queue.TRANSPARENCY);
+		commands.enable(GL.GL_BLEND);
+		commands.depthMask(false);
+		recordObjects(commands, Queue.TRANSPARENCY);
 
 		// 3. OVERLAY QUEUE (DEPTH WRITE&TEST DISABLED, BLEND ON)
-		gl.glDisable(GL.GL_DEPTH_TEST);
-		renderObjects(gl, state, Queue.OVERLAY);
+		commands.disable(GL.GL_DEPTH_TEST);
+		recordObjects(commands, Queue.OVERLAY);
 
 		// 4. DEVICE SPACE OVERLAY QUEUE (DEPTH WRITE&TEST DISABLED, BLEND ON)
-		globals.viewInfo.setOrthoDeviceSpace(gl);
-		renderObjects(gl, state, Queue.DEVICE_SPACE_OVERLAY);
+		commands.viewSpace(CommandBuffer.ORTHO_DEVICE_SPACE);
+		recordObjects(commands, Queue.DEVICE_SPACE_OVERLAY);
 
 		// 5. SCREEN SPACE OVERLAY QUEUE(DEPTH WRITE&TEST DISABLED, BLEND ON)
-		globals.viewInfo.setOrthoScreenSpace(gl);
-		renderObjects(gl, state, Queue.SCREEN_SPACE_OVERLAY);
+		commands.viewSpace(CommandBuffer.ORTHO_SCREEN_SPACE);
+		recordObjects(commands, Queue.SCREEN_SPACE_OVERLAY);
 
 		// 6. CLEANUP: RETURN TO DEFAULTS
-		gl.glDisable(GL.GL_BLEND);
-		gl.glDepthMask(true);
+		commands.disable(GL.GL_BLEND);
+		commands.depthMask(true);
+
+		recorder.finish();
 	}
 
 	private void runRenderThread() {
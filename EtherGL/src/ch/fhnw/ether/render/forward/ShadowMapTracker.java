@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2013 - 2015 Stefan Muller Arisona, Simon Schubiger, Samuel von Stachelski
+ * Copyright (c) 2013 - 2015 FHNW & ETH Zurich
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *  Neither the name of FHNW / ETH Zurich nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ch.fhnw.ether.render.forward;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+import ch.fhnw.util.math.geometry.BoundingBox;
+
+/**
+ * Dirty tracking for the shadow map of one light. A shadow map must be
+ * re-rendered if the light's parameters or projection change, if a caster
+ * enters or leaves the light's influence volume, or if a caster inside the
+ * influence volume changes. Casters outside the influence volume are ignored.
+ * Casters are compared by identity and version, e.g. renderables and their
+ * number of geometry updates.
+ *
+ * @param <T>
+ *            caster type
+ */
+public final class ShadowMapTracker<T> {
+	private final Function<T, BoundingBox> bounds;
+	private final ToIntFunction<T>         version;
+
+	private float[]  lightState = null;
+	private Object[] casters    = new Object[16];
+	private int[]    versions   = new int[16];
+	private int      numCasters;
+
+	private Object[] nextCasters  = new Object[16];
+	private int[]    nextVersions = new int[16];
+
+	public ShadowMapTracker(Function<T, BoundingBox> bounds, ToIntFunction<T> version) {
+		this.bounds = bounds;
+		this.version = version;
+	}
+
+	/**
+	 * Update the tracked state.
+	 * 
+	 * @param lightState
+	 *            light parameters and projection, any change makes the map
+	 *            dirty
+	 * @param influence
+	 *            world space sphere x, y, z, radius of the light's influence,
+	 *            or null if the light affects all casters (directional lights)
+	 * @param candidates
+	 *            all shadow casters
+	 * @param inside
+	 *            receives the casters inside the influence volume, may be null
+	 * @return true if the shadow map must be re-rendered
+	 */
+	public boolean update(float[] lightState, float[] influence, List<T> candidates, List<T> inside) {
+		if (inside != null)
+			inside.clear();
+
+		int n = 0;
+		for (T caster : candidates) {
+			if (influence != null && !intersects(bounds.apply(caster), influence))
+				continue;
+			if (n == nextCasters.length) {
+				nextCasters = Arrays.copyOf(nextCasters, 2 * n);
+				nextVersions = Arrays.copyOf(nextVersions, 2 * n);
+			}
+			nextCasters[n] = caster;
+			nextVersions[n] = version.applyAsInt(caster);
+			n++;
+			if (inside != null)
+				inside.add(caster);
+		}
+
+		boolean dirty = !Arrays.equals(this.lightState, lightState) || n != numCasters;
+		for (int i = 0; i < n && !dirty; ++i)
+			dirty = nextCasters[i] != casters[i] || nextVersions[i] != versions[i];
+
+		// swap and release the references of the previous state
+		Object[] c = casters;
+		int[] v = versions;
+		casters = nextCasters;
+		versions = nextVersions;
+		nextCasters = c;
+		nextVersions = v;
+		Arrays.fill(nextCasters, 0, numCasters, null);
+		numCasters = n;
+		this.lightState = lightState.clone();
+		return dirty;
+	}
+
+	/**
+	 * Force re-rendering on the next update, e.g. after the shadow map was
+	 * lost or reallocated.
+	 */
+	public void invalidate() {
+		lightState = null;
+	}
+
+	/**
+	 * Test a bounding box against a sphere x, y, z, radius. Invalid (empty)
+	 * bounds never intersect.
+	 */
+	public static boolean intersects(BoundingBox b, float[] sphere) {
+		if (!b.isValid())
+			return false;
+		float dx = Math.max(0, Math.max(b.getMinX() - sphere[0], sphere[0] - b.getMaxX()));
+		float dy = Math.max(0, Math.max(b.getMinY() - sphere[1], sphere[1] - b.getMaxY()));
+		float dz = Math.max(0, Math.max(b.getMinZ() - sphere[2], sphere[2] - b.getMaxZ()));
+		return dx * dx + dy * dy + dz * dz <= sphere[3] * sphere[3];
+	}
+}
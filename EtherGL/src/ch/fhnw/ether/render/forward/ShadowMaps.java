@@ -0,0 +1,417 @@
+/*
+ * Copyright (c) 2013 - 2015 Stefan Muller Arisona, Simon Schubiger, Samuel von Stachelski
+ * Copyright (c) 2013 - 2015 FHNW & ETH Zurich
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *  Neither the name of FHNW / ETH Zurich nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ch.fhnw.ether.render.forward;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import com.jogamp.opengl.GL;
+import com.jogamp.opengl.GL3;
+import com.jogamp.opengl.GLContext;
+
+import ch.fhnw.ether.render.Renderable;
+import ch.fhnw.ether.render.ShaderBuilder;
+import ch.fhnw.ether.render.ShadowInfo;
+import ch.fhnw.ether.render.gl.FrameBuffer;
+import ch.fhnw.ether.render.gl.GLObject;
+import ch.fhnw.ether.render.gl.GLObject.Type;
+import ch.fhnw.ether.render.gl.GLState;
+import ch.fhnw.ether.render.shader.builtin.ShadowMapShader;
+import ch.fhnw.ether.render.variable.builtin.ShadowUniformBlock;
+import ch.fhnw.ether.scene.attribute.IAttribute;
+import ch.fhnw.ether.scene.camera.IViewCameraState;
+import ch.fhnw.ether.scene.light.GenericLight.LightSource;
+import ch.fhnw.ether.scene.light.ILight;
+import ch.fhnw.ether.scene.mesh.material.Texture;
+import ch.fhnw.util.Viewport;
+import ch.fhnw.util.math.Mat4;
+import ch.fhnw.util.math.Vec3;
+import ch.fhnw.util.math.Vec4;
+import ch.fhnw.util.math.geometry.BoundingBox;
+
+/**
+ * Shadow map pass. Depth maps of the shadowed lights are rendered into tiles
+ * of a shared depth atlas: four cascades for directional lights, one
+ * perspective tile for spot lights. Point lights are not shadowed. A tile is
+ * only re-rendered if its light, its projection or the casters within the
+ * light's influence changed (see {@link ShadowMapTracker}). Note that cascades
+ * follow the camera, so they are re-rendered whenever the camera moves by more
+ * than a shadow map texel.
+ * <p>
+ * The atlas is sized to the tiles in use, with {@link #setTileSize(int)}
+ * texels per tile side, and only grows: one directional light needs 2 x 2
+ * tiles, i.e. 16 MB at the default tile size, one spot light needs a single
+ * tile. Cascades depend on the camera, so views with directional lights need
+ * their own instance, spot light tiles can be shared by any number of views.
+ * The atlas texture is shared between contexts, framebuffers are not, so each
+ * context renders into the atlas through its own framebuffer.
+ */
+public final class ShadowMaps {
+	public static final int DEFAULT_TILE_SIZE = 1024;
+	public static final int NUM_CASCADES      = 4;
+
+	private static final float CASCADE_LAMBDA = 0.75f;
+	private static final float DEPTH_BIAS     = 0.0005f;
+	private static final float MIN_NEAR       = 0.05f;
+
+	private static final AtomicInteger INSTANCES = new AtomicInteger();
+
+	/**
+	 * Framebuffer of a context and the atlas it is attached to.
+	 */
+	private static final class AtlasTarget {
+		final Texture     atlas;
+		final FrameBuffer fbo;
+
+		AtlasTarget(Texture atlas, FrameBuffer fbo) {
+			this.atlas = atlas;
+			this.fbo = fbo;
+		}
+	}
+
+	private final String key = ShadowMaps.class.getName() + "#" + INSTANCES.incrementAndGet();
+
+	private final ShadowMapShader depthShader;
+	private final float[]         block = new float[ShadowUniformBlock.BLOCK_SIZE];
+	private final List<Renderable> inside = new ArrayList<>();
+
+	private final Map<ILight, ShadowMapTracker<Renderable>> trackers = new IdentityHashMap<>();
+
+	private Texture     atlas;
+	private Mat4        lightViewProjMatrix = Mat4.ID;
+	private float       shadowDistance = 100;
+	private int         tileSize       = DEFAULT_TILE_SIZE;
+	private int         tilesPerSide;
+
+	private int renderedTiles;
+
+	public ShadowMaps(Map<IAttribute, Supplier<?>> globals) {
+		depthShader = ShaderBuilder.create(new ShadowMapShader(() -> lightViewProjMatrix), null, globals);
+	}
+
+	/**
+	 * Set the distance from the camera covered by the cascades of directional
+	 * lights. Also limits the range of spot light shadows.
+	 */
+	public void setShadowDistance(float shadowDistance) {
+		this.shadowDistance = shadowDistance;
+	}
+
+	/**
+	 * Set the size in texels of a shadow map tile side. Reallocates the atlas
+	 * on the next update if changed.
+	 */
+	public void setTileSize(int tileSize) {
+		if (tileSize < 1)
+			throw new IllegalArgumentException("tile size must be positive: " + tileSize);
+		this.tileSize = tileSize;
+	}
+
+	public int getTileSize() {
+		return tileSize;
+	}
+
+	/**
+	 * Get the number of tiles rendered by the last update.
+	 */
+	public int getRenderedTiles() {
+		return renderedTiles;
+	}
+
+	/**
+	 * Assign atlas tiles to lights, re-render dirty tiles and update the
+	 * shadow info of the view. Leaves the view's framebuffer and viewport
+	 * bound.
+	 */
+	public void update(GL3 gl, IViewCameraState vcs, List<ILight> lights, List<Renderable> casters, ShadowInfo info) {
+		int numTiles = 0;
+		for (ILight light : lights) {
+			int needed = getNumTiles(light.getLightSource());
+			if (numTiles + needed <= ShadowUniformBlock.MAX_TILES)
+				numTiles += needed;
+		}
+		int side = Math.max(1, (int) Math.ceil(Math.sqrt(numTiles)));
+		if (atlas == null || atlas.getWidth() != tileSize * tilesPerSide || side > tilesPerSide)
+			createAtlas(gl, Math.max(side, atlas == null ? 1 : tilesPerSide));
+
+		Arrays.fill(block, 0);
+		int[] tiles = new int[lights.size()];
+		Arrays.fill(tiles, -1);
+		renderedTiles = 0;
+
+		Mat4 viewInv = vcs.getViewMatrix().inverse();
+		BoundingBox casterBounds = new BoundingBox();
+		for (Renderable caster : casters)
+			casterBounds.add(caster.getBounds());
+
+		int[] previousFbo = { 0 };
+		boolean bound = false;
+
+		Map<ILight, ShadowMapTracker<Renderable>> active = new IdentityHashMap<>();
+		int next = 0;
+		for (int i = 0; i < lights.size(); ++i) {
+			ILight light = lights.get(i);
+			LightSource source = light.getLightSource();
+			int needed = getNumTiles(source);
+			if (needed == 0 || next + needed > ShadowUniformBlock.MAX_TILES)
+				continue;
+
+			Mat4[] matrices = new Mat4[needed];
+			float[] depths = new float[needed];
+			float[] influence;
+			if (needed == 1) {
+				influence = spotMatrix(source, matrices);
+				depths[0] = Float.MAX_VALUE;
+			} else {
+				cascadeMatrices(vcs, viewInv, source, casterBounds, matrices, depths);
+				influence = null;
+			}
+
+			float[] state = new float[1 + 16 * needed];
+			state[0] = next;
+			for (int c = 0; c < needed; ++c)
+				System.arraycopy(matrices[c].toArray(), 0, state, 1 + 16 * c, 16);
+
+			ShadowMapTracker<Renderable> tracker = trackers.get(light);
+			if (tracker == null)
+				tracker = new ShadowMapTracker<>(Renderable::getBounds, Renderable::getVersion);
+			active.put(light, tracker);
+			boolean dirty = tracker.update(state, influence, casters, inside);
+
+			for (int c = 0; c < needed; ++c) {
+				int tile = next + c;
+				setTile(tile, matrices[c], viewInv, depths[c], needed);
+				if (dirty) {
+					if (!bound) {
+						gl.glGetIntegerv(GL3.GL_DRAW_FRAMEBUFFER_BINDING, previousFbo, 0);
+						beginRender(gl, previousFbo[0]);
+						bound = true;
+					}
+					renderTile(gl, tile, matrices[c], inside);
+				}
+			}
+			tiles[i] = next;
+			next += needed;
+		}
+		inside.clear();
+		trackers.clear();
+		trackers.putAll(active);
+
+		if (bound)
+			endRender(gl, previousFbo[0], vcs.getViewport());
+
+		info.update(gl, atlas, tiles, block);
+	}
+
+	private static int getNumTiles(LightSource source) {
+		switch (source.getType()) {
+		case DIRECTIONAL_LIGHT:
+			return NUM_CASCADES;
+		case SPOT_LIGHT:
+			return 1;
+		default:
+			return 0;
+		}
+	}
+
+	// perspective projection along the spot direction, returns the influence sphere
+	private float[] spotMatrix(LightSource source, Mat4[] matrices) {
+		Vec4 p = source.getPosition();
+		Vec3 position = new Vec3(p.x, p.y, p.z);
+		Vec3 direction = source.getSpotDirection().normalize();
+		Vec3 up = Math.abs(direction.z) > 0.99f ? Vec3.Y : Vec3.Z;
+		float far = Math.min(source.getRange(), shadowDistance);
+		float near = Math.max(MIN_NEAR, far * 0.001f);
+		float angle = (float) Math.toDegrees(2 * Math.acos(Math.max(-1, Math.min(1, source.getSpotCosCutoff()))));
+		angle = Math.max(1, Math.min(170, angle));
+		matrices[0] = Mat4.multiply(Mat4.perspective(angle, 1, near, far), Mat4.lookAt(position, position.add(direction), up));
+		return new float[] { p.x, p.y, p.z, far };
+	}
+
+	// orthographic projections along the light direction around the bounding
+	// spheres of the cascade slices of the view frustum, snapped to texels
+	private void cascadeMatrices(IViewCameraState vcs, Mat4 viewInv, LightSource source, BoundingBox casterBounds, Mat4[] matrices, float[] depths) {
+		Mat4 proj = vcs.getProjMatrix();
+		boolean ortho = proj.m32 == 0;
+		float near = ortho ? (proj.m23 + 1) / proj.m22 : proj.m23 / (proj.m22 - 1);
+		float far = ortho ? (proj.m23 - 1) / proj.m22 : proj.m22 == -1 ? Float.POSITIVE_INFINITY : proj.m23 / (proj.m22 + 1);
+		far = Math.min(far, shadowDistance);
+		near = Math.min(near, far);
+
+		Vec4 p = source.getPosition();
+		Vec3 direction = new Vec3(-p.x, -p.y, -p.z);
+		Vec3 up = Math.abs(direction.z) > 0.99f ? Vec3.Y : Vec3.Z;
+		Mat4 rotation = Mat4.lookAt(Vec3.ZERO, direction, up);
+
+		// casters towards the light extend the depth range
+		float casterMaxZ = Float.NEGATIVE_INFINITY;
+		if (casterBounds.isValid()) {
+			for (int k = 0; k < 8; ++k) {
+				Vec3 corner = new Vec3((k & 1) == 0 ? casterBounds.getMinX() : casterBounds.getMaxX(), (k & 2) == 0 ? casterBounds.getMinY() : casterBounds.getMaxY(), (k & 4) == 0 ? casterBounds.getMinZ() : casterBounds.getMaxZ());
+				casterMaxZ = Math.max(casterMaxZ, rotation.transform(corner).z);
+			}
+		}
+
+		float d0 = near;
+		for (int c = 0; c < matrices.length; ++c) {
+			float s = (float) (c + 1) / matrices.length;
+			float d1 = CASCADE_LAMBDA * (float) (near * Math.pow(far / near, s)) + (1 - CASCADE_LAMBDA) * (near + (far - near) * s);
+
+			// bounding sphere of the slice corners in world space
+			Vec3[] corners = new Vec3[8];
+			Vec3 center = Vec3.ZERO;
+			for (int k = 0; k < 8; ++k) {
+				float d = (k & 4) == 0 ? d0 : d1;
+				float nx = (k & 1) == 0 ? -1 : 1;
+				float ny = (k & 2) == 0 ? -1 : 1;
+				float x = ortho ? (nx - proj.m03) / proj.m00 : d * (nx + proj.m02) / proj.m00;
+				float y = ortho ? (ny - proj.m13) / proj.m11 : d * (ny + proj.m12) / proj.m11;
+				corners[k] = viewInv.transform(new Vec3(x, y, -d));
+				center = center.add(corners[k]);
+			}
+			center = center.scale(1f / 8);
+			float radius = 0;
+			for (Vec3 corner : corners)
+				radius = Math.max(radius, corner.subtract(center).length());
+			radius = (float) Math.ceil(radius * 16) / 16;
+
+			// snap to texels to avoid shimmering when the camera moves
+			Vec3 lc = rotation.transform(center);
+			float texel = 2 * radius / tileSize;
+			float cx = (float) Math.floor(lc.x / texel) * texel;
+			float cy = (float) Math.floor(lc.y / texel) * texel;
+			float maxZ = Math.max(lc.z + radius, casterMaxZ);
+			float minZ = lc.z - radius;
+
+			matrices[c] = Mat4.multiply(Mat4.ortho(cx - radius, cx + radius, cy - radius, cy + radius, -maxZ, -minZ), rotation);
+			depths[c] = d1;
+			d0 = d1;
+		}
+	}
+
+	private void setTile(int tile, Mat4 lightViewProj, Mat4 viewInv, float depth, int numCascades) {
+		float size = 1f / tilesPerSide;
+		float u0 = (tile % tilesPerSide) * size;
+		float v0 = (tile / tilesPerSide) * size;
+		Mat4 toTile = Mat4.multiply(Mat4.translate(u0 + size / 2, v0 + size / 2, 0.5f), Mat4.scale(size / 2, size / 2, 0.5f));
+		System.arraycopy(Mat4.multiply(toTile, lightViewProj, viewInv).toArray(), 0, block, ShadowUniformBlock.MATRICES + 16 * tile, 16);
+
+		// keep lookups half a texel inside the tile
+		float inset = 0.5f / (tileSize * tilesPerSide);
+		int t = ShadowUniformBlock.TILES + 4 * tile;
+		block[t] = u0 + inset;
+		block[t + 1] = v0 + inset;
+		block[t + 2] = u0 + size - inset;
+		block[t + 3] = v0 + size - inset;
+
+		int c = ShadowUniformBlock.CASCADES + 4 * tile;
+		block[c] = depth;
+		block[c + 1] = numCascades;
+		block[c + 2] = DEPTH_BIAS;
+	}
+
+	private void beginRender(GL3 gl, int previousFbo) {
+		GLState glState = GLState.get(gl);
+		getFrameBuffer(gl, previousFbo).bind(gl);
+		glState.disable(gl, GL.GL_BLEND);
+		glState.enable(gl, GL.GL_DEPTH_TEST);
+		glState.depthMask(gl, true);
+		glState.enable(gl, GL.GL_SCISSOR_TEST);
+		glState.enable(gl, GL.GL_POLYGON_OFFSET_FILL);
+		glState.polygonOffset(gl, 2, 4);
+	}
+
+	private void renderTile(GL3 gl, int tile, Mat4 lightViewProj, List<Renderable> casters) {
+		int x = (tile % tilesPerSide) * tileSize;
+		int y = (tile / tilesPerSide) * tileSize;
+		gl.glViewport(x, y, tileSize, tileSize);
+		gl.glScissor(x, y, tileSize, tileSize);
+		gl.glClear(GL.GL_DEPTH_BUFFER_BIT);
+
+		lightViewProjMatrix = lightViewProj;
+		depthShader.update(gl, null);
+		depthShader.enable(gl);
+		for (Renderable caster : casters)
+			depthShader.render(gl, caster.getBuffer());
+		depthShader.disable(gl);
+		renderedTiles++;
+	}
+
+	private void endRender(GL3 gl, int previousFbo, Viewport viewport) {
+		GLState glState = GLState.get(gl);
+		glState.disable(gl, GL.GL_SCISSOR_TEST);
+		glState.disable(gl, GL.GL_POLYGON_OFFSET_FILL);
+		gl.glBindFramebuffer(GL3.GL_DRAW_FRAMEBUFFER, previousFbo);
+		gl.glViewport(viewport.x, viewport.y, viewport.w, viewport.h);
+	}
+
+	private void createAtlas(GL3 gl, int tilesPerSide) {
+		this.tilesPerSide = tilesPerSide;
+		int size = tileSize * tilesPerSide;
+		GLObject depth = new GLObject(gl, Type.TEXTURE);
+		GLState glState = GLState.get(gl);
+		glState.bindTexture(gl, GL.GL_TEXTURE_2D, depth.getId());
+		gl.glTexImage2D(GL.GL_TEXTURE_2D, 0, GL.GL_DEPTH_COMPONENT24, size, size, 0, GL3.GL_DEPTH_COMPONENT, GL.GL_FLOAT, null);
+		gl.glTexParameteri(GL.GL_TEXTURE_2D, GL.GL_TEXTURE_MIN_FILTER, GL.GL_LINEAR);
+		gl.glTexParameteri(GL.GL_TEXTURE_2D, GL.GL_TEXTURE_MAG_FILTER, GL.GL_LINEAR);
+		gl.glTexParameteri(GL.GL_TEXTURE_2D, GL.GL_TEXTURE_WRAP_S, GL.GL_CLAMP_TO_EDGE);
+		gl.glTexParameteri(GL.GL_TEXTURE_2D, GL.GL_TEXTURE_WRAP_T, GL.GL_CLAMP_TO_EDGE);
+		gl.glTexParameteri(GL.GL_TEXTURE_2D, GL3.GL_TEXTURE_COMPARE_MODE, GL3.GL_COMPARE_REF_TO_TEXTURE);
+		gl.glTexParameteri(GL.GL_TEXTURE_2D, GL3.GL_TEXTURE_COMPARE_FUNC, GL.GL_LEQUAL);
+		atlas = new Texture(depth, size, size);
+
+		trackers.values().forEach(ShadowMapTracker::invalidate);
+	}
+
+	// framebuffer of the current context, attached to the atlas on first use
+	// and whenever the atlas was reallocated
+	private FrameBuffer getFrameBuffer(GL3 gl, int previousFbo) {
+		GLContext context = gl.getContext();
+		AtlasTarget target = (AtlasTarget) context.getAttachedObject(key);
+		if (target != null && target.atlas == atlas)
+			return target.fbo;
+
+		FrameBuffer fbo = new FrameBuffer(gl);
+		fbo.bind(gl);
+		fbo.attach(gl, GL.GL_DEPTH_ATTACHMENT, atlas);
+		gl.glDrawBuffer(GL.GL_NONE);
+		int status = fbo.checkStatus(gl);
+		if (status != GL3.GL_FRAMEBUFFER_COMPLETE) {
+			gl.glBindFramebuffer(GL3.GL_DRAW_FRAMEBUFFER, previousFbo);
+			throw new IllegalStateException("shadow atlas framebuffer incomplete: " + FrameBuffer.toString(status));
+		}
+		context.attachObject(key, new AtlasTarget(atlas, fbo));
+		return fbo;
+	}
+}
@@ -36,24 +36,30 @@ import java.util.function.Supplier;
 import com.jogamp.opengl.GL;
 import com.jogamp.opengl.GL3;
 
+import ch.fhnw.ether.render.AdjacencyBuffer;
 import ch.fhnw.ether.render.Renderable;
 import ch.fhnw.ether.render.ShaderBuilder;
+import ch.fhnw.ether.render.gl.GLState;
 import ch.fhnw.ether.render.shader.builtin.ShadowVolumeShader;
 import ch.fhnw.ether.render.shader.builtin.TrivialDeviceSpaceShader;
 import ch.fhnw.ether.scene.attribute.IAttribute;
+import ch.fhnw.ether.scene.light.GenericLight.LightSource;
+import ch.fhnw.ether.scene.light.ILight;
 import ch.fhnw.ether.scene.mesh.DefaultMesh;
 import ch.fhnw.ether.scene.mesh.IMesh;
-import ch.fhnw.ether.scene.mesh.IMesh.Flag;
 import ch.fhnw.ether.scene.mesh.MeshUtilities;
 import ch.fhnw.ether.scene.mesh.geometry.DefaultGeometry;
 import ch.fhnw.ether.scene.mesh.geometry.IGeometry.Primitive;
 import ch.fhnw.ether.scene.mesh.material.EmptyMaterial;
 import ch.fhnw.util.color.RGBA;
+import ch.fhnw.util.math.Vec4;
+import ch.fhnw.util.math.geometry.BoundingBox;
 
 public final class ShadowVolumes {
 	private static final IMesh OVERLAY_MESH = new DefaultMesh(new EmptyMaterial(), DefaultGeometry.createV(Primitive.TRIANGLES, MeshUtilities.DEFAULT_QUAD_TRIANGLES));
 
 	private ShadowVolumeShader volumeShader;
+	private ShadowVolumeShader adjacencyShader;
 	private Renderable overlay;
 
 	private int lightIndex;
@@ -63,24 +69,34 @@ public final class ShadowVolumes {
 
 	public ShadowVolumes(Map<IAttribute, Supplier<?>> globals) {
 		volumeShader = ShaderBuilder.create(new ShadowVolumeShader(() -> lightIndex, () -> extrudeDistance, () -> volumeColor), null, globals);
+		adjacencyShader = ShaderBuilder.create(new ShadowVolumeShader(() -> lightIndex, () -> extrudeDistance, () -> volumeColor, true), null, globals);
 		overlay = new Renderable(new TrivialDeviceSpaceShader(() -> overlayColor), OVERLAY_MESH, globals);
 	}
 
 	// http://ogldev.atspace.co.uk/www/tutorial40/tutorial40.html
-	public void render(GL3 gl, IMesh.Queue pass, List<Renderable> renderables, int numLights) {
-		gl.glEnable(GL.GL_BLEND);
-		gl.glBlendFunc(GL.GL_ZERO, GL.GL_SRC_ALPHA);
-		gl.glDepthMask(false);
-		gl.glEnable(GL3.GL_DEPTH_CLAMP);
+	// casters with an adjacency buffer only extrude silhouette edges. all
+	// casters are culled per light by the light's range: an occluder outside
+	// the range cannot lie between the light and a point it reaches. lights
+	// must be in the same order as in the light uniform block
+	public void render(GL3 gl, List<Renderable> casters, List<ILight> lights) {
+		GLState glState = GLState.get(gl);
+		glState.enable(gl, GL.GL_BLEND);
+		glState.blendFunc(gl, GL.GL_ZERO, GL.GL_SRC_ALPHA);
+		glState.depthMask(gl, false);
+		glState.enable(gl, GL3.GL_DEPTH_CLAMP);
 		
 		overlay.update(gl, OVERLAY_MESH.getMaterial().getData(), OVERLAY_MESH.getTransformedGeometryData());
 
-		for (lightIndex = 0; lightIndex < numLights; ++lightIndex) {
+		for (lightIndex = 0; lightIndex < lights.size(); ++lightIndex) {
+			LightSource light = lights.get(lightIndex).getLightSource();
+			if (light.getType() == LightSource.Type.OFF)
+				continue;
+
 			gl.glClear(GL.GL_STENCIL_BUFFER_BIT);
 
 			gl.glColorMask(false, false, false, false);
 
-			gl.glEnable(GL.GL_STENCIL_TEST);
+			glState.enable(gl, GL.GL_STENCIL_TEST);
 
 			gl.glStencilFuncSeparate(GL.GL_FRONT, GL.GL_ALWAYS, 0, 0xffffffff);
 			gl.glStencilOpSeparate(GL.GL_FRONT, GL.GL_KEEP, GL.GL_DECR_WRAP, GL.GL_KEEP);
@@ -88,12 +104,25 @@ public final class ShadowVolumes {
 			gl.glStencilFuncSeparate(GL.GL_BACK, GL.GL_ALWAYS, 0, 0xffffffff);
 			gl.glStencilOpSeparate(GL.GL_BACK, GL.GL_KEEP, GL.GL_INCR_WRAP, GL.GL_KEEP);
 
+			adjacencyShader.update(gl, null);
+			adjacencyShader.enable(gl);
+			for (Renderable renderable : casters) {
+				AdjacencyBuffer adjacency = renderable.getAdjacencyBuffer();
+				if (adjacency == null)
+					continue;
+				if (!isInRange(light, renderable.getBounds()))
+					continue;
+
+				adjacencyShader.render(gl, adjacency);
+			}
+			adjacencyShader.disable(gl);
+
 			volumeShader.update(gl, null);
 			volumeShader.enable(gl);
-			for (Renderable renderable : renderables) {
-				if (renderable.containsFlag(Flag.DONT_CAST_SHADOW))
+			for (Renderable renderable : casters) {
+				if (renderable.getAdjacencyBuffer() != null)
 					continue;
-				if (renderable.getQueue() != pass)
+				if (!isInRange(light, renderable.getBounds()))
 					continue;
 
 				volumeShader.render(gl, renderable.getBuffer());
@@ -107,11 +136,18 @@ public final class ShadowVolumes {
 
 			overlay.render(gl);
 
-			gl.glDisable(GL.GL_STENCIL_TEST);
+			glState.disable(gl, GL.GL_STENCIL_TEST);
 		}
-		gl.glBlendFunc(GL.GL_SRC_ALPHA, GL.GL_ONE_MINUS_SRC_ALPHA);
-		gl.glDisable(GL.GL_BLEND);
-		gl.glDepthMask(true);
-		gl.glDisable(GL3.GL_DEPTH_CLAMP);
+		glState.blendFunc(gl, GL.GL_SRC_ALPHA, GL.GL_ONE_MINUS_SRC_ALPHA);
+		glState.disable(gl, GL.GL_BLEND);
+		glState.depthMask(gl, true);
+		glState.disable(gl, GL3.GL_DEPTH_CLAMP);
+	}
+
+	private static boolean isInRange(LightSource light, BoundingBox bounds) {
+		if (light.getType() == LightSource.Type.DIRECTIONAL_LIGHT)
+			return true;
+		Vec4 p = light.getPosition();
+		return ShadowMapTracker.intersects(bounds, new float[] { p.x, p.y, p.z, light.getRange() });
 	}
 }
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2013 - 2015 Stefan Muller Arisona, Simon Schubiger, Samuel von Stachelski
+ * Copyright (c) 2013 - 2015 FHNW & ETH Zurich
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *  Neither the name of FHNW / ETH Zurich nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ch.fhnw.ether.render.gl;
+
+import java.nio.Buffer;
+
+import com.jogamp.opengl.GL3;
+
+import ch.fhnw.ether.render.gl.GLObject.Type;
+import ch.fhnw.ether.scene.mesh.material.Texture;
+
+/**
+ * Buffer texture wrapper, i.e. a buffer object accessed through a samplerBuffer
+ * in shaders. The buffer is reallocated on each load, so it suits data that is
+ * streamed every frame.
+ */
+public final class BufferTexture {
+	private final int internalFormat;
+	private final int bytesPerElement;
+
+	private GLObject buffer;
+	private Texture  texture;
+	private int      capacity;
+
+	/**
+	 * @param internalFormat
+	 *            sized internal format of the texels, e.g. GL_RGBA32F
+	 * @param bytesPerElement
+	 *            size of one texel in bytes
+	 */
+	public BufferTexture(int internalFormat, int bytesPerElement) {
+		this.internalFormat = internalFormat;
+		this.bytesPerElement = bytesPerElement;
+	}
+
+	/**
+	 * Upload the given number of elements from data, which must be positioned
+	 * at the first element.
+	 */
+	public void load(GL3 gl, Buffer data, int numElements) {
+		boolean attach = buffer == null;
+		if (attach) {
+			buffer = new GLObject(gl, Type.BUFFER);
+			texture = new Texture(new GLObject(gl, Type.TEXTURE), 0, 0);
+		}
+
+		// orphan the previous contents, keep at least one element since empty
+		// buffer textures are undefined
+		int size = Math.max(1, numElements) * bytesPerElement;
+		if (size > capacity)
+			capacity = Math.max(size, 2 * capacity);
+		gl.glBindBuffer(GL3.GL_TEXTURE_BUFFER, buffer.getId());
+		gl.glBufferData(GL3.GL_TEXTURE_BUFFER, capacity, null, GL3.GL_STREAM_DRAW);
+		if (numElements > 0)
+			gl.glBufferSubData(GL3.GL_TEXTURE_BUFFER, 0, (long) numElements * bytesPerElement, data);
+		gl.glBindBuffer(GL3.GL_TEXTURE_BUFFER, 0);
+
+		// the attachment survives reallocation of the buffer's data store
+		if (attach) {
+			GLState.get(gl).bindTexture(gl, GL3.GL_TEXTURE_BUFFER, texture.getGlObject().getId());
+			gl.glTexBuffer(GL3.GL_TEXTURE_BUFFER, internalFormat, buffer.getId());
+		}
+	}
+
+	/**
+	 * Get the texture to bind to a samplerBuffer, null before the first load.
+	 */
+	public Texture getTexture() {
+		return texture;
+	}
+}
@@ -30,6 +30,11 @@
 package ch.fhnw.ether.render.gl;
 
 import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.LongBuffer;
+import java.nio.ShortBuffer;
 
 import ch.fhnw.ether.render.gl.GLObject.Type;
 import ch.fhnw.util.BufferUtilities;
@@ -38,7 +43,9 @@ import com.jogamp.opengl.GL;
 import com.jogamp.opengl.GL3;
 
 /**
- * Basic float buffer attribute wrapper.
+ * Basic float buffer attribute wrapper. Also accepts other buffer types, e.g.
+ * byte buffers with packed vertex data, size() is then in elements of that
+ * type.
  *
  * @author radar
  */
@@ -55,19 +62,20 @@ public final class FloatArrayBuffer implements IArrayBuffer {
 			vbo = new GLObject(gl, Type.BUFFER);
 		}
 
-		gl.glBindBuffer(GL.GL_ARRAY_BUFFER, vbo.getId());
+		GLState state = GLState.get(gl);
+		state.bindArrayBuffer(gl, vbo.getId());
 		if (data != null && data.limit() != 0) {
 			size = data.limit();
 			data.rewind();
 
 			// transfer data to VBO
-			int numBytes = size * 4;
+			int numBytes = size * elementSize(data);
 			gl.glBufferData(GL.GL_ARRAY_BUFFER, numBytes, data, GL.GL_STATIC_DRAW);
 		} else {
 			size = 0;
 			gl.glBufferData(GL.GL_ARRAY_BUFFER, 0, BufferUtilities.EMPTY_FLOAT_BUFFER, GL.GL_STATIC_DRAW);
 		}
-		gl.glBindBuffer(GL.GL_ARRAY_BUFFER, 0);
+		state.bindArrayBuffer(gl, 0);
 	}
 
 	@Override
@@ -78,7 +86,7 @@ public final class FloatArrayBuffer implements IArrayBuffer {
 	@Override
 	public void bind(GL3 gl) {
 		if (size > 0) {
-			gl.glBindBuffer(GL.GL_ARRAY_BUFFER, vbo.getId());
+			GLState.get(gl).bindArrayBuffer(gl, vbo.getId());
 		}
 	}
 
@@ -91,4 +99,14 @@ public final class FloatArrayBuffer implements IArrayBuffer {
 	public boolean isEmpty() {
 		return size == 0;
 	}
+
+	private static int elementSize(Buffer data) {
+		if (data instanceof ByteBuffer)
+			return 1;
+		if (data instanceof ShortBuffer || data instanceof CharBuffer)
+			return 2;
+		if (data instanceof DoubleBuffer || data instanceof LongBuffer)
+			return 8;
+		return 4;
+	}
 }
@@ -62,11 +62,12 @@ public class FrameBuffer {
 
 		gl.glGetIntegerv(GL3.GL_TEXTURE_BINDING_2D, toRestore, 0);
 
-		gl.glBindTexture(GL3.GL_TEXTURE_2D, texture.getGlObject().getId());
+		GLState glState = GLState.get(gl);
+		glState.bindTexture(gl, GL3.GL_TEXTURE_2D, texture.getGlObject().getId());
 
-		gl.glFramebufferTexture2D(GL3.GL_DRAW_FRAMEBUFFER, GL3.GL_COLOR_ATTACHMENT0, GL3.GL_TEXTURE_2D, texture.getGlObject().getId(), 0);
+		gl.glFramebufferTexture2D(GL3.GL_DRAW_FRAMEBUFFER, attachment, GL3.GL_TEXTURE_2D, texture.getGlObject().getId(), 0);
 
-		gl.glBindTexture(GL3.GL_TEXTURE_2D, toRestore[0]);			
+		glState.bindTexture(gl, GL3.GL_TEXTURE_2D, toRestore[0]);			
 	}
 
 	public void detach(GL3 gl, int attachment) {
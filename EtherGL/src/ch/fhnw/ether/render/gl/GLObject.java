@@ -84,6 +84,7 @@ public class GLObject {
 						break;
 					}
 				}
+				GLState.objectDeleted();
 			} catch(Throwable t) {
 				log.severe(t);
 			}
@@ -0,0 +1,285 @@
+/*
+ * Copyright (c) 2013 - 2015 Stefan Muller Arisona, Simon Schubiger, Samuel von Stachelski
+ * Copyright (c) 2013 - 2015 FHNW & ETH Zurich
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *  Neither the name of FHNW / ETH Zurich nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ch.fhnw.ether.render.gl;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.jogamp.opengl.GL;
+import com.jogamp.opengl.GLContext;
+
+/**
+ * Shadow of the GL state of a context (capabilities, blend function, depth
+ * mask, polygon offset, program, array buffer and texture bindings). Calls
+ * that would not change the state are skipped. The shadow only stays valid as
+ * long as all state changes of the context go through it: code that changes
+ * state directly must call {@link #invalidate()}. Renderers call
+ * {@link #beginFrame()} and {@link #endFrame(GL)} around each frame, which also
+ * maintains per-frame counters of issued and skipped calls.
+ */
+public final class GLState {
+	private static final String        KEY               = GLState.class.getName();
+	private static final int           MAX_TEXTURE_UNITS = 32;
+	private static final int           UNKNOWN           = -1;
+	private static final AtomicInteger DELETIONS         = new AtomicInteger();
+
+	private int[]  caps      = new int[8];
+	private byte[] capStates = new byte[8];
+	private int    numCaps;
+
+	private int     blendSrc;
+	private int     blendDst;
+	private int     depthMask;
+	private float   polygonOffsetFactor;
+	private float   polygonOffsetUnits;
+	private boolean polygonOffsetValid;
+	private int     program;
+	private int     arrayBuffer;
+	private int     activeUnit;
+
+	private final int[] textureTargets = new int[MAX_TEXTURE_UNITS];
+	private final int[] textures       = new int[MAX_TEXTURE_UNITS];
+
+	private int deletions;
+
+	private int issued;
+	private int skipped;
+	private int lastIssued;
+	private int lastSkipped;
+
+	GLState() {
+		invalidate();
+	}
+
+	/**
+	 * Get the state shadow of the context the given GL belongs to.
+	 */
+	public static GLState get(GL gl) {
+		GLContext context = gl.getContext();
+		GLState state = (GLState) context.getAttachedObject(KEY);
+		if (state == null) {
+			state = new GLState();
+			context.attachObject(KEY, state);
+		}
+		state.checkDeletions();
+		return state;
+	}
+
+	/**
+	 * Forget the bindings if GL objects were deleted since the last call:
+	 * deleted object names may be reused by the driver.
+	 */
+	void checkDeletions() {
+		int deletions = DELETIONS.get();
+		if (this.deletions != deletions) {
+			invalidateBindings();
+			this.deletions = deletions;
+		}
+	}
+
+	/**
+	 * Called when a GL object is deleted, in whatever context.
+	 */
+	static void objectDeleted() {
+		DELETIONS.incrementAndGet();
+	}
+
+	/**
+	 * Forget everything, the next call of each kind is issued.
+	 */
+	public void invalidate() {
+		numCaps = 0;
+		blendSrc = UNKNOWN;
+		blendDst = UNKNOWN;
+		depthMask = UNKNOWN;
+		polygonOffsetValid = false;
+		invalidateBindings();
+	}
+
+	private void invalidateBindings() {
+		program = UNKNOWN;
+		arrayBuffer = UNKNOWN;
+		activeUnit = UNKNOWN;
+		Arrays.fill(textureTargets, UNKNOWN);
+	}
+
+	/**
+	 * Start a frame: state may have been changed by code outside the
+	 * renderer since the last frame.
+	 */
+	public void beginFrame() {
+		invalidate();
+	}
+
+	/**
+	 * End a frame: restore program, array buffer and active texture defaults
+	 * and make the counters of this frame available.
+	 */
+	public void endFrame(GL gl) {
+		useProgram(gl, 0);
+		bindArrayBuffer(gl, 0);
+		activeTexture(gl, 0);
+		lastIssued = issued;
+		lastSkipped = skipped;
+		issued = 0;
+		skipped = 0;
+	}
+
+	/**
+	 * Number of GL calls issued through this state and the uniform shadows
+	 * of the programs during the last frame.
+	 */
+	public int getIssuedCalls() {
+		return lastIssued;
+	}
+
+	/**
+	 * Number of GL calls skipped because they would not have changed the
+	 * state during the last frame.
+	 */
+	public int getSkippedCalls() {
+		return lastSkipped;
+	}
+
+	public void enable(GL gl, int cap) {
+		if (setCap(cap, (byte) 1))
+			gl.glEnable(cap);
+	}
+
+	public void disable(GL gl, int cap) {
+		if (setCap(cap, (byte) 0))
+			gl.glDisable(cap);
+	}
+
+	public void blendFunc(GL gl, int src, int dst) {
+		if (count(blendSrc != src || blendDst != dst)) {
+			gl.glBlendFunc(src, dst);
+			blendSrc = src;
+			blendDst = dst;
+		}
+	}
+
+	public void depthMask(GL gl, boolean flag) {
+		int value = flag ? 1 : 0;
+		if (count(depthMask != value)) {
+			gl.glDepthMask(flag);
+			depthMask = value;
+		}
+	}
+
+	public void polygonOffset(GL gl, float factor, float units) {
+		if (count(!polygonOffsetValid || polygonOffsetFactor != factor || polygonOffsetUnits != units)) {
+			gl.glPolygonOffset(factor, units);
+			polygonOffsetFactor = factor;
+			polygonOffsetUnits = units;
+			polygonOffsetValid = true;
+		}
+	}
+
+	public void useProgram(GL gl, int id) {
+		if (count(program != id)) {
+			gl.getGL2ES2().glUseProgram(id);
+			program = id;
+		}
+	}
+
+	public void bindArrayBuffer(GL gl, int id) {
+		if (count(arrayBuffer != id)) {
+			gl.glBindBuffer(GL.GL_ARRAY_BUFFER, id);
+			arrayBuffer = id;
+		}
+	}
+
+	/**
+	 * Select the active texture unit (0 based, not GL_TEXTURE0 based).
+	 */
+	public void activeTexture(GL gl, int unit) {
+		if (count(activeUnit != unit)) {
+			gl.glActiveTexture(GL.GL_TEXTURE0 + unit);
+			activeUnit = unit;
+		}
+	}
+
+	/**
+	 * Bind a texture to the given unit. Leaves the unit active.
+	 */
+	public void bindTexture(GL gl, int unit, int target, int id) {
+		activeTexture(gl, unit);
+		bindTexture(gl, target, id);
+	}
+
+	/**
+	 * Bind a texture to the active unit.
+	 */
+	public void bindTexture(GL gl, int target, int id) {
+		int unit = activeUnit;
+		if (unit < 0 || unit >= MAX_TEXTURE_UNITS) {
+			count(true);
+			gl.glBindTexture(target, id);
+			return;
+		}
+		if (count(textureTargets[unit] != target || textures[unit] != id)) {
+			gl.glBindTexture(target, id);
+			textureTargets[unit] = target;
+			textures[unit] = id;
+		}
+	}
+
+	boolean count(boolean issue) {
+		if (issue)
+			issued++;
+		else
+			skipped++;
+		return issue;
+	}
+
+	private boolean setCap(int cap, byte value) {
+		for (int i = 0; i < numCaps; ++i) {
+			if (caps[i] == cap) {
+				if (count(capStates[i] != value)) {
+					capStates[i] = value;
+					return true;
+				}
+				return false;
+			}
+		}
+		if (numCaps == caps.length) {
+			caps = Arrays.copyOf(caps, 2 * numCaps);
+			capStates = Arrays.copyOf(capStates, 2 * numCaps);
+		}
+		caps[numCaps] = cap;
+		capStates[numCaps++] = value;
+		return count(true);
+	}
+
+	@Override
+	public String toString() {
+		return "issued=" + lastIssued + " skipped=" + lastSkipped;
+	}
+}
@@ -31,7 +31,6 @@ package ch.fhnw.ether.render.gl;
 
 import java.nio.Buffer;
 
-import com.jogamp.opengl.GL;
 import com.jogamp.opengl.GL3;
 
 public interface IArrayBuffer {
@@ -46,6 +45,6 @@ public interface IArrayBuffer {
 	boolean isEmpty();
 
 	static void unbind(GL3 gl) {
-		gl.glBindBuffer(GL.GL_ARRAY_BUFFER, 0);
+		GLState.get(gl).bindArrayBuffer(gl, 0);
 	}
 }
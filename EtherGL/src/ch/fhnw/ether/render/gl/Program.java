@@ -29,16 +29,15 @@
 
 package ch.fhnw.ether.render.gl;
 
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.PrintStream;
-import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
 import ch.fhnw.ether.render.gl.GLObject.Type;
-import ch.fhnw.ether.render.shader.IShader;
-import ch.fhnw.ether.render.shader.base.AbstractShader;
+import ch.fhnw.util.BufferUtilities;
 
 import com.jogamp.opengl.GL3;
 import com.jogamp.opengl.GL4;
@@ -48,7 +47,6 @@ import com.jogamp.opengl.GL4;
  *
  * @author radar
  */
-// NOTE: currently we do not plan to dispose programs
 public final class Program {
 	public enum ShaderType {
 		//@formatter:off
@@ -70,137 +68,71 @@ public final class Program {
 		private final int glType;
 	}
 
-	private final static URL LIBRARY = IShader.class.getResource("glsl/lib");
+	// uniforms at higher locations are not shadowed
+	private static final int MAX_SHADOWED_LOCATION = 1024;
 
-	private static final class Shader {
-		static final Map<String, Shader> SHADERS = new HashMap<>();
-
-		final Class<?> root;
-		final String path;
-		int shaderObject;
-
-		Shader(GL3 gl, Class<?> root, String path, ShaderType type, PrintStream out) throws IOException {
-			this.root = root;
-			this.path = path;
-
-			StringBuilder code = new StringBuilder();
-			if(path.startsWith(AbstractShader.INLINE))
-				code.append(path);
-			else {
-				URL url = root.getResource(path);
-				if (url == null) {
-					out.println("file not found: " + this);
-					throw new FileNotFoundException("file not found: " + this);
-				}
-				new GLSLReader(LIBRARY, url, code, out);
-			}
-
-			shaderObject = gl.glCreateShader(type.glType);
-
-			gl.glShaderSource(shaderObject, 1, new String[] { code.toString() }, new int[] { code.length() }, 0);
-			gl.glCompileShader(shaderObject);
-
-			if (!checkStatus(gl, shaderObject, GL3.GL_COMPILE_STATUS, out)) {
-				out.println("failed to compile shader: " + this);
-				throw new IllegalArgumentException("failed to compile shader: " + this);
-			}
-		}
-
-		@Override
-		public String toString() {
-			return root.getSimpleName() + ":" + path;
-		}
-
-		static Shader create(GL3 gl, Class<?> root, String path, ShaderType type, PrintStream out) throws IOException {
-			String key = key(root, path);
-			Shader shader = SHADERS.get(key);
-			if (shader == null) {
-				shader = new Shader(gl, root, path, type, out);
-				SHADERS.put(key, shader);
-			}
-			return shader;
-		}
-
-		static String key(Class<?> root, String path) {
-			return root.hashCode() + "/" + path;
-		}
-	}
-
-	private static final Map<String, Program> PROGRAMS = new HashMap<>();
-
-	private final String id;
+	private final String   id;
 	private final GLObject programObject;
 
-	private Program(GL3 gl, PrintStream out, Shader... shaders) {
-		programObject = new GLObject(gl, Type.PROGRAM);
-
-		String id = "";
-		for (Shader shader : shaders) {
-			if (shader != null) {
-				gl.glAttachShader(programObject.getId(), shader.shaderObject);
-				id += shader.path + " ";
-			}
-		}
-		this.id = id;
+	// last values uploaded per uniform location, as raw float or int bits.
+	// uniform values are program state, so this is valid for all contexts.
+	private int[][] uniformValues = new int[16][];
 
-		gl.glLinkProgram(programObject.getId());
-		if (!checkStatus(gl, programObject.getId(), GL3.GL_LINK_STATUS, out)) {
-			out.println("failed to link program: " + this);
-			throw new IllegalArgumentException("failed to link program: " + this);
-		}
+	// block index and bound binding point per uniform block name, also
+	// program state
+	private final Map<String, int[]> uniformBlocks = new HashMap<>();
+	private GLState state;
 
-		gl.glValidateProgram(programObject.getId());
-		if (!checkStatus(gl, programObject.getId(), GL3.GL_VALIDATE_STATUS, out)) {
-			out.println("failed to validate program: " + this);
-			throw new IllegalArgumentException("failed to validate program: " + this);
-		}
+	Program(String id, GLObject programObject) {
+		this.id = id;
+		this.programObject = programObject;
 	}
 
 	public void enable(GL3 gl) {
-		gl.glUseProgram(programObject.getId());
+		state = GLState.get(gl);
+		state.useProgram(gl, programObject.getId());
 	}
 
 	public void disable(GL3 gl) {
-		gl.glUseProgram(0);
+		GLState.get(gl).useProgram(gl, 0);
 	}
 
 	public void setUniform(GL3 gl, int index, boolean value) {
-		if(index >= 0)
-			gl.glUniform1i(index, value ? 1 : 0);
+		setUniform(gl, index, value ? 1 : 0);
 	}
 
 	public void setUniform(GL3 gl, int index, int value) {
-		if(index >= 0)
+		if (index >= 0 && changed(index, value))
 			gl.glUniform1i(index, value);
 	}
 
 	public void setUniform(GL3 gl, int index, float value) {
-		if(index >= 0)
+		if (index >= 0 && changed(index, Float.floatToRawIntBits(value)))
 			gl.glUniform1f(index, value);
 	}
 
 	public void setUniformVec2(GL3 gl, int index, float[] value) {
-		if(value != null && index >= 0)
+		if (value != null && index >= 0 && changed(index, value, 2))
 			gl.glUniform2fv(index, 1, value, 0);
 	}
 
 	public void setUniformVec3(GL3 gl, int index, float[] value) {
-		if (value != null && index >= 0)
+		if (value != null && index >= 0 && changed(index, value, 3))
 			gl.glUniform3fv(index, 1, value, 0);
 	}
 
 	public void setUniformVec4(GL3 gl, int index, float[] value) {
-		if (value != null && index >= 0)
+		if (value != null && index >= 0 && changed(index, value, 4))
 			gl.glUniform4fv(index, 1, value, 0);
 	}
 
 	public void setUniformMat3(GL3 gl, int index, float[] value) {
-		if (value != null && index >= 0)
+		if (value != null && index >= 0 && changed(index, value, 9))
 			gl.glUniformMatrix3fv(index, 1, false, value, 0);
 	}
 
 	public void setUniformMat4(GL3 gl, int index, float[] value) {
-		if (value != null && index >= 0)
+		if (value != null && index >= 0 && changed(index, value, 16))
 			gl.glUniformMatrix4fv(index, 1, false, value, 0);
 	}
 
@@ -225,34 +157,171 @@ public final class Program {
 		gl.glUniformBlockBinding(programObject.getId(), index, bindingPoint);
 	}
 
+	/**
+	 * Bind the named uniform block to a binding point, unless it is bound to
+	 * it already. Returns false if the program has no such block.
+	 */
+	public boolean setUniformBlock(GL3 gl, String name, int bindingPoint) {
+		int[] block = uniformBlocks.get(name);
+		if (block == null) {
+			block = new int[] { getUniformBlockIndex(gl, name), -1 };
+			uniformBlocks.put(name, block);
+		}
+		if (block[0] == GL3.GL_INVALID_INDEX)
+			return false;
+		if (block[1] != bindingPoint) {
+			bindUniformBlock(gl, block[0], bindingPoint);
+			block[1] = bindingPoint;
+		}
+		return true;
+	}
+
 	@Override
 	public String toString() {
 		return id;
 	}
 
+	private boolean changed(int index, int bits) {
+		int[] values = shadow(index, 1);
+		if (values != null && values[0] == bits)
+			return count(false);
+		if (values == null)
+			values = createShadow(index, 1);
+		if (values != null)
+			values[0] = bits;
+		return count(true);
+	}
+
+	private boolean changed(int index, float[] value, int n) {
+		int[] values = shadow(index, n);
+		if (values != null) {
+			boolean changed = false;
+			for (int i = 0; i < n && !changed; ++i)
+				changed = values[i] != Float.floatToRawIntBits(value[i]);
+			if (!changed)
+				return count(false);
+		} else {
+			values = createShadow(index, n);
+		}
+		if (values != null)
+			for (int i = 0; i < n; ++i)
+				values[i] = Float.floatToRawIntBits(value[i]);
+		return count(true);
+	}
+
+	private int[] shadow(int index, int n) {
+		if (index >= uniformValues.length)
+			return null;
+		int[] values = uniformValues[index];
+		return values != null && values.length == n ? values : null;
+	}
+
+	private int[] createShadow(int index, int n) {
+		if (index >= MAX_SHADOWED_LOCATION)
+			return null;
+		if (index >= uniformValues.length)
+			uniformValues = Arrays.copyOf(uniformValues, Math.min(MAX_SHADOWED_LOCATION, Math.max(index + 1, 2 * uniformValues.length)));
+		return uniformValues[index] = new int[n];
+	}
+
+	private boolean count(boolean changed) {
+		return state == null ? changed : state.count(changed);
+	}
+
+	/**
+	 * Get a linked program for the given shader sources, shared with all
+	 * other users of the same sources, see {@link ProgramCache}.
+	 */
 	public static Program create(GL3 gl, Class<?> root, String vertShader, String fragShader, String geomShader, PrintStream out) throws IOException {
-		String key = key(root, vertShader, fragShader, geomShader);
-		Program program = PROGRAMS.get(key);
-		if (program == null) {
-			Shader vert = Shader.create(gl, root, vertShader, ShaderType.VERTEX, out);
-			Shader frag = Shader.create(gl, root, fragShader, ShaderType.FRAGMENT, out);
-			Shader geom = null;
-			if (geomShader != null && root.getResource(geomShader) != null) {
-				geom = Shader.create(gl, root, geomShader, ShaderType.GEOMETRY, out);
+		return create(gl, root, "", vertShader, fragShader, geomShader, out);
+	}
+
+	/**
+	 * Get a linked program for the given shader sources and preprocessor
+	 * defines (e.g. "#define FOO 1\n"), which are inserted after the #version
+	 * line of each shader.
+	 */
+	public static Program create(GL3 gl, Class<?> root, String defines, String vertShader, String fragShader, String geomShader, PrintStream out) throws IOException {
+		return ProgramCache.getInstance().get(gl, root, defines, vertShader, fragShader, geomShader, out);
+	}
+
+	/**
+	 * Compiles and links a program from resolved sources. Shader objects are
+	 * deleted after linking.
+	 */
+	static Program link(GL3 gl, String id, String[] sources, boolean retrievable, PrintStream out) {
+		GLObject programObject = new GLObject(gl, Type.PROGRAM);
+		ShaderType[] types = { ShaderType.VERTEX, ShaderType.FRAGMENT, ShaderType.GEOMETRY };
+		int[] shaders = new int[sources.length];
+		try {
+			for (int i = 0; i < sources.length; ++i) {
+				if (sources[i] == null)
+					continue;
+				String source = sources[i];
+				shaders[i] = gl.glCreateShader(types[i].getGLType());
+				gl.glShaderSource(shaders[i], 1, new String[] { source }, new int[] { source.length() }, 0);
+				gl.glCompileShader(shaders[i]);
+				if (!checkStatus(gl, shaders[i], GL3.GL_COMPILE_STATUS, out)) {
+					out.println("failed to compile shader: " + types[i] + " " + id);
+					throw new IllegalArgumentException("failed to compile shader: " + types[i] + " " + id);
+				}
+				gl.glAttachShader(programObject.getId(), shaders[i]);
+			}
+			if (retrievable)
+				gl.glProgramParameteri(programObject.getId(), GL3.GL_PROGRAM_BINARY_RETRIEVABLE_HINT, GL3.GL_TRUE);
+
+			gl.glLinkProgram(programObject.getId());
+			if (!checkStatus(gl, programObject.getId(), GL3.GL_LINK_STATUS, out)) {
+				out.println("failed to link program: " + id);
+				throw new IllegalArgumentException("failed to link program: " + id);
+			}
+		} finally {
+			for (int shader : shaders) {
+				if (shader != 0) {
+					gl.glDetachShader(programObject.getId(), shader);
+					gl.glDeleteShader(shader);
+				}
 			}
-			program = new Program(gl, out, vert, frag, geom);
-			PROGRAMS.put(key, program);
 		}
-		return program;
+		return validate(gl, new Program(id, programObject), out);
+	}
+
+	/**
+	 * Loads a program from a binary retrieved with glGetProgramBinary. Returns
+	 * null if the binary is rejected by the driver.
+	 */
+	static Program load(GL3 gl, String id, int format, ByteBuffer binary, PrintStream out) {
+		GLObject programObject = new GLObject(gl, Type.PROGRAM);
+		gl.glProgramBinary(programObject.getId(), format, binary, binary.remaining());
+		int[] status = { 0 };
+		gl.glGetProgramiv(programObject.getId(), GL3.GL_LINK_STATUS, status, 0);
+		if (status[0] != 1)
+			return null;
+		return validate(gl, new Program(id, programObject), out);
 	}
 
-	private static String key(Class<?> root, String... paths) {
-		String key = "" + root.hashCode();
-		for (String path : paths) {
-			if (path != null)
-				key += ":" + path;
+	/**
+	 * Retrieves the binary of this program, or returns null if not available.
+	 * The first element of format receives the binary format.
+	 */
+	ByteBuffer getBinary(GL3 gl, int[] format) {
+		int[] length = { 0 };
+		gl.glGetProgramiv(programObject.getId(), GL3.GL_PROGRAM_BINARY_LENGTH, length, 0);
+		if (length[0] <= 0)
+			return null;
+		ByteBuffer binary = BufferUtilities.createDirectByteBuffer(length[0]);
+		gl.glGetProgramBinary(programObject.getId(), length[0], length, 0, format, 0, binary);
+		binary.limit(length[0]);
+		return binary;
+	}
+
+	private static Program validate(GL3 gl, Program program, PrintStream out) {
+		gl.glValidateProgram(program.programObject.getId());
+		if (!checkStatus(gl, program.programObject.getId(), GL3.GL_VALIDATE_STATUS, out)) {
+			out.println("failed to validate program: " + program);
+			throw new IllegalArgumentException("failed to validate program: " + program);
 		}
-		return key;
+		return program;
 	}
 
 	private static boolean checkStatus(GL3 gl3, int object, int statusType, PrintStream out) {
@@ -0,0 +1,456 @@
+/*
+ * Copyright (c) 2013 - 2015 Stefan Muller Arisona, Simon Schubiger, Samuel von Stachelski
+ * Copyright (c) 2013 - 2015 FHNW & ETH Zurich
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *  Neither the name of FHNW / ETH Zurich nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ch.fhnw.ether.render.gl;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
+
+import com.jogamp.common.util.VersionNumber;
+import com.jogamp.opengl.GL;
+import com.jogamp.opengl.GL3;
+
+import ch.fhnw.ether.render.shader.IShader;
+import ch.fhnw.ether.render.shader.base.AbstractShader;
+import ch.fhnw.util.Log;
+import ch.fhnw.util.TextUtilities;
+
+/**
+ * Cache of linked GLSL programs, shared by all shader instances with the same sources. Programs are keyed by root,
+ * resolved source (includes expanded) and defines, so shaders with identical code share one program even if loaded
+ * through different paths.
+ * 
+ * The cache only holds weak references: a program stays alive as long as a shader uses it, and once unused, its GL
+ * object is deleted through the usual GLObject disposal.
+ * 
+ * Linked programs are also persisted as driver binaries (glGetProgramBinary), so later runs skip compiling and linking.
+ * Binaries are invalidated when the driver (vendor, renderer, version) changes. They are kept in a per-user
+ * directory (~/.ether/programs by default) that is created accessible by its owner only; binaries are not used if
+ * the directory is writable by anyone else, since the driver loads them without further checks.
+ */
+public final class ProgramCache {
+	private static final Log log = Log.create();
+
+	private static final URL LIBRARY = IShader.class.getResource("glsl/lib");
+
+	private static final int    MAGIC     = 0x42475250; // "PRGB"
+	private static final int    VERSION   = 1;
+	private static final String EXTENSION = ".bin";
+
+	private static final VersionNumber GL_4_1 = new VersionNumber(4, 1, 0);
+
+	private static final ProgramCache INSTANCE = new ProgramCache();
+
+	/**
+	 * Program cache key: root, defines and resolved sources of all stages.
+	 */
+	public static final class Key {
+		private final String   root;
+		private final String   defines;
+		private final String[] sources;
+		private final int      hash;
+
+		public Key(Class<?> root, String defines, String... sources) {
+			this.root = root.getName();
+			this.defines = defines == null ? "" : defines;
+			this.sources = sources.clone();
+			this.hash = 31 * (31 * this.root.hashCode() + this.defines.hashCode()) + Arrays.hashCode(this.sources);
+		}
+
+		/**
+		 * Get a hex digest of the key, suitable as file name.
+		 */
+		public String digest() {
+			try {
+				MessageDigest md = MessageDigest.getInstance("SHA-1");
+				md.update(root.getBytes(StandardCharsets.UTF_8));
+				md.update((byte) 0);
+				md.update(defines.getBytes(StandardCharsets.UTF_8));
+				for (String source : sources) {
+					md.update((byte) 0);
+					if (source != null)
+						md.update(source.getBytes(StandardCharsets.UTF_8));
+				}
+				return TextUtilities.toHex(md.digest());
+			} catch (NoSuchAlgorithmException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof Key))
+				return false;
+			Key other = (Key) obj;
+			return hash == other.hash && root.equals(other.root) && defines.equals(other.defines) && Arrays.equals(sources, other.sources);
+		}
+	}
+
+	/**
+	 * Snapshot of cache statistics.
+	 */
+	public static final class Statistics {
+		public final int hits;
+		public final int misses;
+		public final int binaryHits;
+		public final int binaryMisses;
+		public final int binaryWrites;
+		public final int programs;
+
+		Statistics(int hits, int misses, int binaryHits, int binaryMisses, int binaryWrites, int programs) {
+			this.hits = hits;
+			this.misses = misses;
+			this.binaryHits = binaryHits;
+			this.binaryMisses = binaryMisses;
+			this.binaryWrites = binaryWrites;
+			this.programs = programs;
+		}
+
+		@Override
+		public String toString() {
+			return "program_cache[hits=" + hits + " misses=" + misses + " binary hits=" + binaryHits + " binary misses=" + binaryMisses + " binary writes=" + binaryWrites + " programs=" + programs + "]";
+		}
+	}
+
+	private static final class Entry extends WeakReference<Object> {
+		final Key key;
+
+		Entry(Key key, Object referent, ReferenceQueue<Object> queue) {
+			super(referent, queue);
+			this.key = key;
+		}
+	}
+
+	private final Map<String, String>    sources  = new HashMap<>();
+	private final Map<Key, Entry>        entries  = new HashMap<>();
+	private final ReferenceQueue<Object> released = new ReferenceQueue<>();
+
+	// values being created, guarded by this
+	private final Map<Key, CompletableFuture<Object>> pending = new HashMap<>();
+
+	private int hits;
+	private int misses;
+	private int binaryHits;
+	private int binaryMisses;
+	private int binaryWrites;
+
+	private volatile boolean binaryCacheEnabled = true;
+	private volatile File    binaryDirectory    = new File(System.getProperty("user.home"), ".ether" + File.separator + "programs");
+
+	// resolved on first use with a context
+	private String  driver;
+	private boolean binarySupported;
+
+	ProgramCache() {
+	}
+
+	public static ProgramCache getInstance() {
+		return INSTANCE;
+	}
+
+	public void setBinaryCacheEnabled(boolean enabled) {
+		this.binaryCacheEnabled = enabled;
+	}
+
+	public boolean isBinaryCacheEnabled() {
+		return binaryCacheEnabled;
+	}
+
+	public void setBinaryDirectory(File directory) {
+		this.binaryDirectory = directory;
+	}
+
+	public File getBinaryDirectory() {
+		return binaryDirectory;
+	}
+
+	public synchronized Statistics getStatistics() {
+		purge();
+		return new Statistics(hits, misses, binaryHits, binaryMisses, binaryWrites, entries.size());
+	}
+
+	/**
+	 * Get a shared program for the given shader paths (or inline sources), linking it if required.
+	 */
+	Program get(GL3 gl, Class<?> root, String defines, String vertShader, String fragShader, String geomShader, PrintStream out) throws IOException {
+		String[] resolved = new String[3];
+		resolved[0] = applyDefines(getSource(root, vertShader, out), defines);
+		resolved[1] = applyDefines(getSource(root, fragShader, out), defines);
+		if (geomShader != null && (geomShader.startsWith(AbstractShader.INLINE) || root.getResource(geomShader) != null))
+			resolved[2] = applyDefines(getSource(root, geomShader, out), defines);
+		String id = vertShader + " " + fragShader + (resolved[2] != null ? " " + geomShader : "");
+		return getOrCreate(new Key(root, defines, resolved), key -> create(gl, key, id, resolved, out));
+	}
+
+	/**
+	 * Returns the value cached for key, or creates, caches and returns a new one. Values are weakly referenced. The
+	 * factory runs outside the cache lock, so other programs can be looked up or created meanwhile; concurrent
+	 * requests for the same key wait for the first one instead of creating the value again.
+	 */
+	@SuppressWarnings("unchecked")
+	<T> T getOrCreate(Key key, Function<Key, T> factory) {
+		CompletableFuture<Object> future;
+		boolean create;
+		synchronized (this) {
+			purge();
+			Entry entry = entries.get(key);
+			Object value = entry != null ? entry.get() : null;
+			if (value != null) {
+				hits++;
+				return (T) value;
+			}
+			future = pending.get(key);
+			create = future == null;
+			if (create) {
+				misses++;
+				future = new CompletableFuture<>();
+				pending.put(key, future);
+			} else {
+				hits++;
+			}
+		}
+		if (!create) {
+			try {
+				return (T) future.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(e);
+			} catch (ExecutionException e) {
+				throw new RuntimeException(e.getCause());
+			}
+		}
+		T result;
+		try {
+			result = factory.apply(key);
+		} catch (RuntimeException | Error e) {
+			synchronized (this) {
+				pending.remove(key);
+			}
+			future.completeExceptionally(e);
+			throw e;
+		}
+		synchronized (this) {
+			entries.put(key, new Entry(key, result, released));
+			pending.remove(key);
+		}
+		future.complete(result);
+		return result;
+	}
+
+	/**
+	 * Get the resolved source (includes expanded) of a shader path. Inline sources are returned as is.
+	 */
+	synchronized String getSource(Class<?> root, String path, PrintStream out) throws IOException {
+		if (path.startsWith(AbstractShader.INLINE))
+			return path;
+		String key = root.getName() + ":" + path;
+		String source = sources.get(key);
+		if (source == null) {
+			URL url = root.getResource(path);
+			if (url == null) {
+				out.println("file not found: " + key);
+				throw new FileNotFoundException("file not found: " + key);
+			}
+			StringBuilder code = new StringBuilder();
+			new GLSLReader(LIBRARY, url, code, out);
+			source = code.toString();
+			sources.put(key, source);
+		}
+		return source;
+	}
+
+	static String applyDefines(String source, String defines) {
+		if (defines == null || defines.isEmpty())
+			return source;
+		if (!(defines.endsWith("\n")))
+			defines += "\n";
+		if (source.startsWith("#version")) {
+			int eol = source.indexOf('\n');
+			if (eol < 0)
+				return source + "\n" + defines;
+			return source.substring(0, eol + 1) + defines + source.substring(eol + 1);
+		}
+		return defines + source;
+	}
+
+	private void purge() {
+		for (Entry entry; (entry = (Entry) released.poll()) != null;) {
+			if (entries.get(entry.key) == entry)
+				entries.remove(entry.key);
+		}
+	}
+
+	private Program create(GL3 gl, Key key, String id, String[] resolved, PrintStream out) {
+		File dir = binaryDirectory;
+		boolean binary = binaryCacheEnabled && dir != null && isBinarySupported(gl) && isPrivateDirectory(dir);
+		File file = binary ? new File(dir, key.digest() + EXTENSION) : null;
+		if (binary) {
+			Program program = readBinary(gl, file, id, out);
+			synchronized (this) {
+				if (program != null)
+					binaryHits++;
+				else
+					binaryMisses++;
+			}
+			if (program != null)
+				return program;
+		}
+		Program program = Program.link(gl, id, resolved, binary, out);
+		if (binary && writeBinary(gl, file, program)) {
+			synchronized (this) {
+				binaryWrites++;
+			}
+		}
+		return program;
+	}
+
+	private synchronized boolean isBinarySupported(GL3 gl) {
+		if (driver == null) {
+			driver = gl.glGetString(GL.GL_VENDOR) + "|" + gl.glGetString(GL.GL_RENDERER) + "|" + gl.glGetString(GL.GL_VERSION);
+			if (gl.getContext().getGLVersionNumber().compareTo(GL_4_1) >= 0 || gl.isExtensionAvailable("GL_ARB_get_program_binary")) {
+				int[] formats = { 0 };
+				gl.glGetIntegerv(GL3.GL_NUM_PROGRAM_BINARY_FORMATS, formats, 0);
+				binarySupported = formats[0] > 0;
+			}
+		}
+		return binarySupported;
+	}
+
+	/**
+	 * Creates dir accessible by the owner only if it does not exist. Returns false if dir is not owned by the current
+	 * user or writable by others.
+	 */
+	private static boolean isPrivateDirectory(File dir) {
+		Path path = dir.toPath();
+		try {
+			boolean posix = path.getFileSystem().supportedFileAttributeViews().contains("posix");
+			if (!(Files.isDirectory(path))) {
+				if (posix)
+					Files.createDirectories(path, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+				else
+					Files.createDirectories(path);
+			}
+			if (!(Files.getOwner(path).getName().equals(System.getProperty("user.name")))) {
+				log.warning("program binary directory " + dir + " not owned by current user, binary cache disabled");
+				return false;
+			}
+			if (posix) {
+				Set<PosixFilePermission> permissions = Files.getPosixFilePermissions(path);
+				if (permissions.contains(PosixFilePermission.GROUP_WRITE) || permissions.contains(PosixFilePermission.OTHERS_WRITE)) {
+					log.warning("program binary directory " + dir + " writable by others, binary cache disabled");
+					return false;
+				}
+			}
+			return true;
+		} catch (IOException | UnsupportedOperationException e) {
+			log.warning("cannot access program binary directory " + dir, e);
+			return false;
+		}
+	}
+
+	private Program readBinary(GL3 gl, File file, String id, PrintStream out) {
+		if (!(file.isFile()))
+			return null;
+		try {
+			ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(file.toPath())).order(ByteOrder.LITTLE_ENDIAN);
+			if (buf.getInt() != MAGIC || buf.getInt() != VERSION)
+				return null;
+			byte[] stored = new byte[buf.getInt()];
+			buf.get(stored);
+			if (!(driver.equals(new String(stored, StandardCharsets.UTF_8))))
+				return null;
+			int format = buf.getInt();
+			int length = buf.getInt();
+			if (length != buf.remaining())
+				return null;
+			ByteBuffer binary = ByteBuffer.allocateDirect(length).order(ByteOrder.nativeOrder());
+			binary.put(buf);
+			binary.flip();
+			return Program.load(gl, id, format, binary, out);
+		} catch (IOException | RuntimeException e) {
+			log.warning("cannot read program binary " + file, e);
+			return null;
+		}
+	}
+
+	private boolean writeBinary(GL3 gl, File file, Program program) {
+		int[] format = { 0 };
+		ByteBuffer binary = program.getBinary(gl, format);
+		if (binary == null)
+			return false;
+		byte[] stored = driver.getBytes(StandardCharsets.UTF_8);
+		ByteBuffer buf = ByteBuffer.allocate(20 + stored.length + binary.remaining()).order(ByteOrder.LITTLE_ENDIAN);
+		buf.putInt(MAGIC).putInt(VERSION).putInt(stored.length).put(stored);
+		buf.putInt(format[0]).putInt(binary.remaining()).put(binary);
+		File dir = file.getParentFile();
+		File temp = new File(dir, file.getName() + ".tmp");
+		try {
+			Files.write(temp.toPath(), buf.array());
+			try {
+				Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+			return true;
+		} catch (IOException e) {
+			log.warning("cannot write program binary " + file, e);
+			temp.delete();
+			return false;
+		}
+	}
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright (c) 2013 - 2015 Stefan Muller Arisona, Simon Schubiger, Samuel von Stachelski
+ * Copyright (c) 2013 - 2015 FHNW & ETH Zurich
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *  Neither the name of FHNW / ETH Zurich nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ch.fhnw.ether.render.gl;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ch.fhnw.ether.render.gl.GLObject.Type;
+import ch.fhnw.util.BufferUtilities;
+
+import com.jogamp.opengl.GL3;
+import com.jogamp.opengl.GLContext;
+
+/**
+ * Uniform buffer object shared by many blocks of the same layout (e.g. one per
+ * material). Each user allocates a slot and selects it with
+ * glBindBufferRange, so switching between blocks costs a single range bind.
+ * Block data is kept on the CPU and changed slots are uploaded on
+ * {@link #flush(GL3)}. Each context gets its own buffer object, which is
+ * brought up to date on its next flush.
+ */
+public final class UniformBlockBuffer {
+	private static final int           INITIAL_CAPACITY = 64;
+	private static final AtomicInteger INSTANCES        = new AtomicInteger();
+
+	/**
+	 * Buffer object of a context and the version of the blocks it holds.
+	 */
+	static final class Upload {
+		GLObject    ubo;
+		int         slots;
+		int         stride;
+		int         version = -1;
+		FloatBuffer buffer;
+	}
+
+	private final String key = UniformBlockBuffer.class.getName() + "#" + INSTANCES.incrementAndGet();
+
+	private final int blockSize;
+	private final int bindingPoint;
+
+	private float[] blocks;
+	private int[]   versions;
+	private int[]   free = new int[16];
+	private int     numFree;
+	private int     numSlots;
+
+	// incremented by each change, guarded by this
+	private volatile int version;
+
+	/**
+	 * Create a buffer for blocks of the given size in floats, which must
+	 * match the std140 size of the block declared in the shader.
+	 */
+	public UniformBlockBuffer(int blockSize) {
+		this(blockSize, FloatUniformBuffer.getNewBindingPoint());
+	}
+
+	public UniformBlockBuffer(int blockSize, int bindingPoint) {
+		this.blockSize = blockSize;
+		this.bindingPoint = bindingPoint;
+		this.blocks = new float[INITIAL_CAPACITY * blockSize];
+		this.versions = new int[INITIAL_CAPACITY];
+	}
+
+	/**
+	 * Allocate a slot. The slot's content is undefined until set.
+	 */
+	public synchronized int allocate() {
+		if (numFree > 0)
+			return free[--numFree];
+		if (numSlots == versions.length) {
+			blocks = Arrays.copyOf(blocks, 2 * blocks.length);
+			versions = Arrays.copyOf(versions, 2 * versions.length);
+		}
+		versions[numSlots] = ++version;
+		return numSlots++;
+	}
+
+	/**
+	 * Release a slot for reuse.
+	 */
+	public synchronized void free(int slot) {
+		if (numFree == free.length)
+			free = Arrays.copyOf(free, 2 * numFree);
+		free[numFree++] = slot;
+	}
+
+	/**
+	 * Set the content of a slot, block must hold at least blockSize floats.
+	 */
+	public synchronized void set(int slot, float[] block) {
+		System.arraycopy(block, 0, blocks, slot * blockSize, blockSize);
+		versions[slot] = ++version;
+	}
+
+	/**
+	 * Copy the content of a slot into block.
+	 */
+	public synchronized void get(int slot, float[] block) {
+		System.arraycopy(blocks, slot * blockSize, block, 0, blockSize);
+	}
+
+	/**
+	 * Upload the slots changed since the last flush in the current context,
+	 * reallocating its buffer object if slots were added. Returns without
+	 * locking if nothing changed.
+	 */
+	public void flush(GL3 gl) {
+		flush(gl, getUpload(gl));
+	}
+
+	/**
+	 * Bind a slot to this buffer's binding point. Must be preceded by a
+	 * flush in the current context.
+	 */
+	public void bind(GL3 gl, int slot) {
+		bind(gl, getUpload(gl), slot);
+	}
+
+	public int getBlockSize() {
+		return blockSize;
+	}
+
+	public int getBindingPoint() {
+		return bindingPoint;
+	}
+
+	void flush(GL3 gl, Upload upload) {
+		if (upload.version == version)
+			return;
+
+		synchronized (this) {
+			if (upload.stride == 0) {
+				int alignment = Math.max(1, GLUtilities.getInteger(gl, GL3.GL_UNIFORM_BUFFER_OFFSET_ALIGNMENT) / 4);
+				upload.stride = (blockSize + alignment - 1) / alignment * alignment;
+			}
+
+			if (upload.ubo == null)
+				upload.ubo = new GLObject(gl, Type.BUFFER);
+
+			int stride = upload.stride;
+			gl.glBindBuffer(GL3.GL_UNIFORM_BUFFER, upload.ubo.getId());
+			if (upload.slots < numSlots) {
+				upload.slots = versions.length;
+				upload.buffer = BufferUtilities.createDirectFloatBuffer(upload.slots * stride);
+				write(upload, 0, numSlots - 1);
+				gl.glBufferData(GL3.GL_UNIFORM_BUFFER, upload.slots * stride * 4, upload.buffer, GL3.GL_DYNAMIC_DRAW);
+			} else {
+				int min = numSlots;
+				int max = -1;
+				for (int slot = 0; slot < numSlots; ++slot) {
+					if (versions[slot] > upload.version) {
+						min = Math.min(min, slot);
+						max = slot;
+					}
+				}
+				if (max >= 0) {
+					write(upload, min, max);
+					upload.buffer.position(min * stride);
+					gl.glBufferSubData(GL3.GL_UNIFORM_BUFFER, min * stride * 4, ((max - min) * stride + blockSize) * 4, upload.buffer);
+					upload.buffer.rewind();
+				}
+			}
+			gl.glBindBuffer(GL3.GL_UNIFORM_BUFFER, 0);
+
+			upload.version = version;
+		}
+	}
+
+	void bind(GL3 gl, Upload upload, int slot) {
+		gl.glBindBufferRange(GL3.GL_UNIFORM_BUFFER, bindingPoint, upload.ubo.getId(), slot * upload.stride * 4, blockSize * 4);
+	}
+
+	private Upload getUpload(GL3 gl) {
+		GLContext context = gl.getContext();
+		Upload upload = (Upload) context.getAttachedObject(key);
+		if (upload == null) {
+			upload = new Upload();
+			context.attachObject(key, upload);
+		}
+		return upload;
+	}
+
+	private void write(Upload upload, int first, int last) {
+		for (int slot = first; slot <= last; ++slot) {
+			upload.buffer.position(slot * upload.stride);
+			upload.buffer.put(blocks, slot * blockSize, blockSize);
+		}
+		upload.buffer.rewind();
+	}
+
+	@Override
+	public String toString() {
+		return "uniform blocks[size=" + blockSize + " slots=" + (numSlots - numFree) + "]";
+	}
+}
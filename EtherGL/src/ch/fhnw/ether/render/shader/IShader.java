@@ -33,6 +33,7 @@ import java.util.List;
 
 import com.jogamp.opengl.GL3;
 
+import ch.fhnw.ether.render.CommandBuffer;
 import ch.fhnw.ether.render.IVertexBuffer;
 import ch.fhnw.ether.render.variable.IShaderArray;
 import ch.fhnw.ether.render.variable.IShaderUniform;
@@ -52,12 +53,26 @@ public interface IShader {
 	
 	void update(GL3 gl, Object[] uniformData);
 
+	/**
+	 * Re-fetch uniform values provided by suppliers, e.g. renderer globals
+	 * that are created or replaced between frames. Does not access GL.
+	 */
+	void refresh();
+
 	void enable(GL3 gl);
 
 	void render(GL3 gl, IVertexBuffer buffer);
 
 	void disable(GL3 gl);
 
+	/**
+	 * Record the commands of {@link #enable(GL3)},
+	 * {@link #render(GL3, IVertexBuffer)} and {@link #disable(GL3)} with the
+	 * current uniform values. Does not access GL, but requires the program to
+	 * be created by {@link #update(GL3, Object[])}.
+	 */
+	void record(CommandBuffer commands, IVertexBuffer buffer);
+
 	List<IShaderUniform<?>> getUniforms();
 
 	List<IShaderArray<?>> getArrays();
@@ -32,6 +32,7 @@ package ch.fhnw.ether.render.shader.base;
 import java.util.ArrayList;
 import java.util.List;
 
+import ch.fhnw.ether.render.CommandBuffer;
 import ch.fhnw.ether.render.IVertexBuffer;
 import ch.fhnw.ether.render.gl.Program;
 import ch.fhnw.ether.render.shader.IShader;
@@ -95,7 +96,7 @@ public abstract class AbstractShader implements IShader {
 				geomShader = INLINE + source[2];
 			}
 			try {
-				program = Program.create(gl, root, vertShader, fragShader, geomShader, System.err);
+				program = Program.create(gl, root, getDefines(), vertShader, fragShader, geomShader, System.err);
 			} catch (Throwable t) {
 				log.severe("cannot create glsl program. exiting.", t);
 				System.exit(1);
@@ -104,6 +105,11 @@ public abstract class AbstractShader implements IShader {
 		uniforms.forEach(attr -> attr.update(uniformData));
 	}
 
+	@Override
+	public final void refresh() {
+		uniforms.forEach(IShaderUniform::refresh);
+	}
+
 	@Override
 	public final void enable(GL3 gl) {
 		// enable program & uniforms (set uniforms, enable textures, change gl state)
@@ -116,18 +122,30 @@ public abstract class AbstractShader implements IShader {
 		buffer.bind(gl);
 		arrays.forEach(attr -> attr.enable(gl, program, buffer));
 
-		int mode = MODE[type.ordinal()];
-		gl.glDrawArrays(mode, 0, buffer.getNumVertices());
+		gl.glDrawArrays(getDrawMode(), 0, buffer.getNumVertices());
 
 		arrays.forEach(attr -> attr.disable(gl, program, buffer));
-		buffer.unbind(gl);
+		// buffer and program stay bound until replaced or the frame ends,
+		// see GLState
 	}
 
 	@Override
 	public final void disable(GL3 gl) {
 		// disable program and uniforms (disable textures, restore gl state)
 		uniforms.forEach(attr -> attr.disable(gl, program));
-		program.disable(gl);
+	}
+
+	@Override
+	public final void record(CommandBuffer commands, IVertexBuffer buffer) {
+		if (program == null)
+			throw new IllegalStateException("shader " + name + " recorded before update");
+		commands.useProgram(program);
+		uniforms.forEach(attr -> attr.record(commands));
+		commands.bindVertexBuffer(buffer);
+		arrays.forEach(attr -> attr.record(commands, buffer));
+		commands.drawArrays(getDrawMode(), 0, buffer.getNumVertices());
+		commands.disableAttributes();
+		uniforms.forEach(attr -> attr.recordDisable(commands));
 	}
 
 	@Override
@@ -140,6 +158,21 @@ public abstract class AbstractShader implements IShader {
 		return arrays;
 	}
 
+	/**
+	 * Preprocessor defines inserted into all shader stages, e.g.
+	 * "#define FOO 1\n". Called once when the program is created.
+	 */
+	protected String getDefines() {
+		return "";
+	}
+
+	/**
+	 * GL draw mode, by default the mode of the shader's primitive type.
+	 */
+	protected int getDrawMode() {
+		return MODE[type.ordinal()];
+	}
+
 	protected final void addUniform(IShaderUniform<?> uniform) {
 		uniforms.add(uniform);
 	}
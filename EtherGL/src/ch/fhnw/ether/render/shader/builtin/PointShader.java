@@ -31,6 +31,7 @@ package ch.fhnw.ether.render.shader.builtin;
 
 import java.util.Collection;
 
+import ch.fhnw.ether.render.gl.GLState;
 import ch.fhnw.ether.render.shader.IShader;
 import ch.fhnw.ether.render.shader.base.AbstractShader;
 import ch.fhnw.ether.render.variable.base.BooleanUniform;
@@ -69,9 +70,10 @@ public class PointShader extends AbstractShader {
 
 		addUniform(new ColorUniform(attributes.contains(IMaterial.COLOR) ? null : () -> RGBA.WHITE));
 		addUniform(new FloatUniform(IMaterial.POINT_SIZE, "pointSize", attributes.contains(IMaterial.POINT_SIZE) ? null : () -> 1f));
+		addUniform(new FloatUniform(IMaterial.POINT_SIZE_ATTENUATION, "pointSizeAttenuation", attributes.contains(IMaterial.POINT_SIZE_ATTENUATION) ? null : () -> 0f));
 
-		addUniform(new StateInject("shader.point_size_program", (gl, p) -> gl.glEnable(GL3.GL_PROGRAM_POINT_SIZE),
-				(gl, p) -> gl.glDisable(GL3.GL_PROGRAM_POINT_SIZE)));
+		addUniform(new StateInject("shader.point_size_program", (gl, p) -> GLState.get(gl).enable(gl, GL3.GL_PROGRAM_POINT_SIZE),
+				(gl, p) -> GLState.get(gl).disable(gl, GL3.GL_PROGRAM_POINT_SIZE)));
 
 		addUniform(new ViewUniformBlock());
 	}
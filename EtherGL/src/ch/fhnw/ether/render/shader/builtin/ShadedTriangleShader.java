@@ -34,19 +34,19 @@ import java.util.Collection;
 import ch.fhnw.ether.render.shader.IShader;
 import ch.fhnw.ether.render.shader.base.AbstractShader;
 import ch.fhnw.ether.render.variable.base.BooleanUniform;
-import ch.fhnw.ether.render.variable.base.FloatUniform;
-import ch.fhnw.ether.render.variable.base.Vec3FloatUniform;
+import ch.fhnw.ether.render.variable.base.SamplerUniform;
 import ch.fhnw.ether.render.variable.builtin.ColorArray;
 import ch.fhnw.ether.render.variable.builtin.ColorMapArray;
 import ch.fhnw.ether.render.variable.builtin.ColorMapUniform;
-import ch.fhnw.ether.render.variable.builtin.LightUniformBlock;
+import ch.fhnw.ether.render.variable.builtin.LightClusterUniformBlock;
+import ch.fhnw.ether.render.variable.builtin.MaterialUniformBlock;
 import ch.fhnw.ether.render.variable.builtin.NormalArray;
 import ch.fhnw.ether.render.variable.builtin.PositionArray;
+import ch.fhnw.ether.render.variable.builtin.ShadowUniformBlock;
 import ch.fhnw.ether.render.variable.builtin.ViewUniformBlock;
 import ch.fhnw.ether.scene.attribute.IAttribute;
 import ch.fhnw.ether.scene.mesh.geometry.IGeometry;
 import ch.fhnw.ether.scene.mesh.geometry.IGeometry.Primitive;
-import ch.fhnw.ether.scene.mesh.material.IMaterial;
 
 public class ShadedTriangleShader extends AbstractShader {
 	public ShadedTriangleShader(Collection<IAttribute> attributes) {
@@ -67,18 +67,17 @@ public class ShadedTriangleShader extends AbstractShader {
 		addUniform(new BooleanUniform("shader.vertex_colors_flag", "useVertexColors", () -> useVertexColors));
 		addUniform(new BooleanUniform("shader.color_map_flag", "useColorMap", () -> useTexture));
 
-		addUniform(new Vec3FloatUniform(IMaterial.EMISSION, "material.emissionColor"));
-		addUniform(new Vec3FloatUniform(IMaterial.AMBIENT, "material.ambientColor"));
-		addUniform(new Vec3FloatUniform(IMaterial.DIFFUSE, "material.diffuseColor"));
-		addUniform(new Vec3FloatUniform(IMaterial.SPECULAR, "material.specularColor"));
-		addUniform(new FloatUniform(IMaterial.SHININESS, "material.shininess"));
-		addUniform(new FloatUniform(IMaterial.STRENGTH, "material.strength"));
-		addUniform(new FloatUniform(IMaterial.ALPHA, "material.alpha"));
+		addUniform(new MaterialUniformBlock());
 		
 		if (useTexture)
 			addUniform(new ColorMapUniform());
 
 		addUniform(new ViewUniformBlock());
-		addUniform(new LightUniformBlock());
+		addUniform(new LightClusterUniformBlock());
+		for (SamplerUniform sampler : LightClusterUniformBlock.createSamplers())
+			addUniform(sampler);
+
+		addUniform(new ShadowUniformBlock());
+		addUniform(ShadowUniformBlock.createSampler());
 	}
 }
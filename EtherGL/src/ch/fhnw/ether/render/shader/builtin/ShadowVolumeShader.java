@@ -31,6 +31,8 @@ package ch.fhnw.ether.render.shader.builtin;
 
 import java.util.function.Supplier;
 
+import com.jogamp.opengl.GL3;
+
 import ch.fhnw.ether.render.shader.IShader;
 import ch.fhnw.ether.render.shader.base.AbstractShader;
 import ch.fhnw.ether.render.variable.base.FloatUniform;
@@ -43,8 +45,21 @@ import ch.fhnw.ether.scene.mesh.geometry.IGeometry.Primitive;
 import ch.fhnw.util.math.IVec4;
 
 public class ShadowVolumeShader extends AbstractShader {
+	private final boolean adjacency;
+
 	public ShadowVolumeShader(Supplier<Integer> lightIndex, Supplier<Float> extrudeDistance, Supplier<IVec4> volumeColor) {
-		super(IShader.class, "builtin.shader.shadow_volumes", "shadow_volumes", Primitive.TRIANGLES);
+		this(lightIndex, extrudeDistance, volumeColor, false);
+	}
+
+	/**
+	 * @param adjacency
+	 *            if true, the shader expects triangles with adjacency (see
+	 *            {@link ch.fhnw.util.math.geometry.TriangleAdjacency}) and
+	 *            only extrudes silhouette edges
+	 */
+	public ShadowVolumeShader(Supplier<Integer> lightIndex, Supplier<Float> extrudeDistance, Supplier<IVec4> volumeColor, boolean adjacency) {
+		super(IShader.class, adjacency ? "builtin.shader.shadow_volumes_adjacency" : "builtin.shader.shadow_volumes", "shadow_volumes", Primitive.TRIANGLES);
+		this.adjacency = adjacency;
 
 		addArray(new PositionArray());
 
@@ -55,4 +70,14 @@ public class ShadowVolumeShader extends AbstractShader {
 		addUniform(new ViewUniformBlock());
 		addUniform(new LightUniformBlock());
 	}
+
+	@Override
+	protected String getDefines() {
+		return adjacency ? "#define ADJACENCY 1\n" : "";
+	}
+
+	@Override
+	protected int getDrawMode() {
+		return adjacency ? GL3.GL_TRIANGLES_ADJACENCY : super.getDrawMode();
+	}
 }
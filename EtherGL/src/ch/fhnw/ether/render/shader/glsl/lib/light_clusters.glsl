@@ -0,0 +1,38 @@
+#ifndef LIGHT_CLUSTERS_GLSL
+#define LIGHT_CLUSTERS_GLSL 1
+
+#include <light_struct.glsl>
+
+// cluster grid, see LightClusters.java for the cluster layout
+layout (std140) uniform clusterBlock {
+	vec4 clusterGrid;			// tiles x, tiles y, depth slices
+	vec4 clusterDepth;			// near, far, log(far / near), orthographic (0 or 1)
+	vec4 clusterViewport;		// viewport x, y, width, height
+};
+
+uniform samplerBuffer lightData;		// 5 texels per light, layout of Light
+uniform usamplerBuffer clusterData;		// offset into clusterLights and light count per cluster
+uniform usamplerBuffer clusterLights;	// light indices
+
+// cluster index of a fragment with given window coordinates and eye space depth (positive)
+int clusterIndex(vec2 fragCoord, float depth) {
+	ivec3 grid = ivec3(clusterGrid.xyz);
+	vec2 uv = (fragCoord - clusterViewport.xy) / clusterViewport.zw;
+	ivec2 tile = clamp(ivec2(floor(uv * clusterGrid.xy)), ivec2(0), grid.xy - 1);
+	float s = clusterDepth.w > 0 ? (depth - clusterDepth.x) / (clusterDepth.y - clusterDepth.x) : log(depth / clusterDepth.x) / clusterDepth.z;
+	int slice = clamp(int(floor(s * clusterGrid.z)), 0, grid.z - 1);
+	return (slice * grid.y + tile.y) * grid.x + tile.x;
+}
+
+// offset and count of the cluster's light indices
+uvec2 clusterRange(int cluster) {
+	return texelFetch(clusterData, cluster).xy;
+}
+
+Light clusterLight(uint offset) {
+	int i = 5 * int(texelFetch(clusterLights, int(offset)).x);
+	vec4 position = texelFetch(lightData, i + 1);
+	return Light(texelFetch(lightData, i), position.xyz, position.w, texelFetch(lightData, i + 2).xyz, texelFetch(lightData, i + 3).xyz, texelFetch(lightData, i + 4).xyz);
+}
+
+#endif // LIGHT_CLUSTERS_GLSL
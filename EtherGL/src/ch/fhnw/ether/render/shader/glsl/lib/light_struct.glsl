@@ -8,7 +8,7 @@ struct Light {
 	// trss.w = spot exponent
 	vec4 trss;
 	vec3 position;
-	//float pad;
+	float shadow;				// first shadow atlas tile, -1 if none
 	vec3 ambientColor;
 	//float pad;
 	vec3 color;
@@ -0,0 +1,10 @@
+#ifndef MATERIAL_BLOCK_GLSL
+#define MATERIAL_BLOCK_GLSL 1
+
+#include <material_struct.glsl>
+
+layout (std140) uniform materialBlock {
+	Material material;
+};
+
+#endif // MATERIAL_BLOCK_GLSL
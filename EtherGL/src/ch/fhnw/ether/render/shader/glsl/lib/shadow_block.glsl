@@ -0,0 +1,39 @@
+#ifndef SHADOW_BLOCK_GLSL
+#define SHADOW_BLOCK_GLSL 1
+
+#include <light_struct.glsl>
+
+#define MAX_SHADOW_TILES 16
+
+// shadow atlas tiles, see ShadowUniformBlock.java
+layout (std140) uniform shadowBlock {
+	mat4 shadowMatrices[MAX_SHADOW_TILES];	// eye space to atlas texture coordinates and depth
+	vec4 shadowTiles[MAX_SHADOW_TILES];		// atlas rectangle u0, v0, u1, v1
+	vec4 shadowCascades[MAX_SHADOW_TILES];	// cascade far depth (eye space), number of cascades, depth bias
+};
+
+uniform sampler2DShadow shadowMap;
+
+// fraction of light reaching an eye space position, 1 if the light has no shadow map
+float shadowFactor(Light light, vec3 position) {
+	int tile = int(light.shadow);
+	if (tile < 0)
+		return 1.0;
+
+	// directional lights: pick the first cascade containing the position
+	float depth = -position.z;
+	int last = tile + int(shadowCascades[tile].y) - 1;
+	while (tile < last && depth > shadowCascades[tile].x)
+		tile++;
+	if (depth > shadowCascades[tile].x)
+		return 1.0;
+
+	vec4 p = shadowMatrices[tile] * vec4(position, 1);
+	p.xyz /= p.w;
+	vec4 rect = shadowTiles[tile];
+	if (any(lessThan(p.xy, rect.xy)) || any(greaterThan(p.xy, rect.zw)) || p.z > 1.0)
+		return 1.0;
+	return texture(shadowMap, vec3(p.xy, p.z - shadowCascades[tile].z));
+}
+
+#endif // SHADOW_BLOCK_GLSL
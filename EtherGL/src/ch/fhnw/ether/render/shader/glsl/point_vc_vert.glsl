@@ -6,6 +6,7 @@ uniform bool useVertexColors;
 
 uniform vec4 materialColor;
 uniform float pointSize;
+uniform float pointSizeAttenuation;
 
 in vec4 vertexPosition;
 in vec4 vertexColor;
@@ -17,6 +18,11 @@ void main() {
 	if (useVertexColors)
 		vsColor *= vertexColor;
 
-	gl_PointSize = pointSize;
 	gl_Position = view.viewProjMatrix * vertexPosition;
+
+	// with attenuation, pointSize applies at distance pointSizeAttenuation
+	if (pointSizeAttenuation > 0)
+		gl_PointSize = max(1.0, pointSize * pointSizeAttenuation / max(gl_Position.w, 0.00001));
+	else
+		gl_PointSize = pointSize;
 }
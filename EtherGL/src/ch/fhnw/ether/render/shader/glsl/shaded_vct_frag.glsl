@@ -7,11 +7,11 @@
 //#define SPECULAR_PHONG 1
 //#define SPECULAR_COOK_TORRANCE 1
 
-#define MAX_LIGHTS 8
+#include <light_clusters.glsl>
 
-#include <light_block.glsl>
+#include <shadow_block.glsl>
 
-#include <material_struct.glsl>
+#include <material_block.glsl>
 
 #include <diffuse_models.glsl>
 #include <specular_models.glsl>
@@ -28,8 +28,6 @@ struct VertexData {
 uniform sampler2D colorMap;
 uniform bool useColorMap;
 
-uniform Material material;
-
 in VertexData vd;
 
 out vec4 fragColor;
@@ -45,8 +43,10 @@ void main() {
 	// FIXME haven't really studied the one / sided lighting issue yet.
 	vec3 normal = normalize(gl_FrontFacing ? vd.normal : -vd.normal);
 
-	for (int i = 0; i < MAX_LIGHTS; ++i) {
-		float type = lights[i].trss.x;
+	uvec2 cluster = clusterRange(clusterIndex(gl_FragCoord.xy, -position.z));
+	for (uint k = 0u; k < cluster.y; ++k) {
+		Light light = clusterLight(cluster.x + k);
+		float type = light.trss.x;
 		if (type == 0)
 			continue;
 
@@ -54,35 +54,36 @@ void main() {
 		float attenuation;
 	    // for local lights, compute per-fragment direction, and attenuation
 		if (type > 1) {
-			float range = lights[i].trss.y;
+			float range = light.trss.y;
 		
-			lightDirection = -(position - lights[i].position);
+			lightDirection = -(position - light.position);
 			float lightDistance = length(lightDirection);
 			
 			lightDirection = lightDirection / lightDistance;
 			attenuation = 1 - smoothstep(0, range, lightDistance);
 	
 			if (type > 2) {
-				float spotCosCutoff = lights[i].trss.z;
-				float spotExponent = lights[i].trss.w;
+				float spotCosCutoff = light.trss.z;
+				float spotExponent = light.trss.w;
 
-				float spotCos = dot(lightDirection, -normalize(lights[i].spotDirection)); 
+				float spotCos = dot(lightDirection, -normalize(light.spotDirection)); 
 				if (spotCos < spotCosCutoff)
 	            	attenuation = 0.0;
 				else
 					attenuation *= pow(spotCos, spotExponent);
 			}
 		} else {
-			lightDirection = lights[i].position;
+			lightDirection = light.position;
 			attenuation = 1.0;
 		}
 
 		float ndotl = dot(normal, lightDirection);
+		float shadow = ndotl > 0.0 ? shadowFactor(light, position) : 1.0;
 		float diffuseFactor = calculateDiffuseFactor(position, normal, lightDirection, ndotl);
 		float specularFactor = diffuseFactor > 0.000001 ? calculateSpecularFactor(position, normal, lightDirection, ndotl, material.shininess, material.strength) : 0.0;
 
-		scatteredLight += material.ambientColor * lights[i].ambientColor * attenuation + material.diffuseColor * lights[i].color * diffuseFactor * attenuation;
-		reflectedLight += material.specularColor * lights[i].color * specularFactor * attenuation;
+		scatteredLight += material.ambientColor * light.ambientColor * attenuation + material.diffuseColor * light.color * diffuseFactor * attenuation * shadow;
+		reflectedLight += material.specularColor * light.color * specularFactor * attenuation * shadow;
 	}
 
 	float alpha = material.alpha;
@@ -0,0 +1,6 @@
+#version 330
+
+// depth only
+
+void main() {
+}
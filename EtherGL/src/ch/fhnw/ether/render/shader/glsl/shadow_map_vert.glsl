@@ -0,0 +1,9 @@
+#version 330
+
+uniform mat4 lightViewProjMatrix;
+
+in vec4 vertexPosition;
+
+void main() {
+	gl_Position = lightViewProjMatrix * vertexPosition;
+}
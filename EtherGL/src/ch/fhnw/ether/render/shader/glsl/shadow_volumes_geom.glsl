@@ -14,6 +14,69 @@ struct VertexData {
 uniform int lightIndex;
 uniform float extrudeDistance;
 
+#ifdef ADJACENCY
+
+// triangles with adjacency: caps for triangles facing the light, sides for
+// silhouette edges only (edges whose neighbour faces away from the light)
+
+in VertexData vd[6];
+
+layout(triangles_adjacency) in;
+layout (triangle_strip, max_vertices=18) out;
+
+Light light;
+
+bool facesLight(vec4 a, vec4 b, vec4 c) {
+	vec3 norm = cross((b - a).xyz, (c - a).xyz);
+	return light.trss.x == 1.0 ? dot(light.position, norm) >= 0 : dot(light.position - a.xyz, norm) >= 0;
+}
+
+vec4 extrude(vec4 t) {
+	vec4 d = light.trss.x == 1.0 ? vec4(-light.position, 0) : t - vec4(light.position, 1);
+	return t + extrudeDistance * normalize(d);
+}
+
+void emitSide(vec4 a, vec4 b) {
+	gl_Position = view.projMatrix * a;				EmitVertex();
+	gl_Position = view.projMatrix * extrude(a);		EmitVertex();
+	gl_Position = view.projMatrix * b;				EmitVertex();
+	gl_Position = view.projMatrix * extrude(b);		EmitVertex();
+	EndPrimitive();
+}
+
+void main() {
+	light = lights[lightIndex];
+
+	vec4 t0 = vd[0].position;
+	vec4 t1 = vd[2].position;
+	vec4 t2 = vd[4].position;
+
+	if (!facesLight(t0, t1, t2))
+		return;
+
+	// sides
+	if (!facesLight(t0, vd[1].position, t1))
+		emitSide(t0, t1);
+	if (!facesLight(t1, vd[3].position, t2))
+		emitSide(t1, t2);
+	if (!facesLight(t2, vd[5].position, t0))
+		emitSide(t2, t0);
+
+	// top
+	gl_Position = view.projMatrix * t0;	EmitVertex();
+	gl_Position = view.projMatrix * t1;	EmitVertex();
+	gl_Position = view.projMatrix * t2;	EmitVertex();
+	EndPrimitive();
+
+	// bottom
+	gl_Position = view.projMatrix * extrude(t0);	EmitVertex();
+	gl_Position = view.projMatrix * extrude(t2);	EmitVertex();
+	gl_Position = view.projMatrix * extrude(t1);	EmitVertex();
+	EndPrimitive();
+}
+
+#else
+
 in VertexData vd[3];
 
 layout(triangles) in;
@@ -92,3 +155,5 @@ void main() {
 	gl_Position = u0;	EmitVertex();
 	EndPrimitive();
 }
+
+#endif // ADJACENCY
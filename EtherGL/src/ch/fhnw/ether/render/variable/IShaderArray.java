@@ -29,6 +29,7 @@
 
 package ch.fhnw.ether.render.variable;
 
+import ch.fhnw.ether.render.CommandBuffer;
 import ch.fhnw.ether.render.IVertexBuffer;
 import ch.fhnw.ether.render.gl.Program;
 
@@ -40,4 +41,9 @@ public interface IShaderArray<T> extends IShaderVariable<T> {
 	void enable(GL3 gl, Program program, IVertexBuffer buffer);
 
 	void disable(GL3 gl, Program program, IVertexBuffer buffer);
+
+	/**
+	 * Record enabling this array in buffer. Does not access GL.
+	 */
+	void record(CommandBuffer commands, IVertexBuffer buffer);
 }
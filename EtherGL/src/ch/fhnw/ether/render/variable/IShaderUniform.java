@@ -31,6 +31,7 @@ package ch.fhnw.ether.render.variable;
 
 import java.util.function.Supplier;
 
+import ch.fhnw.ether.render.CommandBuffer;
 import ch.fhnw.ether.render.gl.Program;
 
 import com.jogamp.opengl.GL3;
@@ -44,7 +45,25 @@ public interface IShaderUniform<T> extends IShaderVariable<T> {
 
 	void update(Object[] data);
 
+	/**
+	 * Re-fetch the value if supplied by a supplier instead of material data.
+	 * Does not access GL.
+	 */
+	void refresh();
+
 	void enable(GL3 gl, Program program);
 
 	void disable(GL3 gl, Program program);
+
+	/**
+	 * Record the commands of {@link #enable(GL3, Program)} with the current
+	 * value. Does not access GL.
+	 */
+	void record(CommandBuffer commands);
+
+	/**
+	 * Record the commands of {@link #disable(GL3, Program)}, if any. Does not
+	 * access GL.
+	 */
+	void recordDisable(CommandBuffer commands);
 }
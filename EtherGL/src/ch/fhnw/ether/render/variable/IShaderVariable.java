@@ -29,6 +29,22 @@
 
 package ch.fhnw.ether.render.variable;
 
+import ch.fhnw.ether.render.gl.Program;
+
+import com.jogamp.opengl.GL3;
+
 public interface IShaderVariable<T> {
 	String id();
+
+	/**
+	 * Get the interned index of the attribute id this variable binds to, see
+	 * {@link ch.fhnw.ether.scene.attribute.AttributeRegistry}.
+	 */
+	int index();
+
+	/**
+	 * Get the location of this variable in program, resolved on first use.
+	 * Returns a negative value if the variable cannot be resolved.
+	 */
+	int getShaderIndex(GL3 gl, Program program);
 }
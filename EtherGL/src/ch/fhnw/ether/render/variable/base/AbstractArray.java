@@ -29,6 +29,7 @@
 
 package ch.fhnw.ether.render.variable.base;
 
+import ch.fhnw.ether.render.CommandBuffer;
 import ch.fhnw.ether.render.IVertexBuffer;
 import ch.fhnw.ether.render.gl.Program;
 import ch.fhnw.ether.render.variable.IShaderArray;
@@ -62,6 +63,11 @@ public abstract class AbstractArray<T> extends AbstractVariable<T> implements IS
 		buffer.disableAttribute(gl, bufferIndex, getShaderIndex(gl, program));
 	}
 
+	@Override
+	public final void record(CommandBuffer commands, IVertexBuffer buffer) {
+		buffer.recordAttribute(commands, bufferIndex, this);
+	}
+
 	@Override
 	protected final int resolveShaderIndex(GL3 gl, Program program, String shaderName) {
 		return program.getAttributeLocation(gl, shaderName);
@@ -31,6 +31,7 @@ package ch.fhnw.ether.render.variable.base;
 
 import java.util.function.Supplier;
 
+import ch.fhnw.ether.render.CommandBuffer;
 import ch.fhnw.ether.render.gl.Program;
 import ch.fhnw.ether.render.variable.IShaderUniform;
 import ch.fhnw.ether.scene.attribute.ITypedAttribute;
@@ -84,10 +85,20 @@ public abstract class AbstractUniform<T> extends AbstractVariable<T> implements
 		this.index = index;
 	}
 
+	@Override
+	public final void refresh() {
+		if (index == -1 && supplier != null)
+			update(null);
+	}
+
 	@Override
 	public void disable(GL3 gl, Program program) {
 	}
 
+	@Override
+	public void recordDisable(CommandBuffer commands) {
+	}
+
 	@Override
 	protected final int resolveShaderIndex(GL3 gl, Program program, String shaderName) {
 		return program.getUniformLocation(gl, shaderName);
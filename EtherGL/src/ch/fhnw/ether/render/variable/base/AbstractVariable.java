@@ -31,6 +31,7 @@ package ch.fhnw.ether.render.variable.base;
 
 import ch.fhnw.ether.render.gl.Program;
 import ch.fhnw.ether.render.variable.IShaderVariable;
+import ch.fhnw.ether.scene.attribute.AttributeRegistry;
 import ch.fhnw.ether.scene.attribute.ITypedAttribute;
 import ch.fhnw.util.Log;
 
@@ -40,6 +41,7 @@ public abstract class AbstractVariable<T> implements IShaderVariable<T> {
 	private static final Log log = Log.create();
 	
 	private final String id;
+	private final int index;
 	private final String shaderName;
 	private int shaderIndex = -1;
 
@@ -49,6 +51,7 @@ public abstract class AbstractVariable<T> implements IShaderVariable<T> {
 
 	protected AbstractVariable(String id, String shaderName) {
 		this.id = id;
+		this.index = AttributeRegistry.intern(id);
 		this.shaderName = shaderName;
 	}
 
@@ -57,11 +60,17 @@ public abstract class AbstractVariable<T> implements IShaderVariable<T> {
 		return id;
 	}
 
+	@Override
+	public final int index() {
+		return index;
+	}
+
 	protected final String getShaderName() {
 		return shaderName;
 	}
 
-	protected final int getShaderIndex(GL3 gl, Program program) {
+	@Override
+	public final int getShaderIndex(GL3 gl, Program program) {
 		if (shaderIndex == -1) {
 			shaderIndex = resolveShaderIndex(gl, program, shaderName);
 			if (shaderIndex == -1) {
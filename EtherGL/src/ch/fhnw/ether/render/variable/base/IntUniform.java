@@ -31,6 +31,7 @@ package ch.fhnw.ether.render.variable.base;
 
 import java.util.function.Supplier;
 
+import ch.fhnw.ether.render.CommandBuffer;
 import ch.fhnw.ether.render.gl.Program;
 import ch.fhnw.ether.scene.attribute.ITypedAttribute;
 
@@ -64,4 +65,9 @@ public class IntUniform extends AbstractUniform<Integer> {
 	public final void enable(GL3 gl, Program program) {
 		program.setUniform(gl, getShaderIndex(gl, program), value);
 	}
+
+	@Override
+	public final void record(CommandBuffer commands) {
+		commands.uniform(this, value);
+	}
 }
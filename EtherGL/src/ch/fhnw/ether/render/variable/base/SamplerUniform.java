@@ -31,9 +31,10 @@ package ch.fhnw.ether.render.variable.base;
 
 import java.util.function.Supplier;
 
-import com.jogamp.opengl.GL;
 import com.jogamp.opengl.GL3;
 
+import ch.fhnw.ether.render.gl.GLState;
+import ch.fhnw.ether.render.CommandBuffer;
 import ch.fhnw.ether.render.gl.Program;
 import ch.fhnw.ether.scene.attribute.ITypedAttribute;
 import ch.fhnw.ether.scene.mesh.material.Texture;
@@ -68,22 +69,20 @@ public class SamplerUniform extends AbstractUniform<Texture> {
 
 	@Override
 	public final void enable(GL3 gl, Program program) {
+		// the unit is set even without texture, so samplers of different
+		// types never default to the same unit
+		program.setUniformSampler(gl, getShaderIndex(gl, program), unit);
 		if (texture == null)
 			return;
-		
-		gl.glActiveTexture(GL.GL_TEXTURE0 + unit);
-		gl.glBindTexture(target, texture.getGlObject().getId());
-		program.setUniformSampler(gl, getShaderIndex(gl, program), unit);
-		gl.glActiveTexture(GL.GL_TEXTURE0);
+
+		// textures stay bound after disable, rebinding is skipped if the
+		// next draw uses the same texture on this unit
+		int id = texture.getGlObject().getId();
+		GLState.get(gl).bindTexture(gl, unit, target, id);
 	}
 
 	@Override
-	public final void disable(GL3 gl, Program program) {
-		if (texture == null)
-			return;
-
-		gl.glActiveTexture(GL.GL_TEXTURE0 + unit);
-		gl.glBindTexture(target, 0);
-		gl.glActiveTexture(GL.GL_TEXTURE0);
+	public final void record(CommandBuffer commands) {
+		commands.texture(this, unit, target, texture);
 	}
 }
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2013 - 2015 Stefan Muller Arisona, Simon Schubiger, Samuel von Stachelski
+ * Copyright (c) 2013 - 2015 FHNW & ETH Zurich
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *  Neither the name of FHNW / ETH Zurich nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ch.fhnw.ether.render.variable.base;
+
+import java.lang.ref.ReferenceQueue;
+
+import ch.fhnw.ether.render.CommandBuffer;
+import ch.fhnw.ether.render.gl.Program;
+import ch.fhnw.ether.render.gl.UniformBlockBuffer;
+import ch.fhnw.ether.scene.attribute.ITypedAttribute;
+import ch.fhnw.util.AutoDisposer;
+import ch.fhnw.util.AutoDisposer.Reference;
+
+import com.jogamp.opengl.GL3;
+
+/**
+ * Uniform block backed by a slot of a shared {@link UniformBlockBuffer}. The
+ * attribute data is the std140 packed block content. The slot is released
+ * when the uniform is garbage collected.
+ */
+public class SharedUniformBlock extends AbstractUniform<float[]> {
+	public static final class SlotRef extends Reference<SharedUniformBlock> {
+		private final UniformBlockBuffer buffer;
+		private final int                slot;
+
+		public SlotRef(SharedUniformBlock referent, ReferenceQueue<? super SharedUniformBlock> q) {
+			super(referent, q);
+			buffer = referent.buffer;
+			slot   = referent.slot;
+		}
+
+		@Override
+		public void dispose() {
+			buffer.free(slot);
+		}
+	}
+
+	private static final AutoDisposer<SharedUniformBlock> autoDisposer = new AutoDisposer<>(SlotRef.class);
+
+	private final UniformBlockBuffer buffer;
+	private final int slot;
+
+	public SharedUniformBlock(ITypedAttribute<float[]> attribute, String shaderName, UniformBlockBuffer buffer) {
+		super(attribute, shaderName);
+		this.buffer = buffer;
+		this.slot = buffer.allocate();
+		autoDisposer.add(this);
+	}
+
+	@Override
+	public final void update(Object[] data) {
+		float[] block = fetch(data);
+		if (block != null)
+			buffer.set(slot, block);
+	}
+
+	@Override
+	public final void enable(GL3 gl, Program program) {
+		if (program.setUniformBlock(gl, getShaderName(), buffer.getBindingPoint())) {
+			buffer.flush(gl);
+			buffer.bind(gl, slot);
+		}
+	}
+
+	@Override
+	public final void record(CommandBuffer commands) {
+		commands.uniformBlockRange(getShaderName(), buffer, slot);
+	}
+
+	@Override
+	public String toString() {
+		return super.toString() + "[" + slot + "]";
+	}
+}
@@ -32,6 +32,7 @@ package ch.fhnw.ether.render.variable.base;
 import java.util.function.BiConsumer;
 import java.util.function.Supplier;
 
+import ch.fhnw.ether.render.CommandBuffer;
 import ch.fhnw.ether.render.gl.Program;
 import ch.fhnw.ether.render.variable.IShaderUniform;
 
@@ -68,6 +69,10 @@ public final class StateInject extends AbstractVariable<GL3> implements IShaderU
 	public void update(Object[] data) {
 	}
 
+	@Override
+	public void refresh() {
+	}
+
 	@Override
 	public void enable(GL3 gl, Program program) {
 		if (enable != null)
@@ -80,6 +85,18 @@ public final class StateInject extends AbstractVariable<GL3> implements IShaderU
 			disable.accept(gl, program);
 	}
 
+	@Override
+	public void record(CommandBuffer commands) {
+		if (enable != null)
+			commands.enableUniform(this);
+	}
+
+	@Override
+	public void recordDisable(CommandBuffer commands) {
+		if (disable != null)
+			commands.disableUniform(this);
+	}
+
 	@Override
 	protected int resolveShaderIndex(GL3 gl, Program program, String shaderName) {
 		return -1;
@@ -32,15 +32,13 @@ package ch.fhnw.ether.render.variable.base;
 import java.nio.FloatBuffer;
 
 import ch.fhnw.ether.render.IRenderer.RendererAttribute;
+import ch.fhnw.ether.render.CommandBuffer;
 import ch.fhnw.ether.render.gl.Program;
 import ch.fhnw.util.math.Mat3;
 
 import com.jogamp.opengl.GL3;
 
 public class UniformBlock extends AbstractUniform<Integer> {
-	private boolean canBind = true;
-	private boolean isBound = false;
-	
 	private int bindingPoint;
 
 	public UniformBlock(RendererAttribute<Integer> attribute, String shaderName) {
@@ -54,20 +52,17 @@ public class UniformBlock extends AbstractUniform<Integer> {
 
 	@Override
 	public final void enable(GL3 gl, Program program) {
-		if (canBind && !isBound) {
-			int index = program.getUniformBlockIndex(gl, getShaderName());
-			if (index == -1) {
-				canBind = false;
-			} else {
-				program.bindUniformBlock(gl, index, bindingPoint);
-				isBound = true;
-			}
-		}
+		program.setUniformBlock(gl, getShaderName(), bindingPoint);
+	}
+
+	@Override
+	public final void record(CommandBuffer commands) {
+		commands.uniformBlock(getShaderName(), bindingPoint);
 	}
 
 	@Override
 	public String toString() {
-		return super.toString() + "[" + isBound + "]";
+		return super.toString() + "[" + bindingPoint + "]";
 	}
 	
 	public static void addMat3(FloatBuffer buffer, Mat3 mat) {
@@ -31,6 +31,7 @@ package ch.fhnw.ether.render.variable.base;
 
 import java.util.function.Supplier;
 
+import ch.fhnw.ether.render.CommandBuffer;
 import ch.fhnw.ether.render.gl.Program;
 import ch.fhnw.ether.scene.attribute.ITypedAttribute;
 import ch.fhnw.util.math.IVec4;
@@ -65,4 +66,9 @@ public class Vec4FloatUniform extends AbstractUniform<IVec4> {
 	public final void enable(GL3 gl, Program program) {
 		program.setUniformVec4(gl, getShaderIndex(gl, program), value);
 	}
+
+	@Override
+	public final void record(CommandBuffer commands) {
+		commands.uniformVec4(this, value);
+	}
 }
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2013 - 2015 Stefan Muller Arisona, Simon Schubiger, Samuel von Stachelski
+ * Copyright (c) 2013 - 2015 FHNW & ETH Zurich
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *  Neither the name of FHNW / ETH Zurich nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ch.fhnw.ether.render.variable.builtin;
+
+import com.jogamp.opengl.GL3;
+
+import ch.fhnw.ether.render.IRenderer.RendererAttribute;
+import ch.fhnw.ether.render.LightClusters;
+import ch.fhnw.ether.render.gl.FloatUniformBuffer;
+import ch.fhnw.ether.render.variable.base.SamplerUniform;
+import ch.fhnw.ether.render.variable.base.UniformBlock;
+import ch.fhnw.ether.scene.mesh.material.Texture;
+import ch.fhnw.util.Viewport;
+
+/**
+ * Cluster grid parameters for clustered forward shading, see
+ * light_clusters.glsl. The lights, the per cluster (offset, count) pairs and
+ * the light indices are passed as buffer textures through the samplers created
+ * by {@link #createSamplers()}.
+ */
+public final class LightClusterUniformBlock extends UniformBlock {
+	public static final RendererAttribute<Integer> ATTRIBUTE = new RendererAttribute<>("builtin.light_cluster_uniform_block");
+
+	public static final RendererAttribute<Texture> LIGHT_DATA = new RendererAttribute<>("builtin.light_cluster_light_data");
+	public static final RendererAttribute<Texture> CLUSTER_DATA = new RendererAttribute<>("builtin.light_cluster_cluster_data");
+	public static final RendererAttribute<Texture> CLUSTER_LIGHTS = new RendererAttribute<>("builtin.light_cluster_cluster_lights");
+
+	public static final int BLOCK_SIZE = 12;
+
+	// units 1-3, unit 0 is the color map
+	public static final int LIGHT_DATA_UNIT = 1;
+	public static final int CLUSTER_DATA_UNIT = 2;
+	public static final int CLUSTER_LIGHTS_UNIT = 3;
+
+	private static final String DEFAULT_SHADER_NAME = "clusterBlock";
+
+	public LightClusterUniformBlock() {
+		super(ATTRIBUTE, DEFAULT_SHADER_NAME);
+	}
+
+	public LightClusterUniformBlock(String shaderName) {
+		super(ATTRIBUTE, shaderName);
+	}
+
+	public static SamplerUniform[] createSamplers() {
+		return new SamplerUniform[] {
+			new SamplerUniform(LIGHT_DATA, "lightData", LIGHT_DATA_UNIT, GL3.GL_TEXTURE_BUFFER),
+			new SamplerUniform(CLUSTER_DATA, "clusterData", CLUSTER_DATA_UNIT, GL3.GL_TEXTURE_BUFFER),
+			new SamplerUniform(CLUSTER_LIGHTS, "clusterLights", CLUSTER_LIGHTS_UNIT, GL3.GL_TEXTURE_BUFFER)
+		};
+	}
+
+	public static void loadUniforms(GL3 gl, FloatUniformBuffer uniforms, LightClusters clusters, Viewport viewport) {
+		uniforms.load(gl, (blockIndex, buffer) -> {
+			buffer.put(clusters.getTilesX());
+			buffer.put(clusters.getTilesY());
+			buffer.put(clusters.getSlices());
+			buffer.put(0);
+
+			buffer.put(clusters.getNear());
+			buffer.put(clusters.getFar());
+			buffer.put((float) Math.log(clusters.getFar() / clusters.getNear()));
+			buffer.put(clusters.isOrthographic() ? 1 : 0);
+
+			buffer.put(viewport.x);
+			buffer.put(viewport.y);
+			buffer.put(viewport.w);
+			buffer.put(viewport.h);
+		});
+	}
+}
@@ -29,6 +29,7 @@
 
 package ch.fhnw.ether.render.variable.builtin;
 
+import java.nio.FloatBuffer;
 import java.util.Collection;
 
 import com.jogamp.opengl.GL3;
@@ -39,6 +40,7 @@ import ch.fhnw.ether.render.variable.base.UniformBlock;
 import ch.fhnw.ether.scene.camera.IViewCameraState;
 import ch.fhnw.ether.scene.light.GenericLight.LightSource;
 import ch.fhnw.ether.scene.light.ILight;
+import ch.fhnw.util.math.Vec4;
 
 public final class LightUniformBlock extends UniformBlock {
 	public static final RendererAttribute<Integer> ATTRIBUTE = new RendererAttribute<>("builtin.light_uniform_block");
@@ -59,23 +61,54 @@ public final class LightUniformBlock extends UniformBlock {
 		super(ATTRIBUTE, shaderName);
 	}
 
+	/**
+	 * Load the first MAX_LIGHTS lights into the uniform block. Shaders that
+	 * need more lights use the light clusters (see
+	 * {@link LightClusterUniformBlock}).
+	 */
 	public static void loadUniforms(GL3 gl, FloatUniformBuffer uniforms, Collection<ILight> lights, IViewCameraState matrices) {
 		uniforms.load(gl, (blockIndex, buffer) -> {
+			int count = 0;
 			for (ILight light : lights) {
-				LightSource source = light.getLightSource();
-				float[] trss = new float[] { source.getType().ordinal(), source.getRange(), source.getSpotCosCutoff(), source.getSpotExponent() };
-				buffer.put(trss);
-				buffer.put(matrices.getViewMatrix().transform(source.getPosition()).toArray());
-				buffer.put(source.getAmbient().toArray());
-				buffer.put(0);
-				buffer.put(source.getColor().toArray());
-				buffer.put(0);
-				buffer.put(matrices.getNormalMatrix().transform(source.getSpotDirection()).toArray());
-				buffer.put(0);
+				if (count == MAX_LIGHTS)
+					break;
+				pack(buffer, light.getLightSource(), matrices);
+				count++;
 			}
-			for (int i = 0; i < LightUniformBlock.MAX_LIGHTS - lights.size(); ++i) {
+			for (int i = count; i < MAX_LIGHTS; ++i) {
 				buffer.put(OFF_LIGHT);
 			}
 		});
 	}
+
+	/**
+	 * Put the 20 floats of a light in view space into buffer, in the layout of
+	 * the Light struct in light_struct.glsl.
+	 */
+	public static void pack(FloatBuffer buffer, LightSource source, IViewCameraState matrices) {
+		pack(buffer, source, matrices, -1);
+	}
+
+	/**
+	 * Put the 20 floats of a light in view space into buffer, in the layout of
+	 * the Light struct in light_struct.glsl, with the first shadow atlas tile of
+	 * the light or -1.
+	 */
+	public static void pack(FloatBuffer buffer, LightSource source, IViewCameraState matrices, int shadowTile) {
+		buffer.put(source.getType().ordinal());
+		buffer.put(source.getRange());
+		buffer.put(source.getSpotCosCutoff());
+		buffer.put(source.getSpotExponent());
+		Vec4 position = matrices.getViewMatrix().transform(source.getPosition());
+		buffer.put(position.x);
+		buffer.put(position.y);
+		buffer.put(position.z);
+		buffer.put(shadowTile);
+		buffer.put(source.getAmbient().toArray());
+		buffer.put(0);
+		buffer.put(source.getColor().toArray());
+		buffer.put(0);
+		buffer.put(matrices.getNormalMatrix().transform(source.getSpotDirection()).toArray());
+		buffer.put(0);
+	}
 }
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2013 - 2015 Stefan Muller Arisona, Simon Schubiger, Samuel von Stachelski
+ * Copyright (c) 2013 - 2015 FHNW & ETH Zurich
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *  Neither the name of FHNW / ETH Zurich nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ch.fhnw.ether.render.variable.builtin;
+
+import com.jogamp.opengl.GL3;
+
+import ch.fhnw.ether.render.IRenderer.RendererAttribute;
+import ch.fhnw.ether.render.variable.base.SamplerUniform;
+import ch.fhnw.ether.render.variable.base.UniformBlock;
+import ch.fhnw.ether.scene.mesh.material.Texture;
+
+/**
+ * Shadow map tiles of the shadow atlas, see shadow_block.glsl. Per tile: a
+ * matrix from eye space to atlas texture coordinates and depth, the tile
+ * rectangle in the atlas, and cascade parameters (far depth of the cascade in
+ * eye space, number of cascades of the light, depth bias).
+ */
+public final class ShadowUniformBlock extends UniformBlock {
+	public static final RendererAttribute<Integer> ATTRIBUTE = new RendererAttribute<>("builtin.shadow_uniform_block");
+
+	public static final RendererAttribute<Texture> SHADOW_MAP = new RendererAttribute<>("builtin.shadow_map");
+
+	public static final int MAX_TILES = 16;
+
+	public static final int BLOCK_SIZE = MAX_TILES * (16 + 4 + 4);
+
+	// offsets of the arrays in the block (in floats)
+	public static final int MATRICES = 0;
+	public static final int TILES    = MAX_TILES * 16;
+	public static final int CASCADES = MAX_TILES * 20;
+
+	// unit 0 is the color map, 1-3 the light clusters
+	public static final int SHADOW_MAP_UNIT = 4;
+
+	private static final String DEFAULT_SHADER_NAME = "shadowBlock";
+
+	public ShadowUniformBlock() {
+		super(ATTRIBUTE, DEFAULT_SHADER_NAME);
+	}
+
+	public ShadowUniformBlock(String shaderName) {
+		super(ATTRIBUTE, shaderName);
+	}
+
+	public static SamplerUniform createSampler() {
+		return new SamplerUniform(SHADOW_MAP, "shadowMap", SHADOW_MAP_UNIT, GL3.GL_TEXTURE_2D);
+	}
+}
@@ -31,9 +31,11 @@ package ch.fhnw.ether.scene.attribute;
 
 public abstract class AbstractAttribute<T> implements ITypedAttribute<T> {
 	private final String id;
+	private final int    index;
 
 	protected AbstractAttribute(String id) {
 		this.id = id;
+		this.index = AttributeRegistry.intern(id);
 	}
 
 	@Override
@@ -41,9 +43,21 @@ public abstract class AbstractAttribute<T> implements ITypedAttribute<T> {
 		return id;
 	}
 
+	@Override
+	public final int index() {
+		return index;
+	}
+
+	// ids and indices are interned one to one, so this is equality by id, and
+	// hashCode agrees with it
 	@Override
 	public boolean equals(Object obj) {
-		return obj instanceof AbstractAttribute<?> && id.equals(((AbstractAttribute<?>) obj).id);
+		return obj instanceof AbstractAttribute<?> && index == ((AbstractAttribute<?>) obj).index;
+	}
+
+	@Override
+	public int hashCode() {
+		return index;
 	}
 
 	@Override
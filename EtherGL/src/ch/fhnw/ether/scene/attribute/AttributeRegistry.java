@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2013 - 2015 Stefan Muller Arisona, Simon Schubiger, Samuel von Stachelski
+ * Copyright (c) 2013 - 2015 FHNW & ETH Zurich
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *  Neither the name of FHNW / ETH Zurich nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ch.fhnw.ether.scene.attribute;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Global registry interning attribute ids to dense ints, so attributes and
+ * shader variables can be matched by index instead of by string comparison.
+ * Indices are assigned in order of first use and are never released.
+ */
+public final class AttributeRegistry {
+	private static final ConcurrentHashMap<String, Integer> INDICES = new ConcurrentHashMap<>();
+
+	private static volatile String[] ids = new String[64];
+	private static int               size;
+
+	private AttributeRegistry() {
+	}
+
+	/**
+	 * Get the index of the given attribute id, assigning a new one if the id
+	 * is not yet registered.
+	 */
+	public static int intern(String id) {
+		Integer index = INDICES.get(id);
+		return index != null ? index : register(id);
+	}
+
+	/**
+	 * Get the id of the given index.
+	 */
+	public static String getId(int index) {
+		return ids[index];
+	}
+
+	/**
+	 * Get the number of registered ids, all indices are below this.
+	 */
+	public static synchronized int size() {
+		return size;
+	}
+
+	private static synchronized int register(String id) {
+		Integer index = INDICES.get(id);
+		if (index != null)
+			return index;
+		if (size == ids.length)
+			ids = Arrays.copyOf(ids, 2 * size);
+		ids[size] = id;
+		INDICES.put(id, size);
+		return size++;
+	}
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2013 - 2015 Stefan Muller Arisona, Simon Schubiger, Samuel von Stachelski
+ * Copyright (c) 2013 - 2015 FHNW & ETH Zurich
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *  Neither the name of FHNW / ETH Zurich nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ch.fhnw.ether.scene.attribute;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Map from attributes to values, stored in an array indexed by
+ * {@link IAttribute#index()}. Lookup by attribute or variable index is a
+ * single array access.
+ */
+public final class AttributeTable<T> {
+	private final List<IAttribute> attributes = new ArrayList<>();
+	private IAttribute[]           keys;
+	private Object[]               values;
+
+	public AttributeTable() {
+		// sized to hold all attributes registered so far without growing
+		int length = Math.max(16, AttributeRegistry.size());
+		keys = new IAttribute[length];
+		values = new Object[length];
+	}
+
+	/**
+	 * Add an attribute. Returns false if an attribute with the same id
+	 * already is contained, in which case the table is not modified.
+	 */
+	public boolean put(IAttribute attribute, T value) {
+		int index = attribute.index();
+		if (index >= keys.length) {
+			int length = Math.max(index + 1, 2 * keys.length);
+			keys = Arrays.copyOf(keys, length);
+			values = Arrays.copyOf(values, length);
+		}
+		if (keys[index] != null)
+			return false;
+		keys[index] = attribute;
+		values[index] = value;
+		attributes.add(attribute);
+		return true;
+	}
+
+	public boolean contains(int index) {
+		return index < keys.length && keys[index] != null;
+	}
+
+	@SuppressWarnings("unchecked")
+	public T get(int index) {
+		return index < values.length ? (T) values[index] : null;
+	}
+
+	/**
+	 * Get the contained attributes in insertion order.
+	 */
+	public Collection<IAttribute> getAttributes() {
+		return Collections.unmodifiableList(attributes);
+	}
+
+	public int size() {
+		return attributes.size();
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder s = new StringBuilder();
+		for (IAttribute attribute : attributes)
+			s.append("[").append(attribute).append(", ").append(values[attribute.index()]).append("] ");
+		return s.toString();
+	}
+}
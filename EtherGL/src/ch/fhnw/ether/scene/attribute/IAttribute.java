@@ -38,4 +38,12 @@ package ch.fhnw.ether.scene.attribute;
  */
 public interface IAttribute {
 	String id();
+
+	/**
+	 * Get the interned index of this attribute's id, see
+	 * {@link AttributeRegistry}. Implementations should cache it.
+	 */
+	default int index() {
+		return AttributeRegistry.intern(id());
+	}
 }
@@ -37,6 +37,8 @@ import ch.fhnw.ether.scene.attribute.IAttribute;
 import ch.fhnw.ether.scene.mesh.geometry.IGeometry;
 import ch.fhnw.ether.scene.mesh.geometry.IGeometry.IGeometryAttribute;
 import ch.fhnw.ether.scene.mesh.geometry.IGeometry.Primitive;
+import ch.fhnw.ether.scene.mesh.material.AtlasRegion;
+import ch.fhnw.ether.scene.mesh.material.ColorMapMaterial;
 import ch.fhnw.ether.scene.mesh.material.IMaterial;
 import ch.fhnw.util.UpdateRequest;
 import ch.fhnw.util.math.Mat3;
@@ -179,11 +181,14 @@ public final class DefaultMesh implements IMesh {
 		float[][] dst = new float[src.length][];
 		IGeometryAttribute[] attrs = geometry.getAttributes();
 		Mat4 tp = Mat4.multiply(Mat4.translate(position), transform);
+		AtlasRegion region = material instanceof ColorMapMaterial ? ((ColorMapMaterial) material).getAtlasRegion() : null;
 		dst[0] = tp.transform(src[0]);
 		for (int i = 1; i < src.length; ++i) {
 			if (attrs[i].equals(IGeometry.NORMAL_ARRAY)) {
 				Mat3 tn = new Mat3(tp).inverse().transpose();
 				dst[i] = tn.transform(src[i]);
+			} else if (region != null && attrs[i].equals(IGeometry.COLOR_MAP_ARRAY)) {
+				dst[i] = region.remap(src[i]);
 			} else {
 				dst[i] = Arrays.copyOf(src[i], src[i].length);
 			}
@@ -51,7 +51,9 @@ public interface IMesh extends I3DObject {
 	// FIXME: DONT_CAST_SHADOW should go to material, including CULL_FACE /
 	// DONT_CULL_FACE
 	enum Flag {
-		DONT_CAST_SHADOW
+		DONT_CAST_SHADOW,
+		// always rasterized as occluder if occlusion culling is enabled
+		OCCLUDER
 	}
 
 	EnumSet<Flag> NO_FLAGS = EnumSet.noneOf(Flag.class);
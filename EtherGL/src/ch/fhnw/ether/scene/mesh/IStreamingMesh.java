@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2013 - 2015 Stefan Muller Arisona, Simon Schubiger, Samuel von Stachelski
+ * Copyright (c) 2013 - 2015 FHNW & ETH Zurich
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *  Neither the name of FHNW / ETH Zurich nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ch.fhnw.ether.scene.mesh;
+
+import java.util.Collection;
+import java.util.List;
+
+import ch.fhnw.ether.scene.camera.IViewCameraState;
+
+/**
+ * Mesh whose content is paged in and out depending on the views, such as an out-of-core point cloud. The render
+ * manager keeps renderables for all resident meshes and renders, per view, the selected ones. The mesh itself is
+ * never rendered, its geometry only serves as representative (e.g. for bounds).
+ */
+public interface IStreamingMesh extends IMesh {
+	/**
+	 * Selects the meshes to be rendered for each of the given views, paging data in and out as required. Called once
+	 * per frame on the scene thread.
+	 * 
+	 * @return One list of selected meshes per view, in the order of views. All selected meshes are resident.
+	 */
+	List<List<IMesh>> select(List<IViewCameraState> views);
+
+	/**
+	 * Get all currently resident meshes.
+	 */
+	Collection<IMesh> getResidentMeshes();
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2013 - 2015 Stefan Muller Arisona, Simon Schubiger, Samuel von Stachelski
+ * Copyright (c) 2013 - 2015 FHNW & ETH Zurich
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *  Neither the name of FHNW / ETH Zurich nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ch.fhnw.ether.scene.mesh;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+
+import ch.fhnw.ether.scene.mesh.geometry.IGeometry;
+import ch.fhnw.ether.scene.mesh.material.IMaterial;
+import ch.fhnw.util.UpdateRequest;
+import ch.fhnw.util.math.Mat4;
+import ch.fhnw.util.math.Vec3;
+import ch.fhnw.util.math.geometry.BoundingBox;
+
+public final class LodMesh implements ILodMesh {
+	private final List<IMesh> levels;
+	private final float[] switchSizes;
+
+	private final UpdateRequest update = new UpdateRequest(true);
+
+	/**
+	 * @param levels
+	 *            Levels from finest to coarsest
+	 * @param switchSizes
+	 *            Projected size in pixels below which level i + 1 replaces level i, one per level but the last
+	 */
+	public LodMesh(List<? extends IMesh> levels, float[] switchSizes) {
+		if (levels.isEmpty())
+			throw new IllegalArgumentException("no levels");
+		if (switchSizes.length < levels.size() - 1)
+			throw new IllegalArgumentException("# switch sizes < # levels - 1");
+		this.levels = Collections.unmodifiableList(new ArrayList<>(levels));
+		this.switchSizes = switchSizes.clone();
+	}
+
+	/**
+	 * Creates a level of detail mesh by simplifying the geometry of mesh. Level i has about reduction^i times the
+	 * triangles of mesh and is used below a projected size of baseSize * sqrt(reduction)^(i - 1), so the triangle
+	 * density on screen stays about constant. Simplification is CPU only and may run on any thread.
+	 */
+	public static LodMesh create(IMesh mesh, int numLevels, float reduction, float baseSize) {
+		List<IGeometry> geometries = MeshSimplifier.createLodChain(mesh.getGeometry(), numLevels, reduction);
+		List<IMesh> levels = new ArrayList<>(geometries.size());
+		float[] switchSizes = new float[geometries.size()];
+		float size = baseSize;
+		for (int i = 0; i < geometries.size(); i++) {
+			IMesh level = i == 0 ? mesh : new DefaultMesh(mesh.getMaterial(), geometries.get(i), mesh.getQueue(), mesh.getFlags());
+			if (i > 0) {
+				level.setPosition(mesh.getPosition());
+				level.setTransform(mesh.getTransform());
+			}
+			levels.add(level);
+			switchSizes[i] = size;
+			size *= (float) Math.sqrt(reduction);
+		}
+		LodMesh result = new LodMesh(levels, switchSizes);
+		result.setName(mesh.getName());
+		return result;
+	}
+
+	// ILodMesh implementation
+
+	@Override
+	public List<IMesh> getLevels() {
+		return levels;
+	}
+
+	@Override
+	public float getSwitchSize(int level) {
+		return level < levels.size() - 1 ? switchSizes[level] : 0;
+	}
+
+	// I3DObject implementation
+
+	@Override
+	public BoundingBox getBounds() {
+		return levels.get(0).getBounds();
+	}
+
+	@Override
+	public Vec3 getPosition() {
+		return levels.get(0).getPosition();
+	}
+
+	@Override
+	public void setPosition(Vec3 position) {
+		levels.forEach(level -> level.setPosition(position));
+		update.request();
+	}
+
+	@Override
+	public String getName() {
+		return levels.get(0).getName();
+	}
+
+	/**
+	 * Sets name on the first level and name + "_lod" + i on level i.
+	 */
+	@Override
+	public void setName(String name) {
+		for (int i = 0; i < levels.size(); i++)
+			levels.get(i).setName(i == 0 ? name : name + "_lod" + i);
+	}
+
+	// IMesh implementation
+
+	@Override
+	public Queue getQueue() {
+		return levels.get(0).getQueue();
+	}
+
+	@Override
+	public EnumSet<Flag> getFlags() {
+		return levels.get(0).getFlags();
+	}
+
+	@Override
+	public boolean hasFlag(Flag flag) {
+		return levels.get(0).hasFlag(flag);
+	}
+
+	@Override
+	public IMaterial getMaterial() {
+		return levels.get(0).getMaterial();
+	}
+
+	@Override
+	public IGeometry getGeometry() {
+		return levels.get(0).getGeometry();
+	}
+
+	@Override
+	public Mat4 getTransform() {
+		return levels.get(0).getTransform();
+	}
+
+	@Override
+	public void setTransform(Mat4 transform) {
+		levels.forEach(level -> level.setTransform(transform));
+		update.request();
+	}
+
+	@Override
+	public float[] getTransformedPositionData() {
+		return levels.get(0).getTransformedPositionData();
+	}
+
+	@Override
+	public float[][] getTransformedGeometryData() {
+		return levels.get(0).getTransformedGeometryData();
+	}
+
+	@Override
+	public UpdateRequest getUpdater() {
+		return update;
+	}
+
+	@Override
+	public String toString() {
+		return getName() + "[" + levels.size() + " levels]";
+	}
+}
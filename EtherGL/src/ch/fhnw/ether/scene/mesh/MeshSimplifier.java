@@ -0,0 +1,643 @@
+/*
+ * Copyright (c) 2013 - 2015 Stefan Muller Arisona, Simon Schubiger, Samuel von Stachelski
+ * Copyright (c) 2013 - 2015 FHNW & ETH Zurich
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *  Neither the name of FHNW / ETH Zurich nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ch.fhnw.ether.scene.mesh;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import ch.fhnw.ether.scene.mesh.geometry.DefaultGeometry;
+import ch.fhnw.ether.scene.mesh.geometry.IGeometry;
+import ch.fhnw.ether.scene.mesh.geometry.IGeometry.IGeometryAttribute;
+import ch.fhnw.ether.scene.mesh.geometry.IGeometry.Primitive;
+import ch.fhnw.util.IntList;
+
+/**
+ * Quadric error metric simplification (Garland & Heckbert) of triangle geometry. Corners with equal positions are
+ * welded, edges are collapsed onto the endpoint with the smaller error until the target triangle count is reached.
+ * Collapses that would flip a triangle are rejected, open borders are kept in place by additional boundary planes.
+ * Corners with equal positions but different attributes (e.g. texture seams) are kept apart as "wedges", after a
+ * collapse each wedge continues with the attributes of the nearest wedge of the remaining vertex.
+ * 
+ * Pure CPU code without GL dependencies, instances are not thread safe but independent simplifications may run in
+ * parallel.
+ */
+public final class MeshSimplifier {
+	private static final double BOUNDARY_WEIGHT = 100;
+	private static final double FLIP_LIMIT      = 0.2;
+
+	private final IGeometryAttribute[] attributes;
+	private final float[][]            data;
+	private final int                  numCorners;
+
+	// welded positions
+	private int        numVertices;
+	private int[]      vertexCorner;
+	private double[]   quadrics;
+	private boolean[]  removed;
+	private int[]      version;
+	private int[]      refStart;
+	private int[]      refCount;
+	private IntList    refs;
+
+	// wedges: distinct position + attribute combinations, identified by a representative corner
+	private int[]      wedgeCorner;
+	private int[]      wedgeVertex;
+
+	// triangles as wedge triples
+	private int[]      triangles;
+	private boolean[]  deleted;
+	private int        numTriangles;
+
+	// collapse candidates as binary heap
+	private double[]   heapCost   = new double[16];
+	private int[]      heapRemove = new int[16];
+	private int[]      heapKeep   = new int[16];
+	private long[]     heapStamp  = new long[16];
+	private int        heapSize;
+
+	private int[]      mark;
+	private int        markStamp;
+
+	// scratch
+	private final double[] n0      = new double[4];
+	private final double[] n1      = new double[4];
+	private final IntList  from    = new IntList();
+	private final IntList  to      = new IntList();
+	private final IntList  merged  = new IntList();
+
+	public MeshSimplifier(IGeometry geometry) {
+		if (geometry.getType() != Primitive.TRIANGLES)
+			throw new IllegalArgumentException("can only simplify triangles: " + geometry.getType());
+		this.attributes = geometry.getAttributes();
+		this.data       = geometry.getData();
+		this.numCorners = data[0].length / 3;
+		weld();
+		initQuadrics();
+		initCandidates();
+	}
+
+	/**
+	 * Returns the number of triangles of the current simplification.
+	 */
+	public int getNumTriangles() {
+		return numTriangles;
+	}
+
+	/**
+	 * Collapses edges until at most target triangles remain or no more collapses are possible.
+	 * 
+	 * @param maxError
+	 *            Collapses with a larger quadric error are not performed.
+	 * @return the resulting triangle count
+	 */
+	public int simplify(int target, double maxError) {
+		while (numTriangles > target && heapSize > 0) {
+			double cost   = heapCost[0];
+			int    remove = heapRemove[0];
+			int    keep   = heapKeep[0];
+			long   stamp  = heapStamp[0];
+			pop();
+			if (removed[remove] || removed[keep] || stamp != stamp(remove, keep))
+				continue;
+			if (cost > maxError)
+				break;
+			collapse(remove, keep);
+		}
+		return numTriangles;
+	}
+
+	/**
+	 * Returns the current simplification as new geometry with the attribute layout of the source geometry.
+	 */
+	public DefaultGeometry getGeometry() {
+		float[][] result = new float[attributes.length][];
+		for (int a = 0; a < attributes.length; a++)
+			result[a] = new float[numTriangles * 3 * attributes[a].getNumComponents()];
+		int dst = 0;
+		for (int t = 0; t < deleted.length; t++) {
+			if (deleted[t])
+				continue;
+			for (int c = 0; c < 3; c++, dst++) {
+				int wedge = triangles[t * 3 + c];
+				for (int a = 0; a < attributes.length; a++) {
+					int n   = attributes[a].getNumComponents();
+					int src = a == 0 ? vertexCorner[wedgeVertex[wedge]] : wedgeCorner[wedge];
+					System.arraycopy(data[a], src * n, result[a], dst * n, n);
+				}
+			}
+		}
+		return new DefaultGeometry(Primitive.TRIANGLES, attributes, result);
+	}
+
+	/**
+	 * Simplifies geometry to at most target triangles.
+	 */
+	public static DefaultGeometry simplify(IGeometry geometry, int target) {
+		MeshSimplifier simplifier = new MeshSimplifier(geometry);
+		simplifier.simplify(target, Double.POSITIVE_INFINITY);
+		return simplifier.getGeometry();
+	}
+
+	/**
+	 * Creates a chain of numLevels progressively simplified geometries, level i having about reduction^i times the
+	 * triangles of geometry. Levels are derived from the previous level, so the result is a proper chain. The first
+	 * element is geometry itself.
+	 */
+	public static List<IGeometry> createLodChain(IGeometry geometry, int numLevels, float reduction) {
+		List<IGeometry> result = new ArrayList<>(numLevels);
+		result.add(geometry);
+		MeshSimplifier simplifier = new MeshSimplifier(geometry);
+		double target = simplifier.getNumTriangles();
+		for (int level = 1; level < numLevels; level++) {
+			target *= reduction;
+			int before = simplifier.getNumTriangles();
+			if (simplifier.simplify((int) target, Double.POSITIVE_INFINITY) == before)
+				break;
+			result.add(simplifier.getGeometry());
+		}
+		return result;
+	}
+
+	// ---- setup
+
+	private void weld() {
+		float[] positions = data[0];
+
+		// positions
+		int   capacity = Integer.highestOneBit(Math.max(4, numCorners * 2)) * 2;
+		int[] table    = new int[capacity];
+		Arrays.fill(table, -1);
+		int[] vertexOf = new int[numCorners];
+		vertexCorner   = new int[numCorners];
+		for (int i = 0; i < numCorners; i++) {
+			int h = hash(positions, i * 3, 3) & (capacity - 1);
+			while (table[h] >= 0 && !(equals(positions, vertexCorner[table[h]] * 3, i * 3, 3)))
+				h = (h + 1) & (capacity - 1);
+			if (table[h] < 0) {
+				table[h] = numVertices;
+				vertexCorner[numVertices++] = i;
+			}
+			vertexOf[i] = table[h];
+		}
+
+		// wedges
+		Arrays.fill(table, -1);
+		int   numWedges = 0;
+		int[] wedgeOf   = new int[numCorners];
+		wedgeCorner     = new int[numCorners];
+		wedgeVertex     = new int[numCorners];
+		for (int i = 0; i < numCorners; i++) {
+			int h = vertexOf[i] * 31;
+			for (int a = 1; a < attributes.length; a++) {
+				int n = attributes[a].getNumComponents();
+				h = h * 31 + hash(data[a], i * n, n);
+			}
+			h = mix(h) & (capacity - 1);
+			while (table[h] >= 0 && !(sameWedge(vertexOf, wedgeCorner[table[h]], i)))
+				h = (h + 1) & (capacity - 1);
+			if (table[h] < 0) {
+				table[h] = numWedges;
+				wedgeCorner[numWedges] = i;
+				wedgeVertex[numWedges++] = vertexOf[i];
+			}
+			wedgeOf[i] = table[h];
+		}
+
+		numTriangles = numCorners / 3;
+		triangles    = Arrays.copyOf(wedgeOf, numTriangles * 3);
+		deleted      = new boolean[numTriangles];
+
+		// drop degenerate triangles right away
+		for (int t = 0; t < numTriangles; t++) {
+			int v0 = vertex(t, 0), v1 = vertex(t, 1), v2 = vertex(t, 2);
+			if (v0 == v1 || v1 == v2 || v2 == v0)
+				deleted[t] = true;
+		}
+		for (boolean d : deleted)
+			if (d)
+				numTriangles--;
+
+		removed = new boolean[numVertices];
+		version = new int[numVertices];
+		mark    = new int[numVertices];
+		rebuildRefs();
+	}
+
+	private boolean sameWedge(int[] vertexOf, int a, int b) {
+		if (vertexOf[a] != vertexOf[b])
+			return false;
+		for (int i = 1; i < attributes.length; i++) {
+			int n = attributes[i].getNumComponents();
+			if (!(equals(data[i], a * n, b * n, n)))
+				return false;
+		}
+		return true;
+	}
+
+	private void rebuildRefs() {
+		refStart = new int[numVertices];
+		refCount = new int[numVertices];
+		for (int t = 0; t < deleted.length; t++)
+			if (!(deleted[t]))
+				for (int c = 0; c < 3; c++)
+					refCount[vertex(t, c)]++;
+		int start = 0;
+		for (int v = 0; v < numVertices; v++) {
+			refStart[v] = start;
+			start += refCount[v];
+			refCount[v] = 0;
+		}
+		refs = new IntList(start * 2);
+		refs._setSize(start);
+		int[] r = refs._getArray();
+		for (int t = 0; t < deleted.length; t++) {
+			if (!(deleted[t])) {
+				for (int c = 0; c < 3; c++) {
+					int v = vertex(t, c);
+					r[refStart[v] + refCount[v]++] = t;
+				}
+			}
+		}
+	}
+
+	private void initQuadrics() {
+		quadrics = new double[numVertices * 10];
+		double[] n = n0;
+		for (int t = 0; t < deleted.length; t++) {
+			if (deleted[t])
+				continue;
+			double area = plane(t, n);
+			for (int c = 0; c < 3; c++)
+				addQuadric(vertex(t, c), n, area);
+		}
+
+		// boundary edges: plane through the edge, perpendicular to its triangle
+		long[] keys = edgeKeys();
+		Arrays.sort(keys);
+		Set<Long> boundary = new HashSet<>();
+		for (int i = 0; i < keys.length;) {
+			int j = i + 1;
+			while (j < keys.length && keys[j] == keys[i])
+				j++;
+			if (j - i == 1)
+				boundary.add(keys[i]);
+			i = j;
+		}
+		if (boundary.isEmpty())
+			return;
+		for (int t = 0; t < deleted.length; t++) {
+			if (deleted[t])
+				continue;
+			for (int c = 0; c < 3; c++) {
+				int a = vertex(t, c);
+				int b = vertex(t, (c + 1) % 3);
+				if (!(boundary.contains(edgeKey(a, b))))
+					continue;
+				plane(t, n);
+				double ex = px(b) - px(a), ey = py(b) - py(a), ez = pz(b) - pz(a);
+				// perpendicular plane normal = edge x face normal
+				double qx = ey * n[2] - ez * n[1];
+				double qy = ez * n[0] - ex * n[2];
+				double qz = ex * n[1] - ey * n[0];
+				double len = Math.sqrt(qx * qx + qy * qy + qz * qz);
+				if (len == 0)
+					continue;
+				n[0] = qx / len;
+				n[1] = qy / len;
+				n[2] = qz / len;
+				n[3] = -(n[0] * px(a) + n[1] * py(a) + n[2] * pz(a));
+				double weight = BOUNDARY_WEIGHT * (ex * ex + ey * ey + ez * ez);
+				addQuadric(a, n, weight);
+				addQuadric(b, n, weight);
+			}
+		}
+	}
+
+	private void initCandidates() {
+		long[] keys = edgeKeys();
+		Arrays.sort(keys);
+		for (int i = 0; i < keys.length; i++) {
+			if (i > 0 && keys[i] == keys[i - 1])
+				continue;
+			push((int) (keys[i] >>> 32), (int) keys[i]);
+		}
+	}
+
+	private long[] edgeKeys() {
+		long[] keys = new long[numTriangles * 3];
+		int    k    = 0;
+		for (int t = 0; t < deleted.length; t++) {
+			if (deleted[t])
+				continue;
+			for (int c = 0; c < 3; c++)
+				keys[k++] = edgeKey(vertex(t, c), vertex(t, (c + 1) % 3));
+		}
+		return keys;
+	}
+
+	private static long edgeKey(int a, int b) {
+		return a < b ? ((long) a << 32) | b : ((long) b << 32) | a;
+	}
+
+	// ---- collapse
+
+	private void collapse(int remove, int keep) {
+		int[] r     = refs._getArray();
+		int   start = refStart[remove];
+		int   count = refCount[remove];
+
+		// reject collapses that flip or badly degenerate a remaining triangle
+		for (int i = start; i < start + count; i++) {
+			int t = r[i];
+			if (deleted[t] || contains(t, keep))
+				continue;
+			double a0 = plane(t, n0);
+			double a1 = plane(t, remove, keep, n1);
+			if (a1 == 0 || (n0[0] * n1[0] + n0[1] * n1[1] + n0[2] * n1[2]) < FLIP_LIMIT && a0 > 0)
+				return;
+		}
+
+		// triangles on the edge vanish, their wedges tell which wedges of remove continue as which wedges of keep
+		from.clear();
+		to.clear();
+		for (int i = start; i < start + count; i++) {
+			int t = r[i];
+			if (deleted[t] || !(contains(t, keep)))
+				continue;
+			from.add(wedge(t, remove));
+			to.add(wedge(t, keep));
+			deleted[t] = true;
+			numTriangles--;
+		}
+		for (int i = start; i < start + count; i++) {
+			int t = r[i];
+			if (deleted[t])
+				continue;
+			for (int c = 0; c < 3; c++) {
+				int w = triangles[t * 3 + c];
+				if (wedgeVertex[w] != remove)
+					continue;
+				int mapped = -1;
+				int idx    = from.indexOf(w);
+				if (idx >= 0)
+					mapped = to.get(idx);
+				else if (!(to.isEmpty()))
+					mapped = nearestWedge(w, to);
+				if (mapped >= 0)
+					triangles[t * 3 + c] = mapped;
+				else
+					wedgeVertex[w] = keep;
+			}
+		}
+
+		// merge quadrics and triangle references
+		for (int i = 0; i < 10; i++)
+			quadrics[keep * 10 + i] += quadrics[remove * 10 + i];
+		removed[remove] = true;
+		version[remove]++;
+		version[keep]++;
+
+		merged.clear();
+		for (int i = refStart[keep], e = i + refCount[keep]; i < e; i++)
+			if (!(deleted[r[i]]))
+				merged.add(r[i]);
+		for (int i = start; i < start + count; i++)
+			if (!(deleted[r[i]]))
+				merged.add(r[i]);
+		refStart[keep] = refs.size();
+		refCount[keep] = merged.size();
+		refs.addAll(merged._getArray(), 0, merged.size());
+		if (refs.size() > 8L * numTriangles * 3 + 1024)
+			rebuildRefs();
+
+		// new candidates around keep
+		markStamp++;
+		int[] rr = refs._getArray();
+		for (int i = refStart[keep], e = i + refCount[keep]; i < e; i++) {
+			int t = rr[i];
+			for (int c = 0; c < 3; c++) {
+				int v = vertex(t, c);
+				if (v != keep && mark[v] != markStamp) {
+					mark[v] = markStamp;
+					push(keep, v);
+				}
+			}
+		}
+	}
+
+	private int nearestWedge(int w, IntList candidates) {
+		int    result = candidates.get(0);
+		double best   = Double.POSITIVE_INFINITY;
+		int    cw     = wedgeCorner[w];
+		for (int i = 0; i < candidates.size(); i++) {
+			int    cc = wedgeCorner[candidates.get(i)];
+			double d  = 0;
+			for (int a = 1; a < attributes.length; a++) {
+				int n = attributes[a].getNumComponents();
+				for (int k = 0; k < n; k++) {
+					double delta = data[a][cw * n + k] - data[a][cc * n + k];
+					d += delta * delta;
+				}
+			}
+			if (d < best) {
+				best   = d;
+				result = candidates.get(i);
+			}
+		}
+		return result;
+	}
+
+	// ---- geometry helpers
+
+	private int vertex(int t, int c) {
+		return wedgeVertex[triangles[t * 3 + c]];
+	}
+
+	private boolean contains(int t, int v) {
+		return vertex(t, 0) == v || vertex(t, 1) == v || vertex(t, 2) == v;
+	}
+
+	private int wedge(int t, int v) {
+		for (int c = 0; c < 3; c++)
+			if (vertex(t, c) == v)
+				return triangles[t * 3 + c];
+		throw new IllegalStateException();
+	}
+
+	private double px(int v) {
+		return data[0][vertexCorner[v] * 3];
+	}
+
+	private double py(int v) {
+		return data[0][vertexCorner[v] * 3 + 1];
+	}
+
+	private double pz(int v) {
+		return data[0][vertexCorner[v] * 3 + 2];
+	}
+
+	private double plane(int t, double[] n) {
+		return plane(t, -1, -1, n);
+	}
+
+	// unit normal and distance of triangle t with vertex replace moved to vertex replacement, returns the area
+	private double plane(int t, int replace, int replacement, double[] n) {
+		int v0 = vertex(t, 0), v1 = vertex(t, 1), v2 = vertex(t, 2);
+		if (v0 == replace) v0 = replacement;
+		if (v1 == replace) v1 = replacement;
+		if (v2 == replace) v2 = replacement;
+		double ax = px(v1) - px(v0), ay = py(v1) - py(v0), az = pz(v1) - pz(v0);
+		double bx = px(v2) - px(v0), by = py(v2) - py(v0), bz = pz(v2) - pz(v0);
+		double nx = ay * bz - az * by;
+		double ny = az * bx - ax * bz;
+		double nz = ax * by - ay * bx;
+		double len = Math.sqrt(nx * nx + ny * ny + nz * nz);
+		if (len == 0) {
+			n[0] = n[1] = n[2] = n[3] = 0;
+			return 0;
+		}
+		n[0] = nx / len;
+		n[1] = ny / len;
+		n[2] = nz / len;
+		n[3] = -(n[0] * px(v0) + n[1] * py(v0) + n[2] * pz(v0));
+		return len / 2;
+	}
+
+	private void addQuadric(int v, double[] p, double w) {
+		int q = v * 10;
+		quadrics[q + 0] += w * p[0] * p[0];
+		quadrics[q + 1] += w * p[0] * p[1];
+		quadrics[q + 2] += w * p[0] * p[2];
+		quadrics[q + 3] += w * p[0] * p[3];
+		quadrics[q + 4] += w * p[1] * p[1];
+		quadrics[q + 5] += w * p[1] * p[2];
+		quadrics[q + 6] += w * p[1] * p[3];
+		quadrics[q + 7] += w * p[2] * p[2];
+		quadrics[q + 8] += w * p[2] * p[3];
+		quadrics[q + 9] += w * p[3] * p[3];
+	}
+
+	// error of quadric a + b at the position of vertex v
+	private double error(int a, int b, int v) {
+		double x = px(v), y = py(v), z = pz(v);
+		double e = 0;
+		for (int i = 0; i < 2; i++) {
+			int q = (i == 0 ? a : b) * 10;
+			e += quadrics[q + 0] * x * x + 2 * quadrics[q + 1] * x * y + 2 * quadrics[q + 2] * x * z + 2 * quadrics[q + 3] * x
+			   + quadrics[q + 4] * y * y + 2 * quadrics[q + 5] * y * z + 2 * quadrics[q + 6] * y
+			   + quadrics[q + 7] * z * z + 2 * quadrics[q + 8] * z
+			   + quadrics[q + 9];
+		}
+		return Math.max(0, e);
+	}
+
+	private static int hash(float[] a, int off, int n) {
+		int h = 1;
+		for (int i = 0; i < n; i++) {
+			float f = a[off + i];
+			h = 31 * h + (f == 0 ? 0 : Float.floatToIntBits(f));
+		}
+		return mix(h);
+	}
+
+	private static int mix(int h) {
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		return h;
+	}
+
+	private static boolean equals(float[] a, int i, int j, int n) {
+		for (int k = 0; k < n; k++)
+			if (a[i + k] != a[j + k])
+				return false;
+		return true;
+	}
+
+	// ---- candidate heap
+
+	private long stamp(int remove, int keep) {
+		return ((long) version[remove] << 32) | (version[keep] & 0xFFFFFFFFL);
+	}
+
+	private void push(int a, int b) {
+		double ea = error(a, b, b); // collapse a onto b
+		double eb = error(a, b, a); // collapse b onto a
+		int    remove = ea <= eb ? a : b;
+		int    keep   = ea <= eb ? b : a;
+		if (heapSize == heapCost.length) {
+			int capacity = heapSize * 2;
+			heapCost   = Arrays.copyOf(heapCost, capacity);
+			heapRemove = Arrays.copyOf(heapRemove, capacity);
+			heapKeep   = Arrays.copyOf(heapKeep, capacity);
+			heapStamp  = Arrays.copyOf(heapStamp, capacity);
+		}
+		int i = heapSize++;
+		set(i, Math.min(ea, eb), remove, keep, stamp(remove, keep));
+		while (i > 0) {
+			int parent = (i - 1) >> 1;
+			if (heapCost[parent] <= heapCost[i])
+				break;
+			swap(i, parent);
+			i = parent;
+		}
+	}
+
+	private void pop() {
+		heapSize--;
+		set(0, heapCost[heapSize], heapRemove[heapSize], heapKeep[heapSize], heapStamp[heapSize]);
+		for (int i = 0;;) {
+			int l = 2 * i + 1;
+			if (l >= heapSize)
+				break;
+			int m = l + 1 < heapSize && heapCost[l + 1] < heapCost[l] ? l + 1 : l;
+			if (heapCost[i] <= heapCost[m])
+				break;
+			swap(i, m);
+			i = m;
+		}
+	}
+
+	private void set(int i, double cost, int remove, int keep, long stamp) {
+		heapCost[i]   = cost;
+		heapRemove[i] = remove;
+		heapKeep[i]   = keep;
+		heapStamp[i]  = stamp;
+	}
+
+	private void swap(int i, int j) {
+		double c = heapCost[i];   heapCost[i]   = heapCost[j];   heapCost[j]   = c;
+		int    r = heapRemove[i]; heapRemove[i] = heapRemove[j]; heapRemove[j] = r;
+		int    k = heapKeep[i];   heapKeep[i]   = heapKeep[j];   heapKeep[j]   = k;
+		long   s = heapStamp[i];  heapStamp[i]  = heapStamp[j];  heapStamp[j]  = s;
+	}
+}
@@ -37,6 +37,7 @@ import ch.fhnw.ether.scene.mesh.IMesh.Flag;
 import ch.fhnw.ether.scene.mesh.geometry.DefaultGeometry;
 import ch.fhnw.ether.scene.mesh.geometry.IGeometry.IGeometryAttribute;
 import ch.fhnw.ether.scene.mesh.geometry.IGeometry.Primitive;
+import ch.fhnw.ether.scene.mesh.material.ColorMapMaterial;
 import ch.fhnw.ether.scene.mesh.material.ColorMaterial;
 import ch.fhnw.ether.scene.mesh.material.IMaterial;
 import ch.fhnw.ether.scene.mesh.material.ShadedMaterial;
@@ -181,11 +182,17 @@ public final class MeshUtilities {
 		final List<IMesh> result = new ArrayList<>();		
 		while (!meshes.isEmpty()) {
 			final IMesh first = meshes.get(0);
-			List<IMesh> same = meshes.stream().filter(m -> m.getMaterial().equals(first.getMaterial()) &&
+			List<IMesh> same = meshes.stream().filter(m -> canMerge(m.getMaterial(), first.getMaterial()) &&
 														   m.getQueue().equals(first.getQueue()) && 
 														   m.getFlags().equals(first.getFlags())).collect(Collectors.toList());
 			
 			IMaterial material = first.getMaterial();
+			// texture coordinates of atlas materials are remapped by getTransformedGeometryData() below, the merged
+			// mesh uses the page texture directly
+			if (material instanceof ColorMapMaterial && ((ColorMapMaterial) material).getAtlasRegion() != null) {
+				ColorMapMaterial m = (ColorMapMaterial) material;
+				material = new ColorMapMaterial(m.getColor(), m.getColorMap(), m.hasPerVertexColor());
+			}
 			IGeometryAttribute[] attributes = material.getGeometryAttributes();
 			FloatList data[] = new FloatList[attributes.length];
 			for (int i = 0; i < data.length; ++i)
@@ -196,7 +203,7 @@ public final class MeshUtilities {
 				float[][] gd = mesh.getTransformedGeometryData();
 				for (int i = 0; i < attributes.length; ++i) {
 					for (int j = 0; j < ga.length; j++) {
-						if (attributes[i].id().equals(ga[j].id())) {
+						if (attributes[i].index() == ga[j].index()) {
 							data[i].addAll(gd[j]);
 							continue;
 						}
@@ -207,5 +214,17 @@ public final class MeshUtilities {
 			meshes.removeAll(same);
 		}
 		return result;
+	}
+
+	// materials merge if equal, or if they use the same page of a texture atlas with the same color
+	private static boolean canMerge(IMaterial a, IMaterial b) {
+		if (a.equals(b))
+			return true;
+		if (!(a instanceof ColorMapMaterial) || !(b instanceof ColorMapMaterial))
+			return false;
+		ColorMapMaterial ca = (ColorMapMaterial) a;
+		ColorMapMaterial cb = (ColorMapMaterial) b;
+		return ca.getAtlasRegion() != null && cb.getAtlasRegion() != null && ca.getColorMap() == cb.getColorMap() &&
+			   ca.getColor().equals(cb.getColor()) && ca.hasPerVertexColor() == cb.hasPerVertexColor();
 	}	
 }
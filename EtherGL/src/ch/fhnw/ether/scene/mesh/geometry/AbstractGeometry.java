@@ -30,12 +30,15 @@
 package ch.fhnw.ether.scene.mesh.geometry;
 
 import ch.fhnw.util.UpdateRequest;
+import ch.fhnw.util.math.geometry.TriangleAdjacency;
 
 public abstract class AbstractGeometry implements IGeometry {
 	private final Primitive type;
 
 	private final UpdateRequest update = new UpdateRequest();
 
+	private volatile int[] adjacency;
+
 	protected AbstractGeometry(Primitive type) {
 		this.type = type;
 	}
@@ -50,7 +53,18 @@ public abstract class AbstractGeometry implements IGeometry {
 		return update;
 	}
 
+	@Override
+	public final int[] getTriangleAdjacency() {
+		if (type != Primitive.TRIANGLES)
+			throw new UnsupportedOperationException("adjacency requires triangles: " + type);
+		int[] result = adjacency;
+		if (result == null)
+			adjacency = result = TriangleAdjacency.build(getData()[0]);
+		return result;
+	}
+
 	protected final void updateRequest() {
+		adjacency = null;
 		update.request();
 	}
 
@@ -34,22 +34,58 @@ import ch.fhnw.ether.scene.attribute.ITypedAttribute;
 import ch.fhnw.util.UpdateRequest.IUpdateTracker;
 
 public interface IGeometry extends IUpdateTracker {
+	/**
+	 * Storage format of an attribute in vertex buffers. Attribute data is always float and converted on upload. The
+	 * maximum absolute conversion error is:
+	 * <ul>
+	 * <li>FLOAT: none</li>
+	 * <li>HALF_FLOAT: 2^-11 relative to the value, beyond +-65504 values overflow</li>
+	 * <li>UNORM_8: 1/510 for values in [0, 1], other values are clamped</li>
+	 * <li>SNORM_16: 1/65534 for values in [-1, 1], other values are clamped</li>
+	 * <li>SNORM_10_10_10_2: 1/1022 for x, y, z in [-1, 1], other values are clamped. The fourth component only
+	 * stores -1, 0 or 1. Falls back to SNORM_16 where not supported by GL.</li>
+	 * </ul>
+	 * Normalized bounds assume the GL 4.2 conversion rule, with older GL versions the error may grow by another half
+	 * step. All default attributes use FLOAT, quantization is opted in per attribute with
+	 * {@link IGeometry#withFormat(IGeometryAttribute, Format)} or per geometry with
+	 * {@link IGeometry#quantize(IGeometryAttribute[])}. Attributes are matched to shader inputs by id, so the format
+	 * of an attribute does not affect which shader input it feeds.
+	 */
+	enum Format {
+		FLOAT, HALF_FLOAT, UNORM_8, SNORM_16, SNORM_10_10_10_2
+	}
+
 	interface IGeometryAttribute extends ITypedAttribute<float[]> {
 		int getNumComponents();
+
+		Format getFormat();
 	}
 
 	final class GeometryAttribute extends AbstractAttribute<float[]> implements IGeometryAttribute {
 		private final int numComponents;
+		private final Format format;
 
 		public GeometryAttribute(String id, int numComponents) {
+			this(id, numComponents, Format.FLOAT);
+		}
+
+		public GeometryAttribute(String id, int numComponents, Format format) {
 			super(id);
+			if (format == Format.SNORM_10_10_10_2 && numComponents > 4)
+				throw new IllegalArgumentException("format " + format + " supports at most 4 components");
 			this.numComponents = numComponents;
+			this.format = format;
 		}
 
 		@Override
 		public int getNumComponents() {
 			return numComponents;
 		}
+
+		@Override
+		public Format getFormat() {
+			return format;
+		}
 	}
 
 	@FunctionalInterface
@@ -96,6 +132,39 @@ public interface IGeometry extends IUpdateTracker {
 	// points only: point size
 	IGeometryAttribute POINT_SIZE_ARRAY = new GeometryAttribute("builtin.material.point_size_array", 1);
 
+	/**
+	 * Get an attribute with the same id and number of components as the given
+	 * attribute, stored in the given format.
+	 */
+	static IGeometryAttribute withFormat(IGeometryAttribute attribute, Format format) {
+		if (attribute.getFormat() == format)
+			return attribute;
+		return new GeometryAttribute(attribute.id(), attribute.getNumComponents(), format);
+	}
+
+	/**
+	 * Get a copy of the given attributes with colors stored as UNORM_8,
+	 * texture coordinates as HALF_FLOAT and normals as SNORM_10_10_10_2. Other
+	 * attributes are left unchanged. Pass the result to the geometry
+	 * constructor to opt in to quantized vertex buffers for a mesh. Not for
+	 * meshes with texture atlas materials, whose texture coordinates must stay
+	 * FLOAT (see {@link ch.fhnw.ether.scene.mesh.material.TextureAtlas}).
+	 */
+	static IGeometryAttribute[] quantize(IGeometryAttribute[] attributes) {
+		IGeometryAttribute[] result = new IGeometryAttribute[attributes.length];
+		for (int i = 0; i < attributes.length; ++i) {
+			IGeometryAttribute attribute = attributes[i];
+			if (attribute.equals(COLOR_ARRAY))
+				attribute = withFormat(attribute, Format.UNORM_8);
+			else if (attribute.equals(COLOR_MAP_ARRAY))
+				attribute = withFormat(attribute, Format.HALF_FLOAT);
+			else if (attribute.equals(NORMAL_ARRAY))
+				attribute = withFormat(attribute, Format.SNORM_10_10_10_2);
+			result[i] = attribute;
+		}
+		return result;
+	}
+
 	/**
 	 * Get primitive type of this geometry.
 	 */
@@ -114,6 +183,16 @@ public interface IGeometry extends IUpdateTracker {
 	 */
 	float[][] getData();
 
+	/**
+	 * Get the edge adjacency of a triangle geometry (see
+	 * {@link ch.fhnw.util.math.geometry.TriangleAdjacency}). Built on first
+	 * request and cached until the geometry is modified.
+	 * 
+	 * @throws UnsupportedOperationException
+	 *             if geometry does not consist of triangles.
+	 */
+	int[] getTriangleAdjacency();
+
 	/**
 	 * Inspect specific attribute of this geometry through visitor.
 	 * 
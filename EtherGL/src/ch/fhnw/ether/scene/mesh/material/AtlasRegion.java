@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2013 - 2015 Stefan Muller Arisona, Simon Schubiger, Samuel von Stachelski
+ * Copyright (c) 2013 - 2015 FHNW & ETH Zurich
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *  Neither the name of FHNW / ETH Zurich nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ch.fhnw.ether.scene.mesh.material;
+
+/**
+ * Location of an image in a {@link TextureAtlas} page. Texture coordinates in
+ * [0, 1] of the image are mapped to the region, coordinates outside are
+ * clamped, since regions cannot repeat.
+ */
+public final class AtlasRegion {
+	private final TextureAtlas atlas;
+	private final int          page;
+	private final int          x;
+	private final int          y;
+	private final int          width;
+	private final int          height;
+	private final float        u0;
+	private final float        v0;
+	private final float        u1;
+	private final float        v1;
+
+	AtlasRegion(TextureAtlas atlas, int page, int x, int y, int width, int height, int pageSize) {
+		this.atlas  = atlas;
+		this.page   = page;
+		this.x      = x;
+		this.y      = y;
+		this.width  = width;
+		this.height = height;
+		this.u0     = (float) x / pageSize;
+		this.v0     = (float) y / pageSize;
+		this.u1     = (float) (x + width) / pageSize;
+		this.v1     = (float) (y + height) / pageSize;
+	}
+
+	public TextureAtlas getAtlas() {
+		return atlas;
+	}
+
+	public int getPage() {
+		return page;
+	}
+
+	/**
+	 * Get the texture of the atlas page, shared by all regions of the page.
+	 */
+	public Texture getTexture() {
+		return atlas.getTexture(page);
+	}
+
+	public int getX() {
+		return x;
+	}
+
+	public int getY() {
+		return y;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public float getU0() {
+		return u0;
+	}
+
+	public float getV0() {
+		return v0;
+	}
+
+	public float getU1() {
+		return u1;
+	}
+
+	public float getV1() {
+		return v1;
+	}
+
+	/**
+	 * Map texture coordinates u, v of the image to page coordinates.
+	 * 
+	 * @return a new array with the page coordinates
+	 */
+	public float[] remap(float[] texCoords) {
+		float[] result = new float[texCoords.length];
+		for (int i = 0; i < texCoords.length; i += 2) {
+			result[i] = u0 + (u1 - u0) * clamp(texCoords[i]);
+			result[i + 1] = v0 + (v1 - v0) * clamp(texCoords[i + 1]);
+		}
+		return result;
+	}
+
+	private static float clamp(float t) {
+		return t < 0 ? 0 : t > 1 ? 1 : t;
+	}
+
+	@Override
+	public String toString() {
+		return "region[page=" + page + " x=" + x + " y=" + y + " w=" + width + " h=" + height + "]";
+	}
+}
@@ -30,12 +30,14 @@
 package ch.fhnw.ether.scene.mesh.material;
 
 import ch.fhnw.ether.scene.mesh.geometry.IGeometry;
+import ch.fhnw.ether.scene.mesh.geometry.IGeometry.IGeometryAttribute;
 import ch.fhnw.util.color.RGBA;
 
 public final class ColorMapMaterial extends AbstractMaterial {
 
-	private RGBA    color;
-	private Texture colorMap;
+	private RGBA              color;
+	private Texture           colorMap;
+	private final AtlasRegion region;
 
 	public ColorMapMaterial() {
 		this(Texture.TRANSPARENT_1x1);
@@ -50,11 +52,28 @@ public final class ColorMapMaterial extends AbstractMaterial {
 	}
 
 	public ColorMapMaterial(RGBA color, Texture colorMap, boolean perVertexColor) {
+		this(color, colorMap, null, perVertexColor);
+	}
+
+	/**
+	 * Create a material using an image of a texture atlas. Texture
+	 * coordinates of meshes using this material are remapped to the region.
+	 */
+	public ColorMapMaterial(AtlasRegion region) {
+		this(RGBA.WHITE, region, false);
+	}
+
+	public ColorMapMaterial(RGBA color, AtlasRegion region, boolean perVertexColor) {
+		this(color, region.getTexture(), region, perVertexColor);
+	}
+
+	private ColorMapMaterial(RGBA color, Texture colorMap, AtlasRegion region, boolean perVertexColor) {
 		super(material(IMaterial.COLOR, IMaterial.COLOR_MAP),
 			  geometry(IGeometry.POSITION_ARRAY, perVertexColor ? IGeometry.COLOR_ARRAY : null, IGeometry.COLOR_MAP_ARRAY));		
 			  
 		this.color = color;
 		this.colorMap = colorMap;
+		this.region = region;
 	}
 
 	public final Texture getColorMap() {
@@ -62,10 +81,35 @@ public final class ColorMapMaterial extends AbstractMaterial {
 	}
 
 	public final void setColorMap(Texture colorMap) {
+		// mesh texture coordinates are already remapped to the region
+		if (region != null)
+			throw new IllegalStateException("cannot replace color map of atlas material");
 		this.colorMap = colorMap;
 		updateRequest();
 	}
 
+	/**
+	 * Get the atlas region of this material, or null if the color map is not
+	 * part of a texture atlas.
+	 */
+	public final AtlasRegion getAtlasRegion() {
+		return region;
+	}
+
+	public final RGBA getColor() {
+		return color;
+	}
+
+	/**
+	 * Returns true if this material uses a per vertex color array.
+	 */
+	public final boolean hasPerVertexColor() {
+		for (IGeometryAttribute attribute : getGeometryAttributes())
+			if (attribute == IGeometry.COLOR_ARRAY)
+				return true;
+		return false;
+	}
+
 	@Override
 	public Object[] getData() {
 		return data(color, colorMap);
@@ -65,12 +65,18 @@ public interface IMaterial extends IUpdateTracker {
 	MaterialAttribute<Float> STRENGTH = new MaterialAttribute<>("builtin.material.shading.strength");
 	MaterialAttribute<Float> ALPHA = new MaterialAttribute<>("builtin.material.shading.alpha");
 
+	// triangles only: all of the above packed into a std140 block, see ShadedMaterial.pack()
+	MaterialAttribute<float[]> SHADING_BLOCK = new MaterialAttribute<>("builtin.material.shading.block");
+
 	// lines only: line width
 	MaterialAttribute<Float> LINE_WIDTH = new MaterialAttribute<>("builtin.material.line_width");
 
 	// points only: point size
 	MaterialAttribute<Float> POINT_SIZE = new MaterialAttribute<>("builtin.material.point_size");
 
+	// points only: distance at which point size applies, 0 for constant size
+	MaterialAttribute<Float> POINT_SIZE_ATTENUATION = new MaterialAttribute<>("builtin.material.point_size_attenuation");
+
 	/**
 	 * Get material name.
 	 */
@@ -37,17 +37,28 @@ public final class PointMaterial extends AbstractMaterial {
 	
 	private RGBA color;
 	private float size;
+	private float attenuation;
 
 	public PointMaterial(RGBA color, float size) {
 		this(color, size, false, false);
 	}
 
 	public PointMaterial(RGBA color, float size, boolean perVertexColor, boolean perVertexSize) {
-		super(material(IMaterial.COLOR, IMaterial.POINT_SIZE),
+		this(color, size, perVertexColor, perVertexSize, 0);
+	}
+
+	/**
+	 * @param attenuation
+	 *            Distance at which points have the given size in pixels, points get smaller with distance. 0 for
+	 *            constant size.
+	 */
+	public PointMaterial(RGBA color, float size, boolean perVertexColor, boolean perVertexSize, float attenuation) {
+		super(material(IMaterial.COLOR, IMaterial.POINT_SIZE, IMaterial.POINT_SIZE_ATTENUATION),
 			  geometry(IGeometry.POSITION_ARRAY, perVertexColor ? IGeometry.COLOR_ARRAY : null, perVertexSize ? IGeometry.POINT_SIZE_ARRAY : null));		
 				  
 		this.color = color;
 		this.size = size;
+		this.attenuation = attenuation;
 	}
 
 	public final RGBA getColor() {
@@ -68,6 +79,15 @@ public final class PointMaterial extends AbstractMaterial {
 		updateRequest();
 	}
 
+	public final float getAttenuation() {
+		return attenuation;
+	}
+
+	public final void setAttenuation(float attenuation) {
+		this.attenuation = attenuation;
+		updateRequest();
+	}
+
 	@Override
 	public Primitive getType() {
 		return Primitive.POINTS;
@@ -75,11 +95,11 @@ public final class PointMaterial extends AbstractMaterial {
 
 	@Override
 	public Object[] getData() {
-		return data(color, size);
+		return data(color, size, attenuation);
 	}
 
 	@Override
 	public String toString() {
-		return super.toString() + "[" + color + ", " + size + "]";
+		return super.toString() + "[" + color + ", " + size + ", " + attenuation + "]";
 	}
 }
@@ -33,6 +33,11 @@ import ch.fhnw.ether.scene.mesh.geometry.IGeometry;
 import ch.fhnw.util.color.RGB;
 
 public final class ShadedMaterial extends AbstractMaterial {
+	/**
+	 * Size in floats of the std140 layout of the Material struct in
+	 * material_struct.glsl.
+	 */
+	public static final int BLOCK_SIZE = 20;
 
 	private RGB emission;
 	private RGB ambient;
@@ -53,8 +58,7 @@ public final class ShadedMaterial extends AbstractMaterial {
 	}
 
 	public ShadedMaterial(RGB emission, RGB ambient, RGB diffuse, RGB specular, float shininess, float strength, float alpha, Texture colorMap) {
-		super(material(IMaterial.EMISSION, IMaterial.AMBIENT, IMaterial.DIFFUSE, IMaterial.SPECULAR,
-					   IMaterial.SHININESS, IMaterial.STRENGTH, IMaterial.ALPHA, colorMap != null ? IMaterial.COLOR_MAP : null),
+		super(material(IMaterial.SHADING_BLOCK, colorMap != null ? IMaterial.COLOR_MAP : null),
 			  geometry(IGeometry.POSITION_ARRAY, IGeometry.NORMAL_ARRAY, colorMap != null ? IGeometry.COLOR_MAP_ARRAY : null));
 
 		this.emission = emission;
@@ -142,7 +146,30 @@ public final class ShadedMaterial extends AbstractMaterial {
 
 	@Override
 	public Object[] getData() {
-		return data(emission, ambient, diffuse, specular, shininess, strength, alpha, colorMap);
+		float[] block = new float[BLOCK_SIZE];
+		pack(block, 0, emission, ambient, diffuse, specular, shininess, strength, alpha);
+		return data(block, colorMap);
+	}
+
+	/**
+	 * Packs shading parameters in std140 layout: vec3 colors at 16 byte
+	 * boundaries, shininess in the last component of specular, followed by
+	 * strength and alpha.
+	 */
+	public static void pack(float[] block, int offset, RGB emission, RGB ambient, RGB diffuse, RGB specular, float shininess, float strength, float alpha) {
+		put(block, offset, emission);
+		put(block, offset + 4, ambient);
+		put(block, offset + 8, diffuse);
+		put(block, offset + 12, specular);
+		block[offset + 15] = shininess;
+		block[offset + 16] = strength;
+		block[offset + 17] = alpha;
+	}
+
+	private static void put(float[] block, int offset, RGB color) {
+		block[offset] = color.r;
+		block[offset + 1] = color.g;
+		block[offset + 2] = color.b;
 	}
 
 	@Override
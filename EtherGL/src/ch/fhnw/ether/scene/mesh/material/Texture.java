@@ -29,6 +29,7 @@
 
 package ch.fhnw.ether.scene.mesh.material;
 
+import ch.fhnw.ether.image.Frame;
 import ch.fhnw.ether.image.RGBA8Frame;
 import ch.fhnw.ether.render.gl.GLObject;
 import ch.fhnw.ether.render.gl.GLObject.Type;
@@ -45,11 +46,15 @@ import ch.fhnw.util.Log;
 public class Texture {
 	private static final Log log = Log.create();
 
-	public static final Texture TRANSPARENT_1x1 = new RGBA8Frame(1,1).getTexture();
+	/**
+	 * Transparent placeholder. Uploaded on first use, which must happen on a thread with a GL context.
+	 */
+	public static final Texture TRANSPARENT_1x1 = new Texture(new RGBA8Frame(1,1));
 
-	private GLObject glObject;
-	private int      width;
-	private int      height;
+	private volatile GLObject glObject;
+	private          Frame    source;
+	private          int      width;
+	private          int      height;
 
 	static final class JOGLTextureWrapper implements IDisposable {
 		private final com.jogamp.opengl.util.texture.Texture texture;
@@ -74,6 +79,20 @@ public class Texture {
 		this.height   = height;
 	}
 
+	/**
+	 * Creates a texture whose GL object is created later, either lazily from source on first use or by the {@link TextureStreamer}
+	 * if source is null. Until then, {@link #getGlObject()} returns the placeholder.
+	 */
+	Texture(Frame source, int width, int height) {
+		this.source = source;
+		this.width  = width;
+		this.height = height;
+	}
+
+	private Texture(Frame source) {
+		this(source, source.width, source.height);
+	}
+
 	public Texture(com.jogamp.opengl.util.texture.Texture texture) {
 		this.glObject = new GLObject(Type.TEXTURE, texture.getTextureObject(), new JOGLTextureWrapper(texture));
 		this.width  = texture.getWidth();
@@ -89,7 +108,27 @@ public class Texture {
 	}
 
 	public GLObject getGlObject() {
-		return glObject;
+		GLObject result = glObject;
+		if(result != null)
+			return result;
+		synchronized (this) {
+			if(glObject == null && source != null) {
+				glObject = source.getTexture().getGlObject();
+				source   = null;
+			}
+		}
+		return glObject == null ? TRANSPARENT_1x1.getGlObject() : glObject;
+	}
+
+	/**
+	 * Returns true if the texture content is available on the GPU, false if the placeholder is bound instead.
+	 */
+	public boolean isReady() {
+		return glObject != null || source != null;
+	}
+
+	synchronized void setGlObject(GLObject glObject) {
+		this.glObject = glObject;
 	}
 
 	@Override
@@ -0,0 +1,245 @@
+/*
+ * Copyright (c) 2013 - 2015 Stefan Muller Arisona, Simon Schubiger, Samuel von Stachelski
+ * Copyright (c) 2013 - 2015 FHNW & ETH Zurich
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *  Neither the name of FHNW / ETH Zurich nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ch.fhnw.ether.scene.mesh.material;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import com.jogamp.opengl.GL;
+import com.jogamp.opengl.GL3;
+
+import ch.fhnw.ether.image.Frame;
+import ch.fhnw.ether.image.RGBA8Frame;
+import ch.fhnw.ether.render.gl.GLState;
+import ch.fhnw.ether.view.gl.GLContextManager;
+import ch.fhnw.ether.view.gl.GLContextManager.IGLContext;
+import ch.fhnw.util.Log;
+import ch.fhnw.util.math.geometry.RectanglePacker;
+
+/**
+ * Packs small images into shared texture pages, so that meshes with
+ * different images can share a texture and be merged into one draw. Images
+ * are placed with a {@link RectanglePacker} and surrounded by a border of
+ * replicated edge pixels against filtering bleed. Regions can be added and
+ * removed at any time, modified pages are uploaded by {@link #flush()}, which
+ * only transfers the modified rows.
+ * <p>
+ * Meshes using a {@link ColorMapMaterial} created from a region have their
+ * texture coordinates remapped to the region when their geometry is
+ * transformed, see {@link ColorMapMaterial#getAtlasRegion()}. Keep the
+ * texture coordinates of atlas meshes FLOAT: half floats only resolve about
+ * one texel of a page with the default size.
+ */
+public final class TextureAtlas {
+	private static final Log log = Log.create();
+
+	public static final int DEFAULT_PAGE_SIZE = 2048;
+	public static final int DEFAULT_PADDING   = 2;
+
+	private static final class Page {
+		final RGBA8Frame       frame;
+		final RectanglePacker  packer;
+		final Texture          texture;
+		final Set<AtlasRegion> regions = Collections.newSetFromMap(new IdentityHashMap<>());
+		int dirtyMin = Integer.MAX_VALUE;
+		int dirtyMax = Integer.MIN_VALUE;
+
+		Page(int size) {
+			frame = new RGBA8Frame(size, size);
+			packer = new RectanglePacker(size, size);
+			// created from the frame on first use, flush() updates it in place
+			texture = new Texture(frame, size, size);
+		}
+
+		void markDirty(int y0, int y1) {
+			dirtyMin = Math.min(dirtyMin, y0);
+			dirtyMax = Math.max(dirtyMax, y1);
+		}
+
+		boolean isDirty() {
+			return dirtyMin < dirtyMax;
+		}
+	}
+
+	private final int        pageSize;
+	private final int        padding;
+	private final List<Page> pages = new ArrayList<>();
+
+	public TextureAtlas() {
+		this(DEFAULT_PAGE_SIZE, DEFAULT_PADDING);
+	}
+
+	public TextureAtlas(int pageSize, int padding) {
+		if (pageSize <= 2 * padding || padding < 0)
+			throw new IllegalArgumentException("invalid page size or padding: " + pageSize + " " + padding);
+		this.pageSize = pageSize;
+		this.padding = padding;
+	}
+
+	public int getPageSize() {
+		return pageSize;
+	}
+
+	public int getPadding() {
+		return padding;
+	}
+
+	public synchronized int getNumPages() {
+		return pages.size();
+	}
+
+	public synchronized int getNumRegions() {
+		int result = 0;
+		for (Page page : pages)
+			result += page.regions.size();
+		return result;
+	}
+
+	/**
+	 * Get the texture of a page. The texture object stays the same while the
+	 * page is modified.
+	 */
+	public synchronized Texture getTexture(int page) {
+		return pages.get(page).texture;
+	}
+
+	/**
+	 * Get the fraction of all pages covered by images including their
+	 * padding.
+	 */
+	public synchronized float getOccupancy() {
+		if (pages.isEmpty())
+			return 0;
+		float result = 0;
+		for (Page page : pages)
+			result += page.packer.getOccupancy();
+		return result / pages.size();
+	}
+
+	/**
+	 * Add an image to the first page with enough space, or to a new page.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if the image including padding is larger than a page
+	 */
+	public synchronized AtlasRegion add(Frame image) {
+		int w = image.width + 2 * padding;
+		int h = image.height + 2 * padding;
+		if (w > pageSize || h > pageSize)
+			throw new IllegalArgumentException("image too large for atlas: " + image.width + "x" + image.height);
+		for (int i = 0; i < pages.size(); ++i) {
+			int[] position = pages.get(i).packer.insert(w, h);
+			if (position != null)
+				return place(i, position, image);
+		}
+		pages.add(new Page(pageSize));
+		return place(pages.size() - 1, pages.get(pages.size() - 1).packer.insert(w, h), image);
+	}
+
+	/**
+	 * Create a material for an image added to this atlas.
+	 */
+	public ColorMapMaterial createMaterial(Frame image) {
+		return new ColorMapMaterial(add(image));
+	}
+
+	/**
+	 * Release the space of a region. The pixels are kept until the space is
+	 * reused, meshes still using the region are not affected until then.
+	 */
+	public synchronized void remove(AtlasRegion region) {
+		if (region.getAtlas() != this || !pages.get(region.getPage()).regions.remove(region))
+			throw new IllegalArgumentException("region not in atlas: " + region);
+		pages.get(region.getPage()).packer.remove(region.getX() - padding, region.getY() - padding, region.getWidth() + 2 * padding, region.getHeight() + 2 * padding);
+	}
+
+	/**
+	 * Upload the modified rows of all pages. Acquires a GL context if the
+	 * calling thread has none.
+	 */
+	public synchronized void flush() {
+		boolean dirty = false;
+		for (Page page : pages)
+			dirty |= page.isDirty();
+		if (!dirty)
+			return;
+
+		try (IGLContext ctx = GLContextManager.acquireContext()) {
+			GL3 gl = ctx.getGL();
+			for (Page page : pages) {
+				if (!page.isDirty())
+					continue;
+				// uploads the whole page if the texture was not used yet
+				int id = page.texture.getGlObject().getId();
+				GLState.get(gl).bindTexture(gl, GL.GL_TEXTURE_2D, id);
+				// pages are sampled without mipmaps (linear min filter), the
+				// padding would not keep regions apart at coarser levels anyway
+				page.frame.loadTexture(gl, page.dirtyMin, page.dirtyMax - page.dirtyMin);
+				page.dirtyMin = Integer.MAX_VALUE;
+				page.dirtyMax = Integer.MIN_VALUE;
+			}
+			gl.glFinish();
+		} catch (Throwable t) {
+			log.warning(t);
+		}
+	}
+
+	private AtlasRegion place(int index, int[] position, Frame image) {
+		Page page = pages.get(index);
+		int x = position[0] + padding;
+		int y = position[1] + padding;
+		page.frame.setSubframe(x, y, image);
+		extrude(page.frame, x, y, image.width, image.height);
+		page.frame.modified();
+		page.markDirty(position[1], y + image.height + padding);
+
+		AtlasRegion region = new AtlasRegion(this, index, x, y, image.width, image.height, pageSize);
+		page.regions.add(region);
+		return region;
+	}
+
+	// replicate the edge pixels of the image into the padding
+	private void extrude(Frame frame, int x, int y, int w, int h) {
+		for (int j = -padding; j < h + padding; ++j) {
+			int sy = y + Math.max(0, Math.min(h - 1, j));
+			boolean edgeRow = j < 0 || j >= h;
+			for (int i = -padding; i < w + padding; ++i) {
+				if (!edgeRow && i == 0)
+					i = w;
+				if (i >= w + padding)
+					break;
+				int sx = x + Math.max(0, Math.min(w - 1, i));
+				frame.setARGB(x + i, y + j, frame.getARGB(sx, sy));
+			}
+		}
+	}
+}
@@ -0,0 +1,278 @@
+/*
+ * Copyright (c) 2013 - 2015 Stefan Muller Arisona, Simon Schubiger, Samuel von Stachelski
+ * Copyright (c) 2013 - 2015 FHNW & ETH Zurich
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *  Neither the name of FHNW / ETH Zurich nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package ch.fhnw.ether.scene.mesh.material;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.jogamp.opengl.GL;
+import com.jogamp.opengl.GL3;
+
+import ch.fhnw.ether.image.Frame;
+import ch.fhnw.ether.render.gl.GLObject;
+import ch.fhnw.ether.render.gl.GLObject.Type;
+import ch.fhnw.ether.render.gl.GLState;
+import ch.fhnw.ether.view.gl.GLContextManager;
+import ch.fhnw.ether.view.gl.GLContextManager.IGLContext;
+import ch.fhnw.util.Log;
+
+/**
+ * Uploads textures on a dedicated thread with its own shared GL context. Uploads are served by priority and
+ * split into row bands so that at most {@link #getBudget()} bytes are transferred per rendered frame. Completion
+ * is detected with fences, the texture binds {@link Texture#TRANSPARENT_1x1} until then.
+ */
+public final class TextureStreamer {
+	private static final Log log = Log.create();
+
+	public static final long DEFAULT_BUDGET = 8 * 1024 * 1024;
+
+	// budget is refilled after this many ms if no frame is rendered, so uploads do not stall without a view
+	private static final long FRAME_TIMEOUT = 20;
+	private static final long FENCE_POLL    = 1;
+
+	private static TextureStreamer streamer;
+
+	private final class Upload implements Comparable<Upload> {
+		final Frame    frame;
+		final Texture  texture;
+		final int      priority;
+		final long     seq;
+		final long     lineLength;
+		GLObject       glObject;
+		int            row;
+		long           fence;
+
+		Upload(Frame frame, Texture texture, int priority, long seq) {
+			this.frame      = frame;
+			this.texture    = texture;
+			this.priority   = priority;
+			this.seq        = seq;
+			this.lineLength = (long)frame.width * frame.pixelSize;
+		}
+
+		@Override
+		public int compareTo(Upload o) {
+			if(priority != o.priority)
+				return priority > o.priority ? -1 : 1;
+			return Long.compare(seq, o.seq);
+		}
+	}
+
+	private final PriorityBlockingQueue<Upload> queue          = new PriorityBlockingQueue<>();
+	private final List<Upload>                  fences         = new ArrayList<>();
+	private final AtomicLong                    seq            = new AtomicLong();
+	private final AtomicLong                    pendingBytes   = new AtomicLong();
+	private final AtomicLong                    uploadedBytes  = new AtomicLong();
+	private final AtomicLong                    uploadedCount  = new AtomicLong();
+	private final AtomicLong                    uploadNanos    = new AtomicLong();
+	private final Thread                        thread;
+	private       long                          budget         = DEFAULT_BUDGET;
+	private       long                          credit         = DEFAULT_BUDGET;
+	private       long                          frameCount;
+
+	private TextureStreamer() {
+		thread = new Thread(this::run, "TextureStreamer");
+		thread.setDaemon(true);
+		thread.setPriority(Thread.MIN_PRIORITY);
+		thread.start();
+	}
+
+	public static synchronized TextureStreamer get() {
+		if(streamer == null)
+			streamer = new TextureStreamer();
+		return streamer;
+	}
+
+	/**
+	 * Signals that a frame was rendered and refills the upload budget. Does nothing if no streamer was created.
+	 */
+	public static void frameRendered() {
+		TextureStreamer result;
+		synchronized (TextureStreamer.class) {
+			result = streamer;
+		}
+		if(result != null)
+			result.nextFrame();
+	}
+
+	/**
+	 * Queues the pixels of frame for upload and returns the texture immediately.
+	 */
+	public Texture upload(Frame frame, int priority) {
+		Texture result = new Texture((Frame)null, frame.width, frame.height);
+		Upload  upload = new Upload(frame, result, priority, seq.getAndIncrement());
+		pendingBytes.addAndGet(upload.lineLength * frame.height);
+		queue.add(upload);
+		return result;
+	}
+
+	public synchronized void nextFrame() {
+		frameCount++;
+		credit = budget;
+		notifyAll();
+	}
+
+	public synchronized void setBudget(long bytesPerFrame) {
+		budget = Math.max(1, bytesPerFrame);
+	}
+
+	public synchronized long getBudget() {
+		return budget;
+	}
+
+	/**
+	 * Bytes queued but not yet transferred.
+	 */
+	public long getPendingBytes() {
+		return pendingBytes.get();
+	}
+
+	public long getUploadedBytes() {
+		return uploadedBytes.get();
+	}
+
+	public long getUploadedTextures() {
+		return uploadedCount.get();
+	}
+
+	public int getQueueSize() {
+		return queue.size();
+	}
+
+	/**
+	 * Upload throughput in bytes per second of time spent transferring.
+	 */
+	public double getThroughput() {
+		long nanos = uploadNanos.get();
+		return nanos == 0 ? 0 : uploadedBytes.get() * 1e9 / nanos;
+	}
+
+	private synchronized long acquire(long bytes) throws InterruptedException {
+		while(credit <= 0) {
+			long frame = frameCount;
+			wait(FRAME_TIMEOUT);
+			if(frame == frameCount && credit <= 0)
+				credit = budget;
+		}
+		long result = Math.min(bytes, credit);
+		credit -= result;
+		return result;
+	}
+
+	private void run() {
+		try {
+			for(;;) {
+				// block only if there are no fences left to poll
+				Upload upload = fences.isEmpty() ? queue.take() : queue.poll();
+				if(upload == null)
+					Thread.sleep(FENCE_POLL);
+				// wait for the budget before taking a pooled context, other threads may need it meanwhile
+				int rows = upload == null ? 0 : rows(upload);
+				try(IGLContext ctx = GLContextManager.acquireContext()) {
+					GL3 gl = ctx.getGL();
+					if(upload != null) {
+						if(uploadBand(gl, upload, rows))
+							fences.add(upload);
+						else
+							queue.add(upload);
+					}
+					pollFences(gl);
+				} catch(Throwable t) {
+					log.warning(t);
+				}
+			}
+		} catch(InterruptedException e) {
+			log.info("TextureStreamer stopped");
+		}
+	}
+
+	/**
+	 * Waits for budget and returns the number of rows of the next band.
+	 */
+	private int rows(Upload upload) throws InterruptedException {
+		Frame frame = upload.frame;
+		int   rows  = (int)Math.max(1, acquire(upload.lineLength * (frame.height - upload.row)) / upload.lineLength);
+		return Math.min(rows, frame.height - upload.row);
+	}
+
+	/**
+	 * Uploads the next band of rows. Returns true if the last band was submitted.
+	 */
+	private boolean uploadBand(GL3 gl, Upload upload, int rows) {
+		Frame   frame   = upload.frame;
+		long    start   = System.nanoTime();
+		GLState glState = GLState.get(gl);
+		if(upload.glObject == null) {
+			upload.glObject = new GLObject(gl, Type.TEXTURE);
+			glState.bindTexture(gl, GL.GL_TEXTURE_2D, upload.glObject.getId());
+			frame.allocTexture(gl);
+		} else
+			glState.bindTexture(gl, GL.GL_TEXTURE_2D, upload.glObject.getId());
+		gl.glPixelStorei(GL.GL_UNPACK_ALIGNMENT, 1);
+		frame.loadTexture(gl, upload.row, rows);
+		upload.row += rows;
+
+		boolean done = upload.row >= frame.height;
+		if(done) {
+			gl.glGenerateMipmap(GL.GL_TEXTURE_2D);
+			gl.glTexParameteri(GL.GL_TEXTURE_2D, GL.GL_TEXTURE_MAG_FILTER, GL.GL_LINEAR);
+			gl.glTexParameteri(GL.GL_TEXTURE_2D, GL.GL_TEXTURE_MIN_FILTER, GL.GL_LINEAR);
+			gl.glTexParameterf(GL.GL_TEXTURE_2D, GL.GL_TEXTURE_WRAP_S, GL.GL_REPEAT);
+			gl.glTexParameterf(GL.GL_TEXTURE_2D, GL.GL_TEXTURE_WRAP_T, GL.GL_REPEAT);
+			upload.fence = gl.glFenceSync(GL3.GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+		}
+		glState.bindTexture(gl, GL.GL_TEXTURE_2D, 0);
+		gl.glFlush();
+		uploadNanos.addAndGet(System.nanoTime() - start);
+
+		long bytes = rows * upload.lineLength;
+		pendingBytes.addAndGet(-bytes);
+		uploadedBytes.addAndGet(bytes);
+		return done;
+	}
+
+	private void pollFences(GL3 gl) {
+		for(Iterator<Upload> i = fences.iterator(); i.hasNext();) {
+			Upload upload = i.next();
+			int    status = gl.glClientWaitSync(upload.fence, 0, 0);
+			if(status == GL3.GL_ALREADY_SIGNALED || status == GL3.GL_CONDITION_SATISFIED || status == GL3.GL_WAIT_FAILED) {
+				if(status == GL3.GL_WAIT_FAILED)
+					log.warning("fence wait failed for " + upload.texture);
+				gl.glDeleteSync(upload.fence);
+				upload.texture.setGlObject(upload.glObject);
+				uploadedCount.incrementAndGet();
+				i.remove();
+			}
+		}
+	}
+}
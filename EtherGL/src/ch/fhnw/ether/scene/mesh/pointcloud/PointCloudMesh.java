@@ -0,0 +1,249 @@
+/*
+ * Copyright (c) 2013 - 2015 Stefan Muller Arisona, Simon Schubiger, Samuel von Stachelski
+ * Copyright (c) 2013 - 2015 FHNW & ETH Zurich
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *  Neither the name of FHNW / ETH Zurich nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ch.fhnw.ether.scene.mesh.pointcloud;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import ch.fhnw.ether.scene.camera.IViewCameraState;
+import ch.fhnw.ether.scene.mesh.DefaultMesh;
+import ch.fhnw.ether.scene.mesh.IMesh;
+import ch.fhnw.ether.scene.mesh.IStreamingMesh;
+import ch.fhnw.ether.scene.mesh.geometry.DefaultGeometry;
+import ch.fhnw.ether.scene.mesh.geometry.IGeometry;
+import ch.fhnw.ether.scene.mesh.geometry.IGeometry.Primitive;
+import ch.fhnw.ether.scene.mesh.material.IMaterial;
+import ch.fhnw.ether.scene.mesh.material.PointMaterial;
+import ch.fhnw.util.UpdateRequest;
+import ch.fhnw.util.color.RGBA;
+import ch.fhnw.util.math.Mat4;
+import ch.fhnw.util.math.Vec3;
+import ch.fhnw.util.math.geometry.BoundingBox;
+
+/**
+ * Out-of-core point cloud backed by a {@link PointCloudOctree} file. Each resident octree node is a separate mesh,
+ * so paging a node in or out never touches the buffers of other nodes, and buffer sizes are bounded by the node size.
+ * Node selection and paging are done by a {@link PointCloudPager}.
+ */
+public final class PointCloudMesh implements IStreamingMesh {
+	public static final float DEFAULT_POINT_SIZE  = 2;
+	public static final float DEFAULT_ATTENUATION = 10;
+
+	private final PointCloudOctree octree;
+	private final PointCloudPager  pager;
+	private final IMaterial        material;
+	private final Queue            queue;
+	private final EnumSet<Flag>    flags;
+	private final IMesh            root;
+
+	private final Map<Integer, IMesh> nodeMeshes = new HashMap<>();
+
+	private Vec3        position  = Vec3.ZERO;
+	private Mat4        transform = Mat4.ID;
+	private BoundingBox bb;
+	private String      name      = "point_cloud";
+
+	private final UpdateRequest update = new UpdateRequest(true);
+
+	/**
+	 * Creates a point cloud with per vertex colors and distance attenuated points.
+	 * 
+	 * @param gpuBudget
+	 *            Maximum number of GPU resident points
+	 * @param heapBudget
+	 *            Maximum number of points kept loaded on the heap
+	 */
+	public PointCloudMesh(PointCloudOctree octree, long gpuBudget, long heapBudget) throws IOException {
+		this(octree, new PointMaterial(RGBA.WHITE, DEFAULT_POINT_SIZE, true, false, DEFAULT_ATTENUATION), Queue.DEPTH, NO_FLAGS, gpuBudget, heapBudget);
+	}
+
+	public PointCloudMesh(PointCloudOctree octree, IMaterial material, Queue queue, EnumSet<Flag> flags, long gpuBudget, long heapBudget) throws IOException {
+		if (material.getType() != Primitive.POINTS)
+			throw new IllegalArgumentException("point cloud requires point material: " + material);
+		this.octree = octree;
+		this.pager = new PointCloudPager(octree, gpuBudget, heapBudget);
+		this.material = material;
+		this.queue = queue;
+		this.flags = flags;
+		this.root = createNodeMesh(0, octree.load(0));
+	}
+
+	public PointCloudOctree getOctree() {
+		return octree;
+	}
+
+	public PointCloudPager getPager() {
+		return pager;
+	}
+
+	// IStreamingMesh implementation
+
+	@Override
+	public List<List<IMesh>> select(List<IViewCameraState> views) {
+		Mat4 model = Mat4.multiply(Mat4.translate(position), transform);
+		pager.beginFrame();
+		List<List<IMesh>> result = new ArrayList<>(views.size());
+		for (IViewCameraState vcs : views) {
+			int[] nodes = pager.select(Mat4.multiply(vcs.getViewMatrix(), model), vcs.getProjMatrix(), vcs.getViewport().h);
+			List<IMesh> selection = new ArrayList<>(nodes.length);
+			for (int node : nodes)
+				selection.add(nodeMeshes.computeIfAbsent(node, n -> createNodeMesh(n, pager.getData(n))));
+			result.add(selection);
+		}
+		nodeMeshes.keySet().removeIf(node -> !(pager.isResident(node)));
+		return result;
+	}
+
+	@Override
+	public Collection<IMesh> getResidentMeshes() {
+		return Collections.unmodifiableCollection(nodeMeshes.values());
+	}
+
+	// I3DObject implementation
+
+	@Override
+	public BoundingBox getBounds() {
+		if (bb == null) {
+			Mat4 model = Mat4.multiply(Mat4.translate(position), transform);
+			BoundingBox bounds = octree.getBounds(0);
+			bb = new BoundingBox();
+			for (int i = 0; i < 8; i++) {
+				float x = (i & 1) == 0 ? bounds.getMinX() : bounds.getMaxX();
+				float y = (i & 2) == 0 ? bounds.getMinY() : bounds.getMaxY();
+				float z = (i & 4) == 0 ? bounds.getMinZ() : bounds.getMaxZ();
+				bb.add(model.transform(new Vec3(x, y, z)));
+			}
+		}
+		return bb;
+	}
+
+	@Override
+	public Vec3 getPosition() {
+		return position;
+	}
+
+	@Override
+	public void setPosition(Vec3 position) {
+		this.position = position;
+		root.setPosition(position);
+		nodeMeshes.values().forEach(mesh -> mesh.setPosition(position));
+		bb = null;
+		update.request();
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	// IMesh implementation
+
+	@Override
+	public Queue getQueue() {
+		return queue;
+	}
+
+	@Override
+	public EnumSet<Flag> getFlags() {
+		return flags;
+	}
+
+	@Override
+	public boolean hasFlag(Flag flag) {
+		return flags.contains(flag);
+	}
+
+	@Override
+	public IMaterial getMaterial() {
+		return material;
+	}
+
+	/**
+	 * Get the geometry of the root node, which is a coarse representation of the whole cloud.
+	 */
+	@Override
+	public IGeometry getGeometry() {
+		return root.getGeometry();
+	}
+
+	@Override
+	public Mat4 getTransform() {
+		return transform;
+	}
+
+	@Override
+	public void setTransform(Mat4 transform) {
+		if (this.transform != transform) {
+			this.transform = transform;
+			root.setTransform(transform);
+			nodeMeshes.values().forEach(mesh -> mesh.setTransform(transform));
+			bb = null;
+			update.request();
+		}
+	}
+
+	@Override
+	public float[] getTransformedPositionData() {
+		return root.getTransformedPositionData();
+	}
+
+	@Override
+	public float[][] getTransformedGeometryData() {
+		return root.getTransformedGeometryData();
+	}
+
+	@Override
+	public UpdateRequest getUpdater() {
+		return update;
+	}
+
+	@Override
+	public String toString() {
+		return name + "[" + octree + "]";
+	}
+
+	private IMesh createNodeMesh(int node, float[][] data) {
+		IMesh mesh = new DefaultMesh(material, DefaultGeometry.createVC(Primitive.POINTS, data[0], data[1]), queue, flags);
+		mesh.setName(name + "_node" + node);
+		mesh.setPosition(position);
+		mesh.setTransform(transform);
+		return mesh;
+	}
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) 2013 - 2015 Stefan Muller Arisona, Simon Schubiger, Samuel von Stachelski
+ * Copyright (c) 2013 - 2015 FHNW & ETH Zurich
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *  Neither the name of FHNW / ETH Zurich nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ch.fhnw.ether.scene.mesh.pointcloud;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+import ch.fhnw.util.math.geometry.BoundingBox;
+
+/**
+ * Read access to a point cloud octree file written by {@link PointCloudOctreeBuilder}. The node table is kept in
+ * memory, point data is mapped per node on demand, so files are not limited by heap or array sizes.
+ * 
+ * Each node is a cube with a subsample of the points below it: a parent plus all of its children together form a
+ * finer representation of the same region. Positions are relative to the cloud's origin, which is stored in double
+ * precision.
+ * 
+ * File layout (little endian): header, point records (x, y, z as float and RGBA as packed int) grouped by node, node
+ * table.
+ */
+public final class PointCloudOctree implements AutoCloseable {
+	static final int MAGIC       = 0x544F4350; // "PCOT"
+	static final int VERSION     = 1;
+	static final int HEADER_SIZE = 64;
+	static final int NODE_SIZE   = 40;
+	static final int POINT_SIZE  = 16;
+
+	private final RandomAccessFile raf;
+	private final FileChannel      channel;
+
+	private final double[] origin = new double[3];
+	private final long     numPoints;
+
+	// x, y, z, size per node
+	private final float[] cubes;
+	private final float[] spacings;
+	private final long[]  offsets;
+	private final int[]   counts;
+	private final int[]   childMasks;
+	private final int[]   firstChildren;
+
+	public PointCloudOctree(File file) throws IOException {
+		raf = new RandomAccessFile(file, "r");
+		channel = raf.getChannel();
+		try {
+			ByteBuffer header = channel.map(MapMode.READ_ONLY, 0, HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			if (header.getInt() != MAGIC)
+				throw new IOException("not a point cloud octree: " + file);
+			if (header.getInt() != VERSION)
+				throw new IOException("unsupported point cloud octree version: " + file);
+			for (int i = 0; i < 3; i++)
+				origin[i] = header.getDouble();
+			numPoints = header.getLong();
+			int numNodes = header.getInt();
+			long tableOffset = header.getLong();
+
+			cubes = new float[numNodes * 4];
+			spacings = new float[numNodes];
+			offsets = new long[numNodes];
+			counts = new int[numNodes];
+			childMasks = new int[numNodes];
+			firstChildren = new int[numNodes];
+			ByteBuffer table = channel.map(MapMode.READ_ONLY, tableOffset, (long) numNodes * NODE_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			for (int i = 0; i < numNodes; i++) {
+				for (int k = 0; k < 4; k++)
+					cubes[i * 4 + k] = table.getFloat();
+				spacings[i] = table.getFloat();
+				offsets[i] = table.getLong();
+				counts[i] = table.getInt();
+				childMasks[i] = table.getInt();
+				firstChildren[i] = table.getInt();
+			}
+		} catch (IOException | RuntimeException e) {
+			raf.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Get the origin all positions are relative to, as x, y, z.
+	 */
+	public double[] getOrigin() {
+		return origin.clone();
+	}
+
+	public long getNumPoints() {
+		return numPoints;
+	}
+
+	public int getNumNodes() {
+		return counts.length;
+	}
+
+	public int getNumPoints(int node) {
+		return counts[node];
+	}
+
+	/**
+	 * Get the minimum distance of the node's points, i.e. the size of the grid it was sampled with.
+	 */
+	public float getSpacing(int node) {
+		return spacings[node];
+	}
+
+	public float getMinX(int node) {
+		return cubes[node * 4];
+	}
+
+	public float getMinY(int node) {
+		return cubes[node * 4 + 1];
+	}
+
+	public float getMinZ(int node) {
+		return cubes[node * 4 + 2];
+	}
+
+	public float getSize(int node) {
+		return cubes[node * 4 + 3];
+	}
+
+	public BoundingBox getBounds(int node) {
+		float size = getSize(node);
+		BoundingBox bounds = new BoundingBox();
+		bounds.add(getMinX(node), getMinY(node), getMinZ(node));
+		bounds.add(getMinX(node) + size, getMinY(node) + size, getMinZ(node) + size);
+		return bounds;
+	}
+
+	/**
+	 * Get the child octants of node as bit mask. Octant bits 1, 2 and 4 select the upper half along x, y and z.
+	 */
+	public int getChildMask(int node) {
+		return childMasks[node];
+	}
+
+	/**
+	 * Get the child node in the given octant, or -1 if there is none.
+	 */
+	public int getChild(int node, int octant) {
+		int mask = childMasks[node];
+		if ((mask & (1 << octant)) == 0)
+			return -1;
+		return firstChildren[node] + Integer.bitCount(mask & ((1 << octant) - 1));
+	}
+
+	/**
+	 * Loads the points of node as position (3 floats per point) and color (4 floats per point) arrays. May be called
+	 * from any thread.
+	 */
+	public float[][] load(int node) throws IOException {
+		int count = counts[node];
+		float[] positions = new float[count * 3];
+		float[] colors = new float[count * 4];
+		if (count == 0)
+			return new float[][] { positions, colors };
+		ByteBuffer buf = channel.map(MapMode.READ_ONLY, offsets[node], (long) count * POINT_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		for (int i = 0, p = 0, c = 0; i < count; i++) {
+			positions[p++] = buf.getFloat();
+			positions[p++] = buf.getFloat();
+			positions[p++] = buf.getFloat();
+			int rgba = buf.getInt();
+			colors[c++] = (rgba >>> 24) / 255f;
+			colors[c++] = ((rgba >>> 16) & 0xFF) / 255f;
+			colors[c++] = ((rgba >>> 8) & 0xFF) / 255f;
+			colors[c++] = (rgba & 0xFF) / 255f;
+		}
+		return new float[][] { positions, colors };
+	}
+
+	@Override
+	public void close() throws IOException {
+		raf.close();
+	}
+
+	@Override
+	public String toString() {
+		return "point_cloud_octree[" + numPoints + " points, " + getNumNodes() + " nodes]";
+	}
+}
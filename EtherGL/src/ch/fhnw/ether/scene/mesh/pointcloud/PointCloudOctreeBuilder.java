@@ -0,0 +1,325 @@
+/*
+ * Copyright (c) 2013 - 2015 Stefan Muller Arisona, Simon Schubiger, Samuel von Stachelski
+ * Copyright (c) 2013 - 2015 FHNW & ETH Zurich
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *  Neither the name of FHNW / ETH Zurich nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ch.fhnw.ether.scene.mesh.pointcloud;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Offline builder for point cloud octree files, see {@link PointCloudOctree}. Points are streamed to a temporary file
+ * while they are added, and the octree is built top-down with one pass over the points per level: each node keeps at
+ * most one point per cell of a regular grid (up to a maximum number of points) and passes the others on to its
+ * children through temporary files. Memory use is bounded by the node size, not by the number of points.
+ */
+public final class PointCloudOctreeBuilder implements AutoCloseable {
+	public static final int DEFAULT_MAX_POINTS_PER_NODE = 65536;
+
+	// sampling grid cells per node axis
+	private static final int GRID      = 128;
+	private static final int MAX_DEPTH = 24;
+	private static final int IO_BUFFER = 1 << 20;
+
+	private static final class Node {
+		final float x;
+		final float y;
+		final float z;
+		final float size;
+		long offset;
+		int  count;
+		int  childMask;
+		int  firstChild;
+
+		Node(float x, float y, float z, float size) {
+			this.x = x;
+			this.y = y;
+			this.z = z;
+			this.size = size;
+		}
+	}
+
+	private final int  maxPointsPerNode;
+	private final File tempDir;
+	private final File input;
+
+	private DataOutputStream out;
+	private long             numPoints;
+
+	private double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY, minZ = Double.POSITIVE_INFINITY;
+	private double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY, maxZ = Double.NEGATIVE_INFINITY;
+
+	private final List<Node> nodes = new ArrayList<>();
+
+	public PointCloudOctreeBuilder() throws IOException {
+		this(DEFAULT_MAX_POINTS_PER_NODE, null);
+	}
+
+	/**
+	 * @param maxPointsPerNode
+	 *            Maximum number of points per node
+	 * @param tempDir
+	 *            Directory for temporary files, or null for the system default
+	 */
+	public PointCloudOctreeBuilder(int maxPointsPerNode, File tempDir) throws IOException {
+		if (maxPointsPerNode < 1)
+			throw new IllegalArgumentException("max points per node < 1: " + maxPointsPerNode);
+		this.maxPointsPerNode = maxPointsPerNode;
+		this.tempDir = tempDir;
+		this.input = createTempFile();
+		this.out = open(input);
+	}
+
+	/**
+	 * Adds a point with color packed as 0xRRGGBBAA.
+	 */
+	public void add(double x, double y, double z, int rgba) throws IOException {
+		if (out == null)
+			throw new IllegalStateException("octree already built");
+		out.writeDouble(x);
+		out.writeDouble(y);
+		out.writeDouble(z);
+		out.writeInt(rgba);
+		minX = Math.min(minX, x);
+		minY = Math.min(minY, y);
+		minZ = Math.min(minZ, z);
+		maxX = Math.max(maxX, x);
+		maxY = Math.max(maxY, y);
+		maxZ = Math.max(maxZ, z);
+		numPoints++;
+	}
+
+	/**
+	 * Adds count points given as x, y, z positions and packed 0xRRGGBBAA colors. Colors may be null (white).
+	 */
+	public void add(double[] positions, int[] colors, int count) throws IOException {
+		for (int i = 0; i < count; i++)
+			add(positions[i * 3], positions[i * 3 + 1], positions[i * 3 + 2], colors == null ? 0xFFFFFFFF : colors[i]);
+	}
+
+	public long getNumPoints() {
+		return numPoints;
+	}
+
+	/**
+	 * Builds the octree and writes it to file. The file is replaced atomically if possible.
+	 */
+	public void build(File file) throws IOException {
+		if (out == null)
+			throw new IllegalStateException("octree already built");
+		out.close();
+		out = null;
+		if (numPoints == 0)
+			throw new IllegalStateException("no points");
+
+		// cube around all points, slightly enlarged so points on the max faces fall inside
+		double ox = (minX + maxX) / 2;
+		double oy = (minY + maxY) / 2;
+		double oz = (minZ + maxZ) / 2;
+		float half = (float) (Math.max(maxX - minX, Math.max(maxY - minY, maxZ - minZ)) / 2);
+		half = half * (1 + 1e-5f) + 1e-5f;
+
+		// convert to positions relative to origin
+		File points = createTempFile();
+		try (DataInputStream in = openInput(input); DataOutputStream rel = open(points)) {
+			for (long i = 0; i < numPoints; i++) {
+				rel.writeFloat((float) (in.readDouble() - ox));
+				rel.writeFloat((float) (in.readDouble() - oy));
+				rel.writeFloat((float) (in.readDouble() - oz));
+				rel.writeInt(in.readInt());
+			}
+		}
+		input.delete();
+
+		File temp = new File(file.getPath() + ".tmp");
+		try (RandomAccessFile raf = new RandomAccessFile(temp, "rw"); FileChannel channel = raf.getChannel()) {
+			channel.truncate(0);
+			channel.position(PointCloudOctree.HEADER_SIZE);
+			nodes.clear();
+			nodes.add(new Node(-half, -half, -half, 2 * half));
+			process(0, points, numPoints, channel, 0);
+
+			long tableOffset = channel.position();
+			ByteBuffer table = ByteBuffer.allocate(IO_BUFFER).order(ByteOrder.LITTLE_ENDIAN);
+			for (Node node : nodes) {
+				if (table.remaining() < PointCloudOctree.NODE_SIZE)
+					flush(table, channel);
+				table.putFloat(node.x).putFloat(node.y).putFloat(node.z).putFloat(node.size);
+				table.putFloat(node.size / GRID);
+				table.putLong(node.offset);
+				table.putInt(node.count);
+				table.putInt(node.childMask);
+				table.putInt(node.firstChild);
+			}
+			flush(table, channel);
+
+			ByteBuffer header = ByteBuffer.allocate(PointCloudOctree.HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			header.putInt(PointCloudOctree.MAGIC).putInt(PointCloudOctree.VERSION);
+			header.putDouble(ox).putDouble(oy).putDouble(oz);
+			header.putLong(numPoints);
+			header.putInt(nodes.size());
+			header.putLong(tableOffset);
+			header.clear();
+			channel.write(header, 0);
+		}
+		try {
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (out != null) {
+			out.close();
+			out = null;
+		}
+		input.delete();
+	}
+
+	private void process(int index, File points, long count, FileChannel channel, int depth) throws IOException {
+		Node node = nodes.get(index);
+		node.offset = channel.position();
+		ByteBuffer block = ByteBuffer.allocate(IO_BUFFER).order(ByteOrder.LITTLE_ENDIAN);
+
+		// leaf: keep all points
+		if (count <= maxPointsPerNode || depth == MAX_DEPTH) {
+			try (DataInputStream in = openInput(points)) {
+				for (long i = 0; i < count; i++) {
+					if (block.remaining() < PointCloudOctree.POINT_SIZE)
+						flush(block, channel);
+					block.putFloat(in.readFloat()).putFloat(in.readFloat()).putFloat(in.readFloat()).putInt(in.readInt());
+				}
+			}
+			flush(block, channel);
+			node.count = (int) count;
+			points.delete();
+			return;
+		}
+
+		// inner node: keep one point per grid cell, pass the others on to the children
+		float spacing = node.size / GRID;
+		float half = node.size / 2;
+		BitSet occupied = new BitSet(GRID * GRID * GRID);
+		File[] childFiles = new File[8];
+		DataOutputStream[] children = new DataOutputStream[8];
+		long[] childCounts = new long[8];
+		int kept = 0;
+		try (DataInputStream in = openInput(points)) {
+			for (long i = 0; i < count; i++) {
+				float x = in.readFloat();
+				float y = in.readFloat();
+				float z = in.readFloat();
+				int rgba = in.readInt();
+				int cx = Math.min(GRID - 1, Math.max(0, (int) ((x - node.x) / spacing)));
+				int cy = Math.min(GRID - 1, Math.max(0, (int) ((y - node.y) / spacing)));
+				int cz = Math.min(GRID - 1, Math.max(0, (int) ((z - node.z) / spacing)));
+				int cell = (cz * GRID + cy) * GRID + cx;
+				if (kept < maxPointsPerNode && !(occupied.get(cell))) {
+					occupied.set(cell);
+					if (block.remaining() < PointCloudOctree.POINT_SIZE)
+						flush(block, channel);
+					block.putFloat(x).putFloat(y).putFloat(z).putInt(rgba);
+					kept++;
+				} else {
+					int octant = (x >= node.x + half ? 1 : 0) | (y >= node.y + half ? 2 : 0) | (z >= node.z + half ? 4 : 0);
+					if (children[octant] == null) {
+						childFiles[octant] = createTempFile();
+						children[octant] = open(childFiles[octant]);
+					}
+					DataOutputStream child = children[octant];
+					child.writeFloat(x);
+					child.writeFloat(y);
+					child.writeFloat(z);
+					child.writeInt(rgba);
+					childCounts[octant]++;
+				}
+			}
+		} finally {
+			for (DataOutputStream child : children)
+				if (child != null)
+					child.close();
+		}
+		flush(block, channel);
+		node.count = kept;
+		points.delete();
+
+		// children of a node are stored contiguously
+		node.firstChild = nodes.size();
+		for (int octant = 0; octant < 8; octant++) {
+			if (childCounts[octant] == 0)
+				continue;
+			node.childMask |= 1 << octant;
+			nodes.add(new Node(
+					(octant & 1) == 0 ? node.x : node.x + half,
+					(octant & 2) == 0 ? node.y : node.y + half,
+					(octant & 4) == 0 ? node.z : node.z + half,
+					half));
+		}
+		int child = node.firstChild;
+		for (int octant = 0; octant < 8; octant++) {
+			if (childCounts[octant] > 0)
+				process(child++, childFiles[octant], childCounts[octant], channel, depth + 1);
+		}
+	}
+
+	private File createTempFile() throws IOException {
+		return File.createTempFile("pointcloud", ".tmp", tempDir);
+	}
+
+	private static DataOutputStream open(File file) throws IOException {
+		return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), IO_BUFFER));
+	}
+
+	private static DataInputStream openInput(File file) throws IOException {
+		return new DataInputStream(new BufferedInputStream(new FileInputStream(file), IO_BUFFER));
+	}
+
+	private static void flush(ByteBuffer buf, FileChannel channel) throws IOException {
+		buf.flip();
+		while (buf.hasRemaining())
+			channel.write(buf);
+		buf.clear();
+	}
+}
@@ -0,0 +1,281 @@
+/*
+ * Copyright (c) 2013 - 2015 Stefan Muller Arisona, Simon Schubiger, Samuel von Stachelski
+ * Copyright (c) 2013 - 2015 FHNW & ETH Zurich
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *  Neither the name of FHNW / ETH Zurich nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ch.fhnw.ether.scene.mesh.pointcloud;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import ch.fhnw.util.IntList;
+import ch.fhnw.util.Log;
+import ch.fhnw.util.math.Mat4;
+
+/**
+ * Node selection and paging for a point cloud octree. Independent of GL, so it can be driven by plain matrices.
+ * 
+ * Nodes are selected by screen space error: starting at the root, visible nodes are added in order of their projected
+ * point spacing, and refined while that spacing is above the maximum error, until the point budget is exhausted.
+ * Selected nodes must be GPU resident. GPU residency and loaded node data on the heap are each managed as an LRU
+ * cache with a budget in points. Data of GPU resident nodes stays loaded, so the heap budget should be at least the
+ * GPU budget. Nodes not yet loaded are loaded synchronously, at most a given number per frame, so
+ * the selection refines progressively over a few frames.
+ */
+public final class PointCloudPager {
+	private static final Log log = Log.create();
+
+	public static final float DEFAULT_MAX_ERROR          = 2;
+	public static final int   DEFAULT_MAX_LOADS_PER_FRAME = 16;
+
+	private final PointCloudOctree octree;
+	private final long             gpuBudget;
+	private final long             heapBudget;
+
+	private float maxError          = DEFAULT_MAX_ERROR;
+	private int   maxLoadsPerFrame  = DEFAULT_MAX_LOADS_PER_FRAME;
+
+	// access ordered, eldest first
+	private final LinkedHashMap<Integer, float[][]> heap = new LinkedHashMap<>(16, 0.75f, true);
+	private final LinkedHashMap<Integer, Integer>   gpu  = new LinkedHashMap<>(16, 0.75f, true);
+	private long heapPoints;
+	private long gpuPoints;
+
+	private final int[]   lastUsed;
+	private final float[] priorities;
+	private int frame = 1;
+	private int loads;
+
+	/**
+	 * @param gpuBudget
+	 *            Maximum number of GPU resident points
+	 * @param heapBudget
+	 *            Maximum number of points kept loaded on the heap, should be at least the GPU budget
+	 */
+	public PointCloudPager(PointCloudOctree octree, long gpuBudget, long heapBudget) {
+		this.octree = octree;
+		this.gpuBudget = gpuBudget;
+		this.heapBudget = heapBudget;
+		this.lastUsed = new int[octree.getNumNodes()];
+		this.priorities = new float[octree.getNumNodes()];
+	}
+
+	public PointCloudOctree getOctree() {
+		return octree;
+	}
+
+	public float getMaxError() {
+		return maxError;
+	}
+
+	/**
+	 * Set the maximum projected point spacing in pixels. Nodes above it are refined.
+	 */
+	public void setMaxError(float maxError) {
+		this.maxError = maxError;
+	}
+
+	public int getMaxLoadsPerFrame() {
+		return maxLoadsPerFrame;
+	}
+
+	public void setMaxLoadsPerFrame(int maxLoadsPerFrame) {
+		this.maxLoadsPerFrame = maxLoadsPerFrame;
+	}
+
+	/**
+	 * Starts a new frame. Nodes selected for any view within a frame are not evicted during that frame.
+	 */
+	public void beginFrame() {
+		frame++;
+		loads = 0;
+	}
+
+	/**
+	 * Selects the nodes to be rendered for a view, making them GPU resident.
+	 * 
+	 * @param modelViewMatrix
+	 *            Transform from octree to view space
+	 * @param projMatrix
+	 *            Projection matrix
+	 * @param viewportHeight
+	 *            Viewport height in pixels
+	 * @return Selected nodes, parents before children
+	 */
+	public int[] select(Mat4 modelViewMatrix, Mat4 projMatrix, float viewportHeight) {
+		Mat4 mvp = Mat4.multiply(projMatrix, modelViewMatrix);
+		// includes the model scale, so spacings and distances are in view space units
+		float modelScale = (float) Math.sqrt(modelViewMatrix.m00 * modelViewMatrix.m00 + modelViewMatrix.m10 * modelViewMatrix.m10 + modelViewMatrix.m20 * modelViewMatrix.m20);
+		float scale = projMatrix.m11 * viewportHeight * 0.5f * modelScale;
+		boolean orthographic = projMatrix.m32 == 0;
+
+		IntList result = new IntList();
+		long selectedPoints = 0;
+		PriorityQueue<Integer> queue = new PriorityQueue<>((a, b) -> Float.compare(priorities[b], priorities[a]));
+		if (octree.getNumNodes() > 0 && isVisible(0, mvp)) {
+			priorities[0] = getProjectedSpacing(0, modelViewMatrix, scale, modelScale, orthographic);
+			queue.add(0);
+		}
+		while (!(queue.isEmpty())) {
+			int node = queue.poll();
+			int count = octree.getNumPoints(node);
+			if (selectedPoints + count > gpuBudget)
+				break;
+			if (!(makeResident(node)))
+				continue;
+			result.add(node);
+			selectedPoints += count;
+			if (priorities[node] <= maxError)
+				continue;
+			for (int octant = 0; octant < 8; octant++) {
+				int child = octree.getChild(node, octant);
+				if (child >= 0 && isVisible(child, mvp)) {
+					priorities[child] = getProjectedSpacing(child, modelViewMatrix, scale, modelScale, orthographic);
+					queue.add(child);
+				}
+			}
+		}
+		return result.toArray();
+	}
+
+	/**
+	 * Get loaded data of node (positions and colors), or null if not loaded. Data of GPU resident nodes, and thus of all
+	 * selected nodes, is always available.
+	 */
+	public float[][] getData(int node) {
+		return heap.get(node);
+	}
+
+	public boolean isLoaded(int node) {
+		return heap.containsKey(node);
+	}
+
+	public boolean isResident(int node) {
+		return gpu.containsKey(node);
+	}
+
+	/**
+	 * Get all GPU resident nodes, least recently used first.
+	 */
+	public Set<Integer> getResidentNodes() {
+		return Collections.unmodifiableSet(gpu.keySet());
+	}
+
+	public long getNumResidentPoints() {
+		return gpuPoints;
+	}
+
+	public long getNumLoadedPoints() {
+		return heapPoints;
+	}
+
+	private boolean makeResident(int node) {
+		if (gpu.get(node) != null) {
+			lastUsed[node] = frame;
+			return true;
+		}
+		int count = octree.getNumPoints(node);
+		if (heap.get(node) == null) {
+			if (loads >= maxLoadsPerFrame)
+				return false;
+			loads++;
+			try {
+				heap.put(node, octree.load(node));
+			} catch (IOException e) {
+				log.warning("cannot load point cloud node " + node, e);
+				return false;
+			}
+			heapPoints += count;
+			for (Iterator<Map.Entry<Integer, float[][]>> i = heap.entrySet().iterator(); heapPoints > heapBudget && i.hasNext();) {
+				// keep data of resident nodes and of nodes used in this frame, so their meshes can still be created
+				Map.Entry<Integer, float[][]> entry = i.next();
+				if (entry.getKey() == node || lastUsed[entry.getKey()] == frame || gpu.containsKey(entry.getKey()))
+					continue;
+				heapPoints -= entry.getValue()[0].length / 3;
+				i.remove();
+			}
+		}
+		// evict least recently used nodes that are not used in this frame
+		for (Iterator<Map.Entry<Integer, Integer>> i = gpu.entrySet().iterator(); gpuPoints + count > gpuBudget && i.hasNext();) {
+			Map.Entry<Integer, Integer> entry = i.next();
+			if (lastUsed[entry.getKey()] == frame)
+				continue;
+			gpuPoints -= entry.getValue();
+			i.remove();
+		}
+		if (gpuPoints + count > gpuBudget)
+			return false;
+		gpu.put(node, count);
+		gpuPoints += count;
+		lastUsed[node] = frame;
+		return true;
+	}
+
+	// outside if all corners are outside of the same clip plane
+	private boolean isVisible(int node, Mat4 mvp) {
+		float x0 = octree.getMinX(node), y0 = octree.getMinY(node), z0 = octree.getMinZ(node), size = octree.getSize(node);
+		int outside = 0x3F;
+		for (int i = 0; i < 8; i++) {
+			float x = (i & 1) == 0 ? x0 : x0 + size;
+			float y = (i & 2) == 0 ? y0 : y0 + size;
+			float z = (i & 4) == 0 ? z0 : z0 + size;
+			float cx = mvp.m00 * x + mvp.m01 * y + mvp.m02 * z + mvp.m03;
+			float cy = mvp.m10 * x + mvp.m11 * y + mvp.m12 * z + mvp.m13;
+			float cz = mvp.m20 * x + mvp.m21 * y + mvp.m22 * z + mvp.m23;
+			float cw = mvp.m30 * x + mvp.m31 * y + mvp.m32 * z + mvp.m33;
+			int code = (cx < -cw ? 1 : 0) | (cx > cw ? 2 : 0) | (cy < -cw ? 4 : 0) | (cy > cw ? 8 : 0) | (cz < -cw ? 16 : 0) | (cz > cw ? 32 : 0);
+			outside &= code;
+			if (outside == 0)
+				return true;
+		}
+		return false;
+	}
+
+	private float getProjectedSpacing(int node, Mat4 modelView, float scale, float modelScale, boolean orthographic) {
+		float spacing = octree.getSpacing(node);
+		if (orthographic)
+			return spacing * scale;
+		float half = octree.getSize(node) / 2;
+		float x = octree.getMinX(node) + half, y = octree.getMinY(node) + half, z = octree.getMinZ(node) + half;
+		float vx = modelView.m00 * x + modelView.m01 * y + modelView.m02 * z + modelView.m03;
+		float vy = modelView.m10 * x + modelView.m11 * y + modelView.m12 * z + modelView.m13;
+		float vz = modelView.m20 * x + modelView.m21 * y + modelView.m22 * z + modelView.m23;
+		float distance = (float) Math.sqrt(vx * vx + vy * vy + vz * vz) - half * modelScale * (float) Math.sqrt(3);
+		if (distance <= 0)
+			return Float.POSITIVE_INFINITY;
+		return spacing * scale / distance;
+	}
+
+	@Override
+	public String toString() {
+		return "point_cloud_pager[" + gpu.size() + " resident nodes, " + gpuPoints + " resident points, " + heapPoints + " loaded points]";
+	}
+}
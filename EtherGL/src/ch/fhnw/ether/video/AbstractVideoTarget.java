@@ -1,5 +1,8 @@
 package ch.fhnw.ether.video;
 
+import java.util.Collections;
+import java.util.Map;
+
 import com.jogamp.opengl.GL;
 import com.jogamp.opengl.GL3;
 
@@ -10,13 +13,23 @@ import ch.fhnw.ether.media.RenderCommandException;
 import ch.fhnw.ether.media.RenderProgram;
 import ch.fhnw.ether.render.gl.GLObject;
 import ch.fhnw.ether.render.gl.GLObject.Type;
+import ch.fhnw.ether.render.gl.GLState;
 import ch.fhnw.ether.scene.mesh.material.Texture;
 import ch.fhnw.ether.video.fx.AbstractVideoFX;
+import ch.fhnw.ether.video.fx.FusedVideoFX;
+import ch.fhnw.ether.video.fx.GLFXChainCompiler;
 import ch.fhnw.ether.video.fx.IVideoFrameFX;
 import ch.fhnw.ether.video.fx.IVideoGLFX;
+import ch.fhnw.ether.video.fx.PixelFXChain;
 
 public abstract class AbstractVideoTarget extends AbstractMediaTarget<VideoFrame, IVideoRenderTarget> implements IVideoRenderTarget, IScheduler {
-	private final Class<?> preferredType;
+	private final Class<?>                           preferredType;
+	private final GLFXChainCompiler                  compiler = new GLFXChainCompiler();
+	private       boolean                            fuseFX   = true;
+	private       AbstractRenderCommand<?>[]         passCmds;
+	private       boolean[]                          passEnabled;
+	private       Map<AbstractVideoFX, FusedVideoFX> passes   = Collections.emptyMap();
+	private       Map<AbstractVideoFX, PixelFXChain> chains   = Collections.emptyMap();
 	
 	protected AbstractVideoTarget(int threadPriority, Class<?> preferredType, boolean realTime) {
 		super(threadPriority, realTime);
@@ -49,13 +62,16 @@ public abstract class AbstractVideoTarget extends AbstractMediaTarget<VideoFrame
 	}
 
 	public Texture getSrcTexture(GL3 gl, AbstractVideoFX fx) {
+		if(fx instanceof FusedVideoFX)
+			fx = ((FusedVideoFX)fx).getFirst();
+
 		AbstractRenderCommand<?>[] cmds = program.getProgram();
 		if(cmds[1] == fx)
 			return getFrame().getTexture();
 
 		for(int i = cmds.length; --i >= 0;)
 			if(cmds[i] == fx)
-				return getDstTexture(gl, (AbstractVideoFX)cmds[i-1]);
+				return getDstTexture(gl, getPass((AbstractVideoFX)cmds[i-1]));
 
 		return null;
 	}
@@ -63,15 +79,76 @@ public abstract class AbstractVideoTarget extends AbstractMediaTarget<VideoFrame
 	public Texture getDstTexture(GL3 gl, AbstractVideoFX fx) {
 		AbstractRenderCommand<?>[] cmds = program.getProgram();
 		IVideoSource               src  = (IVideoSource) cmds[0];
-		if(cmds[cmds.length - 1] == fx || fx.getDstTexture() == null)
+		AbstractVideoFX            last = fx instanceof FusedVideoFX ? ((FusedVideoFX)fx).getLast() : fx;
+		if(cmds[cmds.length - 1] == last || fx.getDstTexture() == null)
 			return createTexture(gl, src);
 		return fx.getDstTexture();
 	}
 
+	/**
+	 * Enables or disables fusing runs of point-wise effects into single passes (enabled by default).
+	 * GL effects are fused into one shader, frame effects implementing {@link ch.fhnw.ether.video.fx.IVideoPixelFX}
+	 * into one pass over the frame.
+	 */
+	public void setFuseFX(boolean state) {
+		fuseFX = state;
+	}
+
+	public boolean isFuseFX() {
+		return fuseFX;
+	}
+
+	/**
+	 * Returns the pass that renders the given effect: either a fused pass or the effect itself.
+	 */
+	public AbstractVideoFX getPass(AbstractVideoFX fx) {
+		if(!(fuseFX) || preferredType != AbstractVideoFX.GLFX)
+			return fx;
+		updatePasses();
+		FusedVideoFX result = passes.get(fx);
+		return result == null ? fx : result;
+	}
+
+	/**
+	 * Returns the kernel chain the given frame effect is part of or null if it runs on its own.
+	 */
+	public PixelFXChain getPixelChain(AbstractVideoFX fx) {
+		if(!(fuseFX) || preferredType != AbstractVideoFX.FRAMEFX)
+			return null;
+		updatePasses();
+		return chains.get(fx);
+	}
+
+	public boolean isFirstOfPass(AbstractVideoFX fx) {
+		AbstractVideoFX pass = getPass(fx);
+		return pass == fx || ((FusedVideoFX)pass).getFirst() == fx;
+	}
+
+	private void updatePasses() {
+		AbstractRenderCommand<?>[] cmds    = program.getProgram();
+		boolean                    changed = cmds != passCmds;
+		if(!(changed))
+			for(int i = 0; i < cmds.length; i++)
+				if(cmds[i].isEnabled() != passEnabled[i]) {
+					changed = true;
+					break;
+				}
+		if(changed) {
+			passEnabled = new boolean[cmds.length];
+			for(int i = 0; i < cmds.length; i++)
+				passEnabled[i] = cmds[i].isEnabled();
+			if(preferredType == AbstractVideoFX.GLFX)
+				passes = compiler.compile(cmds);
+			else
+				chains = PixelFXChain.compile(cmds);
+			passCmds = cmds;
+		}
+	}
+
 	private Texture createTexture(GL3 gl, IVideoSource src) {
 		Texture result;
 		result = new Texture(new GLObject(gl, Type.TEXTURE), src.getWidth(), src.getHeight());
-		gl.glBindTexture(GL3.GL_TEXTURE_2D, result.getGlObject().getId());
+		GLState.get(gl).bindTexture(gl, GL3.GL_TEXTURE_2D, result.getGlObject().getId());
 		gl.glTexImage2D(GL3.GL_TEXTURE_2D, 0, GL3.GL_RGBA8, src.getWidth(), src.getHeight(), 0, GL3.GL_RGBA, GL3.GL_UNSIGNED_BYTE, null);
 		gl.glTexParameteri(GL3.GL_TEXTURE_2D, GL.GL_TEXTURE_MAG_FILTER, GL.GL_LINEAR);
 		gl.glTexParameteri(GL3.GL_TEXTURE_2D, GL.GL_TEXTURE_MIN_FILTER, GL.GL_LINEAR);
@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2013 - 2015 Stefan Muller Arisona, Simon Schubiger, Samuel von Stachelski
+ * Copyright (c) 2013 - 2015 FHNW & ETH Zurich
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *  Neither the name of FHNW / ETH Zurich nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package ch.fhnw.ether.video;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import ch.fhnw.ether.image.Frame;
+import ch.fhnw.ether.image.Frame.FileFormat;
+
+/**
+ * Writes frames to disk on a pool of writer threads. At most <code>maxPending</code> frames
+ * are queued, further calls to {@link #write(Frame, File, FileFormat, Runnable)} block until
+ * a writer becomes available. Ownership of a frame passes to the writer until its
+ * completion callback was invoked.
+ */
+public final class AsyncFrameWriter implements AutoCloseable {
+	private final ExecutorService            pool;
+	private final Semaphore                  slots;
+	private final int                        maxPending;
+	private final AtomicReference<Throwable> error   = new AtomicReference<>();
+	private final AtomicLong                 written = new AtomicLong();
+	private final AtomicLong                 bytes   = new AtomicLong();
+
+	public AsyncFrameWriter(int numThreads, int maxPending) {
+		this.maxPending = maxPending;
+		this.slots      = new Semaphore(maxPending);
+		this.pool       = Executors.newFixedThreadPool(numThreads, r->{
+			Thread result = new Thread(r, "AsyncFrameWriter");
+			result.setDaemon(true);
+			result.setPriority(Thread.MIN_PRIORITY);
+			return result;
+		});
+	}
+
+	public void write(Frame frame, File file, FileFormat format, Runnable onWritten) throws IOException, InterruptedException {
+		checkError();
+		slots.acquire();
+		pool.execute(()->{
+			try {
+				if(error.get() == null) {
+					frame.write(file, format);
+					written.incrementAndGet();
+					bytes.addAndGet(file.length());
+				}
+			} catch(Throwable t) {
+				error.compareAndSet(null, t);
+			} finally {
+				slots.release();
+				if(onWritten != null)
+					onWritten.run();
+			}
+		});
+	}
+
+	public int getPending() {
+		return maxPending - slots.availablePermits();
+	}
+
+	public long getWrittenFrames() {
+		return written.get();
+	}
+
+	public long getWrittenBytes() {
+		return bytes.get();
+	}
+
+	private void checkError() throws IOException {
+		Throwable t = error.get();
+		if(t instanceof IOException)
+			throw (IOException)t;
+		else if(t != null)
+			throw new IOException(t);
+	}
+
+	/**
+	 * Waits until all pending frames are written and releases the writer threads.
+	 * Rethrows the first error that occured while writing.
+	 */
+	@Override
+	public void close() throws IOException {
+		pool.shutdown();
+		try {
+			while(!(pool.awaitTermination(1, TimeUnit.SECONDS))) {}
+		} catch(InterruptedException e) {
+			throw new IOException(e);
+		}
+		checkError();
+	}
+}
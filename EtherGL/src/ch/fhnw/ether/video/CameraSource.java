@@ -32,26 +32,44 @@ package ch.fhnw.ether.video;
 import java.awt.Dimension;
 import java.lang.reflect.Method;
 import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import com.github.sarxos.webcam.Webcam;
 
+import ch.fhnw.ether.image.Frame;
 import ch.fhnw.ether.image.RGB8Frame;
 import ch.fhnw.ether.media.AbstractFrameSource;
 import ch.fhnw.ether.media.IRenderTarget;
+import ch.fhnw.ether.media.IScheduler;
 import ch.fhnw.ether.media.RenderCommandException;
+import ch.fhnw.util.BufferUtilities;
 import ch.fhnw.util.ClassUtilities;
 import ch.fhnw.util.IDisposable;
+import ch.fhnw.util.Log;
 
+/**
+ * Video source for cameras. Frames are grabbed on a dedicated capture thread into a set
+ * of recycled frames, so a slow camera never stalls the render target. In {@link Mode#LATEST}
+ * a triple buffer hands out the most recent complete frame and older frames are dropped. In
+ * {@link Mode#QUEUE} frames are handed out oldest first and only dropped if the queue overflows.
+ * The target always receives a copy of the captured frame, so effects that modify the frame in
+ * place are never applied twice if the camera has not delivered a new frame yet.
+ */
 public class CameraSource extends AbstractFrameSource implements IVideoSource, IDisposable {
+	private static final Log log = Log.create();
+
+	public enum Mode {LATEST, QUEUE}
+
+	public static final int DEFAULT_QUEUE_SIZE = 8;
+
 	private static final AtomicBoolean kill = new AtomicBoolean();
 
 	private static final Method getFPS = ClassUtilities.getMethod(Webcam.class, "getFPS");
 
-	private final Webcam     cam;
-	private AtomicBoolean    disposed = new AtomicBoolean(false);
-	private final CameraInfo info;
-
 	static {
 		Runtime.getRuntime().addShutdownHook(new Thread(()->{
 			try {
@@ -71,59 +89,273 @@ public class CameraSource extends AbstractFrameSource implements IVideoSource, I
 		}.start();
 	}
 
+	static final class Slot {
+		Frame   frame;
+		long    captureTime;
+		boolean fresh;
+
+		Slot(int width, int height) {
+			frame = new RGB8Frame(width, height);
+		}
+	}
+
+	private static final class WebcamDevice implements ICameraDevice {
+		private final Webcam     cam;
+		private final CameraInfo info;
+		private       ByteBuffer image;
+
+		WebcamDevice(CameraInfo info) {
+			this.info = info;
+			this.cam  = info.getNativeCamera();
+			this.cam.open(true);
+			Dimension max = cam.getViewSize();
+			for(Dimension dim : this.cam.getViewSizes())
+				if(dim.width > max.width && dim.height > max.height)
+					max = dim;
+			setSize(max.width, max.height);
+		}
+
+		@Override
+		public int getWidth() {
+			return cam.getViewSize().width;
+		}
+
+		@Override
+		public int getHeight() {
+			return cam.getViewSize().height;
+		}
+
+		@Override
+		public float getFrameRate() {
+			try {
+				return Math.max(10.0f, ((Double)getFPS.invoke(cam)).floatValue());
+			} catch(Throwable t) {
+				return FRAMERATE_UNKNOWN;
+			}
+		}
+
+		@Override
+		public boolean isOpen() {
+			return cam.isOpen();
+		}
+
+		@Override
+		public synchronized void setSize(int width, int height) {
+			cam.close();
+			cam.setViewSize(new Dimension(width, height));
+			cam.open(true);
+		}
+
+		@Override
+		public synchronized boolean grab(Frame frame) {
+			if(!(cam.isOpen())) return false;
+			final int rowLength = frame.width * frame.pixelSize;
+			if(image == null || image.capacity() != rowLength * frame.height)
+				image = BufferUtilities.createDirectByteBuffer(rowLength * frame.height);
+			image.clear();
+			cam.getImageBytes(image);
+			for(int j = frame.height; --j >= 0;)
+				BufferUtilities.arraycopy(image, (frame.height - 1 - j) * rowLength, frame.pixels, j * rowLength, rowLength);
+			return true;
+		}
+
+		@Override
+		public void dispose() {
+			cam.close();
+		}
+
+		@Override
+		public String toString() {
+			return info.toString();
+		}
+	}
+
+	private final ICameraDevice         device;
+	private final Mode                  mode;
+	private final AtomicBoolean         disposed = new AtomicBoolean(false);
+	private final AtomicReference<Slot> ready    = new AtomicReference<>();
+	private final BlockingQueue<Slot>   free;
+	private final BlockingQueue<Slot>   filled;
+	private final AtomicLong            dropped  = new AtomicLong();
+	private final AtomicLong            captured = new AtomicLong();
+	private final Object                newFrame = new Object();
+	private final Thread                captureThread;
+	private       Slot                  back;
+	private       Slot                  front;
+	private       Frame                 output;
+	private       long                  latencyNanos;
+	private       long                  latencySum;
+	private       long                  delivered;
+
 	private CameraSource(CameraInfo info) {
-		this.info     = info;
-		this.cam      = info.getNativeCamera();
-		this.cam.open(true);
-		Dimension max = cam.getViewSize();
-		for(Dimension dim : this.cam.getViewSizes())
-			if(dim.width > max.width && dim.height > max.height)
-				max = dim;
-		setSize(max.width, max.height);
+		this(new WebcamDevice(info), Mode.LATEST, DEFAULT_QUEUE_SIZE);
+	}
+
+	public CameraSource(ICameraDevice device, Mode mode, int queueSize) {
+		this.device = device;
+		this.mode   = mode;
+		final int w = device.getWidth();
+		final int h = device.getHeight();
+		front       = new Slot(w, h);
+		if(mode == Mode.LATEST) {
+			free   = null;
+			filled = null;
+			back   = new Slot(w, h);
+			ready.set(new Slot(w, h));
+		} else {
+			free   = new ArrayBlockingQueue<>(queueSize);
+			filled = new ArrayBlockingQueue<>(queueSize);
+			for(int i = 0; i < queueSize; i++)
+				free.add(new Slot(w, h));
+		}
+		captureThread = new Thread(this::capture, "Capture:" + device);
+		captureThread.setDaemon(true);
+		captureThread.setPriority(Thread.MAX_PRIORITY);
+		captureThread.start();
 	}
 
 	@Override
 	public void dispose() {
-		if(!(disposed.getAndSet(true)))
-			cam.close();
+		if(!(disposed.getAndSet(true))) {
+			captureThread.interrupt();
+			device.dispose();
+		}
+	}
+
+	private void capture() {
+		try {
+			while(!(disposed.get())) {
+				Slot slot = back;
+				if(mode == Mode.QUEUE) {
+					slot = free.poll();
+					if(slot == null) {
+						// consumer is too slow, drop the oldest frame
+						slot = filled.poll();
+						if(slot == null) {
+							Thread.sleep(1);
+							continue;
+						}
+						dropped.incrementAndGet();
+					}
+				}
+				final int w = device.getWidth();
+				final int h = device.getHeight();
+				if(slot.frame.width != w || slot.frame.height != h)
+					slot.frame = new RGB8Frame(w, h);
+				if(!(device.grab(slot.frame))) {
+					if(mode == Mode.QUEUE)
+						free.add(slot);
+					Thread.sleep(10);
+					continue;
+				}
+				slot.frame.modified();
+				slot.captureTime = System.nanoTime();
+				slot.fresh       = true;
+				captured.incrementAndGet();
+				if(mode == Mode.QUEUE)
+					filled.add(slot);
+				else {
+					back = ready.getAndSet(slot);
+					if(back.fresh)
+						dropped.incrementAndGet();
+				}
+				synchronized (newFrame) {
+					newFrame.notifyAll();
+				}
+			}
+		} catch(InterruptedException e) {
+			// disposed
+		} catch(Throwable t) {
+			log.severe(t);
+		}
+	}
+
+	private Slot next() {
+		if(mode == Mode.QUEUE) {
+			Slot result = filled.poll();
+			if(result != null)
+				free.add(front);
+			return result;
+		}
+		front.fresh = false;
+		Slot result = ready.getAndSet(front);
+		if(result.fresh)
+			return result;
+		front = result;
+		return null;
 	}
 
 	@Override
 	protected void run(IRenderTarget<?> target) throws RenderCommandException {
-		if(!(cam.isOpen())) return;
-		Dimension size  = cam.getViewSize();
-		RGB8Frame frame = new RGB8Frame(size.width, size.height);
-		final ByteBuffer src = cam.getImageBytes();
-		src.clear();
-		final ByteBuffer dst = frame.pixels;
-		for(int j = frame.height; --j >= 0;) {
-			dst.position(j * frame.width * 3);
-			for(int i = frame.width; --i >= 0;) {
-				dst.put(src.get());
-				dst.put(src.get());
-				dst.put(src.get());
+		if(!(device.isOpen())) return;
+		Slot slot = next();
+		if(slot == null) {
+			// wait at most one frame period for the capture thread
+			try {
+				synchronized (newFrame) {
+					newFrame.wait(Math.max(1, (long)(1000 / Math.max(1, getFrameRate()))));
+				}
+			} catch(InterruptedException e) {
+				throw new RenderCommandException(e);
 			}
+			slot = next();
 		}
+		if(slot != null) {
+			slot.fresh = false;
+			front      = slot;
+			synchronized (this) {
+				latencyNanos = System.nanoTime() - slot.captureTime;
+				latencySum  += latencyNanos;
+				delivered++;
+			}
+		}
+		final Frame frame = front.frame;
+		if(output == null || output.width != frame.width || output.height != frame.height)
+			output = new RGB8Frame(frame.width, frame.height);
+		Frame.copyTo(frame, output);
 		try {
-			((IVideoRenderTarget)target).setFrame(this, new VideoFrame(frame));
+			((IVideoRenderTarget)target).setFrame(this, new VideoFrame(output));
 		} catch(Throwable t) {
 			throw new RenderCommandException(t);
 		}
 	}
 
 	public void setSize(int width, int height) {
-		cam.close();
-		cam.setViewSize(new Dimension(width, height));
-		cam.open(true);
+		device.setSize(width, height);
+	}
+
+	public Mode getMode() {
+		return mode;
+	}
+
+	/**
+	 * Returns the number of captured frames that were never handed out.
+	 */
+	public long getDroppedFrames() {
+		return dropped.get();
+	}
+
+	public long getCapturedFrames() {
+		return captured.get();
+	}
+
+	/**
+	 * Returns the time in seconds between the capture and the hand out of the current frame.
+	 */
+	public synchronized double getLatency() {
+		return latencyNanos / IScheduler.SEC2NS;
+	}
+
+	/**
+	 * Returns the average time in seconds between capture and hand out of all frames so far.
+	 */
+	public synchronized double getAverageLatency() {
+		return delivered == 0 ? 0 : (latencySum / (double)delivered) / IScheduler.SEC2NS;
 	}
 
 	@Override
 	public float getFrameRate() {
-		try {
-			return Math.max(10.0f, ((Double)getFPS.invoke(cam)).floatValue());
-		} catch(Throwable t) {
-			return FRAMERATE_UNKNOWN;
-		}
+		return device.getFrameRate();
 	}
 
 	@Override
@@ -138,19 +370,19 @@ public class CameraSource extends AbstractFrameSource implements IVideoSource, I
 
 	@Override
 	public int getWidth() {
-		return cam.getViewSize().width;
+		return device.getWidth();
 	}
 
 	@Override
 	public int getHeight() {
-		return cam.getViewSize().height;
+		return device.getHeight();
 	}
 
 	//--- utilities
 
 	@Override
 	public String toString() {
-		return info.toString();
+		return device.toString();
 	}
 
 	@Override
@@ -162,4 +394,8 @@ public class CameraSource extends AbstractFrameSource implements IVideoSource, I
 	public static CameraSource create(CameraInfo cameraInfo) {
 		return new CameraSource(cameraInfo);
 	}
+
+	public static CameraSource create(ICameraDevice device, Mode mode) {
+		return new CameraSource(device, mode, DEFAULT_QUEUE_SIZE);
+	}
 }
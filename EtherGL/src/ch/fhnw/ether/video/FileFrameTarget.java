@@ -37,6 +37,10 @@ import ch.fhnw.ether.media.RenderCommandException;
 import ch.fhnw.ether.video.fx.AbstractVideoFX;
 import ch.fhnw.util.TextUtilities;
 
+/**
+ * Writes the current frame to a file. For non real-time exports of whole clips to frame sequences
+ * see {@link SegmentExporter}.
+ */
 public class FileFrameTarget extends AbstractVideoTarget {
 	private final File   file;
 	private final String ext;
@@ -78,6 +78,12 @@ public class FrameAccess {
 
 	public boolean decodeFrame() {return true;}
 
+	/**
+	 * Returns true if all frames of the current play were decoded and consumed, i.e. the next
+	 * call to {@link #decodeFrame()} would rewind. Accesses that cannot tell return false.
+	 */
+	public boolean isEndOfClip() {return false;}
+
 	public boolean isKeyframe() {
 		return true;
 	}
@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2013 - 2015 Stefan Muller Arisona, Simon Schubiger, Samuel von Stachelski
+ * Copyright (c) 2013 - 2015 FHNW & ETH Zurich
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *  Neither the name of FHNW / ETH Zurich nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package ch.fhnw.ether.video;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+
+import ch.fhnw.ether.image.Frame;
+import ch.fhnw.ether.media.AbstractFrameSource;
+import ch.fhnw.ether.media.IRenderTarget;
+import ch.fhnw.ether.media.RenderCommandException;
+
+/**
+ * Plays back a sequence file written by {@link RawSequenceWriter}. The file is memory mapped
+ * and frames are handed out as views into the mapping without copying. If the file is writable
+ * the mapping is private, so effects may modify the frames in place without changing the file.
+ * Otherwise the frames are read-only.
+ */
+public class RawSequenceSource extends AbstractFrameSource implements IVideoSource {
+	private final File               file;
+	private final int                width;
+	private final int                height;
+	private final int                pixelSize;
+	private final float              frameRate;
+	private final int                frameCount;
+	private final long               frameStride;
+	private final int                framesPerRegion;
+	private final MappedByteBuffer[] regions;
+	private final double[]           times;
+	private       int                numPlays;
+	private       int                current = -1;
+	private       double             baseTime;
+
+	public RawSequenceSource(File file) throws IOException {
+		this(file, Integer.MAX_VALUE);
+	}
+
+	public RawSequenceSource(File file, int numPlays) throws IOException {
+		this.file     = file;
+		this.numPlays = numPlays;
+		// a private mapping needs a writable channel even though the file is never written to
+		final boolean writable = file.canWrite();
+		try(FileChannel channel = writable ? FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE) : FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			ByteBuffer header = ByteBuffer.allocate(RawSequenceWriter.HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			readFully(channel, header, 0);
+			if(header.getLong() != RawSequenceWriter.MAGIC)
+				throw new IOException("not a raw sequence file:" + file);
+			width       = header.getInt();
+			height      = header.getInt();
+			pixelSize   = header.getInt();
+			frameRate   = header.getFloat();
+			long count  = header.getLong();
+			long index  = header.getLong();
+			if(count <= 0 || count > Integer.MAX_VALUE || index == 0)
+				throw new IOException("incomplete raw sequence file:" + file);
+			frameCount  = (int)count;
+			frameStride = RawSequenceWriter.align((long)width * height * pixelSize);
+
+			ByteBuffer indexData = ByteBuffer.allocate(frameCount * RawSequenceWriter.INDEX_ENTRY).order(ByteOrder.LITTLE_ENDIAN);
+			readFully(channel, indexData, index);
+			times = new double[frameCount];
+			for(int i = 0; i < frameCount; i++) {
+				indexData.getLong();
+				times[i] = indexData.getDouble();
+			}
+
+			framesPerRegion = (int)Math.max(1, Integer.MAX_VALUE / frameStride);
+			regions         = new MappedByteBuffer[(frameCount + framesPerRegion - 1) / framesPerRegion];
+			for(int i = 0; i < regions.length; i++) {
+				int frames = Math.min(framesPerRegion, frameCount - i * framesPerRegion);
+				regions[i] = channel.map(writable ? MapMode.PRIVATE : MapMode.READ_ONLY, RawSequenceWriter.frameOffset(frameStride, (long)i * framesPerRegion), frames * frameStride);
+			}
+		}
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while(buffer.hasRemaining()) {
+			int read = channel.read(buffer, position);
+			if(read < 0)
+				throw new IOException("unexpected end of file");
+			position += read;
+		}
+		buffer.flip();
+	}
+
+	/**
+	 * Returns a frame backed by the mapped file content of the given frame.
+	 */
+	public Frame getFrame(int frame) {
+		ByteBuffer pixels = regions[frame / framesPerRegion].duplicate();
+		int        offset = (int)((frame % framesPerRegion) * frameStride);
+		pixels.position(offset);
+		pixels.limit(offset + width * height * pixelSize);
+		pixels = pixels.slice();
+		pixels.order(ByteOrder.nativeOrder());
+		return Frame.create(width, height, pixelSize, pixels);
+	}
+
+	public double getPlayOutTime(int frame) {
+		return times[frame];
+	}
+
+	@Override
+	public String toString() {
+		return file.toString();
+	}
+
+	@Override
+	public int getWidth() {
+		return width;
+	}
+
+	@Override
+	public int getHeight() {
+		return height;
+	}
+
+	@Override
+	public float getFrameRate() {
+		return frameRate;
+	}
+
+	@Override
+	public long getLengthInFrames() {
+		return frameCount;
+	}
+
+	@Override
+	public double getLengthInSeconds() {
+		return frameCount / frameRate;
+	}
+
+	private void advance() {
+		if(++current >= frameCount) {
+			current   = 0;
+			baseTime += getLengthInSeconds();
+			numPlays--;
+		}
+	}
+
+	@Override
+	protected void run(IRenderTarget<?> target) throws RenderCommandException {
+		if(target instanceof IVideoRenderTarget) {
+			do {
+				advance();
+			} while(baseTime + times[current] < target.getTime() && !(current == frameCount - 1 && numPlays <= 1));
+			VideoFrame frame = new VideoFrame(getFrame(current), baseTime + times[current]);
+			if(current == frameCount - 1 && numPlays <= 1)
+				frame.setLast(true);
+			((IVideoRenderTarget)target).setFrame(this, frame);
+		}
+	}
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2013 - 2015 Stefan Muller Arisona, Simon Schubiger, Samuel von Stachelski
+ * Copyright (c) 2013 - 2015 FHNW & ETH Zurich
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *  Neither the name of FHNW / ETH Zurich nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package ch.fhnw.ether.video;
+
+import java.io.File;
+import java.io.IOException;
+
+import ch.fhnw.ether.image.Frame;
+import ch.fhnw.ether.media.RenderCommandException;
+import ch.fhnw.ether.video.fx.AbstractVideoFX;
+
+/**
+ * Captures all frames of a program losslessly into a sequence file. See {@link RawSequenceWriter}.
+ */
+public class RawSequenceTarget extends AbstractVideoTarget {
+	private final File        file;
+	private RawSequenceWriter writer;
+	private boolean           closed;
+
+	public RawSequenceTarget(File file) {
+		super(Thread.MIN_PRIORITY, AbstractVideoFX.FRAMEFX, false);
+		this.file = file;
+	}
+
+	@Override
+	public void render() throws RenderCommandException {
+		try {
+			write(getFrame());
+		} catch (Throwable e) {
+			throw new RenderCommandException(e);
+		}
+	}
+
+	private synchronized void write(VideoFrame vframe) throws IOException {
+		if(closed) return;
+		Frame frame = vframe.getFrame();
+		if(writer == null)
+			writer = new RawSequenceWriter(file, frame.width, frame.height, frame.pixelSize, getVideoSource().getFrameRate());
+		writer.write(frame, vframe.playOutTime);
+		if(vframe.isLast())
+			close();
+	}
+
+	@Override
+	public void stop() throws RenderCommandException {
+		super.stop();
+		try {
+			close();
+		} catch (IOException e) {
+			throw new RenderCommandException(e);
+		}
+	}
+
+	private synchronized void close() throws IOException {
+		closed = true;
+		if(writer != null) {
+			writer.close();
+			writer = null;
+		}
+	}
+}
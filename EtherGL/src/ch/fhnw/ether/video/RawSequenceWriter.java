@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2013 - 2015 Stefan Muller Arisona, Simon Schubiger, Samuel von Stachelski
+ * Copyright (c) 2013 - 2015 FHNW & ETH Zurich
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *  Neither the name of FHNW / ETH Zurich nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package ch.fhnw.ether.video;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import ch.fhnw.ether.image.Frame;
+import ch.fhnw.ether.image.Grey16Frame;
+import ch.fhnw.ether.image.RGB8Frame;
+import ch.fhnw.ether.image.RGBA8Frame;
+import ch.fhnw.util.BufferUtilities;
+import ch.fhnw.util.DoubleList;
+
+/**
+ * Writes frames uncompressed into a single sequence file that can be played back by a
+ * {@link RawSequenceSource}. Pixels are written straight from the direct pixel buffer of
+ * each frame without any encoding.
+ *
+ * File layout (little endian): a header block of {@link #ALIGN} bytes, followed by the
+ * frames, each starting at a multiple of {@link #ALIGN}, followed by an index of
+ * <code>frameCount</code> (offset, play out time) pairs.
+ */
+public final class RawSequenceWriter implements AutoCloseable {
+	static final long MAGIC          = 0x3130574152485445L; // "ETHRAW01"
+	static final int  ALIGN          = 4096;
+	static final int  HEADER_SIZE    = 40;
+	static final int  INDEX_ENTRY    = 16;
+
+	private final FileChannel channel;
+	private final int         width;
+	private final int         height;
+	private final int         pixelSize;
+	private final float       frameRate;
+	private final long        frameStride;
+	private final DoubleList  times = new DoubleList();
+	private final ByteBuffer  padding;
+
+	public RawSequenceWriter(File file, int width, int height, int pixelSize, float frameRate) throws IOException {
+		if(pixelSize < 2 || pixelSize > 4)
+			throw new IllegalArgumentException("unsupported pixel size:" + pixelSize);
+		this.channel     = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		this.width       = width;
+		this.height      = height;
+		this.pixelSize   = pixelSize;
+		this.frameRate   = frameRate;
+		this.frameStride = align((long)width * height * pixelSize);
+		this.padding     = BufferUtilities.createDirectByteBuffer((int)(frameStride - (long)width * height * pixelSize));
+		writeHeader(0, 0);
+	}
+
+	static long align(long size) {
+		return ((size + ALIGN - 1) / ALIGN) * ALIGN;
+	}
+
+	static long frameOffset(long frameStride, long frame) {
+		return ALIGN + frame * frameStride;
+	}
+
+	private void writeHeader(long frameCount, long indexOffset) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		header.putLong(MAGIC);
+		header.putInt(width);
+		header.putInt(height);
+		header.putInt(pixelSize);
+		header.putFloat(frameRate);
+		header.putLong(frameCount);
+		header.putLong(indexOffset);
+		header.flip();
+		writeFully(header, 0);
+	}
+
+	private void writeFully(ByteBuffer buffer, long position) throws IOException {
+		while(buffer.hasRemaining())
+			position += channel.write(buffer, position);
+	}
+
+	/**
+	 * Appends a frame to the sequence. The frame must match the dimensions and pixel size
+	 * the writer was created with.
+	 */
+	public synchronized void write(Frame frame, double playOutTime) throws IOException {
+		if(frame.width != width || frame.height != height || frame.pixelSize != pixelSize || !(isSupported(frame)))
+			throw new IllegalArgumentException("frame " + frame + " does not match " + width + "x" + height + "x" + pixelSize);
+		final long       offset = frameOffset(frameStride, times.size());
+		final ByteBuffer pixels = frame.pixels.duplicate();
+		pixels.clear();
+		pixels.limit(width * height * pixelSize);
+		writeFully(pixels, offset);
+		padding.clear();
+		writeFully(padding, offset + pixels.limit());
+		times.add(playOutTime);
+	}
+
+	static boolean isSupported(Frame frame) {
+		return frame.getClass() == RGB8Frame.class || frame.getClass() == RGBA8Frame.class || frame.getClass() == Grey16Frame.class;
+	}
+
+	public synchronized long getFrameCount() {
+		return times.size();
+	}
+
+	/**
+	 * Writes the frame index, completes the header and closes the file.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		final long       frameCount  = times.size();
+		final long       indexOffset = frameOffset(frameStride, frameCount);
+		final ByteBuffer index       = ByteBuffer.allocate((int)(frameCount * INDEX_ENTRY)).order(ByteOrder.LITTLE_ENDIAN);
+		for(int i = 0; i < frameCount; i++) {
+			index.putLong(frameOffset(frameStride, i));
+			index.putDouble(times.get(i));
+		}
+		index.flip();
+		writeFully(index, indexOffset);
+		writeHeader(frameCount, indexOffset);
+		channel.close();
+	}
+}
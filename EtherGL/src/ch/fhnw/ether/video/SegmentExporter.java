@@ -0,0 +1,261 @@
+/*
+ * Copyright (c) 2013 - 2015 Stefan Muller Arisona, Simon Schubiger, Samuel von Stachelski
+ * Copyright (c) 2013 - 2015 FHNW & ETH Zurich
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *  Neither the name of FHNW / ETH Zurich nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package ch.fhnw.ether.video;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import ch.fhnw.ether.image.Frame;
+import ch.fhnw.ether.image.Frame.FileFormat;
+import ch.fhnw.ether.media.AbstractRenderCommand;
+import ch.fhnw.ether.media.RenderCommandException;
+import ch.fhnw.ether.media.RenderProgram;
+import ch.fhnw.ether.video.fx.AbstractVideoFX;
+
+/**
+ * Non real-time export of an effect processed clip to a numbered frame sequence.
+ * The decoded clip is split into segments at key frames and each segment is processed
+ * by its own instance of the effect chain on a worker thread. Processed frames are
+ * handed to an {@link AsyncFrameWriter}.
+ *
+ * The effect chain supplier is called once per segment. To carry the state of stateful
+ * effects across segment boundaries, each chain is first warmed up with up to
+ * <code>warmUpFrames</code> frames preceding its segment, whose results are discarded.
+ * The output matches a sequential export of the clip if no effect depends on more than
+ * <code>warmUpFrames</code> previous frames. By default no warm-up is done, which is exact
+ * for stateless effects only.
+ */
+public final class SegmentExporter {
+	public static final int DEFAULT_MAX_BUFFERED_FRAMES = 64;
+	public static final int DEFAULT_WARM_UP_FRAMES      = 0;
+
+	private static final Entry END = new Entry(null, -1, 0);
+
+	static final class Entry {
+		final Frame  frame;
+		final long   index;
+		final double playOutTime;
+
+		Entry(Frame frame, long index, double playOutTime) {
+			this.frame       = frame;
+			this.index       = index;
+			this.playOutTime = playOutTime;
+		}
+
+		/**
+		 * Warm-up entries are processed but not written.
+		 */
+		boolean isWarmUp() {
+			return index < 0;
+		}
+	}
+
+	static final class SegmentTarget extends AbstractVideoTarget {
+		private double time;
+
+		SegmentTarget() {
+			super(Thread.MIN_PRIORITY, AbstractVideoFX.FRAMEFX, false);
+		}
+
+		void process(URLVideoSource src, Entry entry) throws RenderCommandException {
+			time = entry.playOutTime;
+			setFrame(src, new VideoFrame(entry.frame, entry.playOutTime));
+			AbstractRenderCommand<IVideoRenderTarget>[] cmds = program.getProgram();
+			for(int i = 1; i < cmds.length; i++)
+				cmds[i].runInternal(this);
+		}
+
+		@Override
+		public double getTime() {
+			return time;
+		}
+	}
+
+	private final class Segment implements Runnable {
+		private final BlockingQueue<Entry> entries = new LinkedBlockingQueue<>();
+
+		@Override
+		public void run() {
+			try {
+				SegmentTarget target = new SegmentTarget();
+				target.useProgram(new RenderProgram<>((IVideoSource)src, chain.get()));
+				for(Entry entry = entries.take(); entry != END; entry = entries.take()) {
+					if(entry.isWarmUp()) {
+						if(error.get() == null)
+							target.process(src, entry);
+						continue;
+					}
+					if(error.get() != null) {
+						buffered.release();
+						continue;
+					}
+					target.process(src, entry);
+					writer.write(entry.frame, new File(dir, String.format(pattern, Long.valueOf(entry.index))), format, buffered::release);
+				}
+			} catch(Throwable t) {
+				error.compareAndSet(null, t);
+			}
+		}
+	}
+
+	private final URL                         url;
+	private final Supplier<AbstractVideoFX[]> chain;
+	private final File                        dir;
+	private final String                      pattern;
+	private final FileFormat                  format;
+	private final int                         numThreads;
+	private final int                         warmUpFrames;
+	private final Semaphore                   buffered;
+	private final AtomicReference<Throwable>  error = new AtomicReference<>();
+	private       URLVideoSource              src;
+	private       AsyncFrameWriter            writer;
+	private       int                         numSegments;
+
+	public SegmentExporter(URL url, Supplier<AbstractVideoFX[]> chain, File dir, FileFormat format) {
+		this(url, chain, dir, "%06d." + format.toString().toLowerCase(), format, Runtime.getRuntime().availableProcessors(), DEFAULT_MAX_BUFFERED_FRAMES, DEFAULT_WARM_UP_FRAMES);
+	}
+
+	/**
+	 * @param pattern           the file name pattern, formatted with the frame index
+	 * @param numThreads        the number of segments processed in parallel
+	 * @param maxBufferedFrames the maximum number of decoded frames that are not written yet
+	 * @param warmUpFrames      the number of frames preceding a segment its effect chain is run on first
+	 */
+	public SegmentExporter(URL url, Supplier<AbstractVideoFX[]> chain, File dir, String pattern, FileFormat format, int numThreads, int maxBufferedFrames, int warmUpFrames) {
+		if(warmUpFrames < 0)
+			throw new IllegalArgumentException("warmUpFrames must not be negative: " + warmUpFrames);
+		this.url        = url;
+		this.chain      = chain;
+		this.dir        = dir;
+		this.pattern    = pattern;
+		this.format     = format;
+		this.numThreads   = numThreads;
+		this.warmUpFrames = warmUpFrames;
+		this.buffered   = new Semaphore(maxBufferedFrames);
+	}
+
+	/**
+	 * Exports all frames of the clip and returns the number of frames written.
+	 */
+	public long export() throws IOException, RenderCommandException {
+		src    = new URLVideoSource(url, 1);
+		writer = new AsyncFrameWriter(numThreads, 2 * numThreads);
+		final ExecutorService        pool    = Executors.newFixedThreadPool(numThreads);
+		final List<Future<?>>        results = new ArrayList<>();
+		final FrameAccess            access  = src.getFrameAccess();
+		final BlockingQueue<float[]> audio   = new LinkedBlockingQueue<>();
+		final boolean                still   = src.getLengthInFrames() == 1;
+		final Deque<Entry>           history = new ArrayDeque<>(warmUpFrames + 1);
+		long                         index   = 0;
+		Segment                      segment = null;
+		try {
+			while(error.get() == null) {
+				// stop before decodeFrame() would rewind and reopen the clip
+				if(access.isEndOfClip())
+					break;
+				if(!(access.decodeFrame())) {
+					Thread.sleep(1);
+					continue;
+				}
+				if(still ? index > 0 : access.numPlays <= 0)
+					break;
+				if(!(acquireBuffer()))
+					break;
+				if(segment == null || access.isKeyframe()) {
+					if(segment != null)
+						segment.entries.add(END);
+					segment = new Segment();
+					for(Entry warmUp : history)
+						segment.entries.add(new Entry(warmUp.frame.copy(), -1, warmUp.playOutTime));
+					numSegments++;
+					results.add(pool.submit(segment));
+				}
+				Frame frame = access.getFrame(audio);
+				segment.entries.add(new Entry(frame.copy(), index++, access.getPlayOutTimeInSec()));
+				if(warmUpFrames > 0) {
+					// keep unprocessed copies, the effects modify the entry frames in place
+					if(history.size() == warmUpFrames)
+						history.removeFirst();
+					history.addLast(new Entry(frame.copy(), -1, access.getPlayOutTimeInSec()));
+				}
+				audio.clear();
+			}
+		} catch(InterruptedException e) {
+			error.compareAndSet(null, e);
+		} finally {
+			if(segment != null)
+				segment.entries.add(END);
+			try {
+				for(Future<?> result : results)
+					result.get();
+			} catch(Throwable t) {
+				error.compareAndSet(null, t);
+			}
+			pool.shutdown();
+			writer.close();
+			if(access instanceof XuggleAccess)
+				((XuggleAccess)access).dispose();
+		}
+
+		Throwable t = error.get();
+		if(t instanceof RenderCommandException)
+			throw (RenderCommandException)t;
+		else if(t instanceof IOException)
+			throw (IOException)t;
+		else if(t != null)
+			throw new RenderCommandException(t);
+		return index;
+	}
+
+	private boolean acquireBuffer() throws InterruptedException {
+		while(!(buffered.tryAcquire(10, TimeUnit.MILLISECONDS)))
+			if(error.get() != null)
+				return false;
+		return true;
+	}
+
+	public int getNumSegments() {
+		return numSegments;
+	}
+}
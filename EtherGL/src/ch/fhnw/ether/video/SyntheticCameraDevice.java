@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2013 - 2015 Stefan Muller Arisona, Simon Schubiger, Samuel von Stachelski
+ * Copyright (c) 2013 - 2015 FHNW & ETH Zurich
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *  Neither the name of FHNW / ETH Zurich nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package ch.fhnw.ether.video;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import ch.fhnw.ether.image.Frame;
+import ch.fhnw.ether.media.IScheduler;
+
+/**
+ * A stand-in camera that produces frames at a fixed rate without any hardware. Each frame
+ * is filled with a grey level equal to the low byte of its sequence number, which makes
+ * dropped or reordered frames easy to detect.
+ */
+public class SyntheticCameraDevice implements ICameraDevice {
+	private final float      frameRate;
+	private       int        width;
+	private       int        height;
+	private       long       sequence;
+	private       long       nextFrame;
+	private       boolean    open = true;
+	private       byte[]     row;
+
+	public SyntheticCameraDevice(int width, int height, float frameRate) {
+		this.width     = width;
+		this.height    = height;
+		this.frameRate = frameRate;
+	}
+
+	@Override
+	public int getWidth() {
+		return width;
+	}
+
+	@Override
+	public int getHeight() {
+		return height;
+	}
+
+	@Override
+	public float getFrameRate() {
+		return frameRate;
+	}
+
+	@Override
+	public boolean isOpen() {
+		return open;
+	}
+
+	@Override
+	public void setSize(int width, int height) {
+		this.width  = width;
+		this.height = height;
+	}
+
+	@Override
+	public boolean grab(Frame frame) throws InterruptedException {
+		if(!(open)) return false;
+		final long period = (long)(IScheduler.SEC2NS / frameRate);
+		final long now    = System.nanoTime();
+		if(nextFrame == 0)
+			nextFrame = now;
+		if(nextFrame > now)
+			Thread.sleep((nextFrame - now) / 1000000L, (int)((nextFrame - now) % 1000000L));
+		nextFrame += period;
+
+		final int        rowLength = frame.width * frame.pixelSize;
+		final ByteBuffer pixels    = frame.pixels;
+		if(row == null || row.length != rowLength)
+			row = new byte[rowLength];
+		Arrays.fill(row, (byte)sequence++);
+		pixels.clear();
+		for(int j = frame.height; --j >= 0;)
+			pixels.put(row);
+		return true;
+	}
+
+	/**
+	 * Returns the number of frames produced so far.
+	 */
+	public long getSequence() {
+		return sequence;
+	}
+
+	@Override
+	public void dispose() {
+		open = false;
+	}
+
+	@Override
+	public String toString() {
+		return "synthetic camera " + width + "x" + height + "@" + frameRate;
+	}
+}
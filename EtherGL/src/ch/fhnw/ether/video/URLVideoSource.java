@@ -65,9 +65,13 @@ public class URLVideoSource extends AbstractFrameSource implements IAudioSource,
 	}
 
 	public URLVideoSource(URL url, int numPlays) throws IOException {
+		this(url, numPlays, XuggleAccess.DEFAULT_LOOKAHEAD);
+	}
+
+	public URLVideoSource(URL url, int numPlays, int lookahead) throws IOException {
 		this.url      = url;
 		try {
-			frameAccess       = isStillImage(url) ? new FrameAccess(this) : USE_JCODEC ? new JCodecAccess(this, numPlays) : new XuggleAccess(this, numPlays);
+			frameAccess       = isStillImage(url) ? new FrameAccess(this) : USE_JCODEC ? new JCodecAccess(this, numPlays) : new XuggleAccess(this, numPlays, lookahead);
 			width       = frameAccess.getWidth();
 			height      = frameAccess.getHeight();
 			frameRate   = frameAccess.getFrameRate();
@@ -118,6 +122,10 @@ public class URLVideoSource extends AbstractFrameSource implements IAudioSource,
 		return url;
 	}
 
+	public FrameAccess getFrameAccess() {
+		return frameAccess;
+	}
+
 	@Override
 	public float getSampleRate() {
 		return sampleRate;
@@ -46,6 +46,12 @@ public class VideoFrame extends AbstractFrame {
 		this(new FrameAccess(frame), null);
 	}
 		
+	public VideoFrame(Frame frame, double playOutTime) {
+		super(playOutTime);
+		this.framea    = new FrameAccess(frame);
+		this.audioData = null;
+	}
+
 	public VideoFrame(FrameAccess framea, BlockingQueue<float[]> audioData) {
 		super(framea.getPlayOutTimeInSec());
 		this.framea    = framea;
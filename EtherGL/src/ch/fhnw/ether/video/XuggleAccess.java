@@ -31,9 +31,15 @@ package ch.fhnw.ether.video;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
 import javax.sound.sampled.AudioFormat;
@@ -57,41 +63,110 @@ import ch.fhnw.ether.media.AbstractFrameSource;
 import ch.fhnw.ether.media.IScheduler;
 import ch.fhnw.ether.media.ITimebase;
 import ch.fhnw.ether.scene.mesh.material.Texture;
+import ch.fhnw.util.BufferUtilities;
 import ch.fhnw.util.Log;
-import ch.fhnw.util.SortedLongMap;
 
-public final class XuggleAccess extends FrameAccess implements Runnable {
+/**
+ * Xuggler based video access with a three stage decode-ahead pipeline: a demux thread reads packets
+ * from the container, a decode thread turns video packets into pictures and a shared worker pool
+ * converts pictures to RGB and copies them into a pool of preallocated frames. Up to
+ * <code>lookahead</code> converted frames are kept ready ahead of the consumer.
+ */
+public final class XuggleAccess extends FrameAccess {
 	private static final Log log = Log.create();
 
-	private final IContainer                     container;
-	private       IStreamCoder                   videoCoder;
-	private       IStream                        videoStream;
-	private       IStreamCoder                   audioCoder;
-	private       IStream                        audioStream;
-	private       IVideoResampler                resampler;
-	private       AudioFormat                    audioFormat;
-	private       AtomicReference<Frame>         currentPicture = new AtomicReference<>();
-	private       double                         playOutTime    = ITimebase.ASAP;
-	private       boolean                        isKeyframe;
-	private       long                           lastTimeStamp;
-	private       long                           maxTimeStamp;
-	private       BlockingQueue<float[]>         audioData      = new LinkedBlockingQueue<>();
-	private       double                         baseTime;
-	private       Thread                         decoderThread;
-	private       SortedLongMap<IVideoPicture>   pictureQueue   = new SortedLongMap<>();
-	private       Semaphore                      pictures       = new Semaphore(0);
-	private       Semaphore                      queueSize      = new Semaphore(8);
+	public static final int DEFAULT_LOOKAHEAD = 8;
+
+	public enum Stage {DEMUX, DECODE, CONVERT}
+
+	private static final int             NUM_CONVERTERS = Runtime.getRuntime().availableProcessors();
+	private static final ExecutorService CONVERT_POOL   = Executors.newFixedThreadPool(NUM_CONVERTERS, r->{
+		Thread result = new Thread(r, "XuggleAccess converter");
+		result.setDaemon(true);
+		result.setPriority(Thread.MIN_PRIORITY);
+		return result;
+	});
+
+	static final class Picture {
+		final Frame   frame;
+		final long    timeStamp;
+		final boolean isKeyframe;
+
+		Picture(Frame frame, long timeStamp, boolean isKeyframe) {
+			this.frame      = frame;
+			this.timeStamp  = timeStamp;
+			this.isKeyframe = isKeyframe;
+		}
+	}
+
+	static final class Converter {
+		final IVideoResampler resampler;
+		final IVideoPicture   rgb;
+		final int             generation;
+
+		Converter(IVideoResampler resampler, IVideoPicture rgb, int generation) {
+			this.resampler  = resampler;
+			this.rgb        = rgb;
+			this.generation = generation;
+		}
+	}
+
+	private final IContainer                      container;
+	private final int                             lookahead;
+	private       IStreamCoder                    videoCoder;
+	private       IStream                         videoStream;
+	private       IStreamCoder                    audioCoder;
+	private       IStream                         audioStream;
+	private       AudioFormat                     audioFormat;
+	private       AtomicReference<Frame>          currentPicture = new AtomicReference<>();
+	private       Frame                           retiredPicture;
+	private       double                          playOutTime    = ITimebase.ASAP;
+	private       boolean                         isKeyframe;
+	private       long                            lastTimeStamp;
+	private       long                            maxTimeStamp;
+	private       BlockingQueue<float[]>          audioData      = new LinkedBlockingQueue<>();
+	private       double                          baseTime;
+	private       Thread                          demuxThread;
+	private       Thread                          decoderThread;
+	private       volatile boolean                demuxDone;
+	private       volatile boolean                disposed;
+	private       boolean                         containerOpen;
+	private       BlockingQueue<IPacket>          packetQueue;
+	private       BlockingQueue<Future<Picture>>  pictureQueue;
+	private final BlockingQueue<Frame>            framePool;
+	private final BlockingQueue<Converter>        converters     = new LinkedBlockingQueue<>();
+	private       int                             converterGeneration;
+	private final AtomicLong[]                    stageNanos     = new AtomicLong[Stage.values().length];
+	private final AtomicLong[]                    stageCounts    = new AtomicLong[Stage.values().length];
 
 	public XuggleAccess(URLVideoSource src, int numPlays) throws IOException {
+		this(src, numPlays, DEFAULT_LOOKAHEAD);
+	}
+
+	public XuggleAccess(URLVideoSource src, int numPlays, int lookahead) throws IOException {
 		super(src, numPlays);
+		if(lookahead < 1)
+			throw new IllegalArgumentException("lookahead must be at least 1: " + lookahead);
+		this.lookahead = lookahead;
+		this.framePool = new ArrayBlockingQueue<>(lookahead + 3);
+		for(int i = 0; i < stageNanos.length; i++) {
+			stageNanos[i]  = new AtomicLong();
+			stageCounts[i] = new AtomicLong();
+		}
 		container = IContainer.make();
 		open(src);
+		if(videoCoder != null)
+			while(framePool.remainingCapacity() > 0)
+				framePool.add(new RGB8Frame(getWidth(), getHeight()));
 	}
 
 	@SuppressWarnings("deprecation")
 	private void open(URLVideoSource src) throws IOException {
 		if (container.open(src.getURL().toExternalForm(), IContainer.Type.READ, null) < 0)
 			throw new IOException("could not open " + src);
+		synchronized (container) {
+			containerOpen = true;
+		}
 
 		// query how many streams the call to open found
 		int numStreams = container.getNumStreams();
@@ -132,14 +207,14 @@ public final class XuggleAccess extends FrameAccess implements Runnable {
 			if(videoCoder.open() < 0)
 				throw new IOException("could not open audio decoder for container " + src);
 
-			if (videoCoder.getPixelType() != IPixelFormat.Type.RGB24) {
-				resampler = IVideoResampler.make(
-						videoCoder.getWidth(), videoCoder.getHeight(), 
-						IPixelFormat.Type.RGB24,
-						videoCoder.getWidth(), videoCoder.getHeight(), 
-						videoCoder.getPixelType());
-				if (resampler == null)
-					throw new IOException("could not create color space resampler for " + src);
+			// converters of the previous open still in use by a convert task are dropped when
+			// returned, see releaseConverter()
+			synchronized (converters) {
+				converterGeneration++;
+				converters.clear();
+				int numConverters = Math.min(lookahead, NUM_CONVERTERS);
+				for(int i = 0; i < numConverters; i++)
+					converters.add(createConverter(src));
 			}
 		}
 
@@ -148,14 +223,80 @@ public final class XuggleAccess extends FrameAccess implements Runnable {
 				throw new IOException("could not open audio decoder for container: " + src);
 		}
 
-		decoderThread = new Thread(this, src.getURL().toString());
+		demuxDone     = false;
+		packetQueue   = new ArrayBlockingQueue<>(lookahead);
+		pictureQueue  = new ArrayBlockingQueue<>(lookahead);
+
+		demuxThread = new Thread(this::demux, src.getURL().toString() + " demux");
+		demuxThread.setPriority(Thread.MIN_PRIORITY);
+		demuxThread.setDaemon(true);
+
+		decoderThread = new Thread(this::decode, src.getURL().toString() + " decode");
 		decoderThread.setPriority(Thread.MIN_PRIORITY);
 		decoderThread.setDaemon(true);
+
+		demuxThread.start();
 		decoderThread.start();
 	}
 
+	private Converter createConverter(URLVideoSource src) throws IOException {
+		if (videoCoder.getPixelType() == IPixelFormat.Type.RGB24)
+			return new Converter(null, null, converterGeneration);
+		IVideoResampler resampler = IVideoResampler.make(
+				videoCoder.getWidth(), videoCoder.getHeight(), 
+				IPixelFormat.Type.RGB24,
+				videoCoder.getWidth(), videoCoder.getHeight(), 
+				videoCoder.getPixelType());
+		if (resampler == null)
+			throw new IOException("could not create color space resampler for " + src);
+		return new Converter(resampler, IVideoPicture.make(resampler.getOutputPixelFormat(), getWidth(), getHeight()), converterGeneration);
+	}
+
+	private void releaseConverter(Converter converter) {
+		synchronized (converters) {
+			if(converter.generation == converterGeneration)
+				converters.add(converter);
+		}
+	}
+
 	public void dispose() {
-		container.close();
+		disposed = true;
+		stop();
+		// no-op if the decode thread already closed it
+		closeContainer();
+	}
+
+	/**
+	 * Stops the demux and decode threads, waits until the decode thread has closed the container and
+	 * returns the frames of pictures not yet consumed to the frame pool.
+	 */
+	private void stop() {
+		if(demuxThread != null)
+			demuxThread.interrupt();
+		if(decoderThread == null)
+			return;
+		decoderThread.interrupt();
+		try {
+			decoderThread.join();
+			for(Future<Picture> pending; (pending = pictureQueue.poll()) != null;) {
+				try {
+					framePool.add(pending.get().frame);
+				} catch (ExecutionException e) {
+					// frame already returned by convert()
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void closeContainer() {
+		synchronized (container) {
+			if(containerOpen) {
+				container.close();
+				containerOpen = false;
+			}
+		}
 	}
 
 	@Override
@@ -191,6 +332,44 @@ public final class XuggleAccess extends FrameAccess implements Runnable {
 		return videoCoder.getHeight();
 	}
 
+	public int getLookahead() {
+		return lookahead;
+	}
+
+	/**
+	 * Returns the number of demuxed video packets waiting to be decoded.
+	 */
+	public int getPacketQueueDepth() {
+		return packetQueue.size();
+	}
+
+	/**
+	 * Returns the number of decoded pictures that are converted or being converted but not yet consumed.
+	 */
+	public int getPictureQueueDepth() {
+		return pictureQueue.size();
+	}
+
+	/**
+	 * Returns the number of preallocated frames currently available to the convert stage.
+	 */
+	public int getFreeFrameCount() {
+		return framePool.size();
+	}
+
+	/**
+	 * Returns the average time in seconds a single packet or picture spent in the given stage.
+	 */
+	public double getStageLatency(Stage stage) {
+		long count = stageCounts[stage.ordinal()].get();
+		return count == 0 ? 0 : (stageNanos[stage.ordinal()].get() / (double)count) / IScheduler.SEC2NS;
+	}
+
+	private void addLatency(Stage stage, long startNanos) {
+		stageNanos[stage.ordinal()].addAndGet(System.nanoTime() - startNanos);
+		stageCounts[stage.ordinal()].incrementAndGet();
+	}
+
 	@Override
 	public String toString() {
 		return src.getURL() + " (d=" + getDuration() + " fr=" + getFrameRate() + " fc=" + getFrameCount() + " w=" + getWidth() + " h=" + getHeight() + ")";
@@ -199,6 +378,7 @@ public final class XuggleAccess extends FrameAccess implements Runnable {
 	public void rewind() throws IOException {
 		double tmp  = playOutTime;
 		numPlays--;
+		stop();
 		open(getSource());
 		playOutTime   = 0;
 		lastTimeStamp = 0;
@@ -206,45 +386,18 @@ public final class XuggleAccess extends FrameAccess implements Runnable {
 		baseTime      = tmp;
 	}
 
-	@Override
-	public void run() {
+	private void demux() {
 		final IPacket currentPacket = IPacket.make();
 		try {
-			while(container.readNextPacket(currentPacket) >= 0) {
-				if (currentPacket.getStreamIndex() == videoStream.getIndex()) {
-					IVideoPicture currentPicture = IVideoPicture.make(videoCoder.getPixelType(), videoCoder.getWidth(), videoCoder.getHeight());
-					int bytesDecoded = videoCoder.decodeVideo(currentPicture, currentPacket, 0);
-					if (bytesDecoded < 0)
-						break;
-					if (currentPicture.isComplete()) {
-						// terrible hack for fixing up screwed timestamps
-						maxTimeStamp = Math.max(maxTimeStamp, currentPicture.getTimeStamp());
-						long correction = Math.min((maxTimeStamp - lastTimeStamp) / 2, (long)(IScheduler.SEC2US / getFrameRate()));
-						currentPicture.setTimeStamp(lastTimeStamp + correction);
-						lastTimeStamp = currentPicture.getTimeStamp();
-						IVideoPicture newPic = currentPicture;
-						if (resampler != null) {
-							newPic = IVideoPicture.make(resampler.getOutputPixelFormat(), getWidth(), getHeight());
-							if (resampler.resample(newPic, currentPicture) < 0) {
-								log.warning("could not resample video");
-								break;
-							}
-						}
-						if (newPic.getPixelType() != IPixelFormat.Type.RGB24) {
-							log.warning("could not decode video as RGB24 bit data");
-							break;
-						}
-						final ByteBuffer buffer = newPic.getByteBuffer();
-						flip(buffer, getWidth(), getHeight());
-						queueSize.acquire();
-						synchronized (pictureQueue) {
-							if(pictureQueue.put(currentPicture.getTimeStamp(), newPic) == null)
-								pictures.release();
-							else
-								queueSize.release();
-						}
-					}
-				} else if (currentPacket.getStreamIndex() == audioStream.getIndex()) {
+			for(;;) {
+				long start = System.nanoTime();
+				if(container.readNextPacket(currentPacket) < 0)
+					break;
+				if (videoStream != null && currentPacket.getStreamIndex() == videoStream.getIndex()) {
+					IPacket packet = IPacket.make(currentPacket, true);
+					addLatency(Stage.DEMUX, start);
+					packetQueue.put(packet);
+				} else if (audioStream != null && currentPacket.getStreamIndex() == audioStream.getIndex()) {
 					IAudioSamples samples = IAudioSamples.make(2048, audioCoder.getChannels());
 					int offset = 0;
 					while(offset < currentPacket.getSize()) {
@@ -259,39 +412,113 @@ public final class XuggleAccess extends FrameAccess implements Runnable {
 					}
 				}
 			}
+		} catch (InterruptedException e) {
+			// disposed
+		} catch (Throwable t) {
+			log.severe(t);
+		} finally {
+			demuxDone = true;
+		}
+	}
+
+	private void decode() {
+		final Thread demux = demuxThread;
+		try {
+			while(!(disposed)) {
+				IPacket packet = packetQueue.poll(10, TimeUnit.MILLISECONDS);
+				if(packet == null) {
+					if(demuxDone && packetQueue.isEmpty())
+						break;
+					continue;
+				}
+				long start = System.nanoTime();
+				IVideoPicture picture = IVideoPicture.make(videoCoder.getPixelType(), videoCoder.getWidth(), videoCoder.getHeight());
+				int bytesDecoded = videoCoder.decodeVideo(picture, packet, 0);
+				if (bytesDecoded < 0)
+					break;
+				if (picture.isComplete()) {
+					// terrible hack for fixing up screwed timestamps
+					maxTimeStamp = Math.max(maxTimeStamp, picture.getTimeStamp());
+					long correction = Math.min((maxTimeStamp - lastTimeStamp) / 2, (long)(IScheduler.SEC2US / getFrameRate()));
+					picture.setTimeStamp(lastTimeStamp + correction);
+					lastTimeStamp = picture.getTimeStamp();
+					addLatency(Stage.DECODE, start);
+					final Frame frame = framePool.take();
+					pictureQueue.put(CONVERT_POOL.submit(()->convert(picture, frame)));
+				}
+			}
+		} catch (InterruptedException e) {
+			// disposed
 		} catch (Throwable t) {
 			log.severe(t);
 		} finally {
-			container.close();
+			demux.interrupt();
+			try {
+				demux.join();
+			} catch (InterruptedException e) {
+				// disposed
+			}
+			closeContainer();
 		}
 	}
 
+	private Picture convert(IVideoPicture picture, Frame frame) throws IOException, InterruptedException {
+		long      start     = System.nanoTime();
+		Converter converter = converters.take();
+		try {
+			IVideoPicture rgb = picture;
+			if (converter.resampler != null) {
+				rgb = converter.rgb;
+				if (converter.resampler.resample(rgb, picture) < 0)
+					throw new IOException("could not resample video");
+			}
+			if (rgb.getPixelType() != IPixelFormat.Type.RGB24)
+				throw new IOException("could not decode video as RGB24 bit data");
+			copyFlipped(rgb.getByteBuffer(), frame);
+		} catch(IOException e) {
+			log.warning(e.getMessage());
+			framePool.add(frame);
+			throw e;
+		} finally {
+			releaseConverter(converter);
+		}
+		addLatency(Stage.CONVERT, start);
+		return new Picture(frame, picture.getTimeStamp(), picture.isKeyFrame());
+	}
+
 	@Override
 	public boolean decodeFrame() {
 		try {
-			IVideoPicture picture = null;
-			if(pictures.availablePermits() == 0) {
+			Future<Picture> next = pictureQueue.peek();
+			if(next == null) {
 				if(decoderThread.isAlive())
 					return false;
 				rewind();
 				decodeFrame();
 				return numPlays <= 0;
 			}
-			pictures.acquire();
-			synchronized (pictureQueue) {
-				picture = pictureQueue.firstValue();
-				pictureQueue.remove(picture.getTimeStamp());
-				queueSize.release();
-			}
-			playOutTime = baseTime + (picture.getTimeStamp() / IScheduler.SEC2US);
-			isKeyframe  = picture.isKeyFrame();
-			this.currentPicture.set(new RGB8Frame(getWidth(), getHeight(), picture.getByteBuffer()));
+			if(!(next.isDone()))
+				return false;
+			pictureQueue.remove();
+			Picture picture = next.get();
+			playOutTime = baseTime + (picture.timeStamp / IScheduler.SEC2US);
+			isKeyframe  = picture.isKeyframe;
+			// keep the previous frame alive for one more cycle since consumers may still reference it
+			if(retiredPicture != null)
+				framePool.add(retiredPicture);
+			retiredPicture = currentPicture.getAndSet(picture.frame);
 			return true;
 		} catch (Throwable t) {
 			return false;
 		}
 	}
 
+	@Override
+	public boolean isEndOfClip() {
+		// the decode thread is checked first since it may still add pictures
+		return !(decoderThread.isAlive()) && pictureQueue.isEmpty();
+	}
+
 	@Override
 	protected boolean skipFrame() {
 		return decodeFrame();
@@ -316,23 +543,12 @@ public final class XuggleAccess extends FrameAccess implements Runnable {
 		return result;
 	}
 
-	private void flip(ByteBuffer buffer, int width, int height) {
-		final int rowLength = width * 3;
-		byte[] tmp = new byte[rowLength*2];
-		int y0 = 0;
-		int y1 = height - 1;
-		for(int i = height / 2; --i >= 0;) {
-			buffer.position(y0 * rowLength);
-			buffer.get(tmp, 0, rowLength);
-			buffer.position(y1 * rowLength);
-			buffer.get(tmp, rowLength, rowLength);
-
-			buffer.position(y1 * rowLength);
-			buffer.put(tmp, 0, rowLength);
-			buffer.position(y0 * rowLength);
-			buffer.put(tmp, rowLength, rowLength);
-			y0++; y1--;
-		}
+	private void copyFlipped(ByteBuffer src, Frame dst) {
+		final int rowLength = dst.width * dst.pixelSize;
+		final ByteBuffer pixels = dst.pixels;
+		for(int y0 = 0, y1 = dst.height - 1; y1 >= 0; y0++, y1--)
+			BufferUtilities.arraycopy(src, y0 * rowLength, pixels, y1 * rowLength, rowLength);
+		dst.modified();
 	}
 
 	@Override
@@ -42,6 +42,7 @@ import ch.fhnw.ether.media.Parameter;
 import ch.fhnw.ether.media.RenderCommandException;
 import ch.fhnw.ether.render.Renderable;
 import ch.fhnw.ether.render.gl.FrameBuffer;
+import ch.fhnw.ether.render.gl.GLState;
 import ch.fhnw.ether.render.shader.IShader;
 import ch.fhnw.ether.render.shader.base.AbstractShader;
 import ch.fhnw.ether.render.variable.IShaderUniform;
@@ -150,7 +151,7 @@ public abstract class AbstractVideoFX extends AbstractRenderCommand<IVideoRender
 	}
 
 	class FxMaterial extends AbstractMaterial implements ICustomMaterial {
-		private final IShader     shader;
+		private IShader           shader;
 		private FrameBuffer       fbo;
 		private Texture           srcTexture;
 		private Texture           dstTexture;
@@ -158,7 +159,6 @@ public abstract class AbstractVideoFX extends AbstractRenderCommand<IVideoRender
 
 		protected FxMaterial(IAttribute[] attrs) {
 			super(attrs, new IGeometryAttribute[] {IGeometry.POSITION_ARRAY, IGeometry.COLOR_MAP_ARRAY});
-			shader = new FxShader();
 		}
 
 		public void prepare(GL3 gl, AbstractVideoTarget target) throws RenderCommandException {
@@ -179,6 +179,9 @@ public abstract class AbstractVideoFX extends AbstractRenderCommand<IVideoRender
 
 		@Override
 		public IShader getShader() {
+			// created lazily since the shader code depends on subclass state
+			if(shader == null)
+				shader = new FxShader();
 			return shader;
 		}
 
@@ -206,7 +209,7 @@ public abstract class AbstractVideoFX extends AbstractRenderCommand<IVideoRender
 	private   String                        name = getClass().getName();
 	private   final FxMaterial              material;
 	private   final IMesh                   quad;
-	private   final Renderable              renderable;
+	private         Renderable              renderable;
 	private   final int[]                   viewport = new int[4];
 	private   final Uniform<?>[]            uniformsvert;
 	private   final String[]                outIn;
@@ -238,14 +241,12 @@ public abstract class AbstractVideoFX extends AbstractRenderCommand<IVideoRender
 				attrs[idx++] = u;
 			this.material   = new FxMaterial(attrs);
 			this.quad       = new DefaultMesh(material, DefaultGeometry.createVM(Primitive.TRIANGLES, MeshUtilities.DEFAULT_QUAD_TRIANGLES, MeshUtilities.DEFAULT_QUAD_TEX_COORDS));
-			this.renderable = new Renderable(quad, null);
 		} else {
 			this.uniformsvert = null;
 			this.outIn        = null;
 			this.uniformsfrag = null;
 			this.material     = null;
 			this.quad         = null;
-			this.renderable   = null;
 		}
 	}
 
@@ -279,29 +280,43 @@ public abstract class AbstractVideoFX extends AbstractRenderCommand<IVideoRender
 	@Override
 	protected final void run(IVideoRenderTarget target) throws RenderCommandException {
 		if(target instanceof AbstractVideoTarget && ((AbstractVideoTarget)target).runAs() == GLFX) {
-			try(IGLContext ctx = GLContextManager.acquireContext()) {
-				final GL3 gl = ctx.getGL();
-				processFrame(gl, target.getFrame().playOutTime, target);
-				material.prepare(gl, (AbstractVideoTarget)target);
-				renderable.update(gl, material.getData(), quad.getTransformedGeometryData());
-				material.fbo.bind(gl);
-				gl.glGetIntegeri_v(GL3.GL_VIEWPORT, 0, viewport, 0);
-				gl.glViewport(0, 0, material.dstTexture.getWidth(), material.dstTexture.getHeight());
-				renderable.render(gl);
-				FrameBuffer.unbind(gl);
-				gl.glBindTexture(GL.GL_TEXTURE_2D, material.dstTexture.getGlObject().getId());
-				gl.glGenerateMipmap(GL.GL_TEXTURE_2D);
-				target.getFrame().setTexture(material.dstTexture);
-				gl.glViewport(viewport[0], viewport[1], viewport[2], viewport[3]);
-				gl.glFinish();
-			} catch(RenderCommandException e) {
-				throw e;
-			} catch(Throwable t) {
-				throw new RenderCommandException(t);
-			}
+			AbstractVideoTarget avt  = (AbstractVideoTarget)target;
+			AbstractVideoFX     pass = avt.getPass(this);
+			// members of a fused pass are rendered by the pass once, when its first member runs
+			if(pass == this || avt.isFirstOfPass(this))
+				pass.runGL(avt);
 		} else if(target instanceof AbstractVideoTarget && ((AbstractVideoTarget)target).runAs() == FRAMEFX) {
-			VideoFrame frame = target.getFrame();
-			((IVideoFrameFX)this).processFrame(frame.playOutTime, target, frame.getFrame());
+			VideoFrame   frame = target.getFrame();
+			PixelFXChain chain = ((AbstractVideoTarget)target).getPixelChain(this);
+			if(chain == null)
+				((IVideoFrameFX)this).processFrame(frame.playOutTime, target, frame.getFrame());
+			else if(chain.getFirst() == this)
+				chain.processFrame(frame.playOutTime, target, frame.getFrame());
+		}
+	}
+
+	private void runGL(AbstractVideoTarget target) throws RenderCommandException {
+		try(IGLContext ctx = GLContextManager.acquireContext()) {
+			final GL3 gl = ctx.getGL();
+			processFrame(gl, target.getFrame().playOutTime, target);
+			material.prepare(gl, target);
+			if(renderable == null)
+				renderable = new Renderable(quad, null);
+			renderable.update(gl, material.getData(), quad.getTransformedGeometryData());
+			material.fbo.bind(gl);
+			gl.glGetIntegeri_v(GL3.GL_VIEWPORT, 0, viewport, 0);
+			gl.glViewport(0, 0, material.dstTexture.getWidth(), material.dstTexture.getHeight());
+			renderable.render(gl);
+			FrameBuffer.unbind(gl);
+			GLState.get(gl).bindTexture(gl, GL.GL_TEXTURE_2D, material.dstTexture.getGlObject().getId());
+			gl.glGenerateMipmap(GL.GL_TEXTURE_2D);
+			target.getFrame().setTexture(material.dstTexture);
+			gl.glViewport(viewport[0], viewport[1], viewport[2], viewport[3]);
+			gl.glFinish();
+		} catch(RenderCommandException e) {
+			throw e;
+		} catch(Throwable t) {
+			throw new RenderCommandException(t);
 		}
 	}
 
@@ -358,6 +373,18 @@ public abstract class AbstractVideoFX extends AbstractRenderCommand<IVideoRender
 		return ClassUtilities.EMPTY_StringA;
 	}
 
+	Uniform<?>[] getUniformsVert() {
+		return uniformsvert;
+	}
+
+	String[] getOutIn() {
+		return outIn;
+	}
+
+	Uniform<?>[] getUniformsFrag() {
+		return uniformsfrag;
+	}
+
 	protected void setUniform(String name, Object value) {
 		name2uniform.get(name).set(value);
 	}
@@ -392,7 +419,7 @@ public abstract class AbstractVideoFX extends AbstractRenderCommand<IVideoRender
 				"}");
 	}
 
-	private String getFragmentCode() {
+	String getFragmentCode() {
 		Parameter[]   params   = getParameters();
 		StringBuilder paramStr = new StringBuilder();
 		for(int i = 0; i < params.length; i++)
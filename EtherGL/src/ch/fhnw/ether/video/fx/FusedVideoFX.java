@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2013 - 2015 Stefan Muller Arisona, Simon Schubiger, Samuel von Stachelski
+ * Copyright (c) 2013 - 2015 FHNW & ETH Zurich
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *  Neither the name of FHNW / ETH Zurich nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package ch.fhnw.ether.video.fx;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.jogamp.opengl.GL3;
+
+import ch.fhnw.ether.media.Parameter;
+import ch.fhnw.ether.video.IVideoRenderTarget;
+import ch.fhnw.util.ClassUtilities;
+
+/**
+ * A single pass running a run of point-wise effects, see {@link GLFXChainCompiler}. Parameters, uniforms
+ * and functions of member <code>i</code> are prefixed with <code>fx&lt;i&gt;_</code>, and each member's
+ * main code runs in its own block on the shared <code>result</code>. Between members, <code>result</code> is clamped
+ * to [0,1] to match the RGBA8 intermediate textures of the unfused chain.
+ */
+public final class FusedVideoFX extends AbstractVideoFX implements IVideoGLFX {
+	private final List<AbstractVideoFX> members;
+	private final String[]              functions;
+	private final String                main;
+
+	FusedVideoFX(List<AbstractVideoFX> members) {
+		super(EMPTY_UniformA, ClassUtilities.EMPTY_StringA, uniforms(members));
+		this.members = Collections.unmodifiableList(new ArrayList<>(members));
+
+		List<String>  functions = new ArrayList<>();
+		StringBuilder main      = new StringBuilder();
+		for(int i = 0; i < members.size(); i++) {
+			AbstractVideoFX fx     = members.get(i);
+			String          prefix = GLFXChainCompiler.prefix(i);
+			List<String>    names  = GLFXChainCompiler.globalNames(fx);
+			for(String function : fx.functions())
+				functions.add(GLFXChainCompiler.namespace(function, prefix, names));
+			String code = fx.mainFrag();
+			if(code.length() > 0 && !(code.endsWith(";")))
+				code += ";";
+			if(i > 0)
+				main.append("result = clamp(result, 0., 1.);\n");
+			main.append("{ // ").append(fx.getName()).append('\n');
+			main.append(GLFXChainCompiler.namespace(code, prefix, names)).append('\n');
+			main.append("}\n");
+		}
+		this.functions = functions.toArray(new String[functions.size()]);
+		this.main      = main.toString();
+		setName(getClass().getName() + members);
+	}
+
+	private static Uniform<?>[] uniforms(List<AbstractVideoFX> members) {
+		List<Uniform<?>> result = new ArrayList<>();
+		for(int i = 0; i < members.size(); i++) {
+			AbstractVideoFX fx     = members.get(i);
+			String          prefix = GLFXChainCompiler.prefix(i);
+			for(Parameter p : fx.getParameters())
+				result.add(new Uniform<>(prefix + p.getName(), Float.valueOf(fx.getVal(p))));
+			for(Uniform<?> u : fx.getUniformsFrag())
+				result.add(new Uniform<>(prefix + u.id(), u.get()));
+		}
+		return result.toArray(new Uniform<?>[result.size()]);
+	}
+
+	public List<AbstractVideoFX> getMembers() {
+		return members;
+	}
+
+	public AbstractVideoFX getFirst() {
+		return members.get(0);
+	}
+
+	public AbstractVideoFX getLast() {
+		return members.get(members.size() - 1);
+	}
+
+	@Override
+	public String mainFrag() {
+		return main;
+	}
+
+	@Override
+	public String[] functions() {
+		return functions;
+	}
+
+	@Override
+	public void processFrame(GL3 gl, double playOutTime, IVideoRenderTarget target) {
+		for(int i = 0; i < members.size(); i++) {
+			AbstractVideoFX fx     = members.get(i);
+			String          prefix = GLFXChainCompiler.prefix(i);
+			fx.processFrame(gl, playOutTime, target);
+			for(Parameter p : fx.getParameters())
+				setUniform(prefix + p.getName(), Float.valueOf(fx.getVal(p)));
+			for(Uniform<?> u : fx.getUniformsFrag())
+				setUniform(prefix + u.id(), u.get());
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "fused" + members;
+	}
+}
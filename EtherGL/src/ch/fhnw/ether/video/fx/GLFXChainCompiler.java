@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2013 - 2015 Stefan Muller Arisona, Simon Schubiger, Samuel von Stachelski
+ * Copyright (c) 2013 - 2015 FHNW & ETH Zurich
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *  Neither the name of FHNW / ETH Zurich nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package ch.fhnw.ether.video.fx;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import ch.fhnw.ether.media.AbstractRenderCommand;
+import ch.fhnw.ether.media.Parameter;
+import ch.fhnw.ether.video.fx.AbstractVideoFX.Uniform;
+import ch.fhnw.util.TextUtilities;
+
+/**
+ * Groups runs of consecutive point-wise {@link IVideoGLFX} commands into a single {@link FusedVideoFX}
+ * so that a chain renders with one full-screen pass per run instead of one pass per effect.
+ * An effect is point-wise if its output pixel only depends on <code>result</code> and its uniforms:
+ * no vertex code, no varyings and no texture or screen-space access. All other effects
+ * (e.g. convolutions) are pass boundaries.
+ */
+public class GLFXChainCompiler {
+	private static final String[] NON_POINTWISE = {"colorMap", "vsTexCoord", "texture", "texelFetch", "textureSize", "gl_FragCoord", "dFdx", "dFdy", "fwidth"};
+	private static final String[] KEYWORDS      = {"if", "for", "while", "switch", "return", "else"};
+	private static final Pattern  FUNCTION      = Pattern.compile("\\b[A-Za-z_]\\w*\\s+([A-Za-z_]\\w*)\\s*\\([^)]*\\)\\s*\\{");
+
+	private final Map<List<AbstractVideoFX>, FusedVideoFX> passes = new HashMap<>();
+
+	/**
+	 * Maps every enabled member of a fused run to its pass. Commands that are not fused
+	 * are not contained in the result. Passes are cached so that re-compiling the same chain
+	 * (e.g. after toggling an effect) reuses shaders and frame buffers.
+	 */
+	public Map<AbstractVideoFX, FusedVideoFX> compile(AbstractRenderCommand<?>[] cmds) {
+		Map<AbstractVideoFX, FusedVideoFX> result = new IdentityHashMap<>();
+		List<AbstractVideoFX> chain = new ArrayList<>();
+		for(int i = 1; i < cmds.length; i++)
+			if(cmds[i].isEnabled() && cmds[i] instanceof AbstractVideoFX)
+				chain.add((AbstractVideoFX)cmds[i]);
+		for(List<AbstractVideoFX> run : partition(chain)) {
+			if(run.size() < 2) continue;
+			FusedVideoFX pass = passes.get(run);
+			if(pass == null) {
+				pass = new FusedVideoFX(run);
+				passes.put(run, pass);
+			}
+			for(AbstractVideoFX fx : run)
+				result.put(fx, pass);
+		}
+		return result;
+	}
+
+	/**
+	 * Splits a chain into runs. Each point-wise effect joins the current run, every other effect
+	 * forms a run on its own.
+	 */
+	public static List<List<AbstractVideoFX>> partition(List<AbstractVideoFX> chain) {
+		List<List<AbstractVideoFX>> result = new ArrayList<>();
+		List<AbstractVideoFX>       run    = null;
+		for(AbstractVideoFX fx : chain) {
+			if(isPointwise(fx)) {
+				if(run == null) {
+					run = new ArrayList<>();
+					result.add(run);
+				}
+				run.add(fx);
+			} else {
+				List<AbstractVideoFX> single = new ArrayList<>(1);
+				single.add(fx);
+				result.add(single);
+				run = null;
+			}
+		}
+		return result;
+	}
+
+	public static boolean isPointwise(AbstractVideoFX fx) {
+		if(!(fx instanceof IVideoGLFX) || fx instanceof FusedVideoFX)
+			return false;
+		if(fx.getUniformsVert().length > 0 || fx.getOutIn().length > 0 || fx.mainVert().trim().length() > 0)
+			return false;
+		String main = fx.mainFrag();
+		String code = main + "\n" + TextUtilities.cat(fx.functions(), '\n');
+		for(String token : NON_POINTWISE)
+			if(contains(code, token))
+				return false;
+		// an early return from main would skip the effects fused after this one
+		return !(contains(main, "return"));
+	}
+
+	private static boolean contains(String code, String identifier) {
+		return Pattern.compile("(?<![.\\w])" + identifier + "\\b").matcher(code).find();
+	}
+
+	/**
+	 * Returns the GLSL fragment shader of the fused pass for the given point-wise effects.
+	 */
+	public static String fragmentCode(List<AbstractVideoFX> run) {
+		return new FusedVideoFX(run).getFragmentCode();
+	}
+
+	static String prefix(int idx) {
+		return "fx" + idx + "_";
+	}
+
+	/**
+	 * Names declared at global scope by an effect: its parameters, fragment uniforms and functions.
+	 */
+	static List<String> globalNames(AbstractVideoFX fx) {
+		List<String> result = new ArrayList<>();
+		for(Parameter p : fx.getParameters())
+			result.add(p.getName());
+		for(Uniform<?> u : fx.getUniformsFrag())
+			result.add(u.id());
+		for(String function : fx.functions()) {
+			Matcher m = FUNCTION.matcher(function);
+			while(m.find()) {
+				String name = m.group(1);
+				if(!(isKeyword(name)) && !(result.contains(name)))
+					result.add(name);
+			}
+		}
+		return result;
+	}
+
+	private static boolean isKeyword(String name) {
+		for(String keyword : KEYWORDS)
+			if(keyword.equals(name))
+				return true;
+		return false;
+	}
+
+	/**
+	 * Prefixes all occurrences of the given identifiers in code. Member accesses and swizzles
+	 * (identifiers preceded by a dot) are left untouched.
+	 */
+	public static String namespace(String code, String prefix, Collection<String> names) {
+		for(String name : names)
+			code = code.replaceAll("(?<![.\\w])" + Pattern.quote(name) + "\\b", Matcher.quoteReplacement(prefix + name));
+		return code;
+	}
+}
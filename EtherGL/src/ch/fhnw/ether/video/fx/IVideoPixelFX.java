@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2013 - 2015 Stefan Muller Arisona, Simon Schubiger, Samuel von Stachelski
+ * Copyright (c) 2013 - 2015 FHNW & ETH Zurich
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *  Neither the name of FHNW / ETH Zurich nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package ch.fhnw.ether.video.fx;
+
+import ch.fhnw.ether.video.IVideoRenderTarget;
+
+/**
+ * A point-wise {@link IVideoFrameFX} that can also run as a kernel on spans of pixels. Consecutive
+ * kernels of a chain are composed by {@link PixelFXChain} into a single pass over the frame.
+ */
+public interface IVideoPixelFX extends IVideoFrameFX {
+	/**
+	 * Called once per frame before any call to {@link #processPixels(byte[], int, int)}.
+	 * Parameter values should be captured here since the kernel runs concurrently on several threads.
+	 */
+	void prepareKernel(double playOutTime, IVideoRenderTarget target);
+
+	/**
+	 * Process <code>count</code> interleaved RGB(A) pixels in place.
+	 * 
+	 * @param pixels The pixels to operate on.
+	 * @param count The number of pixels.
+	 * @param pixelSize 3 for RGB8, 4 for RGBA8 pixels.
+	 */
+	void processPixels(byte[] pixels, int count, int pixelSize);
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2013 - 2015 Stefan Muller Arisona, Simon Schubiger, Samuel von Stachelski
+ * Copyright (c) 2013 - 2015 FHNW & ETH Zurich
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *  Neither the name of FHNW / ETH Zurich nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package ch.fhnw.ether.video.fx;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import ch.fhnw.ether.image.Frame;
+import ch.fhnw.ether.image.RGB8Frame;
+import ch.fhnw.ether.image.RGBA8Frame;
+import ch.fhnw.ether.media.AbstractRenderCommand;
+import ch.fhnw.ether.video.IVideoRenderTarget;
+
+/**
+ * Runs consecutive {@link IVideoPixelFX} kernels in one parallel pass. Each line is processed in tiles
+ * that are copied into a thread local buffer, run through all kernels and written back, so the frame is
+ * read and written once regardless of the number of effects.
+ */
+public final class PixelFXChain implements IVideoFrameFX {
+	public static final int TILE = 1024;
+
+	private static final ThreadLocal<byte[]> TILES = ThreadLocal.withInitial(()->new byte[TILE * 4]);
+
+	private final IVideoPixelFX[] kernels;
+
+	public PixelFXChain(IVideoPixelFX ... kernels) {
+		this.kernels = kernels.clone();
+	}
+
+	public IVideoPixelFX getFirst() {
+		return kernels[0];
+	}
+
+	public int size() {
+		return kernels.length;
+	}
+
+	@Override
+	public void processFrame(final double playOutTime, final IVideoRenderTarget target, final Frame frame) {
+		if(!(frame instanceof RGB8Frame || frame instanceof RGBA8Frame)) {
+			for(IVideoPixelFX kernel : kernels)
+				kernel.processFrame(playOutTime, target, frame);
+			return;
+		}
+
+		for(IVideoPixelFX kernel : kernels)
+			kernel.prepareKernel(playOutTime, target);
+
+		final int pixelSize = frame.pixelSize;
+		frame.processLines((pixels, j)->process(pixels, frame.width, pixelSize));
+	}
+
+	private void process(ByteBuffer pixels, int width, int pixelSize) {
+		final byte[] tile = TILES.get();
+		final int    pos  = pixels.position();
+		for(int x = 0; x < width; x += TILE) {
+			final int count = Math.min(TILE, width - x);
+			final int len   = count * pixelSize;
+			final int off   = pos + x * pixelSize;
+			pixels.position(off);
+			pixels.get(tile, 0, len);
+			for(IVideoPixelFX kernel : kernels)
+				kernel.processPixels(tile, count, pixelSize);
+			pixels.position(off);
+			pixels.put(tile, 0, len);
+		}
+	}
+
+	/**
+	 * Maps every enabled member of a run of at least two consecutive kernels to its chain.
+	 */
+	public static Map<AbstractVideoFX, PixelFXChain> compile(AbstractRenderCommand<?>[] cmds) {
+		Map<AbstractVideoFX, PixelFXChain> result = new IdentityHashMap<>();
+		List<IVideoPixelFX>                run    = new ArrayList<>();
+		for(int i = 1; i <= cmds.length; i++) {
+			if(i < cmds.length && !(cmds[i].isEnabled()))
+				continue;
+			if(i < cmds.length && cmds[i] instanceof IVideoPixelFX)
+				run.add((IVideoPixelFX)cmds[i]);
+			else {
+				if(run.size() > 1) {
+					PixelFXChain chain = new PixelFXChain(run.toArray(new IVideoPixelFX[run.size()]));
+					for(IVideoPixelFX fx : run)
+						result.put((AbstractVideoFX)fx, chain);
+				}
+				run.clear();
+			}
+		}
+		return result;
+	}
+}
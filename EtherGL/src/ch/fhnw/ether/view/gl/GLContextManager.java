@@ -46,6 +46,9 @@ import ch.fhnw.ether.view.IView.Config;
 public class GLContextManager {
 	public interface IGLContext extends AutoCloseable {
 		GL3 getGL();
+
+		@Override
+		void close();
 	}
 
 	private static final class ExistingContext implements IGLContext {
@@ -55,7 +58,7 @@ public class GLContextManager {
 		}
 
 		@Override
-		public void close() throws Exception {
+		public void close() {
 		}		
 	}
 
@@ -81,7 +84,7 @@ public class GLContextManager {
 		}
 		
 		@Override
-		public void close() throws Exception {
+		public void close() {
 			releaseContext(this);
 		}		
 	}
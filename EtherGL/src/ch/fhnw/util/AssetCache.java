@@ -0,0 +1,300 @@
+/*
+ * Copyright (c) 2013 - 2015 Stefan Muller Arisona, Simon Schubiger, Samuel von Stachelski
+ * Copyright (c) 2013 - 2015 FHNW & ETH Zurich
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *  Neither the name of FHNW / ETH Zurich nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package ch.fhnw.util;
+
+import java.io.IOException;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToLongFunction;
+
+/**
+ * Bounded cache for decoded assets (frames, meshes, audio). Concurrent requests for the same key share a single load.
+ * When the resident size exceeds the budget, unpinned entries are evicted in LRU or LFU order. Pinned entries
+ * are never evicted, so the budget is soft if everything resident is in use. A newly loaded asset is not
+ * evicted by its own load, so it can still be pinned after {@link #get} returns.
+ * 
+ * @param <K> The key type, e.g. a path or URL.
+ * @param <V> The asset type.
+ */
+public final class AssetCache<K, V> {
+	private static final Log log = Log.create();
+
+	public enum Policy {LRU, LFU}
+
+	@FunctionalInterface
+	public interface ILoader<K, V> {
+		V load(K key) throws IOException;
+	}
+
+	private static final class Entry<V> {
+		final FutureTask<V> task;
+		long                size;
+		long                lastAccess;
+		long                accessCount;
+		int                 pins;
+		boolean             resident;
+
+		Entry(FutureTask<V> task) {
+			this.task = task;
+		}
+	}
+
+	private static final class Pin extends WeakReference<Object> {
+		final Entry<?> entry;
+
+		Pin(Object owner, Entry<?> entry, ReferenceQueue<Object> q) {
+			super(owner, q);
+			this.entry = entry;
+		}
+	}
+
+	private final Map<K, Entry<V>>       entries   = new HashMap<>();
+	private final Set<Pin>               pins      = Collections.newSetFromMap(new IdentityHashMap<>());
+	private final ReferenceQueue<Object> pinQ      = new ReferenceQueue<>();
+	private final ToLongFunction<V>      sizeOf;
+	private final Policy                 policy;
+	private       long                   maxBytes;
+	private       long                   residentBytes;
+	private       long                   clock;
+	private final AtomicLong             hits      = new AtomicLong();
+	private final AtomicLong             misses    = new AtomicLong();
+	private final AtomicLong             evictions = new AtomicLong();
+
+	public AssetCache(long maxBytes, ToLongFunction<V> sizeOf) {
+		this(maxBytes, sizeOf, Policy.LRU);
+	}
+
+	public AssetCache(long maxBytes, ToLongFunction<V> sizeOf, Policy policy) {
+		this.maxBytes = maxBytes;
+		this.sizeOf   = sizeOf;
+		this.policy   = policy;
+	}
+
+	/**
+	 * Returns the asset for key, loading it with loader if it is not resident. If another thread is already
+	 * loading the same key, waits for that load instead of starting a second one.
+	 */
+	public V get(K key, ILoader<K, V> loader) throws IOException {
+		Entry<V> entry;
+		boolean  owner = false;
+		synchronized (this) {
+			expungePins();
+			entry = entries.get(key);
+			if(entry == null) {
+				entry = new Entry<>(new FutureTask<>(()->loader.load(key)));
+				entries.put(key, entry);
+				owner = true;
+				misses.incrementAndGet();
+			} else
+				hits.incrementAndGet();
+			entry.lastAccess = ++clock;
+			entry.accessCount++;
+		}
+
+		if(owner)
+			entry.task.run();
+
+		try {
+			V result = entry.task.get();
+			if(owner)
+				loaded(key, entry, result);
+			return result;
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} catch(ExecutionException e) {
+			if(owner) {
+				synchronized (this) {
+					if(entries.get(key) == entry)
+						entries.remove(key);
+				}
+			}
+			Throwable cause = e.getCause();
+			if(cause instanceof IOException)
+				throw (IOException)cause;
+			throw new IOException(cause);
+		}
+	}
+
+	/**
+	 * Returns the asset if it is resident, null otherwise. Does not wait for loads in progress.
+	 */
+	public synchronized V getIfPresent(K key) {
+		Entry<V> entry = entries.get(key);
+		if(entry == null || !(entry.resident))
+			return null;
+		hits.incrementAndGet();
+		entry.lastAccess = ++clock;
+		entry.accessCount++;
+		try {
+			return entry.task.get();
+		} catch(Throwable t) {
+			return null;
+		}
+	}
+
+	private synchronized void loaded(K key, Entry<V> entry, V value) {
+		if(entries.get(key) != entry)
+			return;
+		entry.size     = value == null ? 0 : sizeOf.applyAsLong(value);
+		entry.resident = true;
+		residentBytes += entry.size;
+		// the new entry is spared so the caller gets a chance to pin it
+		evict(entry);
+	}
+
+	/**
+	 * Pins key until unpin(key) is called. Pins are counted.
+	 */
+	public synchronized void pin(K key) {
+		Entry<V> entry = entries.get(key);
+		if(entry != null)
+			entry.pins++;
+	}
+
+	public synchronized void unpin(K key) {
+		Entry<V> entry = entries.get(key);
+		if(entry != null && entry.pins > 0) {
+			entry.pins--;
+			evict();
+		}
+	}
+
+	/**
+	 * Pins key as long as owner (e.g. a mesh or material using the asset) is strongly reachable.
+	 */
+	public synchronized void pinWhileReachable(K key, Object owner) {
+		expungePins();
+		Entry<V> entry = entries.get(key);
+		if(entry != null) {
+			entry.pins++;
+			pins.add(new Pin(owner, entry, pinQ));
+		}
+	}
+
+	public synchronized void remove(K key) {
+		Entry<V> entry = entries.remove(key);
+		if(entry != null && entry.resident)
+			residentBytes -= entry.size;
+	}
+
+	public synchronized void clear() {
+		for(Iterator<Entry<V>> i = entries.values().iterator(); i.hasNext();) {
+			Entry<V> entry = i.next();
+			if(entry.resident) {
+				residentBytes -= entry.size;
+				i.remove();
+			}
+		}
+	}
+
+	public synchronized void setMaxBytes(long maxBytes) {
+		this.maxBytes = maxBytes;
+		evict();
+	}
+
+	public synchronized long getMaxBytes() {
+		return maxBytes;
+	}
+
+	public synchronized long getResidentBytes() {
+		return residentBytes;
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "AssetCache[" + policy + " entries=" + entries.size() + " resident=" + residentBytes + "/" + maxBytes + " hits=" + hits + " misses=" + misses + " evictions=" + evictions + "]";
+	}
+
+	private void expungePins() {
+		boolean released = false;
+		for(Object ref; (ref = pinQ.poll()) != null;) {
+			Pin pin = (Pin)ref;
+			pins.remove(pin);
+			if(pin.entry.pins > 0)
+				pin.entry.pins--;
+			released = true;
+		}
+		if(released)
+			evict();
+	}
+
+	private void evict() {
+		evict(null);
+	}
+
+	private void evict(Entry<V> spare) {
+		while(residentBytes > maxBytes) {
+			K        victimKey = null;
+			Entry<V> victim    = null;
+			for(Map.Entry<K, Entry<V>> e : entries.entrySet()) {
+				Entry<V> entry = e.getValue();
+				if(!(entry.resident) || entry.pins > 0 || entry == spare)
+					continue;
+				if(victim == null || (policy == Policy.LRU ? entry.lastAccess < victim.lastAccess : entry.accessCount < victim.accessCount || (entry.accessCount == victim.accessCount && entry.lastAccess < victim.lastAccess))) {
+					victim    = entry;
+					victimKey = e.getKey();
+				}
+			}
+			if(victim == null) {
+				log.info("all resident assets pinned, " + residentBytes + " bytes exceed budget of " + maxBytes);
+				return;
+			}
+			entries.remove(victimKey);
+			residentBytes -= victim.size;
+			evictions.incrementAndGet();
+		}
+	}
+}
@@ -87,6 +87,19 @@ public final class IntList extends SimpleArrayList<int[], Integer> {
 		ensureCapacity(size + 1);  // Increments modCount!!
 		elementData[size++] = e;
 	}
+
+	public boolean addAll(int[] src, int off, int count) {
+		int numNew = count;
+		ensureCapacity(size + numNew);
+		if(numNew < 16) {
+			for(int i = 0; i < numNew; i++)
+				elementData[size++] = src[off+i];
+		} else {
+			System.arraycopy(src, off, elementData, size, numNew);
+			size += numNew;
+		}
+		return numNew != 0;		
+	}
 	
 	public void addIfUnique(final int e) {
 	    	if (contains(e))
@@ -163,6 +163,58 @@ public final class MathUtilities {
 		return (n > 0) && ((n & (n - 1)) == 0);
 	}
 
+	/**
+	 * Converts a float to IEEE 754 half precision, rounding to nearest even. Values beyond the half range become
+	 * infinity.
+	 */
+	public static short toHalfFloat(float value) {
+		int bits = Float.floatToRawIntBits(value);
+		int sign = (bits >>> 16) & 0x8000;
+		int exp  = (bits >>> 23) & 0xFF;
+		int mant = bits & 0x7FFFFF;
+		if (exp == 0xFF)
+			return (short) (sign | 0x7C00 | (mant != 0 ? 0x200 : 0));
+		int e = exp - 127 + 15;
+		if (e >= 0x1F)
+			return (short) (sign | 0x7C00);
+		int half;
+		int shift;
+		if (e <= 0) {
+			// subnormal
+			if (e < -10)
+				return (short) sign;
+			mant |= 0x800000;
+			shift = 14 - e;
+			half = mant >> shift;
+		} else {
+			shift = 13;
+			half = (e << 10) | (mant >> shift);
+		}
+		int rem = mant & ((1 << shift) - 1);
+		int halfway = 1 << (shift - 1);
+		// a carry into the exponent is correct, up to infinity
+		if (rem > halfway || (rem == halfway && (half & 1) != 0))
+			half++;
+		return (short) (sign | half);
+	}
+
+	/**
+	 * Converts an IEEE 754 half precision value to float.
+	 */
+	public static float fromHalfFloat(short half) {
+		int h    = half & 0xFFFF;
+		int sign = (h & 0x8000) << 16;
+		int exp  = (h >>> 10) & 0x1F;
+		int mant = h & 0x3FF;
+		if (exp == 0) {
+			float value = mant * 0x1p-24f;
+			return sign == 0 ? value : -value;
+		}
+		if (exp == 0x1F)
+			return Float.intBitsToFloat(sign | 0x7F800000 | (mant << 13));
+		return Float.intBitsToFloat(sign | ((exp + 112) << 23) | (mant << 13));
+	}
+
 	public static int nextPowerOfTwo(int num) {
 		int result = 1;
 		while (num != 0) {
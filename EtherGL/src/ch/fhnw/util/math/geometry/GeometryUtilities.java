@@ -29,7 +29,13 @@
 
 package ch.fhnw.util.math.geometry;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import ch.fhnw.util.IntList;
 import ch.fhnw.util.math.Vec3;
@@ -42,6 +48,18 @@ import com.jogamp.opengl.glu.GLUtessellatorCallbackAdapter;
 public final class GeometryUtilities {
 	private static final IntList TRIANGLE = new IntList(new int[] { 0, 1, 2 });
 
+	private static final int NUM_THREADS    = Runtime.getRuntime().availableProcessors();
+	private static final int PARALLEL_BATCH = 4096;
+
+	private static final ExecutorService POOL = Executors.newFixedThreadPool(NUM_THREADS, r -> {
+		Thread result = new Thread(r, "GeometryUtilities");
+		result.setDaemon(true);
+		result.setPriority(Thread.MIN_PRIORITY);
+		return result;
+	});
+
+	private static final ThreadLocal<EarClipper> EAR_CLIPPER = ThreadLocal.withInitial(EarClipper::new);
+
 	public static IntList triangulate(List<Vec3> polygon) {
 		return triangulate(Vec3.toArray(polygon));
 	}
@@ -51,21 +69,97 @@ public final class GeometryUtilities {
 			return TRIANGLE;
 
 		final IntList result = new IntList(polygon.length * 2);
+		triangulate(polygon, null, 0, polygon.length / 3, 0, result);
+		return result;
+	}
+
+	/**
+	 * Triangulates a batch of polygons. Polygon i consists of the vertices indices[starts[i]] to
+	 * indices[starts[i + 1] - 1], each refering to three floats in vertices. For each triangle, the positions of its
+	 * corners within indices are added to result, in polygon order. Large batches are triangulated in parallel.
+	 */
+	public static void triangulate(float[] vertices, int[] indices, int[] starts, int numPolygons, IntList result) {
+		if (numPolygons == 0)
+			return;
 
-		if (isConvex(polygon)) {
-			for (int i = 2; i < polygon.length / 3; i++) {
-				result.add(0);
-				result.add(i - 1);
-				result.add(i);
+		result.ensureCapacity(result.size() + numTriangleIndices(starts, 0, numPolygons));
+
+		int numRanges = Math.min(numPolygons / PARALLEL_BATCH, 4 * NUM_THREADS);
+		if (numRanges <= 1 || NUM_THREADS == 1) {
+			for (int i = 0; i < numPolygons; i++)
+				triangulate(vertices, indices, starts[i], starts[i + 1] - starts[i], starts[i], result);
+			return;
+		}
+
+		List<Future<IntList>> ranges = new ArrayList<>(numRanges);
+		for (int r = 0; r < numRanges; r++) {
+			final int from = (int) ((long) numPolygons * r / numRanges);
+			final int to = (int) ((long) numPolygons * (r + 1) / numRanges);
+			ranges.add(POOL.submit(() -> {
+				IntList part = new IntList(numTriangleIndices(starts, from, to));
+				for (int i = from; i < to; i++)
+					triangulate(vertices, indices, starts[i], starts[i + 1] - starts[i], starts[i], part);
+				return part;
+			}));
+		}
+		try {
+			for (Future<IntList> range : ranges) {
+				IntList part = range.get();
+				result.addAll(part._getArray(), 0, part.size());
 			}
-			return result;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
 		}
+	}
+
+	private static int numTriangleIndices(int[] starts, int from, int to) {
+		return 3 * Math.max(0, starts[to] - starts[from] - 2 * (to - from));
+	}
+
+	private static int vertex(int[] indices, int start, int i) {
+		return 3 * (indices == null ? start + i : indices[start + i]);
+	}
 
+	// triangles and convex polygons are fanned without allocation, other polygons are ear clipped, with the
+	// tessellator as fallback for polygons ear clipping can't handle (e.g. self-intersecting ones).
+	private static void triangulate(float[] vertices, int[] indices, int start, int n, int offset, IntList result) {
+		if (n < 3)
+			return;
+
+		if (n == 3 || isConvex(vertices, indices, start, n)) {
+			for (int i = 2; i < n; i++) {
+				result.add(offset);
+				result.add(offset + i - 1);
+				result.add(offset + i);
+			}
+			return;
+		}
+
+		int size = result.size();
+		if (!(EAR_CLIPPER.get().triangulate(vertices, indices, start, n, offset, result))) {
+			result._setSize(size);
+			tessellate(vertices, indices, start, n, offset, result);
+		}
+	}
+
+	// the two non-convex paths on their own, for comparison tests
+	static boolean earClip(float[] polygon, IntList result) {
+		return EAR_CLIPPER.get().triangulate(polygon, null, 0, polygon.length / 3, 0, result);
+	}
+
+	static void tessellate(float[] polygon, IntList result) {
+		tessellate(polygon, null, 0, polygon.length / 3, 0, result);
+	}
+
+	private static void tessellate(float[] vertices, int[] indices, int start, int n, int offset, IntList result) {
 		GLUtessellatorCallback callback = new GLUtessellatorCallbackAdapter() {
 			@Override
 			public void vertex(Object vertexData) {
 				if (vertexData instanceof Integer)
-					result.add((Integer) vertexData);
+					result.add(offset + (Integer) vertexData);
 			}
 
 			@Override
@@ -82,23 +176,217 @@ public final class GeometryUtilities {
 		GLU.gluTessBeginPolygon(tess, null);
 		GLU.gluTessBeginContour(tess);
 		double[] tmp = new double[3];
-		for (int i = 0; i < polygon.length; i += 3) {
-			tmp[0] = polygon[i + 0];
-			tmp[1] = polygon[i + 1];
-			tmp[2] = polygon[i + 2];
-			GLU.gluTessVertex(tess, tmp, 0, i / 3);
+		for (int i = 0; i < n; i++) {
+			int v = vertex(indices, start, i);
+			tmp[0] = vertices[v + 0];
+			tmp[1] = vertices[v + 1];
+			tmp[2] = vertices[v + 2];
+			GLU.gluTessVertex(tess, tmp, 0, i);
 		}
 		GLU.gluTessEndContour(tess);
 		GLU.gluTessEndPolygon(tess);
 		GLU.gluDeleteTess(tess);
+	}
 
-		return result;
+	/**
+	 * Ear clipping in the polygon's dominant plane. Reflex vertices, the only ones that can lie inside an ear, are
+	 * bucketed in a uniform grid so each ear test only looks at the reflex vertices near the ear instead of all of
+	 * them. Scratch arrays are reused per thread.
+	 */
+	private static final class EarClipper {
+		private float[]   x         = new float[0];
+		private float[]   y         = new float[0];
+		private int[]     prev      = new int[0];
+		private int[]     next      = new int[0];
+		private boolean[] reflex    = new boolean[0];
+		private boolean[] removed   = new boolean[0];
+		private int[]     cellStart = new int[1];
+		private int[]     cellItems = new int[0];
+		private int       grid;
+		private float     minX, minY, cellScaleX, cellScaleY;
+
+		private void ensure(int n) {
+			if (x.length < n) {
+				x         = new float[n];
+				y         = new float[n];
+				prev      = new int[n];
+				next      = new int[n];
+				reflex    = new boolean[n];
+				removed   = new boolean[n];
+				cellItems = new int[n];
+			}
+		}
+
+		boolean triangulate(float[] vertices, int[] indices, int start, int n, int offset, IntList result) {
+			ensure(n);
+
+			// newell normal, its components are twice the projected areas
+			float nx = 0, ny = 0, nz = 0;
+			for (int i = 0; i < n; i++) {
+				int c = vertex(indices, start, i);
+				int d = vertex(indices, start, i + 1 == n ? 0 : i + 1);
+				nx += (vertices[c + 1] - vertices[d + 1]) * (vertices[c + 2] + vertices[d + 2]);
+				ny += (vertices[c + 2] - vertices[d + 2]) * (vertices[c] + vertices[d]);
+				nz += (vertices[c] - vertices[d]) * (vertices[c + 1] + vertices[d + 1]);
+			}
+			float anx = Math.abs(nx), any = Math.abs(ny), anz = Math.abs(nz);
+			int   ax, ay;
+			float area;
+			if (anx >= any && anx >= anz) {
+				ax = 1; ay = 2; area = nx;
+			} else if (any >= anz) {
+				ax = 2; ay = 0; area = ny;
+			} else {
+				ax = 0; ay = 1; area = nz;
+			}
+			if (area == 0 || Float.isNaN(area))
+				return false;
+
+			// project counter-clockwise
+			for (int i = 0; i < n; i++) {
+				int c = vertex(indices, start, i);
+				x[i] = vertices[c + ax];
+				y[i] = area > 0 ? vertices[c + ay] : -vertices[c + ay];
+				prev[i] = i == 0 ? n - 1 : i - 1;
+				next[i] = i + 1 == n ? 0 : i + 1;
+				removed[i] = false;
+			}
+			int numReflex = 0;
+			for (int i = 0; i < n; i++) {
+				reflex[i] = isReflex(i);
+				if (reflex[i])
+					numReflex++;
+			}
+			buildGrid(n, numReflex);
+
+			int remaining = n;
+			int misses = 0;
+			for (int i = 0; remaining > 3;) {
+				if (isEar(i)) {
+					int p = prev[i];
+					int q = next[i];
+					result.add(offset + p);
+					result.add(offset + i);
+					result.add(offset + q);
+					removed[i] = true;
+					next[p] = q;
+					prev[q] = p;
+					remaining--;
+					if (reflex[p])
+						reflex[p] = isReflex(p);
+					if (reflex[q])
+						reflex[q] = isReflex(q);
+					i = p;
+					misses = 0;
+				} else {
+					i = next[i];
+					if (++misses > remaining)
+						return false;
+				}
+			}
+			for (int i = 0; i < n; i++) {
+				if (!(removed[i])) {
+					result.add(offset + prev[i]);
+					result.add(offset + i);
+					result.add(offset + next[i]);
+					break;
+				}
+			}
+			return true;
+		}
+
+		private boolean isReflex(int i) {
+			int p = prev[i];
+			int q = next[i];
+			return (x[i] - x[p]) * (y[q] - y[i]) - (y[i] - y[p]) * (x[q] - x[i]) <= 0;
+		}
+
+		private void buildGrid(int n, int numReflex) {
+			grid = Math.max(1, (int) Math.sqrt(numReflex));
+			int numCells = grid * grid;
+			if (cellStart.length < numCells + 1)
+				cellStart = new int[numCells + 1];
+			Arrays.fill(cellStart, 0, numCells + 1, 0);
+
+			minX = Float.POSITIVE_INFINITY;
+			minY = Float.POSITIVE_INFINITY;
+			float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY;
+			for (int i = 0; i < n; i++) {
+				minX = Math.min(minX, x[i]);
+				minY = Math.min(minY, y[i]);
+				maxX = Math.max(maxX, x[i]);
+				maxY = Math.max(maxY, y[i]);
+			}
+			cellScaleX = maxX > minX ? grid / (maxX - minX) : 0;
+			cellScaleY = maxY > minY ? grid / (maxY - minY) : 0;
+
+			for (int i = 0; i < n; i++)
+				if (reflex[i])
+					cellStart[cell(cellX(x[i]), cellY(y[i])) + 1]++;
+			for (int c = 0; c < numCells; c++)
+				cellStart[c + 1] += cellStart[c];
+			for (int i = 0; i < n; i++) {
+				if (reflex[i]) {
+					int c = cell(cellX(x[i]), cellY(y[i]));
+					cellItems[cellStart[c]++] = i;
+				}
+			}
+			for (int c = numCells; c > 0; c--)
+				cellStart[c] = cellStart[c - 1];
+			cellStart[0] = 0;
+		}
+
+		private int cellX(float v) {
+			return Math.min(grid - 1, Math.max(0, (int) ((v - minX) * cellScaleX)));
+		}
+
+		private int cellY(float v) {
+			return Math.min(grid - 1, Math.max(0, (int) ((v - minY) * cellScaleY)));
+		}
+
+		private int cell(int cx, int cy) {
+			return cy * grid + cx;
+		}
+
+		private boolean isEar(int i) {
+			if (reflex[i])
+				return false;
+			int   p   = prev[i];
+			int   q   = next[i];
+			float ax  = x[p], ay  = y[p];
+			float bx  = x[i], by  = y[i];
+			float cx  = x[q], cy  = y[q];
+			int   x0  = cellX(Math.min(ax, Math.min(bx, cx)));
+			int   x1  = cellX(Math.max(ax, Math.max(bx, cx)));
+			int   y0  = cellY(Math.min(ay, Math.min(by, cy)));
+			int   y1  = cellY(Math.max(ay, Math.max(by, cy)));
+			for (int gy = y0; gy <= y1; gy++) {
+				for (int gx = x0; gx <= x1; gx++) {
+					int c = cell(gx, gy);
+					for (int k = cellStart[c]; k < cellStart[c + 1]; k++) {
+						int r = cellItems[k];
+						if (r == p || r == i || r == q || removed[r] || !(reflex[r]))
+							continue;
+						float px = x[r], py = y[r];
+						if ((bx - ax) * (py - ay) - (by - ay) * (px - ax) >= 0 &&
+							(cx - bx) * (py - by) - (cy - by) * (px - bx) >= 0 &&
+							(ax - cx) * (py - cy) - (ay - cy) * (px - cx) >= 0)
+							return false;
+					}
+				}
+			}
+			return true;
+		}
 	}
 
 	public static boolean isConvex(float[] polygon) {
-		if (polygon.length < 9)
+		return isConvex(polygon, null, 0, polygon.length / 3);
+	}
+
+	private static boolean isConvex(float[] polygon, int[] indices, int start, int n) {
+		if (n < 3)
 			return false;
-		if (polygon.length == 9)
+		if (n == 3)
 			return true;
 
 		// At this point we know that the polygon has at least 4 sides.
@@ -116,32 +404,34 @@ public final class GeometryUtilities {
 
 		int offset = 2; // Start by projecting to the (x, z) plane.
 
-		int pStartVert = 0;
+		int v0 = vertex(indices, start, 0);
+		int v1 = vertex(indices, start, 1);
+		int v2 = vertex(indices, start, 2);
 
-		float initDirection = getSignedAreaX2(polygon[pStartVert], polygon[pStartVert + 2], polygon[pStartVert + 3], polygon[pStartVert + 5],
-				polygon[pStartVert + 6], polygon[pStartVert + 8]);
+		float initDirection = getSignedAreaX2(polygon[v0], polygon[v0 + 2], polygon[v1], polygon[v1 + 2], polygon[v2], polygon[v2 + 2]);
 
 		if (initDirection > -2 * EPSILON && initDirection < 2 * EPSILON) {
 			// The polygon is on or very close to the vertical plane. Switch to projecting on the (x, y) plane.
 			offset = 1;
-			initDirection = getSignedAreaX2(polygon[pStartVert], polygon[pStartVert + 1], polygon[pStartVert + 3], polygon[pStartVert + 4],
-					polygon[pStartVert + 6], polygon[pStartVert + 7]);
+			initDirection = getSignedAreaX2(polygon[v0], polygon[v0 + 1], polygon[v1], polygon[v1 + 1], polygon[v2], polygon[v2 + 1]);
 			// Dev note: This is meant to be a strict zero test.
 			if (initDirection == 0)
 				// Some sort of problem. Should very rarely ever get here.
 				return false;
 		}
 
-		int vertLength = polygon.length;
-		for (int vertAPointer = pStartVert + 3; vertAPointer < vertLength; vertAPointer += 3) {
-			int vertBPointer = vertAPointer + 3;
-			if (vertBPointer >= vertLength)
+		for (int a = 1; a < n; a++) {
+			int b = a + 1;
+			if (b >= n)
 				// Wrap it back to the start.
-				vertBPointer = pStartVert;
-			int vertCPointer = vertBPointer + 3;
-			if (vertCPointer >= vertLength)
+				b = 0;
+			int c = b + 1;
+			if (c >= n)
 				// Wrap it back to the start.
-				vertCPointer = pStartVert;
+				c = 0;
+			int vertAPointer = vertex(indices, start, a);
+			int vertBPointer = vertex(indices, start, b);
+			int vertCPointer = vertex(indices, start, c);
 			float direction = getSignedAreaX2(polygon[vertAPointer], polygon[vertAPointer + offset], polygon[vertBPointer], polygon[vertBPointer + offset],
 					polygon[vertCPointer], polygon[vertCPointer + offset]);
 			if (!(initDirection < 0 && direction < 0) && !(initDirection > 0 && direction > 0))
@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) 2013 - 2015 Stefan Muller Arisona, Simon Schubiger, Samuel von Stachelski
+ * Copyright (c) 2013 - 2015 FHNW & ETH Zurich
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *  Neither the name of FHNW / ETH Zurich nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ch.fhnw.util.math.geometry;
+
+import java.util.Arrays;
+
+/**
+ * MaxRects rectangle packer with incremental insert and remove. Free space is
+ * kept as a list of maximal free rectangles, which may overlap each other but
+ * never a used rectangle. Rectangles are placed by best short side fit.
+ * Removed rectangles are returned to the free list and merged with free
+ * rectangles sharing a full edge; free space fragmented by many removals is
+ * only fully recovered by {@link #clear()}.
+ */
+public final class RectanglePacker {
+	private final int width;
+	private final int height;
+
+	// x, y, w, h of each free rectangle
+	private int[] free = new int[64];
+	private int   numFree;
+	private int[] split = new int[64];
+	private int   numSplit;
+
+	private long usedArea;
+
+	public RectanglePacker(int width, int height) {
+		if (width <= 0 || height <= 0)
+			throw new IllegalArgumentException("invalid size: " + width + "x" + height);
+		this.width = width;
+		this.height = height;
+		clear();
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Get the fraction of the area covered by used rectangles.
+	 */
+	public float getOccupancy() {
+		return (float) ((double) usedArea / ((long) width * height));
+	}
+
+	/**
+	 * Get the number of free rectangles, a measure of fragmentation.
+	 */
+	public int getNumFreeRectangles() {
+		return numFree / 4;
+	}
+
+	/**
+	 * Remove all rectangles.
+	 */
+	public void clear() {
+		numFree = 0;
+		addFree(0, 0, width, height);
+		usedArea = 0;
+	}
+
+	/**
+	 * Insert a rectangle.
+	 * 
+	 * @return x, y of the placed rectangle, or null if it does not fit
+	 */
+	public int[] insert(int w, int h) {
+		if (w <= 0 || h <= 0)
+			throw new IllegalArgumentException("invalid size: " + w + "x" + h);
+		int best = -1;
+		int bestShort = Integer.MAX_VALUE;
+		int bestLong = Integer.MAX_VALUE;
+		for (int i = 0; i < numFree; i += 4) {
+			int fw = free[i + 2];
+			int fh = free[i + 3];
+			if (w > fw || h > fh)
+				continue;
+			int dw = fw - w;
+			int dh = fh - h;
+			int s = Math.min(dw, dh);
+			int l = Math.max(dw, dh);
+			if (s < bestShort || (s == bestShort && l < bestLong)) {
+				best = i;
+				bestShort = s;
+				bestLong = l;
+			}
+		}
+		if (best == -1)
+			return null;
+		int x = free[best];
+		int y = free[best + 1];
+		place(x, y, w, h);
+		usedArea += (long) w * h;
+		return new int[] { x, y };
+	}
+
+	/**
+	 * Remove a rectangle previously returned by {@link #insert(int, int)}.
+	 */
+	public void remove(int x, int y, int w, int h) {
+		if (x < 0 || y < 0 || x + w > width || y + h > height)
+			throw new IllegalArgumentException("rectangle out of bounds: " + x + "," + y + " " + w + "x" + h);
+		usedArea -= (long) w * h;
+
+		// grow the freed rectangle over free rectangles sharing a full edge
+		boolean merged = true;
+		while (merged) {
+			merged = false;
+			for (int i = 0; i < numFree; i += 4) {
+				int fx = free[i], fy = free[i + 1], fw = free[i + 2], fh = free[i + 3];
+				if (fy == y && fh == h && (fx + fw == x || x + w == fx)) {
+					x = Math.min(x, fx);
+					w += fw;
+					merged = true;
+				} else if (fx == x && fw == w && (fy + fh == y || y + h == fy)) {
+					y = Math.min(y, fy);
+					h += fh;
+					merged = true;
+				}
+			}
+		}
+		addMaximal(x, y, w, h);
+	}
+
+	// split all free rectangles overlapping the placed rectangle into their
+	// maximal remainders
+	private void place(int x, int y, int w, int h) {
+		numSplit = 0;
+		int n = 0;
+		for (int i = 0; i < numFree; i += 4) {
+			int fx = free[i], fy = free[i + 1], fw = free[i + 2], fh = free[i + 3];
+			if (x >= fx + fw || x + w <= fx || y >= fy + fh || y + h <= fy) {
+				free[n++] = fx;
+				free[n++] = fy;
+				free[n++] = fw;
+				free[n++] = fh;
+				continue;
+			}
+			if (x > fx)
+				addSplit(fx, fy, x - fx, fh);
+			if (x + w < fx + fw)
+				addSplit(x + w, fy, fx + fw - x - w, fh);
+			if (y > fy)
+				addSplit(fx, fy, fw, y - fy);
+			if (y + h < fy + fh)
+				addSplit(fx, y + h, fw, fy + fh - y - h);
+		}
+		numFree = n;
+		// only the new rectangles need to be checked for containment, the
+		// remaining free rectangles did not contain each other before
+		for (int i = 0; i < numSplit; i += 4)
+			addMaximal(split[i], split[i + 1], split[i + 2], split[i + 3]);
+	}
+
+	// add a free rectangle unless it is contained in another one, and remove
+	// the free rectangles it contains
+	private void addMaximal(int x, int y, int w, int h) {
+		for (int i = 0; i < numFree; i += 4) {
+			if (x >= free[i] && y >= free[i + 1] && x + w <= free[i] + free[i + 2] && y + h <= free[i + 1] + free[i + 3])
+				return;
+		}
+		int n = 0;
+		for (int i = 0; i < numFree; i += 4) {
+			int fx = free[i], fy = free[i + 1], fw = free[i + 2], fh = free[i + 3];
+			if (fx >= x && fy >= y && fx + fw <= x + w && fy + fh <= y + h)
+				continue;
+			free[n++] = fx;
+			free[n++] = fy;
+			free[n++] = fw;
+			free[n++] = fh;
+		}
+		numFree = n;
+		addFree(x, y, w, h);
+	}
+
+	private void addFree(int x, int y, int w, int h) {
+		if (numFree + 4 > free.length)
+			free = Arrays.copyOf(free, 2 * free.length);
+		free[numFree++] = x;
+		free[numFree++] = y;
+		free[numFree++] = w;
+		free[numFree++] = h;
+	}
+
+	private void addSplit(int x, int y, int w, int h) {
+		if (numSplit + 4 > split.length)
+			split = Arrays.copyOf(split, 2 * split.length);
+		split[numSplit++] = x;
+		split[numSplit++] = y;
+		split[numSplit++] = w;
+		split[numSplit++] = h;
+	}
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2013 - 2015 Stefan Muller Arisona, Simon Schubiger, Samuel von Stachelski
+ * Copyright (c) 2013 - 2015 FHNW & ETH Zurich
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *  Neither the name of FHNW / ETH Zurich nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package ch.fhnw.util.math.geometry;
+
+import java.util.Arrays;
+
+/**
+ * Edge adjacency of triangle soups, e.g. for silhouette detection. Vertices
+ * with bitwise equal positions are welded, then each edge is matched with the
+ * reversed edge of a neighbouring triangle through an edge map. Both maps use
+ * open addressing so building the adjacency of a mesh with a million triangles
+ * does not allocate per vertex or edge.
+ */
+public final class TriangleAdjacency {
+	/**
+	 * Marks an edge without neighbour: a boundary edge, an edge of a
+	 * degenerate triangle, or a non-manifold edge shared by more than two
+	 * triangles or by two triangles of inconsistent winding.
+	 */
+	public static final int OPEN = -1;
+
+	private static final int CONSUMED = -2;
+
+	private TriangleAdjacency() {
+	}
+
+	/**
+	 * Build the edge adjacency of triangles.
+	 * 
+	 * @param triangles
+	 *            x, y, z of three vertices per triangle
+	 * @return for each edge (v0 v1, v1 v2, v2 v0 of each triangle) the index of
+	 *         the vertex of the neighbouring triangle opposite to the edge, or
+	 *         {@link #OPEN}
+	 */
+	public static int[] build(float[] triangles) {
+		int numVertices = triangles.length / 3;
+		int[] welded = weld(triangles, numVertices);
+
+		int[] adjacency = new int[numVertices];
+		Arrays.fill(adjacency, OPEN);
+
+		int capacity = tableSize(numVertices);
+		int mask = capacity - 1;
+		long[] keys = new long[capacity];
+		int[] edges = new int[capacity];
+		Arrays.fill(edges, OPEN);
+
+		for (int e = 0; e < numVertices; ++e) {
+			int a = welded[e];
+			int b = welded[next(e)];
+			if (a == b || a == welded[prev(e)] || b == welded[prev(e)])
+				continue;
+
+			// undirected key, the low bit tells the direction
+			long key = a < b ? ((long) a << 32 | b) << 1 : ((long) b << 32 | a) << 1 | 1;
+			long undirected = key >>> 1;
+			int slot = hash(undirected) & mask;
+			while (true) {
+				int other = edges[slot];
+				if (other == OPEN) {
+					keys[slot] = key;
+					edges[slot] = e;
+					break;
+				}
+				if (keys[slot] >>> 1 == undirected) {
+					// pair with the first edge of opposite direction, leave others open
+					if (other != CONSUMED && (keys[slot] & 1) != (key & 1)) {
+						adjacency[e] = prev(other);
+						adjacency[other] = prev(e);
+					}
+					edges[slot] = CONSUMED;
+					break;
+				}
+				slot = (slot + 1) & mask;
+			}
+		}
+		return adjacency;
+	}
+
+	/**
+	 * Expand triangles with their adjacency to the vertex order of
+	 * GL_TRIANGLES_ADJACENCY: v0, a01, v1, a12, v2, a20 per triangle. Open edges
+	 * get the triangle's own opposite vertex, so the neighbour faces the other
+	 * way and the edge is always part of the silhouette.
+	 * 
+	 * @param triangles
+	 *            x, y, z of three vertices per triangle
+	 * @param adjacency
+	 *            adjacency as returned by {@link #build(float[])}
+	 * @return x, y, z of six vertices per triangle
+	 */
+	public static float[] expand(float[] triangles, int[] adjacency) {
+		float[] result = new float[2 * triangles.length];
+		for (int e = 0, k = 0; e < adjacency.length; ++e) {
+			int v = 3 * e;
+			result[k++] = triangles[v];
+			result[k++] = triangles[v + 1];
+			result[k++] = triangles[v + 2];
+			int a = adjacency[e] == OPEN ? 3 * prev(e) : 3 * adjacency[e];
+			result[k++] = triangles[a];
+			result[k++] = triangles[a + 1];
+			result[k++] = triangles[a + 2];
+		}
+		return result;
+	}
+
+	// map each vertex to the index of the first vertex with the same position
+	private static int[] weld(float[] triangles, int numVertices) {
+		int[] welded = new int[numVertices];
+		int capacity = tableSize(numVertices);
+		int mask = capacity - 1;
+		int[] table = new int[capacity];
+		Arrays.fill(table, OPEN);
+		for (int v = 0; v < numVertices; ++v) {
+			int x = bits(triangles[3 * v]);
+			int y = bits(triangles[3 * v + 1]);
+			int z = bits(triangles[3 * v + 2]);
+			int slot = hash(x * 73856093L ^ y * 19349663L ^ z * 83492791L) & mask;
+			while (true) {
+				int w = table[slot];
+				if (w == OPEN) {
+					table[slot] = v;
+					welded[v] = v;
+					break;
+				}
+				if (bits(triangles[3 * w]) == x && bits(triangles[3 * w + 1]) == y && bits(triangles[3 * w + 2]) == z) {
+					welded[v] = w;
+					break;
+				}
+				slot = (slot + 1) & mask;
+			}
+		}
+		return welded;
+	}
+
+	// next and previous vertex within the triangle of vertex (or edge) e
+	private static int next(int e) {
+		return e % 3 == 2 ? e - 2 : e + 1;
+	}
+
+	private static int prev(int e) {
+		return e % 3 == 0 ? e + 2 : e - 1;
+	}
+
+	// -0 and 0 are welded
+	private static int bits(float value) {
+		return Float.floatToIntBits(value == 0 ? 0 : value);
+	}
+
+	// load factor <= 0.5
+	private static int tableSize(int n) {
+		return Integer.highestOneBit(Math.max(1, 2 * n - 1)) << 1;
+	}
+
+	private static int hash(long value) {
+		value *= 0x9E3779B97F4A7C15L;
+		return (int) (value ^ (value >>> 32));
+	}
+}
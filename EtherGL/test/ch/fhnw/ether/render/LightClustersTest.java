@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2013 - 2015 Stefan Muller Arisona, Simon Schubiger, Samuel von Stachelski
+ * Copyright (c) 2013 - 2015 FHNW & ETH Zurich
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *  Neither the name of FHNW / ETH Zurich nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package ch.fhnw.ether.render;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import ch.fhnw.util.math.Mat4;
+import ch.fhnw.util.math.Vec3;
+
+public class LightClustersTest {
+	private static final int TILES_X = 4;
+	private static final int TILES_Y = 3;
+	private static final int SLICES  = 4;
+
+	private static final Mat4 PERSPECTIVE  = Mat4.perspective(60, 4f / 3f, 1, 100);
+	private static final Mat4 ORTHOGRAPHIC = Mat4.ortho(-8, 8, -6, 6, 1, 50);
+
+	@Test
+	public void smallLightIsInItsClusterOnly() {
+		LightClusters clusters = new LightClusters(TILES_X, TILES_Y, SLICES);
+		for (int z = 0; z < SLICES; z++) {
+			for (int y = 0; y < TILES_Y; y++) {
+				for (int x = 0; x < TILES_X; x++) {
+					// center of the cluster: tile center in ndc, geometric mean of the slice depths
+					float depth = (float) Math.pow(100, (z + 0.5) / SLICES);
+					float ndcX = (2 * x + 1f) / TILES_X - 1;
+					float ndcY = (2 * y + 1f) / TILES_Y - 1;
+					float[] sphere = { ndcX * depth / PERSPECTIVE.m00, ndcY * depth / PERSPECTIVE.m11, -depth, 0.001f };
+					clusters.assign(PERSPECTIVE, sphere, 1);
+					int index = (z * TILES_Y + y) * TILES_X + x;
+					assertEquals(set(index), clustersOf(clusters, 0));
+					assertEquals(index, clusters.getClusterIndex(ndcX, ndcY, depth));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void perspectiveClustersContainAllLitPoints() {
+		assertContainsLitPoints(PERSPECTIVE, new Random(1));
+	}
+
+	@Test
+	public void orthographicClustersContainAllLitPoints() {
+		assertContainsLitPoints(ORTHOGRAPHIC, new Random(2));
+	}
+
+	@Test
+	public void directionalAndCulledLights() {
+		LightClusters clusters = new LightClusters(TILES_X, TILES_Y, SLICES);
+		float[] spheres = {
+				0, 0, -10, Float.POSITIVE_INFINITY, // directional: all clusters
+				0, 0, -10, 0,                       // zero radius: none
+				0, 0, 10, 5,                        // behind the camera: none
+				0, 0, -200, 50,                     // beyond the far plane: none
+				100, 0, -10, 1,                     // outside the screen: none
+		};
+		clusters.assign(PERSPECTIVE, spheres, 5);
+		Set<Integer> all = new HashSet<>();
+		for (int i = 0; i < clusters.getNumClusters(); i++)
+			all.add(i);
+		assertEquals(all, clustersOf(clusters, 0));
+		for (int light = 1; light < 5; light++)
+			assertEquals("light " + light, set(), clustersOf(clusters, light));
+		assertEquals(clusters.getNumClusters(), clusters.getNumLightIndices());
+	}
+
+	@Test
+	public void clusterListsAreConsistent() {
+		Random random = new Random(3);
+		LightClusters clusters = new LightClusters(TILES_X, TILES_Y, SLICES);
+		float[] spheres = randomLights(random, 200);
+		clusters.assign(PERSPECTIVE, spheres, 200);
+		int[] c = clusters.getClusters();
+		int[] indices = clusters.getLightIndices();
+		int total = 0;
+		for (int i = 0; i < clusters.getNumClusters(); i++) {
+			int offset = c[2 * i];
+			int count = c[2 * i + 1];
+			assertEquals("cluster " + i, total, offset);
+			for (int k = offset + 1; k < offset + count; k++)
+				assertTrue("lights ascending in cluster " + i, indices[k - 1] < indices[k]);
+			total += count;
+		}
+		assertEquals(total, clusters.getNumLightIndices());
+	}
+
+	@Test
+	public void manyLightsMatchSingleAssignments() {
+		// 200 lights take the parallel path on machines with more than one core
+		Random random = new Random(4);
+		float[] spheres = randomLights(random, 200);
+		LightClusters all = new LightClusters(TILES_X, TILES_Y, SLICES);
+		all.assign(PERSPECTIVE, spheres, 200);
+		LightClusters single = new LightClusters(TILES_X, TILES_Y, SLICES);
+		for (int light = 0; light < 200; light++) {
+			single.assign(PERSPECTIVE, Arrays.copyOfRange(spheres, 4 * light, 4 * light + 4), 1);
+			assertEquals("light " + light, clustersOf(single, 0), clustersOf(all, light));
+		}
+	}
+
+	private static void assertContainsLitPoints(Mat4 proj, Random random) {
+		LightClusters clusters = new LightClusters(TILES_X, TILES_Y, SLICES);
+		float[] spheres = randomLights(random, 50);
+		clusters.assign(proj, spheres, 50);
+		int tested = 0;
+		for (int light = 0; light < 50; light++) {
+			Set<Integer> lit = clustersOf(clusters, light);
+			for (int i = 0; i < 200; i++) {
+				// random point in the sphere
+				float r = spheres[4 * light + 3] * (float) Math.cbrt(random.nextDouble());
+				Vec3 d = new Vec3(random.nextGaussian(), random.nextGaussian(), random.nextGaussian()).normalize().scale(r);
+				Vec3 p = new Vec3(spheres[4 * light] + d.x, spheres[4 * light + 1] + d.y, spheres[4 * light + 2] + d.z);
+				Vec3 ndc = proj.transform(p);
+				float depth = -p.z;
+				if (Math.abs(ndc.x) > 1 || Math.abs(ndc.y) > 1 || depth < clusters.getNear() || depth > clusters.getFar())
+					continue;
+				int index = clusters.getClusterIndex(ndc.x, ndc.y, depth);
+				assertTrue("light " + light + " missing in cluster " + index, lit.contains(index));
+				tested++;
+			}
+		}
+		assertTrue(tested > 1000);
+	}
+
+	private static float[] randomLights(Random random, int n) {
+		float[] spheres = new float[4 * n];
+		for (int i = 0; i < n; i++) {
+			float depth = 2 + random.nextFloat() * 40;
+			spheres[4 * i] = (random.nextFloat() * 2 - 1) * depth * 0.6f;
+			spheres[4 * i + 1] = (random.nextFloat() * 2 - 1) * depth * 0.45f;
+			spheres[4 * i + 2] = -depth;
+			spheres[4 * i + 3] = 0.5f + random.nextFloat() * 4;
+		}
+		return spheres;
+	}
+
+	private static Set<Integer> clustersOf(LightClusters clusters, int light) {
+		Set<Integer> result = new HashSet<>();
+		int[] c = clusters.getClusters();
+		int[] indices = clusters.getLightIndices();
+		for (int i = 0; i < clusters.getNumClusters(); i++) {
+			for (int k = c[2 * i]; k < c[2 * i] + c[2 * i + 1]; k++) {
+				if (indices[k] == light)
+					result.add(i);
+			}
+		}
+		return result;
+	}
+
+	private static Set<Integer> set(Integer... values) {
+		return new HashSet<>(Arrays.asList(values));
+	}
+}
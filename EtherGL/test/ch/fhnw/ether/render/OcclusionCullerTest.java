@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2013 - 2015 Stefan Muller Arisona, Simon Schubiger, Samuel von Stachelski
+ * Copyright (c) 2013 - 2015 FHNW & ETH Zurich
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *  Neither the name of FHNW / ETH Zurich nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package ch.fhnw.ether.render;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import ch.fhnw.util.math.Mat4;
+import ch.fhnw.util.math.geometry.BoundingBox;
+
+public class OcclusionCullerTest {
+	private static final int W = 64;
+	private static final int H = 32;
+
+	@Test
+	public void emptyBufferHidesNothing() {
+		OcclusionCuller culler = culler();
+		culler.end();
+		assertFalse(culler.isOccluded(0, 0, W - 1, H - 1, 0.99f));
+		assertEquals(1, culler.getDepth(W / 2, H / 2), 0);
+	}
+
+	@Test
+	public void rasterizesCoveredPixels() {
+		OcclusionCuller culler = culler();
+		quad(culler, 0, 0, W / 2, H, 0.5f);
+		culler.end();
+		for (int y = 0; y < H; y++) {
+			for (int x = 0; x < W; x++)
+				assertEquals(x < W / 2 ? 0.5f : 1f, culler.getDepth(x, y), 0);
+		}
+	}
+
+	@Test
+	public void pyramidKeepsFarthestDepth() {
+		OcclusionCuller culler = culler();
+		quad(culler, 0, 0, W / 2, H, 0.5f);
+		culler.end();
+		// small and large rectangles behind the occluder, tested at fine and coarse levels
+		assertTrue(culler.isOccluded(3, 3, 4, 4, 0.6f));
+		assertTrue(culler.isOccluded(0, 0, W / 2 - 1, H - 1, 0.6f));
+		// in front of the occluder
+		assertFalse(culler.isOccluded(3, 3, 4, 4, 0.4f));
+		// partly over the uncovered half, the max level must see the far depth
+		assertFalse(culler.isOccluded(W / 2 - 2, 0, W / 2 + 1, 3, 0.6f));
+		assertFalse(culler.isOccluded(0, 0, W - 1, H - 1, 0.6f));
+	}
+
+	@Test
+	public void partiallyCoveredPixelsDoNotOcclude() {
+		OcclusionCuller culler = culler();
+		// right edge at 10.3 covers the centers of pixels 0-9 only
+		quad(culler, 0, 0, 10.3f, H, 0.5f);
+		culler.end();
+		assertTrue(culler.isOccluded(9, 5, 9, 5, 0.6f));
+		assertFalse(culler.isOccluded(10, 5, 10, 5, 0.6f));
+	}
+
+	@Test
+	public void occluderDepthIsConservative() {
+		OcclusionCuller culler = culler();
+		// depth rising from 0.2 to 0.8 along x
+		culler.addOccluder(0, 0, 0.2f, W, 0, 0.8f, W, H, 0.8f);
+		culler.addOccluder(0, 0, 0.2f, W, H, 0.8f, 0, H, 0.2f);
+		culler.end();
+		for (int x = 0; x < W; x++) {
+			float farthest = 0.2f + 0.6f * (x + 1) / W;
+			assertTrue(culler.getDepth(x, H / 2) >= farthest - 1e-5f);
+			assertFalse(culler.isOccluded(x, H / 2, x, H / 2, farthest - 1e-3f));
+		}
+	}
+
+	@Test
+	public void boxesAgainstWorldSpaceOccluder() {
+		OcclusionCuller culler = culler();
+		// identity view-projection: the occluder at z = 0 has window depth 0.5
+		culler.addOccluder(new float[] { -1, -1, 0, 1, -1, 0, 1, 1, 0, -1, -1, 0, 1, 1, 0, -1, 1, 0 });
+		culler.end();
+
+		BoundingBox behind = box(-0.5f, -0.5f, 0.2f, 0.5f, 0.5f, 0.4f);
+		assertTrue(culler.isOccluded(behind));
+		assertFalse(culler.isVisible(behind));
+
+		BoundingBox front = box(-0.5f, -0.5f, -0.5f, 0.5f, 0.5f, -0.2f);
+		assertFalse(culler.isOccluded(front));
+		assertTrue(culler.isVisible(front));
+	}
+
+	@Test
+	public void offScreenIsNotOccludedButNotVisible() {
+		OcclusionCuller culler = culler();
+		culler.end();
+		BoundingBox right = box(2, -0.5f, 0, 3, 0.5f, 0.5f);
+		assertFalse(culler.isOccluded(right));
+		assertFalse(culler.isVisible(right));
+		assertFalse(culler.isOnScreen(W, 0, W + 10, 10));
+		assertTrue(culler.isOnScreen(W - 1, 0, W + 10, 10));
+		assertFalse(culler.isVisible(-10, -10, -1, -1, 0.5f));
+	}
+
+	@Test
+	public void clearResetsDepth() {
+		OcclusionCuller culler = culler();
+		quad(culler, 0, 0, W, H, 0.5f);
+		culler.end();
+		assertTrue(culler.isOccluded(0, 0, W - 1, H - 1, 0.6f));
+		culler.clear(Mat4.ID);
+		culler.end();
+		assertFalse(culler.isOccluded(0, 0, W - 1, H - 1, 0.6f));
+	}
+
+	@Test
+	public void frustumTestDropsBoxesOutsideOnePlane() {
+		// camera at the origin looking down -z
+		Mat4 viewProj = Mat4.perspective(90, 1, 1, 10);
+		assertTrue(OcclusionCuller.isInFrustum(viewProj, box(-1, -1, -6, 1, 1, -4)));
+		assertTrue(OcclusionCuller.isInFrustum(viewProj, box(-100, -1, -6, 100, 1, -4)));
+		assertTrue(OcclusionCuller.isInFrustum(viewProj, new BoundingBox()));
+		assertFalse(OcclusionCuller.isInFrustum(viewProj, box(-1, -1, 4, 1, 1, 6)));
+		assertFalse(OcclusionCuller.isInFrustum(viewProj, box(-1, -1, -20, 1, 1, -12)));
+		assertFalse(OcclusionCuller.isInFrustum(viewProj, box(8, -1, -6, 9, 1, -4)));
+		assertFalse(OcclusionCuller.isInFrustum(viewProj, box(-1, 8, -6, 1, 9, -4)));
+	}
+
+	private static OcclusionCuller culler() {
+		OcclusionCuller result = new OcclusionCuller(W, H);
+		result.clear(Mat4.ID);
+		return result;
+	}
+
+	private static void quad(OcclusionCuller culler, float x0, float y0, float x1, float y1, float z) {
+		culler.addOccluder(x0, y0, z, x1, y0, z, x1, y1, z);
+		culler.addOccluder(x0, y0, z, x1, y1, z, x0, y1, z);
+	}
+
+	private static BoundingBox box(float x0, float y0, float z0, float x1, float y1, float z1) {
+		BoundingBox result = new BoundingBox();
+		result.add(x0, y0, z0);
+		result.add(x1, y1, z1);
+		return result;
+	}
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2013 - 2015 Stefan Muller Arisona, Simon Schubiger, Samuel von Stachelski
+ * Copyright (c) 2013 - 2015 FHNW & ETH Zurich
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *  Neither the name of FHNW / ETH Zurich nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package ch.fhnw.ether.render;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ch.fhnw.ether.scene.mesh.geometry.IGeometry.Format;
+
+public class VertexBufferTest {
+	private static final int N = 10000;
+
+	@Test
+	public void snorm101010PackingErrorBound() {
+		float[] normals = random(new Random(1), 3 * N, -1, 1);
+		ByteBuffer buffer = interleave(normals, 3, Format.SNORM_10_10_10_2);
+		assertEquals(4 * N, buffer.capacity());
+		for (int i = 0; i < N; i++) {
+			int packed = buffer.getInt(4 * i);
+			for (int c = 0; c < 3; c++) {
+				// sign extend the 10 bit component
+				int value = (packed << (22 - 10 * c)) >> 22;
+				assertEquals(normals[3 * i + c], value / 511f, 1 / 1022f);
+			}
+			assertEquals(0, packed >>> 30);
+		}
+	}
+
+	@Test
+	public void snorm101010ClampsAndStoresW() {
+		ByteBuffer buffer = interleave(new float[] { 2, -2, 0.5f, -1 }, 4, Format.SNORM_10_10_10_2);
+		int packed = buffer.getInt(0);
+		assertEquals(511, (packed << 22) >> 22);
+		assertEquals(-511, (packed << 12) >> 22);
+		assertEquals(256, (packed << 2) >> 22);
+		assertEquals(-1, packed >> 30);
+	}
+
+	@Test
+	public void unorm8ErrorBound() {
+		float[] colors = random(new Random(2), 4 * N, 0, 1);
+		ByteBuffer buffer = interleave(colors, 4, Format.UNORM_8);
+		for (int i = 0; i < 4 * N; i++)
+			assertEquals(colors[i], (buffer.get(i) & 0xFF) / 255f, 1 / 510f);
+	}
+
+	@Test
+	public void snorm16ErrorBound() {
+		float[] values = random(new Random(3), 3 * N, -1, 1);
+		ByteBuffer buffer = interleave(values, 3, Format.SNORM_16);
+		for (int i = 0; i < N; i++) {
+			for (int c = 0; c < 3; c++)
+				assertEquals(values[3 * i + c], buffer.getShort(8 * i + 2 * c) / 32767f, 1 / 65534f);
+		}
+	}
+
+	private static ByteBuffer interleave(float[] data, int size, Format format) {
+		int stride = VertexBuffer.getNumBytes(format, size);
+		ByteBuffer buffer = ByteBuffer.allocate(stride * data.length / size).order(ByteOrder.nativeOrder());
+		VertexBuffer.interleave(buffer, new float[][] { data }, new int[] { size }, new Format[] { format }, new int[] { 0 }, stride);
+		return buffer;
+	}
+
+	private static float[] random(Random random, int n, float min, float max) {
+		float[] result = new float[n];
+		for (int i = 0; i < n; i++)
+			result[i] = min + random.nextFloat() * (max - min);
+		return result;
+	}
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2013 - 2015 Stefan Muller Arisona, Simon Schubiger, Samuel von Stachelski
+ * Copyright (c) 2013 - 2015 FHNW & ETH Zurich
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *  Neither the name of FHNW / ETH Zurich nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package ch.fhnw.ether.render.forward;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import ch.fhnw.util.math.geometry.BoundingBox;
+
+public class ShadowMapTrackerTest {
+	private static final float[] LIGHT     = { 0, 0, 0, 1, 1, 1 };
+	private static final float[] INFLUENCE = { 0, 0, 0, 10 };
+
+	private static final class Caster {
+		final BoundingBox bounds = new BoundingBox();
+		int version;
+
+		Caster(float x, float y, float z) {
+			moveTo(x, y, z);
+		}
+
+		void moveTo(float x, float y, float z) {
+			bounds.reset();
+			bounds.add(x - 0.5f, y - 0.5f, z - 0.5f);
+			bounds.add(x + 0.5f, y + 0.5f, z + 0.5f);
+			version++;
+		}
+	}
+
+	private ShadowMapTracker<Caster> tracker;
+	private Caster                   near;
+	private Caster                   far;
+	private List<Caster>             casters;
+	private List<Caster>             inside;
+
+	@Before
+	public void setUp() {
+		tracker = new ShadowMapTracker<>(c -> c.bounds, c -> c.version);
+		near = new Caster(2, 0, 0);
+		far = new Caster(50, 0, 0);
+		casters = new ArrayList<>(Arrays.asList(near, far));
+		inside = new ArrayList<>();
+		assertTrue(update(LIGHT, INFLUENCE));
+	}
+
+	@Test
+	public void firstUpdateIsDirtyAndCollectsCastersInside() {
+		assertEquals(1, inside.size());
+		assertSame(near, inside.get(0));
+		assertFalse(update(LIGHT, INFLUENCE));
+	}
+
+	@Test
+	public void castersOutsideAreIgnored() {
+		far.moveTo(40, 0, 0);
+		assertFalse(update(LIGHT, INFLUENCE));
+		casters.remove(far);
+		assertFalse(update(LIGHT, INFLUENCE));
+		casters.add(far);
+		assertFalse(update(LIGHT, INFLUENCE));
+	}
+
+	@Test
+	public void castersEnteringAndLeavingMakeDirty() {
+		far.moveTo(5, 0, 0);
+		assertTrue(update(LIGHT, INFLUENCE));
+		assertEquals(2, inside.size());
+		far.moveTo(40, 0, 0);
+		assertTrue(update(LIGHT, INFLUENCE));
+		assertEquals(1, inside.size());
+	}
+
+	@Test
+	public void changesInsideMakeDirty() {
+		near.moveTo(3, 0, 0);
+		assertTrue(update(LIGHT, INFLUENCE));
+		assertFalse(update(LIGHT, INFLUENCE));
+		casters.remove(near);
+		assertTrue(update(LIGHT, INFLUENCE));
+		assertTrue(inside.isEmpty());
+	}
+
+	@Test
+	public void replacedCasterMakesDirty() {
+		// same version, different caster
+		Caster other = new Caster(2, 0, 0);
+		other.version = near.version;
+		casters.set(0, other);
+		assertTrue(update(LIGHT, INFLUENCE));
+	}
+
+	@Test
+	public void lightChangesMakeDirty() {
+		float[] moved = { 1, 0, 0, 1, 1, 1 };
+		assertTrue(update(moved, INFLUENCE));
+		assertFalse(update(moved.clone(), INFLUENCE));
+		assertTrue(update(new float[] { 1, 0, 0, 1, 0, 0 }, INFLUENCE));
+	}
+
+	@Test
+	public void lightStateIsCopied() {
+		float[] light = LIGHT.clone();
+		assertFalse(update(light, INFLUENCE));
+		light[0] = 5;
+		assertTrue(update(light, INFLUENCE));
+	}
+
+	@Test
+	public void directionalLightSeesAllCasters() {
+		assertTrue(update(LIGHT, null));
+		assertEquals(2, inside.size());
+		assertFalse(update(LIGHT, null));
+		far.moveTo(1000, 0, 0);
+		assertTrue(update(LIGHT, null));
+	}
+
+	@Test
+	public void invalidateMakesDirty() {
+		tracker.invalidate();
+		assertTrue(update(LIGHT, INFLUENCE));
+		assertFalse(update(LIGHT, INFLUENCE));
+	}
+
+	@Test
+	public void emptyBoundsNeverIntersect() {
+		assertFalse(ShadowMapTracker.intersects(new BoundingBox(), new float[] { 0, 0, 0, 1000 }));
+		assertTrue(ShadowMapTracker.intersects(near.bounds, new float[] { 0, 0, 0, 1.5f }));
+		assertFalse(ShadowMapTracker.intersects(near.bounds, new float[] { 0, 0, 0, 1.4f }));
+	}
+
+	private boolean update(float[] light, float[] influence) {
+		return tracker.update(light, influence, casters, inside);
+	}
+}
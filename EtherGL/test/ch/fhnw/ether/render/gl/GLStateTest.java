@@ -0,0 +1,219 @@
+/*
+ * Copyright (c) 2013 - 2015 Stefan Muller Arisona, Simon Schubiger, Samuel von Stachelski
+ * Copyright (c) 2013 - 2015 FHNW & ETH Zurich
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *  Neither the name of FHNW / ETH Zurich nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package ch.fhnw.ether.render.gl;
+
+import static org.junit.Assert.assertEquals;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.jogamp.opengl.GL;
+import com.jogamp.opengl.GL3;
+
+public class GLStateTest {
+	private final List<String> calls = new ArrayList<>();
+
+	private GL3     gl;
+	private GLState state;
+
+	@Before
+	public void setUp() {
+		gl = recordingGL(calls);
+		state = new GLState();
+		state.checkDeletions();
+	}
+
+	@Test
+	public void redundantCallsAreDropped() {
+		state.enable(gl, GL.GL_DEPTH_TEST);
+		state.enable(gl, GL.GL_DEPTH_TEST);
+		state.disable(gl, GL.GL_BLEND);
+		state.disable(gl, GL.GL_BLEND);
+		state.blendFunc(gl, GL.GL_ONE, GL.GL_ONE);
+		state.blendFunc(gl, GL.GL_ONE, GL.GL_ONE);
+		state.depthMask(gl, false);
+		state.depthMask(gl, false);
+		state.polygonOffset(gl, 1, 1);
+		state.polygonOffset(gl, 1, 1);
+		state.useProgram(gl, 3);
+		state.useProgram(gl, 3);
+		state.bindArrayBuffer(gl, 5);
+		state.bindArrayBuffer(gl, 5);
+		assertCalls(
+				"glEnable " + GL.GL_DEPTH_TEST,
+				"glDisable " + GL.GL_BLEND,
+				"glBlendFunc " + GL.GL_ONE + " " + GL.GL_ONE,
+				"glDepthMask false",
+				"glPolygonOffset 1.0 1.0",
+				"glUseProgram 3",
+				"glBindBuffer " + GL.GL_ARRAY_BUFFER + " 5");
+	}
+
+	@Test
+	public void changedValuesAreIssued() {
+		state.enable(gl, GL.GL_BLEND);
+		state.disable(gl, GL.GL_BLEND);
+		state.enable(gl, GL.GL_BLEND);
+		state.blendFunc(gl, GL.GL_ONE, GL.GL_ONE);
+		state.blendFunc(gl, GL.GL_SRC_ALPHA, GL.GL_ONE);
+		state.polygonOffset(gl, 1, 1);
+		state.polygonOffset(gl, 1, 2);
+		state.useProgram(gl, 3);
+		state.useProgram(gl, 4);
+		assertCalls(
+				"glEnable " + GL.GL_BLEND,
+				"glDisable " + GL.GL_BLEND,
+				"glEnable " + GL.GL_BLEND,
+				"glBlendFunc " + GL.GL_ONE + " " + GL.GL_ONE,
+				"glBlendFunc " + GL.GL_SRC_ALPHA + " " + GL.GL_ONE,
+				"glPolygonOffset 1.0 1.0",
+				"glPolygonOffset 1.0 2.0",
+				"glUseProgram 3",
+				"glUseProgram 4");
+	}
+
+	@Test
+	public void texturesStayBoundPerUnit() {
+		// two draws sharing a texture on unit 0 and switching the texture on unit 1, as sampler uniforms do
+		state.bindTexture(gl, 0, GL.GL_TEXTURE_2D, 7);
+		state.bindTexture(gl, 1, GL.GL_TEXTURE_2D, 8);
+		state.bindTexture(gl, 0, GL.GL_TEXTURE_2D, 7);
+		state.bindTexture(gl, 1, GL.GL_TEXTURE_2D, 9);
+		assertCalls(
+				"glActiveTexture " + GL.GL_TEXTURE0,
+				"glBindTexture " + GL.GL_TEXTURE_2D + " 7",
+				"glActiveTexture " + (GL.GL_TEXTURE0 + 1),
+				"glBindTexture " + GL.GL_TEXTURE_2D + " 8",
+				"glActiveTexture " + GL.GL_TEXTURE0,
+				"glActiveTexture " + (GL.GL_TEXTURE0 + 1),
+				"glBindTexture " + GL.GL_TEXTURE_2D + " 9");
+
+		// the same name on another target is a different binding
+		state.bindTexture(gl, 1, GL3.GL_TEXTURE_2D_ARRAY, 9);
+		assertCalls("glBindTexture " + GL3.GL_TEXTURE_2D_ARRAY + " 9");
+	}
+
+	@Test
+	public void endFrameRestoresDefaults() {
+		// shaders leave program and array buffer bound between draws
+		state.useProgram(gl, 3);
+		state.bindArrayBuffer(gl, 5);
+		state.bindTexture(gl, 2, GL.GL_TEXTURE_2D, 7);
+		state.endFrame(gl);
+		assertCalls(
+				"glUseProgram 3",
+				"glBindBuffer " + GL.GL_ARRAY_BUFFER + " 5",
+				"glActiveTexture " + (GL.GL_TEXTURE0 + 2),
+				"glBindTexture " + GL.GL_TEXTURE_2D + " 7",
+				"glUseProgram 0",
+				"glBindBuffer " + GL.GL_ARRAY_BUFFER + " 0",
+				"glActiveTexture " + GL.GL_TEXTURE0);
+		assertEquals(7, state.getIssuedCalls());
+		assertEquals(0, state.getSkippedCalls());
+
+		state.useProgram(gl, 0);
+		state.bindArrayBuffer(gl, 0);
+		state.endFrame(gl);
+		assertCalls();
+		assertEquals(0, state.getIssuedCalls());
+		assertEquals(5, state.getSkippedCalls());
+	}
+
+	@Test
+	public void beginFrameForgetsState() {
+		state.enable(gl, GL.GL_DEPTH_TEST);
+		state.depthMask(gl, true);
+		state.useProgram(gl, 3);
+		calls.clear();
+
+		state.beginFrame();
+		state.enable(gl, GL.GL_DEPTH_TEST);
+		state.depthMask(gl, true);
+		state.useProgram(gl, 3);
+		assertCalls("glEnable " + GL.GL_DEPTH_TEST, "glDepthMask true", "glUseProgram 3");
+	}
+
+	@Test
+	public void deletionsForgetBindingsOnly() {
+		state.enable(gl, GL.GL_DEPTH_TEST);
+		state.useProgram(gl, 3);
+		state.bindArrayBuffer(gl, 5);
+		state.bindTexture(gl, 0, GL.GL_TEXTURE_2D, 7);
+		calls.clear();
+
+		// a deleted name may be reused for a new object, so bindings are issued again
+		GLState.objectDeleted();
+		state.checkDeletions();
+		state.enable(gl, GL.GL_DEPTH_TEST);
+		state.useProgram(gl, 3);
+		state.bindArrayBuffer(gl, 5);
+		state.bindTexture(gl, 0, GL.GL_TEXTURE_2D, 7);
+		assertCalls(
+				"glUseProgram 3",
+				"glBindBuffer " + GL.GL_ARRAY_BUFFER + " 5",
+				"glActiveTexture " + GL.GL_TEXTURE0,
+				"glBindTexture " + GL.GL_TEXTURE_2D + " 7");
+	}
+
+	private void assertCalls(String... expected) {
+		assertEquals(Arrays.asList(expected), calls);
+		calls.clear();
+	}
+
+	/**
+	 * GL3 that records gl* calls with their arguments and does nothing else.
+	 */
+	private static GL3 recordingGL(List<String> calls) {
+		return (GL3) Proxy.newProxyInstance(GL3.class.getClassLoader(), new Class<?>[] { GL3.class }, (proxy, method, args) -> {
+			String name = method.getName();
+			if (name.startsWith("getGL"))
+				return proxy;
+			if (name.startsWith("gl")) {
+				StringBuilder call = new StringBuilder(name);
+				if (args != null) {
+					for (Object arg : args)
+						call.append(' ').append(arg);
+				}
+				calls.add(call.toString());
+			}
+			Class<?> type = method.getReturnType();
+			if (type == boolean.class)
+				return false;
+			if (type.isPrimitive() && type != void.class)
+				return type == float.class ? 0f : type == double.class ? 0.0 : type == long.class ? 0L : 0;
+			return null;
+		});
+	}
+}
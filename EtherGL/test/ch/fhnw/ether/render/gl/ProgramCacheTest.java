@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2013 - 2015 Stefan Muller Arisona, Simon Schubiger, Samuel von Stachelski
+ * Copyright (c) 2013 - 2015 FHNW & ETH Zurich
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *  Neither the name of FHNW / ETH Zurich nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package ch.fhnw.ether.render.gl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import ch.fhnw.ether.render.gl.ProgramCache.Key;
+
+public class ProgramCacheTest {
+	@Test
+	public void keysWithSameSourcesAreEqual() {
+		Key a = new Key(ProgramCacheTest.class, "#define A", "vert", "frag", null);
+		Key b = new Key(ProgramCacheTest.class, "#define A", "vert", "frag", null);
+		assertEquals(a, b);
+		assertEquals(a.hashCode(), b.hashCode());
+		assertEquals(a.digest(), b.digest());
+		assertEquals(new Key(ProgramCacheTest.class, null, "vert", "frag"), new Key(ProgramCacheTest.class, "", "vert", "frag"));
+	}
+
+	@Test
+	public void keysDifferInRootDefinesAndSources() {
+		Key key = new Key(ProgramCacheTest.class, "#define A", "vert", "frag", null);
+		assertNotEquals(key, new Key(Key.class, "#define A", "vert", "frag", null));
+		assertNotEquals(key, new Key(ProgramCacheTest.class, "#define B", "vert", "frag", null));
+		assertNotEquals(key, new Key(ProgramCacheTest.class, "#define A", "vert", "frag", "geom"));
+		assertNotEquals(key.digest(), new Key(ProgramCacheTest.class, "#define A", "vertfrag", "", null).digest());
+	}
+
+	@Test
+	public void equalKeysShareOneValue() {
+		ProgramCache cache = new ProgramCache();
+		AtomicInteger created = new AtomicInteger();
+		Object a = cache.getOrCreate(new Key(ProgramCacheTest.class, null, "vert", "frag"), key -> create(created));
+		Object b = cache.getOrCreate(new Key(ProgramCacheTest.class, null, "vert", "frag"), key -> create(created));
+		Object c = cache.getOrCreate(new Key(ProgramCacheTest.class, "#define A", "vert", "frag"), key -> create(created));
+		assertSame(a, b);
+		assertNotEquals(a, c);
+		assertEquals(2, created.get());
+		ProgramCache.Statistics statistics = cache.getStatistics();
+		assertEquals(1, statistics.hits);
+		assertEquals(2, statistics.misses);
+		assertEquals(2, statistics.programs);
+	}
+
+	@Test
+	public void unusedValuesAreReleased() throws InterruptedException {
+		ProgramCache cache = new ProgramCache();
+		AtomicInteger created = new AtomicInteger();
+		cache.getOrCreate(new Key(ProgramCacheTest.class, null, "vert", "frag"), key -> create(created));
+		for (int i = 0; i < 100 && cache.getStatistics().programs > 0; i++) {
+			System.gc();
+			Thread.sleep(10);
+		}
+		assertEquals(0, cache.getStatistics().programs);
+		cache.getOrCreate(new Key(ProgramCacheTest.class, null, "vert", "frag"), key -> create(created));
+		assertEquals(2, created.get());
+	}
+
+	@Test
+	public void concurrentRequestsCreateOnce() throws Exception {
+		ProgramCache cache = new ProgramCache();
+		AtomicInteger created = new AtomicInteger();
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<Object>> results = new ArrayList<>();
+			for (int i = 0; i < 8; i++) {
+				results.add(executor.submit(() -> cache.getOrCreate(new Key(ProgramCacheTest.class, null, "slow"), key -> {
+					started.countDown();
+					await(release);
+					return create(created);
+				})));
+			}
+			assertTrue(started.await(5, TimeUnit.SECONDS));
+
+			// another key is created while the slow one is still in its factory
+			Object other = cache.getOrCreate(new Key(ProgramCacheTest.class, null, "fast"), key -> create(created));
+			assertEquals(1, created.get());
+
+			release.countDown();
+			Object value = results.get(0).get(5, TimeUnit.SECONDS);
+			for (Future<Object> result : results)
+				assertSame(value, result.get(5, TimeUnit.SECONDS));
+			assertEquals(2, created.get());
+			assertEquals(2, cache.getStatistics().programs);
+			assertNotEquals(value, other);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void failedCreationIsRetried() {
+		ProgramCache cache = new ProgramCache();
+		Key key = new Key(ProgramCacheTest.class, null, "broken");
+		try {
+			cache.getOrCreate(key, k -> {
+				throw new IllegalStateException("link failed");
+			});
+			fail();
+		} catch (IllegalStateException e) {
+			assertEquals("link failed", e.getMessage());
+		}
+		AtomicInteger created = new AtomicInteger();
+		cache.getOrCreate(key, k -> create(created));
+		assertEquals(1, created.get());
+	}
+
+	@Test
+	public void definesFollowVersion() {
+		assertEquals("#version 330\n#define A\nvoid main() {}", ProgramCache.applyDefines("#version 330\nvoid main() {}", "#define A"));
+		assertEquals("#define A\nvoid main() {}", ProgramCache.applyDefines("void main() {}", "#define A\n"));
+		assertEquals("void main() {}", ProgramCache.applyDefines("void main() {}", null));
+	}
+
+	private static Object create(AtomicInteger created) {
+		created.incrementAndGet();
+		return new Object();
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		}
+	}
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 2013 - 2015 Stefan Muller Arisona, Simon Schubiger, Samuel von Stachelski
+ * Copyright (c) 2013 - 2015 FHNW & ETH Zurich
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *  Neither the name of FHNW / ETH Zurich nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package ch.fhnw.ether.render.gl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.jogamp.opengl.GL3;
+
+import ch.fhnw.ether.render.gl.UniformBlockBuffer.Upload;
+
+public class UniformBlockBufferTest {
+	private static final int BLOCK_SIZE = 20;
+	// 256 byte offset alignment, i.e. a stride of 64 floats
+	private static final int ALIGNMENT  = 256;
+	private static final int STRIDE     = ALIGNMENT / 4;
+
+	private final List<String>         calls   = new ArrayList<>();
+	private final Map<Integer, float[]> buffers = new HashMap<>();
+
+	private GL3                gl;
+	private UniformBlockBuffer blocks;
+
+	@Before
+	public void setUp() {
+		gl = recordingGL();
+		blocks = new UniformBlockBuffer(BLOCK_SIZE, 1);
+	}
+
+	@Test
+	public void slotsStartAtAlignedOffsets() {
+		Upload upload = new Upload();
+		for (int i = 0; i < 3; i++)
+			blocks.set(blocks.allocate(), block(i));
+		blocks.flush(gl, upload);
+		float[] data = buffers.get(upload.ubo.getId());
+		assertEquals(64 * STRIDE, data.length);
+		for (int i = 0; i < 3; i++)
+			assertArrayEquals(block(i), Arrays.copyOfRange(data, i * STRIDE, i * STRIDE + BLOCK_SIZE), 0);
+
+		calls.clear();
+		blocks.bind(gl, upload, 2);
+		assertEquals(Arrays.asList("glBindBufferRange 1 " + upload.ubo.getId() + " " + 2 * ALIGNMENT + " " + 4 * BLOCK_SIZE), calls);
+	}
+
+	@Test
+	public void cleanFlushIssuesNoCalls() {
+		Upload upload = new Upload();
+		blocks.set(blocks.allocate(), block(0));
+		blocks.flush(gl, upload);
+		calls.clear();
+		blocks.flush(gl, upload);
+		blocks.flush(gl, upload);
+		assertEquals(0, calls.size());
+	}
+
+	@Test
+	public void onlyChangedSlotsAreUploaded() {
+		Upload upload = new Upload();
+		for (int i = 0; i < 4; i++)
+			blocks.set(blocks.allocate(), block(i));
+		blocks.flush(gl, upload);
+		calls.clear();
+
+		blocks.set(1, block(10));
+		blocks.set(2, block(11));
+		blocks.flush(gl, upload);
+		assertTrue(calls.contains("glBufferSubData " + ALIGNMENT + " " + (STRIDE + BLOCK_SIZE) * 4));
+		float[] data = buffers.get(upload.ubo.getId());
+		assertArrayEquals(block(0), Arrays.copyOfRange(data, 0, BLOCK_SIZE), 0);
+		assertArrayEquals(block(10), Arrays.copyOfRange(data, STRIDE, STRIDE + BLOCK_SIZE), 0);
+		assertArrayEquals(block(11), Arrays.copyOfRange(data, 2 * STRIDE, 2 * STRIDE + BLOCK_SIZE), 0);
+		assertArrayEquals(block(3), Arrays.copyOfRange(data, 3 * STRIDE, 3 * STRIDE + BLOCK_SIZE), 0);
+	}
+
+	@Test
+	public void eachContextHasItsOwnBuffer() {
+		Upload first = new Upload();
+		Upload second = new Upload();
+		blocks.set(blocks.allocate(), block(0));
+		blocks.flush(gl, first);
+		blocks.flush(gl, second);
+		assertNotEquals(first.ubo.getId(), second.ubo.getId());
+
+		// a change flushed in one context is still pending in the other
+		blocks.set(0, block(1));
+		blocks.flush(gl, first);
+		assertArrayEquals(block(0), Arrays.copyOf(buffers.get(second.ubo.getId()), BLOCK_SIZE), 0);
+		calls.clear();
+		blocks.flush(gl, second);
+		assertTrue(calls.contains("glBufferSubData 0 " + BLOCK_SIZE * 4));
+		assertArrayEquals(block(1), Arrays.copyOf(buffers.get(second.ubo.getId()), BLOCK_SIZE), 0);
+	}
+
+	@Test
+	public void growingReallocatesWithAllSlots() {
+		Upload upload = new Upload();
+		blocks.set(blocks.allocate(), block(0));
+		blocks.flush(gl, upload);
+		for (int i = 1; i < 100; i++)
+			blocks.set(blocks.allocate(), block(i));
+		calls.clear();
+		blocks.flush(gl, upload);
+		assertTrue(calls.contains("glBufferData " + 128 * ALIGNMENT));
+		float[] data = buffers.get(upload.ubo.getId());
+		for (int i = 0; i < 100; i++)
+			assertArrayEquals(block(i), Arrays.copyOfRange(data, i * STRIDE, i * STRIDE + BLOCK_SIZE), 0);
+	}
+
+	@Test
+	public void freedSlotsAreReused() {
+		int a = blocks.allocate();
+		int b = blocks.allocate();
+		blocks.free(a);
+		assertEquals(a, blocks.allocate());
+		assertEquals(b + 1, blocks.allocate());
+	}
+
+	private static float[] block(int i) {
+		float[] block = new float[BLOCK_SIZE];
+		for (int j = 0; j < BLOCK_SIZE; j++)
+			block[j] = 100 * i + j + 1;
+		return block;
+	}
+
+	/**
+	 * GL3 that records buffer calls and keeps the content of uploaded buffers.
+	 */
+	private GL3 recordingGL() {
+		int[] state = { 0, 0 }; // last generated name, bound buffer
+		return (GL3) Proxy.newProxyInstance(GL3.class.getClassLoader(), new Class<?>[] { GL3.class }, (proxy, method, args) -> {
+			switch (method.getName()) {
+			case "glGetIntegerv":
+				((int[]) args[1])[(Integer) args[2]] = (Integer) args[0] == GL3.GL_UNIFORM_BUFFER_OFFSET_ALIGNMENT ? ALIGNMENT : 0;
+				break;
+			case "glGenBuffers":
+				((int[]) args[1])[(Integer) args[2]] = ++state[0];
+				break;
+			case "glBindBuffer":
+				calls.add("glBindBuffer " + args[1]);
+				state[1] = (Integer) args[1];
+				break;
+			case "glBufferData": {
+				long size = (Long) args[1];
+				calls.add("glBufferData " + size);
+				float[] data = new float[(int) size / 4];
+				((FloatBuffer) args[2]).duplicate().get(data);
+				buffers.put(state[1], data);
+				break;
+			}
+			case "glBufferSubData": {
+				long offset = (Long) args[1];
+				long size = (Long) args[2];
+				calls.add("glBufferSubData " + offset + " " + size);
+				((FloatBuffer) args[3]).duplicate().get(buffers.get(state[1]), (int) offset / 4, (int) size / 4);
+				break;
+			}
+			case "glBindBufferRange":
+				calls.add("glBindBufferRange " + args[1] + " " + args[2] + " " + args[3] + " " + args[4]);
+				break;
+			default:
+				if (method.getName().startsWith("gl"))
+					calls.add(method.getName());
+				break;
+			}
+			return method.getReturnType() == boolean.class ? false : method.getReturnType() == int.class ? 0 : null;
+		});
+	}
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2013 - 2015 Stefan Muller Arisona, Simon Schubiger, Samuel von Stachelski
+ * Copyright (c) 2013 - 2015 FHNW & ETH Zurich
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *  Neither the name of FHNW / ETH Zurich nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package ch.fhnw.ether.scene.mesh;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import ch.fhnw.ether.image.RGBA8Frame;
+import ch.fhnw.ether.scene.mesh.geometry.DefaultGeometry;
+import ch.fhnw.ether.scene.mesh.geometry.IGeometry;
+import ch.fhnw.ether.scene.mesh.geometry.IGeometry.Format;
+import ch.fhnw.ether.scene.mesh.geometry.IGeometry.IGeometryAttribute;
+import ch.fhnw.ether.scene.mesh.geometry.IGeometry.Primitive;
+import ch.fhnw.ether.scene.mesh.material.AtlasRegion;
+import ch.fhnw.ether.scene.mesh.material.ColorMapMaterial;
+import ch.fhnw.ether.scene.mesh.material.TextureAtlas;
+
+public class DefaultMeshTest {
+	private static final float EPSILON = 1e-6f;
+
+	private static final float[] QUAD       = { 0, 0, 0, 1, 0, 0, 1, 1, 0, 0, 0, 0, 1, 1, 0, 0, 1, 0 };
+	private static final float[] TEX_COORDS = { 0, 0, 1, 0, 1, 1, 0, 0, 1, 1, 0, 1 };
+
+	@Test
+	public void atlasTextureCoordinatesAreRemappedToTheRegion() {
+		TextureAtlas atlas = new TextureAtlas(256, 2);
+		atlas.add(new RGBA8Frame(40, 40));
+		ColorMapMaterial material = atlas.createMaterial(new RGBA8Frame(16, 32));
+		AtlasRegion region = material.getAtlasRegion();
+		IMesh mesh = new DefaultMesh(material, DefaultGeometry.createVM(Primitive.TRIANGLES, QUAD, TEX_COORDS));
+
+		int index = indexOf(mesh, IGeometry.COLOR_MAP_ARRAY);
+		// half floats would only resolve about one texel of a large page
+		assertEquals(Format.FLOAT, mesh.getGeometry().getAttributes()[index].getFormat());
+		float[] result = mesh.getTransformedGeometryData()[index];
+		assertArrayEquals(expected(region, TEX_COORDS), result, EPSILON);
+		// region spans the image, not the padding
+		assertEquals(16f / 256, region.getU1() - region.getU0(), EPSILON);
+		assertEquals(32f / 256, region.getV1() - region.getV0(), EPSILON);
+	}
+
+	@Test
+	public void coordinatesOutsideTheImageAreClamped() {
+		TextureAtlas atlas = new TextureAtlas(256, 2);
+		ColorMapMaterial material = atlas.createMaterial(new RGBA8Frame(16, 16));
+		AtlasRegion region = material.getAtlasRegion();
+		float[] texCoords = { -1, 0, 2, 0, 2, 3, -1, 0, 2, 3, -1, 3 };
+		IMesh mesh = new DefaultMesh(material, DefaultGeometry.createVM(Primitive.TRIANGLES, QUAD, texCoords));
+
+		float[] result = mesh.getTransformedGeometryData()[indexOf(mesh, IGeometry.COLOR_MAP_ARRAY)];
+		assertArrayEquals(expected(region, TEX_COORDS), result, EPSILON);
+	}
+
+	@Test
+	public void coordinatesWithoutAtlasAreKept() {
+		IMesh mesh = new DefaultMesh(new ColorMapMaterial(), DefaultGeometry.createVM(Primitive.TRIANGLES, QUAD, TEX_COORDS));
+		assertArrayEquals(TEX_COORDS, mesh.getTransformedGeometryData()[indexOf(mesh, IGeometry.COLOR_MAP_ARRAY)], 0);
+	}
+
+	@Test
+	public void mergedAtlasMeshesKeepTheirRegions() {
+		TextureAtlas atlas = new TextureAtlas(256, 2);
+		List<IMesh> meshes = new ArrayList<>();
+		List<AtlasRegion> regions = new ArrayList<>();
+		for (int i = 0; i < 4; i++) {
+			ColorMapMaterial material = atlas.createMaterial(new RGBA8Frame(16 + 8 * i, 16));
+			regions.add(material.getAtlasRegion());
+			meshes.add(new DefaultMesh(material, DefaultGeometry.createVM(Primitive.TRIANGLES, QUAD, TEX_COORDS)));
+		}
+		List<IMesh> merged = MeshUtilities.mergeMeshes(meshes);
+		assertEquals(1, merged.size());
+
+		float[] result = merged.get(0).getGeometry().getData()[indexOf(merged.get(0), IGeometry.COLOR_MAP_ARRAY)];
+		assertEquals(regions.size() * TEX_COORDS.length, result.length);
+		for (int i = 0; i < regions.size(); i++) {
+			float[] expected = expected(regions.get(i), TEX_COORDS);
+			for (int j = 0; j < expected.length; j++)
+				assertEquals(expected[j], result[i * TEX_COORDS.length + j], EPSILON);
+		}
+	}
+
+	private static float[] expected(AtlasRegion region, float[] texCoords) {
+		float[] result = new float[texCoords.length];
+		for (int i = 0; i < texCoords.length; i += 2) {
+			result[i] = region.getU0() + texCoords[i] * (region.getU1() - region.getU0());
+			result[i + 1] = region.getV0() + texCoords[i + 1] * (region.getV1() - region.getV0());
+		}
+		return result;
+	}
+
+	private static int indexOf(IMesh mesh, IGeometryAttribute attribute) {
+		IGeometryAttribute[] attributes = mesh.getGeometry().getAttributes();
+		for (int i = 0; i < attributes.length; i++)
+			if (attributes[i].equals(attribute))
+				return i;
+		throw new IllegalArgumentException(attribute.id());
+	}
+}
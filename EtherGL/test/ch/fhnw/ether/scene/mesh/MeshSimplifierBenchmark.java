@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2013 - 2015 Stefan Muller Arisona, Simon Schubiger, Samuel von Stachelski
+ * Copyright (c) 2013 - 2015 FHNW & ETH Zurich
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *  Neither the name of FHNW / ETH Zurich nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package ch.fhnw.ether.scene.mesh;
+
+import ch.fhnw.ether.scene.mesh.geometry.DefaultGeometry;
+import ch.fhnw.ether.scene.mesh.geometry.IGeometry;
+import ch.fhnw.ether.scene.mesh.geometry.IGeometry.Primitive;
+import ch.fhnw.util.math.geometry.GeodesicSphere;
+
+/**
+ * Times the simplification of a 80k triangle sphere and a 130k triangle grid to 50%, 10% and 1%.
+ */
+public class MeshSimplifierBenchmark {
+	private static final int RUNS = 3;
+
+	public static void main(String[] args) {
+		GeodesicSphere sphere = new GeodesicSphere(6);
+		run("sphere", DefaultGeometry.createVN(Primitive.TRIANGLES, sphere.getTriangles(), sphere.getNormals()));
+		run("grid", MeshSimplifierTest.grid(256));
+	}
+
+	private static void run(String name, IGeometry geometry) {
+		int triangles = geometry.getData()[0].length / 9;
+		MeshSimplifier.simplify(geometry, triangles / 2);
+		for (double fraction : new double[] { 0.5, 0.1, 0.01 }) {
+			int    target = (int) (triangles * fraction);
+			double best   = Double.MAX_VALUE;
+			for (int i = 0; i < RUNS; i++) {
+				long start = System.nanoTime();
+				MeshSimplifier.simplify(geometry, target);
+				best = Math.min(best, (System.nanoTime() - start) / 1e6);
+			}
+			System.out.println(String.format("%s %d -> %d triangles: %8.1f ms (%.0f k triangles/s removed)",
+					name, triangles, target, best, (triangles - target) / best));
+		}
+	}
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2013 - 2015 Stefan Muller Arisona, Simon Schubiger, Samuel von Stachelski
+ * Copyright (c) 2013 - 2015 FHNW & ETH Zurich
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *  Neither the name of FHNW / ETH Zurich nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package ch.fhnw.ether.scene.mesh;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import ch.fhnw.ether.scene.mesh.geometry.DefaultGeometry;
+import ch.fhnw.ether.scene.mesh.geometry.IGeometry;
+import ch.fhnw.ether.scene.mesh.geometry.IGeometry.Primitive;
+import ch.fhnw.ether.scene.mesh.material.ColorMaterial;
+import ch.fhnw.util.color.RGBA;
+import ch.fhnw.util.math.geometry.GeodesicSphere;
+
+public class MeshSimplifierTest {
+	private static final double EPSILON = 1e-4;
+
+	@Test
+	public void reachesTargetCount() {
+		IGeometry grid = grid(32);
+		for (int target : new int[] { 1500, 1000, 500, 100, 20 }) {
+			MeshSimplifier simplifier = new MeshSimplifier(grid);
+			int result = simplifier.simplify(target, Double.POSITIVE_INFINITY);
+			// a collapse removes one triangle on the border and two inside
+			assertTrue(result + " > " + target, result <= target);
+			assertTrue(result + " << " + target, result >= target - 2);
+			assertEquals(result, triangles(simplifier.getGeometry()));
+		}
+	}
+
+	@Test
+	public void keepsBoundaryOfPlane() {
+		DefaultGeometry result = MeshSimplifier.simplify(grid(32), 50);
+		float[] v = result.getData()[0];
+		double area = 0;
+		for (int i = 0; i < v.length; i += 9) {
+			assertEquals(0, v[i + 2], EPSILON);
+			area += ((v[i + 3] - v[i]) * (v[i + 7] - v[i + 1]) - (v[i + 4] - v[i + 1]) * (v[i + 6] - v[i])) / 2;
+		}
+		for (int i = 0; i < v.length; i += 3) {
+			assertTrue(v[i] >= -EPSILON && v[i] <= 1 + EPSILON);
+			assertTrue(v[i + 1] >= -EPSILON && v[i + 1] <= 1 + EPSILON);
+		}
+		// no flipped triangles and an unchanged outline leave the area at exactly one
+		assertEquals(1, area, EPSILON);
+	}
+
+	@Test
+	public void planeCollapsesWithoutError() {
+		MeshSimplifier simplifier = new MeshSimplifier(grid(16));
+		int result = simplifier.simplify(0, 1e-9);
+		assertTrue("plane kept " + result + " triangles", result <= 8);
+	}
+
+	@Test
+	public void sphereStaysRound() {
+		GeodesicSphere sphere = new GeodesicSphere(4);
+		IGeometry geometry = DefaultGeometry.createVN(Primitive.TRIANGLES, sphere.getTriangles(), sphere.getNormals());
+		int target = triangles(geometry) / 10;
+		DefaultGeometry result = MeshSimplifier.simplify(geometry, target);
+		assertTrue(triangles(result) <= target);
+		double  radius = radius(sphere.getTriangles(), 0);
+		float[] v      = result.getData()[0];
+		for (int i = 0; i < v.length; i += 3)
+			assertEquals(radius, radius(v, i), 0.05 * radius);
+	}
+
+	@Test
+	public void lodChainShrinksByReduction() {
+		IGeometry grid = grid(32);
+		List<IGeometry> chain = MeshSimplifier.createLodChain(grid, 4, 0.25f);
+		assertEquals(4, chain.size());
+		assertTrue(chain.get(0) == grid);
+		double expected = triangles(grid);
+		for (int i = 1; i < chain.size(); i++) {
+			expected *= 0.25;
+			int n = triangles(chain.get(i));
+			assertTrue(n <= expected && n >= expected - 2);
+		}
+	}
+
+	@Test
+	public void lodNamesAllLevels() {
+		DefaultMesh mesh = new DefaultMesh(new ColorMaterial(RGBA.WHITE), grid(16));
+		mesh.setName("grid");
+		LodMesh lod = LodMesh.create(mesh, 3, 0.5f, 100);
+		assertEquals(3, lod.getLevels().size());
+		assertEquals("grid", lod.getName());
+		assertEquals("grid_lod1", lod.getLevels().get(1).getName());
+		assertEquals("grid_lod2", lod.getLevels().get(2).getName());
+		lod.setName("plane");
+		assertEquals("plane", lod.getLevels().get(0).getName());
+		assertEquals("plane_lod2", lod.getLevels().get(2).getName());
+	}
+
+	private static double radius(float[] v, int i) {
+		return Math.sqrt(v[i] * v[i] + v[i + 1] * v[i + 1] + v[i + 2] * v[i + 2]);
+	}
+
+	private static int triangles(IGeometry geometry) {
+		return geometry.getData()[0].length / 9;
+	}
+
+	/**
+	 * Returns a unit square in the XY plane made of n x n quads.
+	 */
+	static DefaultGeometry grid(int n) {
+		float[] v = new float[n * n * 18];
+		int     k = 0;
+		for (int y = 0; y < n; y++) {
+			for (int x = 0; x < n; x++) {
+				float x0 = (float) x / n, x1 = (float) (x + 1) / n;
+				float y0 = (float) y / n, y1 = (float) (y + 1) / n;
+				float[] quad = { x0, y0, 0, x1, y0, 0, x1, y1, 0, x0, y0, 0, x1, y1, 0, x0, y1, 0 };
+				System.arraycopy(quad, 0, v, k, quad.length);
+				k += quad.length;
+			}
+		}
+		return DefaultGeometry.createV(Primitive.TRIANGLES, v);
+	}
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2013 - 2015 Stefan Muller Arisona, Simon Schubiger, Samuel von Stachelski
+ * Copyright (c) 2013 - 2015 FHNW & ETH Zurich
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *  Neither the name of FHNW / ETH Zurich nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package ch.fhnw.ether.scene.mesh.material;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Scanner;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+import ch.fhnw.ether.render.shader.IShader;
+import ch.fhnw.util.color.RGB;
+
+public class ShadedMaterialTest {
+	private static final Pattern MEMBER = Pattern.compile("\\b(float|vec2|vec3|vec4)\\s+(\\w+)\\s*;");
+
+	@Test
+	public void blockSizeMatchesStd140Struct() throws IOException {
+		Map<String, Integer> offsets = new LinkedHashMap<>();
+		assertEquals(std140(offsets), ShadedMaterial.BLOCK_SIZE);
+		assertEquals(7, offsets.size());
+	}
+
+	@Test
+	public void packUsesStd140Offsets() throws IOException {
+		Map<String, Integer> offsets = new LinkedHashMap<>();
+		float[] block = new float[std140(offsets) + 8];
+		ShadedMaterial.pack(block, 4, new RGB(1, 2, 3), new RGB(4, 5, 6), new RGB(7, 8, 9), new RGB(10, 11, 12), 13, 14, 15);
+
+		float[] expected = new float[block.length];
+		put(expected, 4 + offsets.get("emissionColor"), 1, 2, 3);
+		put(expected, 4 + offsets.get("ambientColor"), 4, 5, 6);
+		put(expected, 4 + offsets.get("diffuseColor"), 7, 8, 9);
+		put(expected, 4 + offsets.get("specularColor"), 10, 11, 12);
+		put(expected, 4 + offsets.get("shininess"), 13);
+		put(expected, 4 + offsets.get("strength"), 14);
+		put(expected, 4 + offsets.get("alpha"), 15);
+
+		// padding and the floats around the block stay untouched
+		for (int i = 0; i < block.length; i++)
+			assertEquals("float " + i, expected[i], block[i], 0);
+	}
+
+	/**
+	 * Computes the std140 offsets in floats of the members of the Material
+	 * struct and returns the size of the struct in floats.
+	 */
+	private static int std140(Map<String, Integer> offsets) throws IOException {
+		String source;
+		try (InputStream in = IShader.class.getResourceAsStream("glsl/lib/material_struct.glsl")) {
+			assertNotNull("material_struct.glsl not on class path", in);
+			try (Scanner scanner = new Scanner(in, StandardCharsets.UTF_8.name())) {
+				source = scanner.useDelimiter("\\A").next();
+			}
+		}
+		int offset = 0;
+		Matcher matcher = MEMBER.matcher(source);
+		while (matcher.find()) {
+			int size = matcher.group(1).equals("float") ? 1 : matcher.group(1).charAt(3) - '0';
+			int alignment = size == 3 ? 4 : size;
+			offset = align(offset, alignment);
+			offsets.put(matcher.group(2), offset);
+			offset += size;
+		}
+		// structs are padded to the alignment of a vec4
+		return align(offset, 4);
+	}
+
+	private static int align(int offset, int alignment) {
+		return (offset + alignment - 1) / alignment * alignment;
+	}
+
+	private static void put(float[] block, int offset, float... values) {
+		System.arraycopy(values, 0, block, offset, values.length);
+	}
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2013 - 2015 Stefan Muller Arisona, Simon Schubiger, Samuel von Stachelski
+ * Copyright (c) 2013 - 2015 FHNW & ETH Zurich
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *  Neither the name of FHNW / ETH Zurich nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package ch.fhnw.ether.scene.mesh.pointcloud;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import ch.fhnw.util.math.Mat4;
+import ch.fhnw.util.math.Vec3;
+
+public class PointCloudPagerTest {
+	private static final int   NUM_POINTS     = 50000;
+	private static final int   POINTS_PER_NODE = 500;
+	private static final Mat4  PROJ           = Mat4.perspective(45, 1, 0.1f, 100);
+	private static final float VIEWPORT       = 1000;
+
+	private static File             file;
+	private static PointCloudOctree octree;
+
+	@BeforeClass
+	public static void build() throws IOException {
+		file = File.createTempFile("pager", ".pco");
+		try (PointCloudOctreeBuilder builder = new PointCloudOctreeBuilder(POINTS_PER_NODE, null)) {
+			Random random = new Random(0);
+			for (int i = 0; i < NUM_POINTS; i++)
+				builder.add(random.nextDouble(), random.nextDouble(), random.nextDouble(), 0xFFFFFFFF);
+			builder.build(file);
+		}
+		octree = new PointCloudOctree(file);
+		assertTrue(octree.getNumNodes() > 20);
+	}
+
+	@AfterClass
+	public static void close() throws IOException {
+		octree.close();
+		file.delete();
+	}
+
+	@Test
+	public void selectionStaysWithinBudget() {
+		for (long budget : new long[] { 1000, 5000, 20000 }) {
+			PointCloudPager pager = new PointCloudPager(octree, budget, budget);
+			pager.setMaxLoadsPerFrame(Integer.MAX_VALUE);
+			for (int frame = 0; frame < 3; frame++) {
+				pager.beginFrame();
+				int[] nodes = pager.select(view(0, 0, 1.5f), PROJ, VIEWPORT);
+				assertTrue(nodes.length > 0);
+				assertTrue(points(nodes) <= budget);
+				assertTrue(pager.getNumResidentPoints() <= budget);
+				assertTrue(pager.getNumLoadedPoints() <= budget);
+				assertEquals(0, nodes[0]);
+			}
+		}
+	}
+
+	@Test
+	public void selectionRefinesProgressively() {
+		PointCloudPager reference = new PointCloudPager(octree, 20000, 20000);
+		reference.setMaxLoadsPerFrame(Integer.MAX_VALUE);
+		reference.beginFrame();
+		int[] expected = reference.select(view(0, 0, 1.5f), PROJ, VIEWPORT);
+
+		PointCloudPager pager = new PointCloudPager(octree, 20000, 20000);
+		pager.setMaxLoadsPerFrame(2);
+		int previous = 0;
+		int[] nodes = null;
+		for (int frame = 0; frame < expected.length; frame++) {
+			pager.beginFrame();
+			nodes = pager.select(view(0, 0, 1.5f), PROJ, VIEWPORT);
+			assertTrue(nodes.length <= previous + 2);
+			assertTrue(nodes.length >= previous);
+			previous = nodes.length;
+		}
+		assertArrayEquals(expected, nodes);
+	}
+
+	@Test
+	public void evictsLeastRecentlyUsed() {
+		PointCloudPager pager = new PointCloudPager(octree, 8000, 8000);
+		pager.setMaxLoadsPerFrame(Integer.MAX_VALUE);
+
+		pager.beginFrame();
+		int[] a = pager.select(view(-0.4f, -0.4f, 0.3f), PROJ, VIEWPORT);
+		pager.beginFrame();
+		int[] b = pager.select(view(0.4f, 0.4f, 0.3f), PROJ, VIEWPORT);
+
+		Set<Integer> onlyA = set(a);
+		onlyA.removeAll(set(b));
+		assertFalse("views must differ", onlyA.isEmpty());
+
+		// b's nodes are used in this frame and must have survived, a's were evicted first
+		for (int node : b)
+			assertTrue(pager.isResident(node));
+		assertTrue(pager.getNumResidentPoints() <= 8000);
+		int evicted = 0;
+		for (int node : onlyA)
+			if (!(pager.isResident(node)))
+				evicted++;
+		assertTrue(evicted > 0);
+
+		// remaining nodes of a are now least recently used
+		for (int node : pager.getResidentNodes()) {
+			if (set(b).contains(node))
+				break;
+			assertTrue(onlyA.contains(node));
+		}
+	}
+
+	@Test
+	public void dataOfResidentNodesStaysLoaded() {
+		// a heap budget below the GPU budget puts maximum pressure on the heap
+		PointCloudPager pager = new PointCloudPager(octree, 8000, 4000);
+		pager.setMaxLoadsPerFrame(Integer.MAX_VALUE);
+		float[][] eyes = { { -0.4f, -0.4f, 0.3f }, { 0.4f, 0.4f, 0.3f }, { 0, 0, 1.5f }, { 0.4f, -0.4f, 0.3f } };
+		for (int frame = 0; frame < 12; frame++) {
+			float[] eye = eyes[frame % eyes.length];
+			pager.beginFrame();
+			for (int node : pager.select(view(eye[0], eye[1], eye[2]), PROJ, VIEWPORT))
+				assertNotNull(pager.getData(node));
+			for (int node : pager.getResidentNodes()) {
+				float[][] data = pager.getData(node);
+				assertNotNull("data of resident node " + node + " evicted", data);
+				assertEquals(octree.getNumPoints(node) * 3, data[0].length);
+			}
+		}
+	}
+
+	private static Mat4 view(float x, float y, float z) {
+		return Mat4.lookAt(new Vec3(x, y, z), new Vec3(x, y, 0), Vec3.Y);
+	}
+
+	private static long points(int[] nodes) {
+		long result = 0;
+		for (int node : nodes)
+			result += octree.getNumPoints(node);
+		return result;
+	}
+
+	private static Set<Integer> set(int[] nodes) {
+		Set<Integer> result = new HashSet<>();
+		for (int node : nodes)
+			result.add(node);
+		return result;
+	}
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2013 - 2015 Stefan Muller Arisona, Simon Schubiger, Samuel von Stachelski
+ * Copyright (c) 2013 - 2015 FHNW & ETH Zurich
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *  Neither the name of FHNW / ETH Zurich nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package ch.fhnw.util.math;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class MathUtilitiesTest {
+	@Test
+	public void halfFloatRoundTrip() {
+		for (int h = 0; h < 0x10000; h++) {
+			float value = MathUtilities.fromHalfFloat((short) h);
+			if (Float.isNaN(value))
+				assertTrue(Float.isNaN(MathUtilities.fromHalfFloat(MathUtilities.toHalfFloat(value))));
+			else
+				assertEquals(h, MathUtilities.toHalfFloat(value) & 0xFFFF);
+		}
+	}
+
+	@Test
+	public void halfFloatErrorBound() {
+		Random random = new Random(1);
+		for (int i = 0; i < 1000000; i++) {
+			// normal half range [2^-14, 65504]
+			float value = (float) Math.scalb(1 + random.nextDouble(), random.nextInt(30) - 14);
+			if (value > 65504)
+				continue;
+			if (random.nextBoolean())
+				value = -value;
+			float result = MathUtilities.fromHalfFloat(MathUtilities.toHalfFloat(value));
+			assertEquals(value, result, Math.abs(value) * 0x1p-11f);
+		}
+	}
+
+	@Test
+	public void halfFloatSubnormals() {
+		Random random = new Random(2);
+		for (int i = 0; i < 100000; i++) {
+			float value = random.nextFloat() * 0x1p-14f;
+			float result = MathUtilities.fromHalfFloat(MathUtilities.toHalfFloat(value));
+			assertEquals(value, result, 0x1p-25f);
+		}
+	}
+
+	@Test
+	public void halfFloatRoundsToNearestEven() {
+		// halfway between 1 and 1 + 2^-10 rounds down to the even mantissa
+		assertEquals(0x3C00, MathUtilities.toHalfFloat(1 + 0x1p-11f));
+		// halfway between 1 + 2^-10 and 1 + 2^-9 rounds up to the even mantissa
+		assertEquals(0x3C02, MathUtilities.toHalfFloat(1 + 3 * 0x1p-11f));
+		// just above halfway rounds up
+		assertEquals(0x3C01, MathUtilities.toHalfFloat(1 + 0x1p-11f + 0x1p-20f));
+		// the largest half float and overflow to infinity
+		assertEquals(0x7BFF, MathUtilities.toHalfFloat(65504));
+		assertEquals(0x7C00, MathUtilities.toHalfFloat(65520));
+		assertEquals((short) 0xFC00, MathUtilities.toHalfFloat(Float.NEGATIVE_INFINITY));
+	}
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2013 - 2015 Stefan Muller Arisona, Simon Schubiger, Samuel von Stachelski
+ * Copyright (c) 2013 - 2015 FHNW & ETH Zurich
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *  Neither the name of FHNW / ETH Zurich nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package ch.fhnw.util.math.geometry;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import ch.fhnw.util.IntList;
+
+/**
+ * Compares the ear clipping triangulation with the GLU tessellator it replaced on random simple polygons.
+ */
+public class GeometryUtilitiesTest {
+	private static final double EPSILON = 1e-3;
+
+	@Test
+	public void earClippingMatchesTessellator() {
+		Random random = new Random(1);
+		for (int n = 4; n <= 256; n *= 2) {
+			for (int k = 0; k < 20; k++) {
+				float[] polygon = star(random, n, k % 2 == 0, k % 3);
+
+				IntList ear = new IntList();
+				assertTrue(GeometryUtilities.earClip(polygon, ear));
+				IntList glu = new IntList();
+				GeometryUtilities.tessellate(polygon, glu);
+
+				assertValid(polygon, ear);
+				assertValid(polygon, glu);
+				assertEquals(glu.size(), ear.size());
+			}
+		}
+	}
+
+	@Test
+	public void publicPathIsValid() {
+		Random random = new Random(2);
+		for (int k = 0; k < 50; k++) {
+			float[] polygon = star(random, 3 + random.nextInt(60), random.nextBoolean(), random.nextInt(3));
+			assertValid(polygon, GeometryUtilities.triangulate(polygon));
+		}
+		// convex polygons are fanned
+		float[] square = { 0, 0, 0, 1, 0, 0, 1, 1, 0, 0, 1, 0 };
+		assertArrayEquals(new int[] { 0, 1, 2, 0, 2, 3 }, GeometryUtilities.triangulate(square).toArray());
+	}
+
+	@Test
+	public void degeneratePolygonIsLeftToTessellator() {
+		float[] line = { 0, 0, 0, 1, 0, 0, 2, 0, 0, 3, 0, 0 };
+		assertFalse(GeometryUtilities.earClip(line, new IntList()));
+	}
+
+	@Test
+	public void batchMatchesSinglePolygons() {
+		Random  random      = new Random(3);
+		int     numPolygons = 10000;
+		int[]   starts      = new int[numPolygons + 1];
+		float[] vertices    = new float[0];
+		IntList expected    = new IntList();
+		for (int i = 0; i < numPolygons; i++) {
+			float[] polygon = star(random, 3 + random.nextInt(8), random.nextBoolean(), 0);
+			int     offset  = vertices.length / 3;
+			IntList single  = GeometryUtilities.triangulate(polygon);
+			for (int j = 0; j < single.size(); j++)
+				expected.add(offset + single.get(j));
+			float[] tmp = new float[vertices.length + polygon.length];
+			System.arraycopy(vertices, 0, tmp, 0, vertices.length);
+			System.arraycopy(polygon, 0, tmp, vertices.length, polygon.length);
+			vertices = tmp;
+			starts[i + 1] = vertices.length / 3;
+		}
+		int[] indices = new int[vertices.length / 3];
+		for (int i = 0; i < indices.length; i++)
+			indices[i] = i;
+
+		IntList result = new IntList();
+		GeometryUtilities.triangulate(vertices, indices, starts, numPolygons, result);
+		assertArrayEquals(expected.toArray(), result.toArray());
+	}
+
+	/**
+	 * Returns a random star-shaped (and thus simple) polygon with n vertices, in the XY, YZ or ZX plane.
+	 */
+	static float[] star(Random random, int n, boolean clockwise, int plane) {
+		float[] result = new float[3 * n];
+		for (int i = 0; i < n; i++) {
+			double a = 2 * Math.PI * (clockwise ? n - i : i) / n;
+			double r = 0.2 + random.nextDouble();
+			result[3 * i + plane]           = (float) (r * Math.cos(a));
+			result[3 * i + (plane + 1) % 3] = (float) (r * Math.sin(a));
+			result[3 * i + (plane + 2) % 3] = 0.5f;
+		}
+		return result;
+	}
+
+	/**
+	 * Checks that triangles has n - 2 triangles with the polygon's winding, inside the polygon and covering its area.
+	 */
+	static void assertValid(float[] polygon, IntList triangles) {
+		int n = polygon.length / 3;
+		int[] axes = plane(polygon);
+		float[] x = new float[n];
+		float[] y = new float[n];
+		for (int i = 0; i < n; i++) {
+			x[i] = polygon[3 * i + axes[0]];
+			y[i] = polygon[3 * i + axes[1]];
+		}
+		double area = 0;
+		for (int i = 0; i < n; i++) {
+			int j = (i + 1) % n;
+			area += x[i] * y[j] - x[j] * y[i];
+		}
+		area /= 2;
+
+		assertEquals(3 * (n - 2), triangles.size());
+		double sum = 0;
+		for (int t = 0; t < triangles.size(); t += 3) {
+			int a = triangles.get(t), b = triangles.get(t + 1), c = triangles.get(t + 2);
+			assertTrue(a >= 0 && a < n && b >= 0 && b < n && c >= 0 && c < n);
+			double ta = ((x[b] - x[a]) * (y[c] - y[a]) - (y[b] - y[a]) * (x[c] - x[a])) / 2;
+			assertTrue("triangle " + t / 3 + " is inverted", ta * area >= 0);
+			assertTrue("triangle " + t / 3 + " is outside", contains(x, y, (x[a] + x[b] + x[c]) / 3, (y[a] + y[b] + y[c]) / 3));
+			sum += ta;
+		}
+		assertEquals(area, sum, EPSILON * Math.abs(area));
+	}
+
+	private static int[] plane(float[] polygon) {
+		for (int axis = 0; axis < 3; axis++) {
+			boolean flat = true;
+			for (int i = 3 + axis; i < polygon.length; i += 3)
+				flat &= polygon[i] == polygon[axis];
+			if (flat)
+				return new int[] { (axis + 1) % 3, (axis + 2) % 3 };
+		}
+		throw new IllegalArgumentException("polygon not axis aligned");
+	}
+
+	private static boolean contains(float[] x, float[] y, float px, float py) {
+		boolean inside = false;
+		for (int i = 0, j = x.length - 1; i < x.length; j = i++)
+			if ((y[i] > py) != (y[j] > py) && px < (x[j] - x[i]) * (py - y[i]) / (y[j] - y[i]) + x[i])
+				inside = !inside;
+		return inside;
+	}
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2013 - 2015 Stefan Muller Arisona, Simon Schubiger, Samuel von Stachelski
+ * Copyright (c) 2013 - 2015 FHNW & ETH Zurich
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *  Neither the name of FHNW / ETH Zurich nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package ch.fhnw.util.math.geometry;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class RectanglePackerTest {
+	private static final int SIZE = 256;
+
+	@Test
+	public void fullPageFitsOnce() {
+		RectanglePacker packer = new RectanglePacker(SIZE, SIZE);
+		assertArrayEquals(new int[] { 0, 0 }, packer.insert(SIZE, SIZE));
+		assertEquals(1, packer.getOccupancy(), 0);
+		assertNull(packer.insert(1, 1));
+	}
+
+	@Test
+	public void tooLargeDoesNotFit() {
+		RectanglePacker packer = new RectanglePacker(SIZE, SIZE / 2);
+		assertNull(packer.insert(SIZE + 1, 1));
+		assertNull(packer.insert(1, SIZE / 2 + 1));
+		assertEquals(0, packer.getOccupancy(), 0);
+	}
+
+	@Test
+	public void quartersFillThePage() {
+		RectanglePacker packer = new RectanglePacker(SIZE, SIZE);
+		List<int[]> used = new ArrayList<>();
+		for (int i = 0; i < 4; i++)
+			used.add(insert(packer, SIZE / 2, SIZE / 2));
+		assertNoOverlap(used);
+		assertEquals(1, packer.getOccupancy(), 0);
+		assertNull(packer.insert(1, 1));
+	}
+
+	@Test
+	public void randomInsertsStayInsideAndDoNotOverlap() {
+		Random random = new Random(1);
+		RectanglePacker packer = new RectanglePacker(SIZE, SIZE);
+		List<int[]> used = new ArrayList<>();
+		long area = 0;
+		while (true) {
+			int w = 4 + random.nextInt(29);
+			int h = 4 + random.nextInt(29);
+			int[] position = packer.insert(w, h);
+			if (position == null)
+				break;
+			used.add(new int[] { position[0], position[1], w, h });
+			area += w * h;
+		}
+		assertNoOverlap(used);
+		assertEquals((double) area / (SIZE * SIZE), packer.getOccupancy(), 1e-6);
+		// maxrects with best short side fit packs small rectangles densely
+		assertTrue("occupancy " + packer.getOccupancy(), packer.getOccupancy() > 0.8f);
+	}
+
+	@Test
+	public void removedSpaceIsReused() {
+		RectanglePacker packer = new RectanglePacker(SIZE, SIZE);
+		List<int[]> used = new ArrayList<>();
+		for (int i = 0; i < 4; i++)
+			used.add(insert(packer, SIZE / 2, SIZE / 2));
+		int[] removed = used.remove(2);
+		packer.remove(removed[0], removed[1], removed[2], removed[3]);
+		assertEquals(0.75f, packer.getOccupancy(), 0);
+		int[] position = packer.insert(SIZE / 2, SIZE / 2);
+		assertArrayEquals(new int[] { removed[0], removed[1] }, position);
+	}
+
+	@Test
+	public void adjacentRemovalsMerge() {
+		RectanglePacker packer = new RectanglePacker(SIZE, SIZE);
+		List<int[]> used = new ArrayList<>();
+		for (int i = 0; i < 4; i++)
+			used.add(insert(packer, SIZE / 2, SIZE / 2));
+		for (int[] r : used)
+			packer.remove(r[0], r[1], r[2], r[3]);
+		assertEquals(0, packer.getOccupancy(), 0);
+		assertArrayEquals(new int[] { 0, 0 }, packer.insert(SIZE, SIZE));
+	}
+
+	@Test
+	public void churnKeepsRectanglesDisjoint() {
+		Random random = new Random(2);
+		RectanglePacker packer = new RectanglePacker(SIZE, SIZE);
+		List<int[]> used = new ArrayList<>();
+		long area = 0;
+		for (int i = 0; i < 5000; i++) {
+			if (!used.isEmpty() && random.nextInt(3) == 0) {
+				int[] r = used.remove(random.nextInt(used.size()));
+				packer.remove(r[0], r[1], r[2], r[3]);
+				area -= r[2] * r[3];
+			} else {
+				int w = 4 + random.nextInt(29);
+				int h = 4 + random.nextInt(29);
+				int[] position = packer.insert(w, h);
+				if (position != null) {
+					used.add(new int[] { position[0], position[1], w, h });
+					area += w * h;
+				}
+			}
+		}
+		assertNoOverlap(used);
+		assertEquals((double) area / (SIZE * SIZE), packer.getOccupancy(), 1e-6);
+	}
+
+	@Test
+	public void clearRemovesAll() {
+		RectanglePacker packer = new RectanglePacker(SIZE, SIZE);
+		for (int i = 0; i < 10; i++)
+			insert(packer, 20, 30);
+		packer.clear();
+		assertEquals(0, packer.getOccupancy(), 0);
+		assertEquals(1, packer.getNumFreeRectangles());
+		assertArrayEquals(new int[] { 0, 0 }, packer.insert(SIZE, SIZE));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsEmptyRectangles() {
+		new RectanglePacker(SIZE, SIZE).insert(0, 10);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsRemovalOutOfBounds() {
+		new RectanglePacker(SIZE, SIZE).remove(SIZE - 10, 0, 20, 20);
+	}
+
+	private static int[] insert(RectanglePacker packer, int w, int h) {
+		int[] position = packer.insert(w, h);
+		assertNotNull(position);
+		return new int[] { position[0], position[1], w, h };
+	}
+
+	private static void assertNoOverlap(List<int[]> rectangles) {
+		for (int i = 0; i < rectangles.size(); i++) {
+			int[] a = rectangles.get(i);
+			assertTrue(a[0] >= 0 && a[1] >= 0 && a[0] + a[2] <= SIZE && a[1] + a[3] <= SIZE);
+			for (int j = i + 1; j < rectangles.size(); j++) {
+				int[] b = rectangles.get(j);
+				boolean overlap = a[0] < b[0] + b[2] && b[0] < a[0] + a[2] && a[1] < b[1] + b[3] && b[1] < a[1] + a[3];
+				assertFalse(i + " overlaps " + j, overlap);
+			}
+		}
+	}
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2013 - 2015 Stefan Muller Arisona, Simon Schubiger, Samuel von Stachelski
+ * Copyright (c) 2013 - 2015 FHNW & ETH Zurich
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *  Neither the name of FHNW / ETH Zurich nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package ch.fhnw.util.math.geometry;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class TriangleAdjacencyTest {
+	private static final int OPEN = TriangleAdjacency.OPEN;
+
+	@Test
+	public void closedSphereHasNoOpenEdges() {
+		float[] triangles = new GeodesicSphere(3).getTriangles();
+		int[] adjacency = TriangleAdjacency.build(triangles);
+		assertEquals(triangles.length / 3, adjacency.length);
+		for (int e = 0; e < adjacency.length; e++) {
+			assertNotEquals("edge " + e, OPEN, adjacency[e]);
+			assertNeighbour(triangles, adjacency, e);
+		}
+	}
+
+	@Test
+	public void quadSharesOneEdge() {
+		float[] triangles = {
+				0, 0, 0, 1, 0, 0, 1, 1, 0,
+				0, 0, 0, 1, 1, 0, 0, 1, 0,
+		};
+		int[] adjacency = TriangleAdjacency.build(triangles);
+		// edge v2 v0 of the first triangle is edge v0 v1 of the second
+		assertArrayEquals(new int[] { OPEN, OPEN, 5, 1, OPEN, OPEN }, adjacency);
+		assertNeighbour(triangles, adjacency, 2);
+		assertNeighbour(triangles, adjacency, 3);
+	}
+
+	@Test
+	public void inconsistentWindingStaysOpen() {
+		float[] triangles = {
+				0, 0, 0, 1, 0, 0, 1, 1, 0,
+				0, 0, 0, 0, 1, 0, 1, 1, 0,
+		};
+		// both triangles run from (1, 1, 0) to (0, 0, 0)
+		assertArrayEquals(new int[] { OPEN, OPEN, OPEN, OPEN, OPEN, OPEN }, TriangleAdjacency.build(triangles));
+	}
+
+	@Test
+	public void nonManifoldEdgePairsFirstTwoOnly() {
+		float[] triangles = {
+				0, 0, 0, 1, 0, 0, 0, 1, 0,
+				1, 0, 0, 0, 0, 0, 0, -1, 0,
+				1, 0, 0, 0, 0, 0, 0, 0, 1,
+		};
+		int[] adjacency = TriangleAdjacency.build(triangles);
+		assertEquals(5, adjacency[0]);
+		assertEquals(2, adjacency[3]);
+		assertEquals(OPEN, adjacency[6]);
+		assertNeighbour(triangles, adjacency, 0);
+		assertNeighbour(triangles, adjacency, 3);
+	}
+
+	@Test
+	public void degenerateTrianglesAreOpen() {
+		float[] triangles = {
+				0, 0, 0, 1, 0, 0, 1, 1, 0,
+				0, 0, 0, 1, 1, 0, 1, 1, 0,
+		};
+		int[] adjacency = TriangleAdjacency.build(triangles);
+		assertArrayEquals(new int[] { OPEN, OPEN, OPEN, OPEN, OPEN, OPEN }, adjacency);
+	}
+
+	@Test
+	public void negativeZeroIsWelded() {
+		float[] triangles = {
+				0, 0, 0, 1, 0, 0, 1, 1, 0,
+				-0f, -0f, 0, 1, 1, 0, 0, 1, 0,
+		};
+		int[] adjacency = TriangleAdjacency.build(triangles);
+		assertEquals(5, adjacency[2]);
+		assertEquals(1, adjacency[3]);
+	}
+
+	@Test
+	public void expandUsesOwnVertexForOpenEdges() {
+		float[] triangles = {
+				0, 0, 0, 1, 0, 0, 1, 1, 0,
+				0, 0, 0, 1, 1, 0, 0, 1, 0,
+		};
+		float[] expanded = TriangleAdjacency.expand(triangles, TriangleAdjacency.build(triangles));
+		float[] expected = {
+				0, 0, 0, 1, 1, 0, // v0, open: own v2
+				1, 0, 0, 0, 0, 0, // v1, open: own v0
+				1, 1, 0, 0, 1, 0, // v2, neighbour's v2
+				0, 0, 0, 1, 0, 0, // v0, neighbour's v1
+				1, 1, 0, 0, 0, 0, // v1, open: own v0
+				0, 1, 0, 1, 1, 0, // v2, open: own v1
+		};
+		assertArrayEquals(expected, expanded, 0);
+	}
+
+	// the neighbour triangle runs along edge e in reverse, adjacency[e] is its opposite vertex
+	private static void assertNeighbour(float[] triangles, int[] adjacency, int e) {
+		int n = adjacency[e];
+		assertNotEquals(e / 3, n / 3);
+		assertArrayEquals("edge " + e, position(triangles, next(e)), position(triangles, next(n)), 0);
+		assertArrayEquals("edge " + e, position(triangles, e), position(triangles, next(next(n))), 0);
+	}
+
+	private static float[] position(float[] triangles, int v) {
+		return Arrays.copyOfRange(triangles, 3 * v, 3 * v + 3);
+	}
+
+	private static int next(int e) {
+		return e % 3 == 2 ? e - 2 : e + 1;
+	}
+}
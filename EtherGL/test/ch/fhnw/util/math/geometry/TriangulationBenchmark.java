@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2013 - 2015 Stefan Muller Arisona, Simon Schubiger, Samuel von Stachelski
+ * Copyright (c) 2013 - 2015 FHNW & ETH Zurich
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *  Neither the name of FHNW / ETH Zurich nor the names of its contributors may
+ *   be used to endorse or promote products derived from this software without
+ *   specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package ch.fhnw.util.math.geometry;
+
+import java.util.Random;
+
+import ch.fhnw.util.IntList;
+
+/**
+ * Times ear clipping against the GLU tessellator on random star-shaped polygons of 8 to 2048 vertices.
+ */
+public class TriangulationBenchmark {
+	private static final int POLYGONS = 200;
+	private static final int RUNS     = 5;
+
+	public static void main(String[] args) {
+		Random random = new Random(0);
+		for (int n = 8; n <= 2048; n *= 4) {
+			float[][] polygons = new float[POLYGONS][];
+			for (int i = 0; i < POLYGONS; i++)
+				polygons[i] = GeometryUtilitiesTest.star(random, n, i % 2 == 0, 2);
+
+			IntList result = new IntList();
+			double  ear    = time(() -> {
+				for (float[] polygon : polygons) {
+					result.clear();
+					GeometryUtilities.earClip(polygon, result);
+				}
+			});
+			double  glu    = time(() -> {
+				for (float[] polygon : polygons) {
+					result.clear();
+					GeometryUtilities.tessellate(polygon, result);
+				}
+			});
+			System.out.println(String.format("%4d vertices: ear clipping %8.3f ms, tessellator %8.3f ms per polygon, speedup %.1f",
+					n, ear / POLYGONS, glu / POLYGONS, glu / ear));
+		}
+	}
+
+	private static double time(Runnable r) {
+		r.run();
+		double best = Double.MAX_VALUE;
+		for (int i = 0; i < RUNS; i++) {
+			long start = System.nanoTime();
+			r.run();
+			best = Math.min(best, (System.nanoTime() - start) / 1e6);
+		}
+		return best;
+	}
+}